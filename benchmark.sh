@@ -0,0 +1,9 @@
+#!/bin/sh
+
+# 运行JMH基准测试，结果以JSON导出便于跟踪回归
+# 用法：./benchmark.sh [JMH参数]，如 ./benchmark.sh PageDataSourceBenchmark -t 4
+RESULT_PATH=./benchmark/target/jmh-result.json
+
+mvn install -Dmaven.test.skip=true
+mvn -f ./benchmark/pom.xml package
+java -jar ./benchmark/target/benchmarks.jar -rf json -rff ${RESULT_PATH} "$@"
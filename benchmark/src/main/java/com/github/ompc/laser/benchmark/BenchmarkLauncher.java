@@ -0,0 +1,26 @@
+package com.github.ompc.laser.benchmark;
+
+import java.io.IOException;
+
+/**
+ * 基准测试启动器<br/>
+ * 端到端基准测试不打进laser的jar，随JMH基准测试一起打包，参数与各基准测试的用法一致<br/>
+ * 用法：java -cp target/benchmarks.jar com.github.ompc.laser.benchmark.BenchmarkLauncher [模式] [参数]...
+ */
+public class BenchmarkLauncher {
+
+    public static void main(String... args) throws IOException, InterruptedException {
+
+        if (args[0].equals("pagewriterbench")) {
+            PageWriterBenchmark.main(args);
+        } else if (args[0].equals("integritybench")) {
+            IntegrityBenchmark.main(args);
+        } else if (args[0].equals("loopbackbench")) {
+            LoopbackBenchmark.main(args);
+        } else {
+            throw new IllegalArgumentException("illegal args[0]=" + args[0]);
+        }
+
+    }
+
+}
@@ -0,0 +1,164 @@
+package com.github.ompc.laser.benchmark;
+
+import com.github.ompc.laser.client.IntegrityChecker;
+import com.github.ompc.laser.client.RowDecoder;
+import com.github.ompc.laser.common.FrameChecksum;
+import com.github.ompc.laser.common.datasource.DataPersistence;
+import com.github.ompc.laser.common.datasource.Row;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static com.github.ompc.laser.common.LaserConstant.PRO_RESP_CHECKSUM;
+import static com.github.ompc.laser.common.LaserConstant.PRO_RESP_GETDATA;
+import static com.github.ompc.laser.common.LaserConstant.PRO_RESP_GETEOF;
+import static com.github.ompc.laser.common.LaserConstant.PRO_RESP_GETEOF_SUMMARY;
+import static com.github.ompc.laser.common.LaserUtils.reverse;
+import static com.github.ompc.laser.common.LaserUtils.stringSize;
+
+/**
+ * 完整性检查基准测试<br/>
+ * 按服务端的批次大小编码数据帧，比较开启与关闭完整性检查时客户端解码的耗时<br/>
+ * 数据只拷入内存不落盘，得到的是相对解码本身的开销上限<br/>
+ * 用法：integritybench [行数] [批次大小(B),默认4380]
+ */
+public class IntegrityBenchmark {
+
+    /*
+     * 每次交给解码器的字节数，模拟一次网络读取
+     */
+    private final static int READ_SIZE = 1752;
+
+    /*
+     * 轮数，取每种模式的最好成绩
+     */
+    private final static int ROUNDS = 10;
+
+    public static void main(String... args) throws IOException {
+
+        final int rows = Integer.valueOf(args[1]);
+        final int batchSize = args.length > 2 ? Integer.valueOf(args[2]) : 4380;
+
+        final ByteBuffer plain = encode(rows, batchSize, false);
+        final ByteBuffer checked = encode(rows, batchSize, true);
+
+        long plainBest = Long.MAX_VALUE;
+        long checkedBest = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            plainBest = Math.min(plainBest, decode(plain, null));
+            checkedBest = Math.min(checkedBest, decode(checked, new IntegrityChecker()));
+        }
+
+        System.out.println("mode\tcostMs\tns/row");
+        System.out.println(String.format("plain\t%d\t%.1f", plainBest / 1000000, plainBest * 1.0 / rows));
+        System.out.println(String.format("integrity(%s)\t%d\t%.1f",
+                FrameChecksum.create().getAlgorithm() == FrameChecksum.ALGORITHM_CRC32C ? "crc32c" : "crc32",
+                checkedBest / 1000000, checkedBest * 1.0 / rows));
+        System.out.println(String.format("overhead=%.2f%%", (checkedBest - plainBest) * 100.0 / plainBest));
+
+    }
+
+    /*
+     * 按服务端的方式编码，发送缓存剩余不足一行时结束一批
+     */
+    private static ByteBuffer encode(int rows, int batchSize, boolean isEnableIntegrity) {
+
+        final int limitRemaining = 212 + (isEnableIntegrity ? 16 : 0);
+        final FrameChecksum checksum = FrameChecksum.create();
+        final ByteBuffer batch = ByteBuffer.allocateDirect(batchSize);
+        final ByteBuffer frames = ByteBuffer.allocateDirect((int) Math.min(Integer.MAX_VALUE, rows * 230L + 64));
+        final Random random = new Random(0);
+        final byte[] data = new byte[200];
+
+        long totalBytes = 0;
+        int batchRows = 0;
+        for (int lineNum = 0; lineNum < rows; lineNum++) {
+            final int len = 1 + random.nextInt(data.length);
+            for (int i = 0; i < len; i++) {
+                data[i] = (byte) ('a' + random.nextInt(26));
+            }
+            batch.putInt(PRO_RESP_GETDATA).putInt(lineNum).putInt(len).put(data, 0, len);
+            totalBytes += stringSize(lineNum) + len + 2;
+            batchRows++;
+
+            if (batch.remaining() < limitRemaining
+                    || lineNum == rows - 1) {
+                if (isEnableIntegrity) {
+                    checksum.reset();
+                    checksum.update(batch, 0, batch.position());
+                    batch.putInt(PRO_RESP_CHECKSUM).putInt(checksum.getAlgorithm()).putInt(batchRows).putInt(checksum.getValue());
+                }
+                batch.flip();
+                frames.put(batch);
+                batch.clear();
+                batchRows = 0;
+            }
+        }
+        if (isEnableIntegrity) {
+            frames.putInt(PRO_RESP_GETEOF_SUMMARY).putLong(rows).putLong(totalBytes);
+        } else {
+            frames.putInt(PRO_RESP_GETEOF);
+        }
+        frames.flip();
+        return frames;
+
+    }
+
+    /*
+     * 按网络读取的粒度解码，返回耗时(ns)
+     */
+    private static long decode(ByteBuffer frames, IntegrityChecker integrityChecker) throws IOException {
+
+        final RowDecoder decoder = new RowDecoder(new MemoryDataPersistence(), integrityChecker);
+        final ByteBuffer view = frames.duplicate();
+        view.limit(0);
+
+        final long startNanos = System.nanoTime();
+        boolean isEOF = false;
+        while (!isEOF) {
+            view.limit(Math.min(view.limit() + READ_SIZE, view.capacity()));
+            isEOF = decoder.decode(view);
+        }
+        final long cost = System.nanoTime() - startNanos;
+
+        if (null != integrityChecker) {
+            integrityChecker.check(0);
+        }
+        return cost;
+
+    }
+
+    /**
+     * 只把数据段逆序拷入内存的数据持久化
+     */
+    private static class MemoryDataPersistence implements DataPersistence {
+
+        private final byte[] scratch = new byte[256];
+
+        @Override
+        public void putRow(Row row) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void putRow(long lineNum, long offset, ByteBuffer src, int length) throws IOException {
+            src.get(scratch, 0, length);
+            reverse(scratch, 0, length);
+        }
+
+        @Override
+        public void init() throws IOException {
+        }
+
+        @Override
+        public void flush() throws IOException {
+        }
+
+        @Override
+        public void destroy() throws IOException {
+        }
+
+    }
+
+}
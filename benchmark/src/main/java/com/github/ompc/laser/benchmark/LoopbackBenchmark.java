@@ -0,0 +1,395 @@
+package com.github.ompc.laser.benchmark;
+
+import com.github.ompc.laser.client.ClientConfiger;
+import com.github.ompc.laser.client.ClientMetrics;
+import com.github.ompc.laser.client.ConnectionScaler;
+import com.github.ompc.laser.client.IntegrityChecker;
+import com.github.ompc.laser.client.NioLaserClient;
+import com.github.ompc.laser.common.LaserOptions;
+import com.github.ompc.laser.common.LatencyRecorder;
+import com.github.ompc.laser.common.datasource.DataPersistence;
+import com.github.ompc.laser.common.datasource.DataSource;
+import com.github.ompc.laser.common.datasource.Row;
+import com.github.ompc.laser.common.datasource.impl.OffsetDataPersistence;
+import com.github.ompc.laser.common.datasource.impl.PageDataPersistence;
+import com.github.ompc.laser.common.datasource.impl.PageDataSource;
+import com.github.ompc.laser.common.unix.UnixDomainSockets;
+import com.github.ompc.laser.server.NioLaserServer;
+import com.github.ompc.laser.server.ServerMetrics;
+import com.github.ompc.laser.server.ServerConfiger;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.github.ompc.laser.common.LaserLauncher.createPageWriter;
+import static com.github.ompc.laser.common.LaserUtils.stringSize;
+
+/**
+ * 回环端到端基准测试<br/>
+ * 在同一个进程内通过回环地址启动服务端和多个客户端，跑完数据生成器生成的输入文件并校验输出，
+ * 统计行吞吐、字节吞吐、首行耗时和请求应答延时分位数<br/>
+ * 用法：loopbackbench [工作目录] [行数] [laser.properties] [配置项=值1,值2...]...<br/>
+ * 每个配置项的取值做笛卡尔积，如 client.work_numbers=1,2,4 enable_compress=false,true
+ */
+public class LoopbackBenchmark {
+
+    /*
+     * 服务端数据源的页行数，默认值需要按server.sh的大堆运行
+     */
+    private final static int SERVER_PAGE_ROWS = 100000;
+
+    public static void main(String... args) throws IOException, InterruptedException {
+
+        final File dir = new File(args[1]);
+        final int rows = Integer.valueOf(args[2]);
+        final Properties baseProperties = LaserOptions.load(new File(args[3]));
+        final String[] sweeps = Arrays.copyOfRange(args, 4, args.length);
+
+        final File inputFile = new File(dir, "loopbackbench_input.dat");
+        final File outputFile = new File(dir, "loopbackbench_output.dat");
+        final DataGenerator.Expect expect = new DataGenerator(rows, "uniform:1,200", "printable", 0,
+                Runtime.getRuntime().availableProcessors()).generate(inputFile);
+
+        try {
+            System.out.println("config\trows/s\tMB/s\tfirstRowMs\tp50us\tp99us\tp999us\tcheck");
+            for (Properties properties : combine(baseProperties, sweeps)) {
+                outputFile.delete();
+                final Result result = run(inputFile, outputFile, new LaserOptions(properties));
+                System.out.println(String.format("%s\t%.0f\t%.1f\t%.1f\t%.1f\t%.1f\t%.1f\t%s",
+                        describe(properties, sweeps),
+                        result.getRows() / (result.costNanos / 1e9),
+                        result.getBytes() / 1024.0 / 1024.0 / (result.costNanos / 1e9),
+                        result.firstRowNanos / 1e6,
+                        result.latencies.percentile(0.50) / 1e3,
+                        result.latencies.percentile(0.99) / 1e3,
+                        result.latencies.percentile(0.999) / 1e3,
+                        expect.isMatched(outputFile) ? "OK" : "FAIL"));
+            }
+        } finally {
+            inputFile.delete();
+            outputFile.delete();
+        }
+
+    }
+
+    /**
+     * 在回环地址上跑完一次传输
+     *
+     * @param inputFile  输入文件
+     * @param outputFile 输出文件
+     * @param options    配置
+     * @return 结果
+     * @throws IOException          传输失败
+     * @throws InterruptedException 等待被中断
+     */
+    public static Result run(File inputFile, File outputFile, LaserOptions options) throws IOException, InterruptedException {
+        return run(inputFile, outputFile, options, null);
+    }
+
+    /**
+     * 跑完一次传输
+     *
+     * @param inputFile  输入文件
+     * @param outputFile 输出文件
+     * @param options    配置
+     * @param unixPath   Unix域套接字文件路径，为null时走回环地址
+     * @return 结果
+     * @throws IOException          传输失败
+     * @throws InterruptedException 等待被中断
+     */
+    public static Result run(File inputFile, File outputFile, LaserOptions options, String unixPath) throws IOException, InterruptedException {
+
+        final ExecutorService executorService = Executors.newCachedThreadPool((r) -> {
+            final Thread t = new Thread(r);
+            t.setDaemon(true);
+            return t;
+        });
+
+        final ServerConfiger serverConfiger = new ServerConfiger();
+        serverConfiger.setDataFile(inputFile);
+        serverConfiger.setPort(0);
+        serverConfiger.setUnixPath(unixPath);
+        final DataSource dataSource = new PageDataSource(new File[]{inputFile}, SERVER_PAGE_ROWS, 0,
+                options.getServerReadaheadWindowSize(), options.getServerReadaheadDepth());
+        dataSource.init();
+        final NioLaserServer server = new NioLaserServer(dataSource, executorService, serverConfiger, options);
+
+        ConnectionScaler scaler = null;
+        try {
+
+            server.startup();
+
+            final Result result = new Result();
+            final ClientConfiger configer = new ClientConfiger();
+            configer.setServerAddress(null == unixPath
+                    ? new InetSocketAddress("127.0.0.1", server.getPort())
+                    : UnixDomainSockets.get().address(unixPath));
+            configer.setDataFile(outputFile);
+            configer.setLatencyRecorder(result.latencies);
+            if (options.isEnableIntegrity()) {
+                configer.setIntegrityChecker(new IntegrityChecker());
+            }
+
+            final long startNanos = System.nanoTime();
+            final DataPersistence outputPersistence = options.isEnableOutputOffset()
+                    ? new OffsetDataPersistence(outputFile)
+                    : new PageDataPersistence(outputFile, options.getClientFlusherNumbers(),
+                    createPageWriter(options.getClientPageWriter(), outputFile, options));
+            final DataPersistence dataPersistence = new FirstRowDataPersistence(outputPersistence, result, startNanos);
+            dataPersistence.init();
+            if (options.isEnableMetrics()) {
+                result.clientMetrics = new ClientMetrics(dataPersistence);
+                configer.setMetrics(result.clientMetrics);
+            }
+            result.serverMetrics = server.getMetrics();
+
+            // 与启动器一致，链接随吞吐伸缩，等待所有链接收到EOF或排空
+            final CountDownLatch readyLatch = new CountDownLatch(0);
+            final Phaser phaser = new Phaser(1);
+            scaler = new ConnectionScaler(() -> {
+                final NioLaserClient client = new NioLaserClient(phaser, readyLatch, executorService, dataPersistence, configer, options);
+                client.connect();
+                return client;
+            }, outputPersistence, options);
+            scaler.start();
+
+            phaser.arriveAndAwaitAdvance();
+            scaler.stop();
+            result.connections = scaler.getClients().size();
+            dataPersistence.flush();
+            result.costNanos = System.nanoTime() - startNanos;
+            dataPersistence.destroy();
+
+            if (null != configer.getIntegrityChecker()) {
+                configer.getIntegrityChecker().check(0);
+            }
+            return result;
+
+        } finally {
+            if (null != scaler) {
+                scaler.stop();
+                for (NioLaserClient client : scaler.getClients()) {
+                    client.disconnect();
+                }
+            }
+            server.shutdown();
+            dataSource.destroy();
+            executorService.shutdownNow();
+            executorService.awaitTermination(10, TimeUnit.SECONDS);
+        }
+
+    }
+
+    /*
+     * 基础配置与各配置项取值的笛卡尔积
+     */
+    private static List<Properties> combine(Properties baseProperties, String[] sweeps) {
+        List<Properties> combinations = new ArrayList<>();
+        combinations.add(baseProperties);
+        for (String sweep : sweeps) {
+            final String key = sweep.substring(0, sweep.indexOf('='));
+            final List<Properties> next = new ArrayList<>();
+            for (Properties properties : combinations) {
+                for (String value : sweep.substring(sweep.indexOf('=') + 1).split(",")) {
+                    final Properties copy = new Properties();
+                    copy.putAll(properties);
+                    copy.setProperty(key, value);
+                    next.add(copy);
+                }
+            }
+            combinations = next;
+        }
+        return combinations;
+    }
+
+    /*
+     * 描述当前组合中被扫描的配置项
+     */
+    private static String describe(Properties properties, String[] sweeps) {
+        final StringBuilder sb = new StringBuilder();
+        for (String sweep : sweeps) {
+            final String key = sweep.substring(0, sweep.indexOf('='));
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(key).append('=').append(properties.getProperty(key));
+        }
+        return sb.length() == 0 ? "default" : sb.toString();
+    }
+
+    /**
+     * 一次传输的结果
+     */
+    public static class Result {
+
+        private final LatencySamples latencies = new LatencySamples();
+        private volatile long firstRowNanos = -1;
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private long costNanos;
+        private int connections;
+        private ServerMetrics serverMetrics;
+        private ClientMetrics clientMetrics;
+
+        public long getCostNanos() {
+            return costNanos;
+        }
+
+        public long getFirstRowNanos() {
+            return firstRowNanos;
+        }
+
+        public long getRows() {
+            return rows.sum();
+        }
+
+        public long getBytes() {
+            return bytes.sum();
+        }
+
+        /**
+         * @return 传输过程中打开过的链接数
+         */
+        public int getConnections() {
+            return connections;
+        }
+
+        public LatencySamples getLatencies() {
+            return latencies;
+        }
+
+        public ServerMetrics getServerMetrics() {
+            return serverMetrics;
+        }
+
+        /**
+         * @return 客户端度量，未开启度量时为null
+         */
+        public ClientMetrics getClientMetrics() {
+            return clientMetrics;
+        }
+
+    }
+
+    /**
+     * 延时采样，每批请求记一个带权重的样本，按权重计算分位数
+     */
+    public static class LatencySamples implements LatencyRecorder {
+
+        /*
+         * 最多保留的样本数，超出后不再记录
+         */
+        private final static int MAX_SAMPLES = 1 << 20;
+
+        private final long[] latencies = new long[MAX_SAMPLES];
+        private final long[] counts = new long[MAX_SAMPLES];
+        private int size = 0;
+
+        @Override
+        public synchronized void record(long latencyNanos, long count) {
+            if (size < MAX_SAMPLES) {
+                latencies[size] = latencyNanos;
+                counts[size] = count;
+                size++;
+            }
+        }
+
+        /**
+         * 计算分位数
+         *
+         * @param quantile 分位，如0.99
+         * @return 延时(ns)，没有样本时为0
+         */
+        public synchronized long percentile(double quantile) {
+            if (size == 0) {
+                return 0;
+            }
+            final Integer[] order = new Integer[size];
+            long total = 0;
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+                total += counts[i];
+            }
+            Arrays.sort(order, (a, b) -> Long.compare(latencies[a], latencies[b]));
+            final long rank = (long) Math.ceil(total * quantile);
+            long seen = 0;
+            for (Integer i : order) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return latencies[i];
+                }
+            }
+            return latencies[order[size - 1]];
+        }
+
+    }
+
+    /**
+     * 记录首行到达时间和总行数、总字节数的数据持久化
+     */
+    private static class FirstRowDataPersistence implements DataPersistence {
+
+        private final DataPersistence delegate;
+        private final Result result;
+        private final long startNanos;
+
+        private FirstRowDataPersistence(DataPersistence delegate, Result result, long startNanos) {
+            this.delegate = delegate;
+            this.result = result;
+            this.startNanos = startNanos;
+        }
+
+        private void onRow(long lineNum, int length) {
+            if (result.firstRowNanos < 0) {
+                synchronized (result) {
+                    if (result.firstRowNanos < 0) {
+                        result.firstRowNanos = System.nanoTime() - startNanos;
+                    }
+                }
+            }
+            result.rows.increment();
+            result.bytes.add(stringSize(lineNum) + length + 2);
+        }
+
+        @Override
+        public void putRow(Row row) throws IOException {
+            onRow(row.getLineNum(), row.getData().length);
+            delegate.putRow(row);
+        }
+
+        @Override
+        public void putRow(long lineNum, long offset, ByteBuffer src, int length) throws IOException {
+            onRow(lineNum, length);
+            delegate.putRow(lineNum, offset, src, length);
+        }
+
+        @Override
+        public void init() throws IOException {
+            delegate.init();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            delegate.flush();
+        }
+
+        @Override
+        public void destroy() throws IOException {
+            delegate.destroy();
+        }
+
+    }
+
+}
@@ -0,0 +1,106 @@
+package com.github.ompc.laser.benchmark;
+
+import com.github.ompc.laser.common.LaserOptions;
+import com.github.ompc.laser.common.datasource.DataPersistence;
+import com.github.ompc.laser.common.datasource.Row;
+import com.github.ompc.laser.common.datasource.impl.PageDataPersistence;
+import com.github.ompc.laser.common.datasource.writer.PageWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.github.ompc.laser.common.LaserLauncher.createPageWriter;
+import static com.github.ompc.laser.common.LaserUtils.stringSize;
+
+/**
+ * 页面写入器基准测试<br/>
+ * 用多个写入线程乱序产生数据行，分别通过各页面写入器输出指定大小的文件，统计吞吐量<br/>
+ * 用法：pagewriterbench [输出目录] [文件大小列表(GB),如1,5,10,50] [laser.properties]
+ */
+public class PageWriterBenchmark {
+
+    /*
+     * 每行数据段大小
+     */
+    private final static int DATA_SIZE = 100;
+
+    /*
+     * 写入线程数
+     */
+    private final static int PRODUCER_NUMBERS = 4;
+
+    private final static String[] WRITER_TYPES = new String[]{"mapped", "gathering", "direct"};
+
+    public static void main(String... args) throws IOException, InterruptedException {
+
+        final File dir = new File(args[1]);
+        final String[] sizes = args[2].split(",");
+        final LaserOptions options = new LaserOptions(new File(args[3]));
+
+        System.out.println("writer\tsizeGB\tcostMs\tMB/s");
+        for (String size : sizes) {
+            final long targetBytes = Long.valueOf(size) << 30;
+            for (String type : WRITER_TYPES) {
+                final File dataFile = new File(dir, "pagewriterbench_" + type + "_" + size + "G.dat");
+                final long cost = run(dataFile, createPageWriter(type, dataFile, options), options, targetBytes);
+                final long fileSize = dataFile.length();
+                System.out.println(String.format("%s\t%s\t%d\t%.1f",
+                        type, size, cost, (fileSize / 1024.0 / 1024.0) / (cost / 1000.0)));
+                dataFile.delete();
+            }
+        }
+
+    }
+
+    /*
+     * 输出一个文件，返回从开始写入到刷新完成的耗时
+     */
+    private static long run(File dataFile, PageWriter pageWriter, LaserOptions options, long targetBytes)
+            throws IOException, InterruptedException {
+
+        // 先算出能写满目标大小的总行数
+        int totalRows = 0;
+        long totalBytes = 0;
+        while (totalBytes < targetBytes) {
+            totalBytes += stringSize(totalRows) + DATA_SIZE + 2;
+            totalRows++;
+        }
+
+        final DataPersistence dataPersistence = new PageDataPersistence(dataFile, options.getClientFlusherNumbers(), pageWriter);
+        dataPersistence.init();
+
+        final byte[] data = new byte[DATA_SIZE];
+        new Random(0).nextBytes(data);
+
+        final long startTime = System.currentTimeMillis();
+        final AtomicInteger lineNumCounter = new AtomicInteger(0);
+        final CountDownLatch countDown = new CountDownLatch(PRODUCER_NUMBERS);
+        final int rows = totalRows;
+        for (int i = 0; i < PRODUCER_NUMBERS; i++) {
+            final Thread t = new Thread(() -> {
+                try {
+                    int lineNum;
+                    while ((lineNum = lineNumCounter.getAndIncrement()) < rows) {
+                        dataPersistence.putRow(new Row(lineNum, data));
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                } finally {
+                    countDown.countDown();
+                }
+            }, "PageWriterBenchmark-PRODUCER-" + i);
+            t.start();
+        }
+        countDown.await();
+
+        dataPersistence.flush();
+        final long cost = Math.max(1, System.currentTimeMillis() - startTime);
+        dataPersistence.destroy();
+        return cost;
+
+    }
+
+}
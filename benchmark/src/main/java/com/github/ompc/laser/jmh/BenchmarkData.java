@@ -0,0 +1,61 @@
+package com.github.ompc.laser.jmh;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+/**
+ * 基准测试数据<br/>
+ * 固定种子生成可打印字符组成的行，行长1~200，与比赛数据格式一致
+ */
+public final class BenchmarkData {
+
+    /*
+     * 每行数据段最大长度
+     */
+    public final static int MAX_DATA_SIZE = 200;
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * 生成一行数据段
+     *
+     * @param random 随机数
+     * @param data   存放数据段的数组，长度不小于MAX_DATA_SIZE
+     * @return 数据段长度
+     */
+    public static int nextData(Random random, byte[] data) {
+        final int len = 1 + random.nextInt(MAX_DATA_SIZE);
+        for (int i = 0; i < len; i++) {
+            data[i] = (byte) ('!' + random.nextInt('~' - '!' + 1));
+        }
+        return len;
+    }
+
+    /**
+     * 生成以\r\n分隔的输入文件
+     *
+     * @param rows 行数
+     * @return 临时文件，退出时删除
+     * @throws IOException 写入失败
+     */
+    public static File createInputFile(int rows) throws IOException {
+        final File file = File.createTempFile("laser-jmh-", ".dat");
+        file.deleteOnExit();
+        final Random random = new Random(0);
+        final byte[] data = new byte[MAX_DATA_SIZE];
+        try (final OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 20)) {
+            for (int lineNum = 0; lineNum < rows; lineNum++) {
+                out.write(data, 0, nextData(random, data));
+                out.write('\r');
+                out.write('\n');
+            }
+        }
+        return file;
+    }
+
+}
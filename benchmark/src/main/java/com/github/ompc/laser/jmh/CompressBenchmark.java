@@ -0,0 +1,70 @@
+package com.github.ompc.laser.jmh;
+
+import com.github.ompc.laser.common.channel.ByteBufferCompress;
+import com.github.ompc.laser.common.channel.GZIPByteBufferCompress;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GZIPByteBufferCompress压缩解压往返基准测试<br/>
+ * 输入是按服务端方式编码的数据帧，大小对应compress_size
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompressBenchmark {
+
+    @Param({"4380", "438000"})
+    public int compressSize;
+
+    private final ByteBufferCompress compress = new GZIPByteBufferCompress();
+
+    private ByteBuffer src;
+    private ByteBuffer compressed;
+    private ByteBuffer unCompressed;
+
+    @Setup
+    public void createFrames() {
+        src = ByteBuffer.allocateDirect(compressSize);
+        final Random random = new Random(0);
+        final byte[] data = new byte[BenchmarkData.MAX_DATA_SIZE];
+        int lineNum = 0;
+        while (src.remaining() >= 12 + BenchmarkData.MAX_DATA_SIZE) {
+            final int len = BenchmarkData.nextData(random, data);
+            src.putInt(0).putInt(lineNum++).putInt(len).put(data, 0, len);
+        }
+        src.flip();
+        compressed = ByteBuffer.allocateDirect(compressSize * 2 + 1024);
+        unCompressed = ByteBuffer.allocateDirect(compressSize);
+    }
+
+    @Benchmark
+    public ByteBuffer roundTrip() throws IOException {
+        src.rewind();
+        compressed.clear();
+        compress.compress(src, src.limit(), compressed);
+        compressed.flip();
+        final int len = compressed.getInt();
+        unCompressed.clear();
+        compress.unCompress(compressed, len, unCompressed);
+        return unCompressed;
+    }
+
+}
@@ -0,0 +1,57 @@
+package com.github.ompc.laser.jmh;
+
+import com.github.ompc.laser.common.LaserUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LaserUtils.process和reverse基准测试
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LaserUtilsBenchmark {
+
+    @Param({"16", "100", "200"})
+    public int size;
+
+    private byte[] data;
+
+    @Setup
+    public void createData() {
+        data = new byte[size];
+        new Random(0).nextBytes(data);
+    }
+
+    @Benchmark
+    public byte[] process() {
+        return LaserUtils.process(data);
+    }
+
+    @Benchmark
+    public byte[] reverse() {
+        return LaserUtils.reverse(data);
+    }
+
+    @Benchmark
+    public byte[] reverseRange() {
+        LaserUtils.reverse(data, 0, data.length);
+        return data;
+    }
+
+}
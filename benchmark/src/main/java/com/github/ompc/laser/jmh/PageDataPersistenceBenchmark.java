@@ -0,0 +1,113 @@
+package com.github.ompc.laser.jmh;
+
+import com.github.ompc.laser.common.datasource.DataPersistence;
+import com.github.ompc.laser.common.datasource.impl.PageDataPersistence;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PageDataPersistence.putRow基准测试<br/>
+ * 各线程按步长瓜分行号，inorder时每个线程内行号递增，
+ * skewed时每个线程在SKEW_WINDOW行的窗口内打乱顺序，模拟多链接乱序到达<br/>
+ * 每轮写完所有行并刷新，得到的是输出整个文件的耗时，线程数用JMH的-t参数指定
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PageDataPersistenceBenchmark {
+
+    /*
+     * 乱序窗口，小于页码表能容纳的行数才不会让写入者长时间等待
+     */
+    private final static int SKEW_WINDOW = 4096;
+
+    @Param({"1000000"})
+    public int rows;
+
+    @Param({"inorder", "skewed"})
+    public String order;
+
+    private File dataFile;
+    private DataPersistence dataPersistence;
+    private ByteBuffer[] datas;
+
+    @Setup(Level.Trial)
+    public void createDatas() {
+        final Random random = new Random(0);
+        final byte[] data = new byte[BenchmarkData.MAX_DATA_SIZE];
+        datas = new ByteBuffer[rows];
+        for (int lineNum = 0; lineNum < rows; lineNum++) {
+            final int len = BenchmarkData.nextData(random, data);
+            datas[lineNum] = ByteBuffer.allocateDirect(len);
+            datas[lineNum].put(data, 0, len).flip();
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void initDataPersistence() throws IOException {
+        dataFile = File.createTempFile("laser-jmh-", ".out");
+        dataPersistence = new PageDataPersistence(dataFile);
+        dataPersistence.init();
+    }
+
+    @TearDown(Level.Iteration)
+    public void destroyDataPersistence() throws IOException {
+        dataPersistence.flush();
+        dataPersistence.destroy();
+        dataFile.delete();
+    }
+
+    @Benchmark
+    public void putRow(ThreadParams threadParams) throws IOException {
+
+        final int step = threadParams.getThreadCount();
+        final int[] lineNums = new int[SKEW_WINDOW];
+        final Random random = new Random(threadParams.getThreadIndex());
+
+        for (int windowStart = threadParams.getThreadIndex(); windowStart < rows; windowStart += SKEW_WINDOW * step) {
+
+            // 本线程在窗口内负责的行号
+            int count = 0;
+            for (int lineNum = windowStart; lineNum < rows && count < SKEW_WINDOW; lineNum += step) {
+                lineNums[count++] = lineNum;
+            }
+            if ("skewed".equals(order)) {
+                for (int i = count - 1; i > 0; i--) {
+                    final int j = random.nextInt(i + 1);
+                    final int temp = lineNums[i];
+                    lineNums[i] = lineNums[j];
+                    lineNums[j] = temp;
+                }
+            }
+
+            for (int i = 0; i < count; i++) {
+                final ByteBuffer data = datas[lineNums[i]].duplicate();
+                dataPersistence.putRow(lineNums[i], -1, data, data.remaining());
+            }
+
+        }
+
+    }
+
+}
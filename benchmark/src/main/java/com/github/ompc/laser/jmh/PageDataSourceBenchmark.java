@@ -0,0 +1,80 @@
+package com.github.ompc.laser.jmh;
+
+import com.github.ompc.laser.common.datasource.DataSource;
+import com.github.ompc.laser.common.datasource.Row;
+import com.github.ompc.laser.common.datasource.impl.PageDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PageDataSource.getRow基准测试<br/>
+ * 每轮新建数据源，所有线程一起把它读到EOF，得到的是读完整个文件的耗时<br/>
+ * 线程数用JMH的-t参数指定，如-t 1、-t 4
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PageDataSourceBenchmark {
+
+    @Param({"1000000"})
+    public int rows;
+
+    /*
+     * 页行数，默认值3000000需要按client.sh的大堆运行
+     */
+    @Param({"100000"})
+    public int pageRowsNum;
+
+    private File inputFile;
+    private DataSource dataSource;
+
+    @Setup(Level.Trial)
+    public void createInputFile() throws IOException {
+        inputFile = BenchmarkData.createInputFile(rows);
+    }
+
+    @Setup(Level.Iteration)
+    public void initDataSource() throws IOException {
+        dataSource = new PageDataSource(inputFile, pageRowsNum);
+        dataSource.init();
+    }
+
+    @TearDown(Level.Iteration)
+    public void destroyDataSource() throws IOException {
+        dataSource.destroy();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteInputFile() {
+        inputFile.delete();
+    }
+
+    @Benchmark
+    public int getRowUntilEOF() throws IOException, InterruptedException {
+        final Row row = new Row();
+        int count = 0;
+        while (dataSource.getRow(row).getLineNum() >= 0) {
+            count++;
+        }
+        return count;
+    }
+
+}
@@ -0,0 +1,148 @@
+package com.github.ompc.laser.jmh;
+
+import com.github.ompc.laser.client.IntegrityChecker;
+import com.github.ompc.laser.client.RowDecoder;
+import com.github.ompc.laser.common.FrameChecksum;
+import com.github.ompc.laser.common.datasource.DataPersistence;
+import com.github.ompc.laser.common.datasource.Row;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.ompc.laser.common.LaserConstant.PRO_RESP_CHECKSUM;
+import static com.github.ompc.laser.common.LaserConstant.PRO_RESP_GETDATA;
+import static com.github.ompc.laser.common.LaserConstant.PRO_RESP_GETEOF;
+import static com.github.ompc.laser.common.LaserConstant.PRO_RESP_GETEOF_SUMMARY;
+import static com.github.ompc.laser.common.LaserUtils.reverse;
+import static com.github.ompc.laser.common.LaserUtils.stringSize;
+
+/**
+ * 客户端帧解码基准测试<br/>
+ * 按服务端的批次大小编码ROWS行，按网络读取的粒度交给RowDecoder解码，数据段只拷入内存<br/>
+ * 结果为每行的平均耗时
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RowDecoderBenchmark {
+
+    private final static int ROWS = 100000;
+
+    /*
+     * 服务端一次发送的字节数
+     */
+    private final static int BATCH_SIZE = 4380;
+
+    @Param({"1752", "43800"})
+    public int readSize;
+
+    @Param({"false", "true"})
+    public boolean integrity;
+
+    private ByteBuffer frames;
+    private int framesSize;
+    private final DataPersistence dataPersistence = new MemoryDataPersistence();
+
+    @Setup
+    public void createFrames() {
+
+        final int limitRemaining = 212 + (integrity ? 16 : 0);
+        final FrameChecksum checksum = FrameChecksum.create();
+        final ByteBuffer batch = ByteBuffer.allocateDirect(BATCH_SIZE);
+        frames = ByteBuffer.allocateDirect(ROWS * 230 + 64);
+        final Random random = new Random(0);
+        final byte[] data = new byte[BenchmarkData.MAX_DATA_SIZE];
+
+        long totalBytes = 0;
+        int batchRows = 0;
+        for (int lineNum = 0; lineNum < ROWS; lineNum++) {
+            final int len = BenchmarkData.nextData(random, data);
+            batch.putInt(PRO_RESP_GETDATA).putInt(lineNum).putInt(len).put(data, 0, len);
+            totalBytes += stringSize(lineNum) + len + 2;
+            batchRows++;
+            if (batch.remaining() < limitRemaining
+                    || lineNum == ROWS - 1) {
+                if (integrity) {
+                    checksum.reset();
+                    checksum.update(batch, 0, batch.position());
+                    batch.putInt(PRO_RESP_CHECKSUM).putInt(checksum.getAlgorithm()).putInt(batchRows).putInt(checksum.getValue());
+                }
+                batch.flip();
+                frames.put(batch);
+                batch.clear();
+                batchRows = 0;
+            }
+        }
+        if (integrity) {
+            frames.putInt(PRO_RESP_GETEOF_SUMMARY).putLong(ROWS).putLong(totalBytes);
+        } else {
+            frames.putInt(PRO_RESP_GETEOF);
+        }
+        frames.flip();
+        framesSize = frames.limit();
+
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public boolean decode() throws IOException {
+        final RowDecoder decoder = new RowDecoder(dataPersistence, integrity ? new IntegrityChecker() : null);
+        frames.clear().limit(0);
+        boolean isEOF = false;
+        while (!isEOF) {
+            frames.limit(Math.min(frames.limit() + readSize, framesSize));
+            isEOF = decoder.decode(frames);
+        }
+        return isEOF;
+    }
+
+    /**
+     * 只把数据段逆序拷入内存的数据持久化
+     */
+    private static class MemoryDataPersistence implements DataPersistence {
+
+        private final byte[] scratch = new byte[256];
+
+        @Override
+        public void putRow(Row row) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void putRow(long lineNum, long offset, ByteBuffer src, int length) throws IOException {
+            src.get(scratch, 0, length);
+            reverse(scratch, 0, length);
+        }
+
+        @Override
+        public void init() throws IOException {
+        }
+
+        @Override
+        public void flush() throws IOException {
+        }
+
+        @Override
+        public void destroy() throws IOException {
+        }
+
+    }
+
+}
@@ -0,0 +1,170 @@
+package com.github.ompc.laser.benchmark;
+
+import com.github.ompc.laser.common.LaserOptions;
+import com.github.ompc.laser.common.unix.UnixDomainSockets;
+import junit.framework.Assert;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Properties;
+
+/**
+ * 回环端到端基准测试用例
+ */
+public class LoopbackBenchmarkTestCase {
+
+    private final static int ROWS = 200000;
+
+    private File inputFile;
+    private File outputFile;
+    private DataGenerator.Expect expect;
+
+    @Before
+    public void createInputFile() throws Exception {
+        inputFile = File.createTempFile("laser-loopback-", ".in");
+        outputFile = File.createTempFile("laser-loopback-", ".out");
+        expect = new DataGenerator(ROWS, "uniform:1,200", "printable", 0, 2).generate(inputFile);
+    }
+
+    @After
+    public void deleteFiles() {
+        inputFile.delete();
+        outputFile.delete();
+    }
+
+    /**
+     * 多个链接跑完后输出与期望一致，并记录到首行耗时和延时
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRunByMultiConnections() throws Exception {
+
+        final Properties properties = LaserOptions.load(new File("../laser.properties"));
+        properties.setProperty("client.work_numbers", "3");
+        properties.setProperty("enable_integrity", "true");
+        properties.setProperty("enable_metrics", "true");
+
+        final LoopbackBenchmark.Result result = LoopbackBenchmark.run(inputFile, outputFile, new LaserOptions(properties));
+
+        Assert.assertEquals(ROWS, result.getRows());
+        Assert.assertEquals(expect.getOutputSize(), result.getBytes());
+        Assert.assertTrue(expect.isMatched(outputFile));
+        Assert.assertTrue(result.getFirstRowNanos() > 0);
+        Assert.assertTrue(result.getLatencies().percentile(0.99) > 0);
+
+        // 两端度量与实际传输一致
+        Assert.assertEquals(ROWS, result.getServerMetrics().getRows());
+        Assert.assertEquals(ROWS, result.getClientMetrics().getRows());
+        Assert.assertTrue(result.getClientMetrics().getRequests() >= ROWS);
+        Assert.assertEquals(0, result.getClientMetrics().getReceiveBufferFill());
+        Assert.assertTrue(result.getServerMetrics().getLatencies().getCount() > 0);
+        Assert.assertTrue(result.getClientMetrics().getLatencies().getCount() > 0);
+
+    }
+
+    /**
+     * 应答改走共享内存环形缓冲，输出与期望一致，环形缓冲文件在链接断开后被删除
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRunByShm() throws Exception {
+
+        final File shmDir = new File(outputFile.getPath() + ".shm");
+        Assert.assertTrue(shmDir.mkdir());
+        try {
+            final Properties properties = LaserOptions.load(new File("../laser.properties"));
+            properties.setProperty("client.work_numbers", "2");
+            properties.setProperty("enable_shm", "true");
+            properties.setProperty("shm_dir", shmDir.getPath());
+            properties.setProperty("shm_ring_size", "65536");
+            properties.setProperty("enable_integrity", "true");
+
+            final LoopbackBenchmark.Result result = LoopbackBenchmark.run(inputFile, outputFile, new LaserOptions(properties));
+
+            Assert.assertEquals(ROWS, result.getRows());
+            Assert.assertTrue(expect.isMatched(outputFile));
+            Assert.assertEquals(0, shmDir.list().length);
+        } finally {
+            for (File file : shmDir.listFiles()) {
+                file.delete();
+            }
+            shmDir.delete();
+        }
+
+    }
+
+    /**
+     * 聚集写零拷贝发送页内切片，带完整性校验时输出与期望一致
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRunByGatherWrite() throws Exception {
+
+        final Properties properties = LaserOptions.load(new File("../laser.properties"));
+        properties.setProperty("client.work_numbers", "2");
+        properties.setProperty("server.child_gather_write", "true");
+        properties.setProperty("enable_integrity", "true");
+
+        final LoopbackBenchmark.Result result = LoopbackBenchmark.run(inputFile, outputFile, new LaserOptions(properties));
+
+        Assert.assertEquals(ROWS, result.getRows());
+        Assert.assertTrue(expect.isMatched(outputFile));
+
+    }
+
+    /**
+     * 走Unix域套接字，输出与期望一致，套接字文件在服务端关闭后被删除
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRunByUnixDomainSocket() throws Exception {
+
+        if (!UnixDomainSockets.get().isSupported()) {
+            // JDK16之前不支持
+            return;
+        }
+
+        final File socketFile = new File(outputFile.getPath() + ".sock");
+        final Properties properties = LaserOptions.load(new File("../laser.properties"));
+        properties.setProperty("client.work_numbers", "2");
+        properties.setProperty("enable_integrity", "true");
+
+        final LoopbackBenchmark.Result result = LoopbackBenchmark.run(inputFile, outputFile, new LaserOptions(properties), socketFile.getPath());
+
+        Assert.assertEquals(ROWS, result.getRows());
+        Assert.assertTrue(expect.isMatched(outputFile));
+        Assert.assertFalse(socketFile.exists());
+
+    }
+
+    /**
+     * 传输过程中加入并排空链接，排空的链接收完在途应答后才退出，输出不丢行
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRunByScalingConnections() throws Exception {
+
+        final Properties properties = LaserOptions.load(new File("../laser.properties"));
+        properties.setProperty("client.work_numbers", "1");
+        properties.setProperty("client.work_numbers_max", "4");
+        properties.setProperty("client.scale_interval_ms", "10");
+        // 加链接后吞吐总达不到要求的增长，加入的链接随即被排空
+        properties.setProperty("client.scale_gain_percent", "10000");
+        properties.setProperty("enable_integrity", "true");
+
+        final LoopbackBenchmark.Result result = LoopbackBenchmark.run(inputFile, outputFile, new LaserOptions(properties));
+
+        Assert.assertEquals(2, result.getConnections());
+        Assert.assertEquals(ROWS, result.getRows());
+        Assert.assertTrue(expect.isMatched(outputFile));
+
+    }
+
+}
@@ -1,8 +1,8 @@
 #!/bin/bash
 
 # args[1] is launch's type
-# args[2] is server's dataFile path
-# args[3] is server's port
+# args[2] is server's dataFile path, a directory or comma-separated list of files is served as one stream
+# args[3] is server's port, or unix:<path> to listen on a unix domain socket (JDK16+)
 
 typeset DATAFILE_PATH=${1}
 typeset SERVER_PORT=${2}
@@ -0,0 +1,339 @@
+package com.github.ompc.laser.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.github.ompc.laser.common.LaserUtils.putDecimal;
+import static com.github.ompc.laser.common.LaserUtils.stringSize;
+
+/**
+ * 可复现的测试数据生成器<br/>
+ * 按行数、行长分布、字符表和种子生成以\r\n分隔的输入文件，同时算出经过process和reverse之后的期望输出大小和摘要<br/>
+ * 数据按块划分，每块的行长和内容各用一个由种子和块号确定的随机数，
+ * 多个线程并行生成各块并按位置整块写入，结果与线程数无关<br/>
+ * 用法：generate [文件] [行数] [lengths=uniform:1,200|normal:均值,标准差|fixed:长度] [alphabet=printable|alnum|lower|chars:字符] [seed=0] [threads=CPU数]
+ */
+public class DataGenerator {
+
+    /*
+     * 每块的行数
+     */
+    private final static int CHUNK_ROWS = 1 << 16;
+
+    private final static byte[] LINE_DELIMITER = new byte[]{'\r', '\n'};
+
+    private final int rows;
+    private final int minLength;
+    private final int maxLength;
+    private final LengthDistribution lengthDistribution;
+
+    /*
+     * 字节到字符的映射表，每个随机字节查表得到一个字符
+     */
+    private final byte[] alphabetTable = new byte[256];
+    private final long seed;
+    private final int threads;
+
+    /**
+     * 构造数据生成器
+     *
+     * @param rows     行数
+     * @param lengths  行长分布，uniform:最小,最大|normal:均值,标准差|fixed:长度
+     * @param alphabet 字符表，printable|alnum|lower|chars:字符
+     * @param seed     种子
+     * @param threads  线程数
+     */
+    public DataGenerator(int rows, String lengths, String alphabet, long seed, int threads) {
+        this.rows = rows;
+        this.seed = seed;
+        this.threads = threads;
+
+        final String[] kind = lengths.split(":");
+        final String[] values = kind.length > 1 ? kind[1].split(",") : new String[0];
+        if ("uniform".equals(kind[0])) {
+            minLength = Integer.valueOf(values[0]);
+            maxLength = Integer.valueOf(values[1]);
+            lengthDistribution = (random) -> minLength + random.nextInt(maxLength - minLength + 1);
+        } else if ("normal".equals(kind[0])) {
+            final double mean = Double.valueOf(values[0]);
+            final double stddev = Double.valueOf(values[1]);
+            minLength = 1;
+            maxLength = (int) Math.ceil(mean + 6 * stddev);
+            lengthDistribution = (random) -> {
+                // Box-Muller变换，结果截断到[1,均值+6倍标准差]
+                final double u = 1.0 - random.nextDouble();
+                final double v = random.nextDouble();
+                final double gaussian = Math.sqrt(-2.0 * Math.log(u)) * Math.cos(2.0 * Math.PI * v);
+                return (int) Math.max(minLength, Math.min(maxLength, Math.round(mean + gaussian * stddev)));
+            };
+        } else if ("fixed".equals(kind[0])) {
+            minLength = maxLength = Integer.valueOf(values[0]);
+            lengthDistribution = (random) -> minLength;
+        } else {
+            throw new IllegalArgumentException("illegal lengths=" + lengths);
+        }
+        if (minLength < 1) {
+            throw new IllegalArgumentException("row length must be positive, lengths=" + lengths);
+        }
+
+        final byte[] chars = toAlphabet(alphabet);
+        for (int i = 0; i < alphabetTable.length; i++) {
+            alphabetTable[i] = chars[i % chars.length];
+        }
+    }
+
+    /*
+     * 解析字符表，不能包含行分隔符
+     */
+    private static byte[] toAlphabet(String alphabet) {
+        final StringBuilder sb = new StringBuilder();
+        if ("printable".equals(alphabet)) {
+            for (char c = ' '; c <= '~'; c++) {
+                sb.append(c);
+            }
+        } else if ("alnum".equals(alphabet)) {
+            sb.append("0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz");
+        } else if ("lower".equals(alphabet)) {
+            sb.append("abcdefghijklmnopqrstuvwxyz");
+        } else if (alphabet.startsWith("chars:")) {
+            sb.append(alphabet.substring("chars:".length()));
+        } else {
+            throw new IllegalArgumentException("illegal alphabet=" + alphabet);
+        }
+        final String chars = sb.toString();
+        if (chars.isEmpty()
+                || chars.indexOf('\r') >= 0
+                || chars.indexOf('\n') >= 0) {
+            throw new IllegalArgumentException("illegal alphabet=" + alphabet);
+        }
+        final byte[] bytes = new byte[chars.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) chars.charAt(i);
+        }
+        return bytes;
+    }
+
+    /**
+     * 生成输入文件
+     *
+     * @param file 输入文件
+     * @return 期望输出
+     * @throws IOException          写入失败
+     * @throws InterruptedException 等待被中断
+     */
+    public Expect generate(File file) throws IOException, InterruptedException {
+
+        final int chunks = (rows + CHUNK_ROWS - 1) / CHUNK_ROWS;
+        final ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        try (final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             final FileChannel fileChannel = raf.getChannel()) {
+
+            // 第一遍只算各块的行长，得到每块在文件中的位置
+            final List<Future<Long>> sizeFutures = new ArrayList<>();
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                final int chunkIdx = chunk;
+                sizeFutures.add(executorService.submit(() -> {
+                    final SplittableRandom lengthRandom = newRandom(chunkIdx, 0);
+                    long size = 0;
+                    for (int i = 0, n = rowsOfChunk(chunkIdx); i < n; i++) {
+                        size += lengthDistribution.next(lengthRandom) + LINE_DELIMITER.length;
+                    }
+                    return size;
+                }));
+            }
+            final long[] positions = new long[chunks + 1];
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                positions[chunk + 1] = positions[chunk] + sizeFutures.get(chunk).get();
+            }
+            raf.setLength(positions[chunks]);
+
+            // 第二遍并行生成各块内容，整块按位置写入，同时算出该块的期望输出
+            final ThreadLocal<ByteBuffer> bufferRef = ThreadLocal.withInitial(() ->
+                    ByteBuffer.allocateDirect((int) Math.min(Integer.MAX_VALUE, (long) CHUNK_ROWS * (maxLength + LINE_DELIMITER.length))));
+            final List<Future<OutputDigest>> digestFutures = new ArrayList<>();
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                final int chunkIdx = chunk;
+                digestFutures.add(executorService.submit(() -> {
+                    final ByteBuffer buffer = bufferRef.get();
+                    buffer.clear();
+                    final OutputDigest digest = generateChunk(chunkIdx, buffer);
+                    buffer.flip();
+                    long position = positions[chunkIdx];
+                    while (buffer.hasRemaining()) {
+                        position += fileChannel.write(buffer, position);
+                    }
+                    return digest;
+                }));
+            }
+
+            final OutputDigest digest = new OutputDigest();
+            for (Future<OutputDigest> future : digestFutures) {
+                digest.combine(future.get());
+            }
+            return new Expect(positions[chunks], digest);
+
+        } catch (ExecutionException e) {
+            throw new IOException("generate file=" + file + " failed.", e.getCause());
+        } finally {
+            executorService.shutdown();
+        }
+
+    }
+
+    /*
+     * 生成一块数据写入缓存，返回这一块的期望输出摘要
+     */
+    private OutputDigest generateChunk(int chunkIdx, ByteBuffer buffer) {
+
+        final SplittableRandom lengthRandom = newRandom(chunkIdx, 0);
+        final SplittableRandom dataRandom = newRandom(chunkIdx, 1);
+        final OutputDigest digest = new OutputDigest();
+        final byte[] data = new byte[maxLength];
+
+        // 拼装一整行期望输出的暂存区
+        final byte[] line = new byte[11 + maxLength + LINE_DELIMITER.length];
+
+        final int firstLineNum = chunkIdx * CHUNK_ROWS;
+        for (int i = 0, n = rowsOfChunk(chunkIdx); i < n; i++) {
+
+            final int len = lengthDistribution.next(lengthRandom);
+
+            // 每个随机long拆成8个字节查表
+            long bits = 0;
+            for (int j = 0; j < len; j++) {
+                if ((j & 7) == 0) {
+                    bits = dataRandom.nextLong();
+                }
+                data[j] = alphabetTable[(int) (bits & 0xff)];
+                bits >>>= 8;
+            }
+            buffer.put(data, 0, len);
+            buffer.put(LINE_DELIMITER);
+
+            // 期望输出：行号 + reverse(process(data)) + \r\n
+            // process去掉[sub,2sub)，逆序后依次是[2sub,len)和[0,sub)的倒序
+            int pos = putDecimal(line, 0, firstLineNum + i);
+            final int sub = len / 3;
+            for (int j = len - 1; j >= sub + sub; j--) {
+                line[pos++] = data[j];
+            }
+            for (int j = sub - 1; j >= 0; j--) {
+                line[pos++] = data[j];
+            }
+            line[pos++] = '\r';
+            line[pos++] = '\n';
+            digest.update(line, 0, pos);
+
+        }
+        return digest;
+
+    }
+
+    private int rowsOfChunk(int chunkIdx) {
+        return Math.min(CHUNK_ROWS, rows - chunkIdx * CHUNK_ROWS);
+    }
+
+    /*
+     * 由种子、块号和用途确定的随机数，先经过一次混合，避免相邻种子的序列重叠
+     */
+    private SplittableRandom newRandom(int chunkIdx, int stream) {
+        long z = seed + 0x9E3779B97F4A7C15L * (2L * chunkIdx + stream + 1);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return new SplittableRandom(z ^ (z >>> 31));
+    }
+
+    /**
+     * 行长分布
+     */
+    private interface LengthDistribution {
+
+        int next(SplittableRandom random);
+
+    }
+
+    /**
+     * 期望结果
+     */
+    public static class Expect {
+
+        private final long inputSize;
+        private final OutputDigest outputDigest;
+
+        private Expect(long inputSize, OutputDigest outputDigest) {
+            this.inputSize = inputSize;
+            this.outputDigest = outputDigest;
+        }
+
+        public long getInputSize() {
+            return inputSize;
+        }
+
+        public long getOutputSize() {
+            return outputDigest.getLength();
+        }
+
+        public OutputDigest getOutputDigest() {
+            return outputDigest;
+        }
+
+        /**
+         * 输出文件是否与期望一致
+         *
+         * @param outputFile 输出文件
+         * @return 是否一致
+         * @throws IOException          读取失败
+         * @throws InterruptedException 等待被中断
+         */
+        public boolean isMatched(File outputFile) throws IOException, InterruptedException {
+            return outputFile.length() == getOutputSize()
+                    && outputDigest.equals(OutputDigest.of(outputFile, Runtime.getRuntime().availableProcessors()));
+        }
+
+    }
+
+    public static void main(String... args) throws IOException, InterruptedException {
+
+        final File file = new File(args[1]);
+        final int rows = Integer.valueOf(args[2]);
+        String lengths = "uniform:1,200";
+        String alphabet = "printable";
+        long seed = 0;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 3; i < args.length; i++) {
+            final String key = args[i].substring(0, args[i].indexOf('='));
+            final String value = args[i].substring(args[i].indexOf('=') + 1);
+            if ("lengths".equals(key)) {
+                lengths = value;
+            } else if ("alphabet".equals(key)) {
+                alphabet = value;
+            } else if ("seed".equals(key)) {
+                seed = Long.valueOf(value);
+            } else if ("threads".equals(key)) {
+                threads = Integer.valueOf(value);
+            } else {
+                throw new IllegalArgumentException("illegal arg=" + args[i]);
+            }
+        }
+
+        final long startTime = System.currentTimeMillis();
+        final Expect expect = new DataGenerator(rows, lengths, alphabet, seed, threads).generate(file);
+        final long cost = System.currentTimeMillis() - startTime;
+        System.out.println("inputSize=" + expect.getInputSize());
+        System.out.println("outputSize=" + expect.getOutputSize());
+        System.out.println("outputDigest=" + expect.getOutputDigest());
+        System.out.println("cost=" + cost);
+
+    }
+
+}
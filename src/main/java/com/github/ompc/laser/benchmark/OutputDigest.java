@@ -0,0 +1,186 @@
+package com.github.ompc.laser.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 输出摘要<br/>
+ * 按字节顺序计算的多项式哈希(mod 2^64)，相邻两段的摘要可以直接合并，
+ * 因此数据生成器可以分块并行算出期望值，校验时也可以分段并行读取输出文件<br/>
+ * 用法：digest [文件]
+ */
+public final class OutputDigest {
+
+    /*
+     * 多项式的底，必须是奇数
+     */
+    private final static long BASE = 0x100000001B3L;
+    private final static long BASE_2 = BASE * BASE;
+    private final static long BASE_3 = BASE_2 * BASE;
+    private final static long BASE_4 = BASE_3 * BASE;
+
+    /*
+     * 并行校验时每段的大小
+     */
+    private final static long SEGMENT_SIZE = 64L << 20;
+
+    private long hash = 0;
+    private long length = 0;
+
+    /**
+     * 追加一个字节
+     *
+     * @param b 字节
+     */
+    public void update(byte b) {
+        hash = hash * BASE + (b & 0xff);
+        length++;
+    }
+
+    /**
+     * 追加一段字节
+     *
+     * @param bytes  字节数组
+     * @param offset 起始位置
+     * @param len    长度
+     */
+    public void update(byte[] bytes, int offset, int len) {
+        long h = hash;
+        int i = offset;
+        final int end = offset + len;
+
+        // 每次折叠4个字节，拆开乘法依赖链
+        for (; i + 4 <= end; i += 4) {
+            h = h * BASE_4
+                    + (bytes[i] & 0xff) * BASE_3
+                    + (bytes[i + 1] & 0xff) * BASE_2
+                    + (bytes[i + 2] & 0xff) * BASE
+                    + (bytes[i + 3] & 0xff);
+        }
+        for (; i < end; i++) {
+            h = h * BASE + (bytes[i] & 0xff);
+        }
+        hash = h;
+        length += len;
+    }
+
+    /**
+     * 把紧跟在后面的一段的摘要合并进来
+     *
+     * @param next 后一段的摘要
+     */
+    public void combine(OutputDigest next) {
+        hash = hash * pow(BASE, next.length) + next.hash;
+        length += next.length;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public long getHash() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof OutputDigest)) {
+            return false;
+        }
+        final OutputDigest that = (OutputDigest) o;
+        return hash == that.hash && length == that.length;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (hash ^ hash >>> 32);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%016x", hash);
+    }
+
+    /*
+     * 快速幂(mod 2^64)
+     */
+    private static long pow(long base, long exp) {
+        long result = 1;
+        while (exp > 0) {
+            if ((exp & 1) != 0) {
+                result *= base;
+            }
+            base *= base;
+            exp >>>= 1;
+        }
+        return result;
+    }
+
+    /**
+     * 分段并行计算文件的摘要
+     *
+     * @param file    文件
+     * @param threads 线程数
+     * @return 摘要
+     * @throws IOException          读取失败
+     * @throws InterruptedException 等待被中断
+     */
+    public static OutputDigest of(File file, int threads) throws IOException, InterruptedException {
+
+        final ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        try (final FileChannel fileChannel = new RandomAccessFile(file, "r").getChannel()) {
+
+            final long size = fileChannel.size();
+            final List<Future<OutputDigest>> futures = new ArrayList<>();
+            for (long position = 0; position < size; position += SEGMENT_SIZE) {
+                final long start = position;
+                final long end = Math.min(size, position + SEGMENT_SIZE);
+                futures.add(executorService.submit(() -> {
+                    final OutputDigest digest = new OutputDigest();
+                    final ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+                    long pos = start;
+                    while (pos < end) {
+                        buffer.clear();
+                        buffer.limit((int) Math.min(buffer.capacity(), end - pos));
+                        final int n = fileChannel.read(buffer, pos);
+                        if (n < 0) {
+                            throw new IOException("unexpected end of file=" + file);
+                        }
+                        digest.update(buffer.array(), 0, n);
+                        pos += n;
+                    }
+                    return digest;
+                }));
+            }
+
+            final OutputDigest digest = new OutputDigest();
+            for (Future<OutputDigest> future : futures) {
+                digest.combine(future.get());
+            }
+            return digest;
+
+        } catch (ExecutionException e) {
+            throw new IOException("digest file=" + file + " failed.", e.getCause());
+        } finally {
+            executorService.shutdown();
+        }
+
+    }
+
+    public static void main(String... args) throws IOException, InterruptedException {
+        final File file = new File(args[1]);
+        final OutputDigest digest = of(file, Runtime.getRuntime().availableProcessors());
+        System.out.println("size=" + digest.getLength());
+        System.out.println("digest=" + digest);
+    }
+
+}
@@ -1,7 +1,9 @@
 package com.github.ompc.laser.client;
 
+import com.github.ompc.laser.common.LatencyRecorder;
+
 import java.io.File;
-import java.net.InetSocketAddress;
+import java.net.SocketAddress;
 
 /**
  * 客户端配置
@@ -10,13 +12,38 @@ import java.net.InetSocketAddress;
 public class ClientConfiger {
 
     private File dataFile;
-    private InetSocketAddress serverAddress;
+    private SocketAddress serverAddress;
+
+    /*
+     * 续传会话编号
+     */
+    private long resumeSessionId;
+
+    /*
+     * 续传起始行号，小于0时不续传
+     */
+    private long resumeLineNum = -1;
+
+    /*
+     * 完整性检查者，为null时不检查
+     */
+    private IntegrityChecker integrityChecker;
 
-    public InetSocketAddress getServerAddress() {
+    /*
+     * 请求应答延时记录者，为null时不记录
+     */
+    private LatencyRecorder latencyRecorder;
+
+    /*
+     * 客户端度量，为null时不统计
+     */
+    private ClientMetrics metrics;
+
+    public SocketAddress getServerAddress() {
         return serverAddress;
     }
 
-    public void setServerAddress(InetSocketAddress serverAddress) {
+    public void setServerAddress(SocketAddress serverAddress) {
         this.serverAddress = serverAddress;
     }
 
@@ -27,4 +54,44 @@ public class ClientConfiger {
     public void setDataFile(File dataFile) {
         this.dataFile = dataFile;
     }
+
+    public long getResumeSessionId() {
+        return resumeSessionId;
+    }
+
+    public void setResumeSessionId(long resumeSessionId) {
+        this.resumeSessionId = resumeSessionId;
+    }
+
+    public long getResumeLineNum() {
+        return resumeLineNum;
+    }
+
+    public void setResumeLineNum(long resumeLineNum) {
+        this.resumeLineNum = resumeLineNum;
+    }
+
+    public IntegrityChecker getIntegrityChecker() {
+        return integrityChecker;
+    }
+
+    public void setIntegrityChecker(IntegrityChecker integrityChecker) {
+        this.integrityChecker = integrityChecker;
+    }
+
+    public LatencyRecorder getLatencyRecorder() {
+        return latencyRecorder;
+    }
+
+    public void setLatencyRecorder(LatencyRecorder latencyRecorder) {
+        this.latencyRecorder = latencyRecorder;
+    }
+
+    public ClientMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(ClientMetrics metrics) {
+        this.metrics = metrics;
+    }
 }
@@ -0,0 +1,180 @@
+package com.github.ompc.laser.client;
+
+import com.github.ompc.laser.common.LatencyHistogram;
+import com.github.ompc.laser.common.datasource.DataPersistence;
+import com.github.ompc.laser.common.datasource.impl.PageDataPersistence;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 客户端度量<br/>
+ * 各链接的读写线程在每次网络读写后计入增量，数据持久化的状态在读取时获取<br/>
+ * 延时由各链接的读线程分别记录，读取时汇总
+ */
+public class ClientMetrics implements ClientMetricsMBean {
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final DataPersistence dataPersistence;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder receiveBufferFill = new LongAdder();
+    private final LongAdder compressedBytes = new LongAdder();
+    private final LongAdder unCompressedBytes = new LongAdder();
+
+    /*
+     * 各链接的延时
+     */
+    private final List<LatencyHistogram> latencies = new CopyOnWriteArrayList<>();
+
+    public ClientMetrics(DataPersistence dataPersistence) {
+        this.dataPersistence = dataPersistence;
+    }
+
+    /**
+     * 计入发出的请求数
+     *
+     * @param count 请求数
+     */
+    void requested(long count) {
+        requests.add(count);
+    }
+
+    /**
+     * 计入一次读取后的变化
+     *
+     * @param rowCount      解码出的行数
+     * @param fillDelta     接收缓存中等待解码字节数的变化
+     * @param compressed    读到的压缩字节数
+     * @param unCompressed  解压后的字节数
+     */
+    void received(long rowCount, long fillDelta, long compressed, long unCompressed) {
+        if (rowCount != 0) {
+            rows.add(rowCount);
+        }
+        if (fillDelta != 0) {
+            receiveBufferFill.add(fillDelta);
+        }
+        if (compressed != 0) {
+            compressedBytes.add(compressed);
+            unCompressedBytes.add(unCompressed);
+        }
+    }
+
+    /**
+     * 为一个链接创建延时直方图
+     *
+     * @return 只能由该链接读线程记录的直方图
+     */
+    LatencyHistogram newLatencyHistogram() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        latencies.add(histogram);
+        return histogram;
+    }
+
+    /**
+     * 汇总所有链接的延时
+     *
+     * @return 延时快照
+     */
+    public LatencyHistogram getLatencies() {
+        final LatencyHistogram snapshot = new LatencyHistogram();
+        for (LatencyHistogram histogram : latencies) {
+            snapshot.add(histogram);
+        }
+        return snapshot;
+    }
+
+    /**
+     * 输出一次报告
+     */
+    public void report() {
+        log.info("client metrics: requests={},rows={},receiveBufferFill={},window={}/{},putRowSpinNanos={},pendingForceBytes={},compressRatio={},latency[{}]",
+                getRequests(), getRows(), getReceiveBufferFill(), getWindowOccupancy(), getWindowSize(),
+                getPutRowSpinNanos(), getPendingForceBytes(), String.format("%.2f", getCompressRatio()),
+                getLatencies());
+    }
+
+    @Override
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    @Override
+    public long getRows() {
+        return rows.sum();
+    }
+
+    @Override
+    public long getOutstandingRequests() {
+        return Math.max(0, requests.sum() - rows.sum());
+    }
+
+    @Override
+    public long getReceiveBufferFill() {
+        return receiveBufferFill.sum();
+    }
+
+    @Override
+    public int getWindowOccupancy() {
+        return dataPersistence instanceof PageDataPersistence
+                ? ((PageDataPersistence) dataPersistence).getWindowOccupancy()
+                : -1;
+    }
+
+    @Override
+    public int getWindowSize() {
+        return dataPersistence instanceof PageDataPersistence
+                ? ((PageDataPersistence) dataPersistence).getWindowSize()
+                : -1;
+    }
+
+    @Override
+    public long getPutRowSpinNanos() {
+        return dataPersistence instanceof PageDataPersistence
+                ? ((PageDataPersistence) dataPersistence).getPutRowSpinNanos()
+                : -1;
+    }
+
+    @Override
+    public long getPendingForceBytes() {
+        return dataPersistence instanceof PageDataPersistence
+                ? ((PageDataPersistence) dataPersistence).getPendingSyncBytes()
+                : -1;
+    }
+
+    @Override
+    public double getCompressRatio() {
+        final long compressed = compressedBytes.sum();
+        return compressed == 0
+                ? 0
+                : (double) unCompressedBytes.sum() / compressed;
+    }
+
+    @Override
+    public long getLatencyP50Nanos() {
+        return getLatencies().percentile(0.50);
+    }
+
+    @Override
+    public long getLatencyP99Nanos() {
+        return getLatencies().percentile(0.99);
+    }
+
+    @Override
+    public long getLatencyP999Nanos() {
+        return getLatencies().percentile(0.999);
+    }
+
+    @Override
+    public long getLatencyMaxNanos() {
+        return getLatencies().getMax();
+    }
+
+}
@@ -0,0 +1,73 @@
+package com.github.ompc.laser.client;
+
+/**
+ * 客户端度量MBean
+ */
+public interface ClientMetricsMBean {
+
+    /**
+     * @return 所有链接累计发出的请求数
+     */
+    long getRequests();
+
+    /**
+     * @return 所有链接累计收到的行数
+     */
+    long getRows();
+
+    /**
+     * @return 已发出但还没收到应答的请求数
+     */
+    long getOutstandingRequests();
+
+    /**
+     * @return 所有链接接收缓存中等待解码的字节数
+     */
+    long getReceiveBufferFill();
+
+    /**
+     * @return 数据持久化页码表中被占用的页面数，不支持时为-1
+     */
+    int getWindowOccupancy();
+
+    /**
+     * @return 数据持久化页码表大小，不支持时为-1
+     */
+    int getWindowSize();
+
+    /**
+     * @return 写入行时等待页面切换的累计自旋耗时(ns)，不支持时为-1
+     */
+    long getPutRowSpinNanos();
+
+    /**
+     * @return 已写入文件但还没刷到磁盘的字节数，不支持时为-1
+     */
+    long getPendingForceBytes();
+
+    /**
+     * @return 压缩比，即解压后字节数/压缩字节数，未开启压缩时为0
+     */
+    double getCompressRatio();
+
+    /**
+     * @return 请求到应答的延时中位数(ns)
+     */
+    long getLatencyP50Nanos();
+
+    /**
+     * @return 请求到应答的延时99分位(ns)
+     */
+    long getLatencyP99Nanos();
+
+    /**
+     * @return 请求到应答的延时99.9分位(ns)
+     */
+    long getLatencyP999Nanos();
+
+    /**
+     * @return 请求到应答的最大延时(ns)
+     */
+    long getLatencyMaxNanos();
+
+}
@@ -0,0 +1,252 @@
+package com.github.ompc.laser.client;
+
+import com.github.ompc.laser.common.LaserOptions;
+import com.github.ompc.laser.common.datasource.DataPersistence;
+import com.github.ompc.laser.common.datasource.impl.PageDataPersistence;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static java.lang.Thread.currentThread;
+
+/**
+ * 链接数伸缩器<br/>
+ * 先打开client.work_numbers个链接，之后每隔一段时间统计一次总吞吐：
+ * 吞吐还在增长时再加一个链接，加完后增长不到client.scale_gain_percent说明服务端已饱和，
+ * 读线程等待数据持久化的时间超过client.scale_stall_percent说明落盘跟不上，
+ * 这两种情况都把最新的链接排空并不再扩容<br/>
+ * 被排空的链接收完在途请求的应答后才断开，不会丢行；任何链接收到EOF后停止伸缩
+ */
+public class ConnectionScaler {
+
+    /**
+     * 链接工厂
+     */
+    public interface Factory {
+
+        /**
+         * 创建并连上一个客户端，不开始干活
+         *
+         * @return 客户端
+         * @throws IOException 连接失败
+         */
+        NioLaserClient create() throws IOException;
+
+    }
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final Factory factory;
+    private final DataPersistence dataPersistence;
+    private final LaserOptions options;
+
+    /*
+     * 打开过的所有链接，按打开顺序
+     */
+    private final List<NioLaserClient> clients = new CopyOnWriteArrayList<>();
+
+    /*
+     * 正在干活的链接，按打开顺序，只有伸缩线程访问
+     */
+    private final List<NioLaserClient> liveClients = new ArrayList<>();
+
+    private volatile boolean isRunning = true;
+    private Thread scaler;
+
+    /**
+     * 构造链接数伸缩器
+     *
+     * @param factory         链接工厂
+     * @param dataPersistence 数据持久化，为分页数据持久化时用其等待时间判断落盘是否跟不上
+     * @param options         配置
+     */
+    public ConnectionScaler(Factory factory, DataPersistence dataPersistence, LaserOptions options) {
+        this.factory = factory;
+        this.dataPersistence = dataPersistence;
+        this.options = options;
+    }
+
+    /**
+     * 打开初始链接并启动伸缩线程
+     *
+     * @throws IOException 初始链接一个都没连上
+     */
+    public void start() throws IOException {
+
+        final int initNum = Math.max(1, options.getClientWorkNumbers());
+        IOException lastException = null;
+        for (int i = 0; i < initNum; i++) {
+            try {
+                add();
+            } catch (IOException ioe) {
+                log.warn("client connect failed.", ioe);
+                lastException = ioe;
+            }
+        }
+        if (liveClients.isEmpty()) {
+            throw null == lastException ? new IOException("no client connected.") : lastException;
+        }
+
+        if (options.getClientWorkNumbersMax() <= liveClients.size()
+                || options.getClientScaleIntervalMs() <= 0) {
+            // 不需要伸缩
+            return;
+        }
+
+        scaler = new Thread(this::scale, "ConnectionScaler-daemon");
+        scaler.setDaemon(true);
+        scaler.start();
+
+    }
+
+    /**
+     * 停止伸缩线程，已打开的链接不受影响
+     */
+    public void stop() {
+        isRunning = false;
+        if (null != scaler) {
+            LockSupport.unpark(scaler);
+            try {
+                scaler.join();
+            } catch (InterruptedException e) {
+                currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * @return 打开过的所有链接
+     */
+    public List<NioLaserClient> getClients() {
+        return clients;
+    }
+
+    /*
+     * 打开一个链接并开始干活
+     */
+    private void add() throws IOException {
+        final NioLaserClient client = factory.create();
+        clients.add(client);
+        client.work();
+        liveClients.add(client);
+    }
+
+    /*
+     * 排空最新打开的链接
+     */
+    private void drainNewest() {
+        final NioLaserClient client = liveClients.remove(liveClients.size() - 1);
+        client.drain();
+    }
+
+    private boolean isEOF() {
+        for (NioLaserClient client : clients) {
+            if (client.isEOF()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long getReceivedRows() {
+        long rows = 0;
+        for (NioLaserClient client : clients) {
+            rows += client.getReceivedRows();
+        }
+        return rows;
+    }
+
+    private long getStallNanos() {
+        return dataPersistence instanceof PageDataPersistence
+                ? ((PageDataPersistence) dataPersistence).getPutRowSpinNanos()
+                : 0;
+    }
+
+    /*
+     * 伸缩主循环
+     */
+    private void scale() {
+
+        final long intervalNanos = TimeUnit.MILLISECONDS.toNanos(options.getClientScaleIntervalMs());
+        final int maxNum = options.getClientWorkNumbersMax();
+
+        long lastNanos = System.nanoTime();
+        long lastRows = getReceivedRows();
+        long lastStallNanos = getStallNanos();
+
+        // 加链接之前的吞吐，小于0表示上一轮没有加链接
+        double rateBeforeAdd = -1;
+        boolean isSaturated = false;
+
+        long nextNanos = lastNanos + intervalNanos;
+        while (isRunning) {
+
+            final long remainNanos = nextNanos - System.nanoTime();
+            if (remainNanos > 0) {
+                LockSupport.parkNanos(this, remainNanos);
+                continue;
+            }
+            nextNanos += intervalNanos;
+
+            // 清掉已经结束的链接
+            liveClients.removeIf(NioLaserClient::isFinished);
+            if (isEOF()
+                    || liveClients.isEmpty()) {
+                break;
+            }
+
+            final long nowNanos = System.nanoTime();
+            final long rows = getReceivedRows();
+            final long stallNanos = getStallNanos();
+            if (rows == 0) {
+                // 还没收到首行(服务端还在加载首页)，吞吐没有意义
+                lastNanos = nowNanos;
+                lastStallNanos = stallNanos;
+                continue;
+            }
+            final double rate = (rows - lastRows) * 1e9 / (nowNanos - lastNanos);
+            final long stallPercent = (stallNanos - lastStallNanos) * 100
+                    / ((nowNanos - lastNanos) * liveClients.size());
+            lastNanos = nowNanos;
+            lastRows = rows;
+            lastStallNanos = stallNanos;
+
+            if (liveClients.size() > 1
+                    && stallPercent > options.getClientScaleStallPercent()) {
+                // 落盘跟不上，再多链接也没用
+                drainNewest();
+                isSaturated = true;
+                rateBeforeAdd = -1;
+                log.info("persistence stalled {}%, drain a client, clients={}", stallPercent, liveClients.size());
+            } else if (rateBeforeAdd >= 0
+                    && rate < rateBeforeAdd * (100 + options.getClientScaleGainPercent()) / 100) {
+                // 加链接没有带来足够的增长，服务端或网络已饱和
+                drainNewest();
+                isSaturated = true;
+                log.info("rows/s {} -> {}, saturated, drain a client, clients={}", (long) rateBeforeAdd, (long) rate, liveClients.size());
+                rateBeforeAdd = -1;
+            } else if (!isSaturated
+                    && liveClients.size() < maxNum) {
+                try {
+                    add();
+                    rateBeforeAdd = rate;
+                    log.info("rows/s {}, add a client, clients={}", (long) rate, liveClients.size());
+                } catch (IOException ioe) {
+                    log.warn("client connect failed.", ioe);
+                    isSaturated = true;
+                }
+            } else {
+                rateBeforeAdd = -1;
+            }
+
+        }//while
+
+    }
+
+}
@@ -0,0 +1,91 @@
+package com.github.ompc.laser.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 完整性检查者<br/>
+ * 汇总所有链接实际收到的行数和输出字节数，与服务端在EOF中给出的总数比对
+ */
+public class IntegrityChecker {
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    /*
+     * 各链接收到的行数和输出字节数
+     */
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+
+    /*
+     * 服务端给出的总行数和总输出字节数，未收到汇总时为-1
+     */
+    private volatile long serverTotalRows = -1;
+    private volatile long serverTotalBytes = -1;
+
+    /**
+     * 累加一个链接收到的行数和输出字节数
+     *
+     * @param rowCount  行数
+     * @param byteCount 输出字节数
+     */
+    public void add(long rowCount, long byteCount) {
+        rows.add(rowCount);
+        bytes.add(byteCount);
+    }
+
+    /**
+     * 记录服务端汇总，各链接收到的汇总必须一致
+     *
+     * @param totalRows  服务端总行数
+     * @param totalBytes 服务端总输出字节数
+     * @throws IOException 汇总不一致
+     */
+    public synchronized void summary(long totalRows, long totalBytes) throws IOException {
+        if (serverTotalRows >= 0
+                && (serverTotalRows != totalRows || serverTotalBytes != totalBytes)) {
+            throw new IOException("integrity check failed, summary conflict. rows=" + totalRows + "/" + serverTotalRows
+                    + ", bytes=" + totalBytes + "/" + serverTotalBytes);
+        }
+        serverTotalRows = totalRows;
+        serverTotalBytes = totalBytes;
+    }
+
+    /**
+     * 所有链接结束后比对总数<br/>
+     * 从中间行续传时之前的输出字节数未知，只比对行数
+     *
+     * @param startLineNum 本次传输的起始行
+     * @throws IOException 总数不一致
+     */
+    public void check(long startLineNum) throws IOException {
+
+        if (serverTotalRows < 0) {
+            log.warn("integrity check skipped, server sent no summary.");
+            return;
+        }
+
+        final long expectRows = serverTotalRows - startLineNum;
+        if (rows.sum() != expectRows) {
+            throw new IOException("integrity check failed, rows=" + rows.sum() + ", expect=" + expectRows);
+        }
+        if (startLineNum == 0
+                && bytes.sum() != serverTotalBytes) {
+            throw new IOException("integrity check failed, bytes=" + bytes.sum() + ", expect=" + serverTotalBytes);
+        }
+        log.info("integrity check passed. rows={}, bytes={}", rows.sum(), bytes.sum());
+
+    }
+
+    public long getRows() {
+        return rows.sum();
+    }
+
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+}
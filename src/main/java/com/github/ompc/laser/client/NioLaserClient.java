@@ -2,54 +2,136 @@ package com.github.ompc.laser.client;
 
 import com.github.ompc.laser.common.LaserConstant;
 import com.github.ompc.laser.common.LaserOptions;
+import com.github.ompc.laser.common.LatencyHistogram;
+import com.github.ompc.laser.common.LatencyRecorder;
+import com.github.ompc.laser.common.RequestTimeline;
 import com.github.ompc.laser.common.channel.CompressReadableByteChannel;
+import com.github.ompc.laser.common.channel.ShmRingChannel;
 import com.github.ompc.laser.common.datasource.DataPersistence;
-import com.github.ompc.laser.common.datasource.Row;
+import com.github.ompc.laser.common.unix.UnixDomainSockets;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.EOFException;
+import java.io.File;
 import java.io.IOException;
 import java.net.Socket;
+import java.net.StandardSocketOptions;
 import java.nio.ByteBuffer;
 import java.nio.channels.*;
 import java.util.Iterator;
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Phaser;
 
-import static com.github.ompc.laser.common.LaserConstant.PRO_RESP_GETDATA;
-import static com.github.ompc.laser.common.LaserConstant.PRO_RESP_GETEOF;
-import static com.github.ompc.laser.common.LaserUtils.reverse;
 import static com.github.ompc.laser.common.SocketUtils.format;
 import static java.lang.Thread.currentThread;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.nio.channels.SelectionKey.*;
 
 /**
- * NIO版本的LaserClient
+ * NIO版本的LaserClient<br/>
+ * 开始干活时注册到完成阶段器，收到EOF或排空后注销，链接可以在传输过程中随时加入或退出
  * Created by vlinux on 14-10-3.
  */
 public class NioLaserClient {
 
     private final Logger log = LoggerFactory.getLogger(getClass());
 
-    private final CountDownLatch countDown;
-    private final CyclicBarrier workCyclicBarrier;
+    private final Phaser phaser;
+    private final CountDownLatch readyLatch;
     private final ExecutorService executorService;
     private final DataPersistence dataPersistence;
     private final ClientConfiger configer;
     private final LaserOptions options;
 
+    /*
+     * 延时记录者：配置的记录者和度量中本链接的直方图，都没有时为null
+     */
+    private final LatencyRecorder latencyRecorder;
+
+    /*
+     * 请求时间线，没有延时记录者时为null
+     */
+    private final RequestTimeline requestTimeline;
+
+    /*
+     * 在途请求窗口
+     */
+    private final RequestWindow requestWindow;
+
+    /*
+     * 共享内存读线程等待应答的最长时间，超时后检查一次是否需要排空
+     */
+    private final static long READER_PARK_NANOS = 10_000_000L;
+
     private SocketChannel socketChannel;
+
+    /*
+     * 接收应答的共享内存环形缓冲，未开启共享内存时为null
+     */
+    private ShmRingChannel ringChannel;
     private volatile boolean isRunning = true;
 
+    /*
+     * 是否正在排空：不再发出新请求，收完在途请求的应答后退出
+     */
+    private volatile boolean isDraining = false;
+    private volatile boolean isWriterDone = false;
+    private volatile boolean isReceivedEOF = false;
 
-    public NioLaserClient(CountDownLatch countDown, CyclicBarrier workCyclicBarrier, ExecutorService executorService, DataPersistence dataPersistence, ClientConfiger configer, LaserOptions options) {
-        this.countDown = countDown;
-        this.workCyclicBarrier = workCyclicBarrier;
+    /*
+     * 累计收到的行数
+     */
+    private volatile long receivedRows = 0;
+
+    /*
+     * 读线程的选择器，排空时用于唤醒读线程
+     */
+    private volatile Selector readerSelector;
+
+
+    /**
+     * 构造客户端
+     *
+     * @param phaser          完成阶段器，开始干活时注册，收到EOF或排空后注销
+     * @param readyLatch      就绪门闩，数据持久化初始化完成后打开，之后加入的链接无需等待
+     * @param executorService 线程池
+     * @param dataPersistence 数据持久化
+     * @param configer        客户端配置
+     * @param options         配置
+     */
+    public NioLaserClient(Phaser phaser, CountDownLatch readyLatch, ExecutorService executorService, DataPersistence dataPersistence, ClientConfiger configer, LaserOptions options) {
+        this.phaser = phaser;
+        this.readyLatch = readyLatch;
         this.executorService = executorService;
         this.dataPersistence = dataPersistence;
         this.configer = configer;
         this.options = options;
+
+        final LatencyRecorder configuredRecorder = configer.getLatencyRecorder();
+        final LatencyHistogram histogram = null == configer.getMetrics()
+                ? null
+                : configer.getMetrics().newLatencyHistogram();
+        if (null == histogram) {
+            this.latencyRecorder = configuredRecorder;
+        } else if (null == configuredRecorder) {
+            this.latencyRecorder = histogram;
+        } else {
+            this.latencyRecorder = (latencyNanos, count) -> {
+                histogram.record(latencyNanos, count);
+                configuredRecorder.record(latencyNanos, count);
+            };
+        }
+        this.requestTimeline = null == latencyRecorder
+                ? null
+                : new RequestTimeline(4096);
+        this.requestWindow = new RequestWindow(
+                options.getClientWindowInitial(),
+                options.getClientWindowMin(),
+                options.getClientWindowMax(),
+                options.getClientWindowIncrease(),
+                options.getClientWindowRttTolerancePercent());
     }
 
     /**
@@ -59,6 +141,14 @@ public class NioLaserClient {
      * @throws IOException
      */
     private SocketChannel getAndConfigSocketChannel() throws IOException {
+        if (UnixDomainSockets.get().isUnix(configer.getServerAddress())) {
+            // Unix域套接字没有TCP的那些调优项，只设置收发缓冲
+            final SocketChannel socketChannel = UnixDomainSockets.get().openSocketChannel();
+            socketChannel.configureBlocking(false);
+            socketChannel.setOption(StandardSocketOptions.SO_RCVBUF, options.getClientSocketReceiverBufferSize());
+            socketChannel.setOption(StandardSocketOptions.SO_SNDBUF, options.getClientSocketSendBufferSize());
+            return socketChannel;
+        }
         final SocketChannel socketChannel = SocketChannel.open();
         socketChannel.configureBlocking(false);
         // config the socket
@@ -83,33 +173,41 @@ public class NioLaserClient {
     public void connect() throws IOException {
         socketChannel = getAndConfigSocketChannel();
 
-        socketChannel.connect(configer.getServerAddress());
-        // waiting for connect
-        try (final Selector selector = Selector.open()) {
-            socketChannel.register(selector, OP_CONNECT);
-            WAITING_FOR_CONNECT:
-            for (; ; ) {
-                selector.select();
-                final Iterator<SelectionKey> iter = selector.selectedKeys().iterator();
-                while (iter.hasNext()) {
-                    final SelectionKey key = iter.next();
-                    iter.remove();
-
-                    if (key.isConnectable()) {
-                        final SocketChannel channel = (SocketChannel) key.channel();
-                        if (channel.isConnectionPending()) {
-                            // block until connect finished
-                            channel.finishConnect();
-                            break WAITING_FOR_CONNECT;
-                        }
-                    }//if
+        // Unix域套接字的非阻塞链接可能立即完成
+        if (!socketChannel.connect(configer.getServerAddress())) {
+            // waiting for connect
+            try (final Selector selector = Selector.open()) {
+                socketChannel.register(selector, OP_CONNECT);
+                WAITING_FOR_CONNECT:
+                for (; ; ) {
+                    selector.select();
+                    final Iterator<SelectionKey> iter = selector.selectedKeys().iterator();
+                    while (iter.hasNext()) {
+                        final SelectionKey key = iter.next();
+                        iter.remove();
 
-                }//while
-            }//for
+                        if (key.isConnectable()) {
+                            final SocketChannel channel = (SocketChannel) key.channel();
+                            if (channel.isConnectionPending()) {
+                                // block until connect finished
+                                channel.finishConnect();
+                                break WAITING_FOR_CONNECT;
+                            }
+                        }//if
 
-        }//try
+                    }//while
+                }//for
 
-        log.info("{} connect successed.", format(socketChannel.socket()));
+            }//try
+        }
+
+        if (options.isEnableShm()) {
+            // 环形缓冲文件由客户端创建，链接断开时删除
+            final File ringFile = File.createTempFile("laser-", ".ring", new File(options.getShmDir()));
+            ringChannel = ShmRingChannel.create(ringFile, options.getShmRingSize());
+        }
+
+        log.info("{} connect successed.", format(socketChannel));
 
     }
 
@@ -120,28 +218,60 @@ public class NioLaserClient {
 
         @Override
         public void run() {
-            currentThread().setName("client-" + format(socketChannel.socket()) + "-writer");
+            currentThread().setName("client-" + format(socketChannel) + "-writer");
 
             try (final Selector selector = Selector.open()) {
 
                 try {
-                    workCyclicBarrier.await();
-                } catch (Exception e) {
-                    log.warn("workCB await failed.", e);
+                    readyLatch.await();
+                } catch (InterruptedException e) {
+                    currentThread().interrupt();
+                    return;
+                }
+
+                // 续传请求必须是链接上的第一个请求，之后是改用共享内存的请求
+                final byte[] shmPath = null == ringChannel
+                        ? null
+                        : ringChannel.getFile().getAbsolutePath().getBytes(UTF_8);
+                final int headSize = (configer.getResumeLineNum() >= 0 ? Integer.BYTES + Long.BYTES + Long.BYTES : 0)
+                        + (null == shmPath ? 0 : Integer.BYTES + Integer.BYTES + shmPath.length);
+                final ByteBuffer buffer = ByteBuffer.allocateDirect(options.getClientSendBufferSize() + headSize);
+                if (configer.getResumeLineNum() >= 0) {
+                    buffer.putInt(LaserConstant.PRO_REQ_RESUME);
+                    buffer.putLong(configer.getResumeSessionId());
+                    buffer.putLong(configer.getResumeLineNum());
+                }
+                if (null != shmPath) {
+                    buffer.putInt(LaserConstant.PRO_REQ_SHM);
+                    buffer.putInt(shmPath.length);
+                    buffer.put(shmPath);
                 }
 
-                final ByteBuffer buffer = ByteBuffer.allocateDirect(options.getClientSendBufferSize());
+                // 累计发出的字节数，扣掉续传请求后换算成GETDATA请求数
+                final int headBytes = buffer.position();
+                long writtenBytes = 0;
+                long reportedRequests = 0;
+                final ClientMetrics metrics = configer.getMetrics();
+
                 while (isRunning) {
 
-//                    final GetDataReq req = new GetDataReq();
-                    if (buffer.remaining() >= Integer.BYTES) {
-//                        buffer.putInt(req.getType());
+                    // 在途请求受窗口限制，缓存中还有没发完的请求时不等待许可
+                    final int max = buffer.remaining() / Integer.BYTES;
+                    final int permits = buffer.position() > 0
+                            ? requestWindow.tryAcquire(max)
+                            : requestWindow.acquire(max);
+                    for (int i = 0; i < permits; i++) {
                         buffer.putInt(LaserConstant.PRO_REQ_GETDATA);
+                    }
+                    if (buffer.position() == 0) {
+                        if (requestWindow.isClosed()) {
+                            // 窗口已关闭，缓存中的请求也已发完
+                            break;
+                        }
                         continue;
-                    } else {
-                        socketChannel.register(selector, OP_WRITE);
-                        buffer.flip();
                     }
+                    socketChannel.register(selector, OP_WRITE);
+                    buffer.flip();
 
                     selector.select();
                     final Iterator<SelectionKey> iter = selector.selectedKeys().iterator();
@@ -150,9 +280,17 @@ public class NioLaserClient {
                         iter.remove();
 
                         if (key.isWritable()) {
-//                            final int count =
-                            socketChannel.write(buffer);
-//                            log.info("debug for write, count="+count);
+                            writtenBytes += socketChannel.write(buffer);
+                            if (null != requestTimeline
+                                    && writtenBytes > headBytes) {
+                                requestTimeline.sent((writtenBytes - headBytes) / Integer.BYTES, System.nanoTime());
+                            }
+                            if (null != metrics
+                                    && writtenBytes > headBytes) {
+                                final long requests = (writtenBytes - headBytes) / Integer.BYTES;
+                                metrics.requested(requests - reportedRequests);
+                                reportedRequests = requests;
+                            }
                             buffer.compact();
                             key.interestOps(key.interestOps() & ~OP_WRITE);
                         }
@@ -164,9 +302,13 @@ public class NioLaserClient {
             } catch (CancelledKeyException cke) {
                 // ingore...
             } catch (IOException ioe) {
-                if (!socketChannel.socket().isClosed()) {
-                    log.warn("{} write failed.", format(socketChannel.socket()), ioe);
+                if (socketChannel.isOpen()) {
+                    log.warn("{} write failed.", format(socketChannel), ioe);
                 }
+            } finally {
+                // 排空时读线程要等写线程退出后才能确认没有在途请求
+                isWriterDone = true;
+                wakeUpReader();
             }
         }
 
@@ -180,117 +322,108 @@ public class NioLaserClient {
         @Override
         public void run() {
 
-            currentThread().setName("client-" + format(socketChannel.socket()) + "-reader");
+            currentThread().setName("client-" + format(socketChannel) + "-reader");
             currentThread().setPriority(Thread.MAX_PRIORITY);
 
             final ByteBuffer buffer = ByteBuffer.allocateDirect(options.getClientReceiverBufferSize());
-            final ReadableByteChannel readableByteChannel = options.isEnableCompress()
+            final ReadableByteChannel readableByteChannel = null != ringChannel
+                    ? ringChannel
+                    : options.isEnableCompress()
                     ? new CompressReadableByteChannel(socketChannel, options.getCompressSize())
                     : socketChannel;
             try (final Selector selector = Selector.open()) {
 
                 try {
-                    workCyclicBarrier.await();
-                } catch (Exception e) {
-                    log.warn("workCB await failed.", e);
+                    readyLatch.await();
+                } catch (InterruptedException e) {
+                    currentThread().interrupt();
+                    return;
                 }
 
-                // decode
-                int type;
-                int lineNum = 0;
-                int len = 0;
-                final Row row = new Row();
-                DecodeState state = DecodeState.READ_TYPE;
+                final RowDecoder decoder = new RowDecoder(dataPersistence, configer.getIntegrityChecker());
+
+                // 上次计入度量时的累计值
+                final ClientMetrics metrics = configer.getMetrics();
+                final CompressReadableByteChannel compressChannel = readableByteChannel instanceof CompressReadableByteChannel
+                        ? (CompressReadableByteChannel) readableByteChannel
+                        : null;
+                long reportedRows = 0;
+                long reportedFill = 0;
+                long reportedCompressed = 0;
+                long reportedUnCompressed = 0;
 
                 socketChannel.register(selector, OP_READ);
+                readerSelector = selector;
                 MAIN_LOOP:
                 while (isRunning) {
 
-                    selector.select();
-                    final Iterator<SelectionKey> iter = selector.selectedKeys().iterator();
+                    if (isDraining
+                            && isWriterDone
+                            && requestWindow.getInFlight() == 0
+                            && decoder.isChecked()) {
+                        // 在途请求的应答(及其校验帧)都已收到，退出不会丢行
+                        decoder.drained();
+                        finish();
+                        log.info("{} was drained. rows={}", format(socketChannel), receivedRows);
+                        socketChannel.close();
+                        break;
+                    }
 
-                    while (iter.hasNext()) {
-                        final SelectionKey key = iter.next();
-                        iter.remove();
+                    if (null == ringChannel) {
+                        selector.select();
+                        if (selector.selectedKeys().isEmpty()) {
+                            continue;
+                        }
+                        selector.selectedKeys().clear();
+                    } else if (!ringChannel.awaitReadable(READER_PARK_NANOS)) {
+                        // 对端在另一个进程时无法唤醒，定时检查是否需要排空
+                        continue;
+                    }
 
-                        if (key.isReadable()) {
-
-                            readableByteChannel.read(buffer);
-                            buffer.flip();
-
-                            boolean hasMore = true;
-                            while (hasMore) {
-                                hasMore = false;
-                                switch (state) {
-                                    case READ_TYPE:
-                                        if (buffer.remaining() < Integer.BYTES) {
-                                            break;
-                                        }
-                                        type = buffer.getInt();
-                                        if (type == PRO_RESP_GETDATA) {
-                                            state = DecodeState.READ_GETDATA_LINENUM;
-                                        } else if (type == PRO_RESP_GETEOF) {
-                                            state = DecodeState.READ_GETEOF;
-                                            break;
-                                        } else {
-                                            throw new IOException("decode failed, illegal type=" + type);
-                                        }
-                                    case READ_GETDATA_LINENUM:
-                                        if (buffer.remaining() < Integer.BYTES) {
-                                            break;
-                                        }
-                                        lineNum = buffer.getInt();
-                                        state = DecodeState.READ_GETDATA_LEN;
-                                    case READ_GETDATA_LEN:
-                                        if (buffer.remaining() < Integer.BYTES) {
-                                            break;
-                                        }
-                                        len = buffer.getInt();
-                                        state = DecodeState.READ_GETDATA_DATA;
-                                    case READ_GETDATA_DATA:
-                                        if (buffer.remaining() < len) {
-                                            break;
-                                        }
-                                        final byte[] data = new byte[len];
-                                        buffer.get(data);
-                                        reverse(data);
-
-                                        state = DecodeState.READ_TYPE;
-                                        hasMore = true;
-
-                                        // handler GetDataResp
-                                        // 由于这里没有做任何异步化操作,包括dataPersistence中也没有
-                                        // 所以这里优化将new去掉,避免过多的对象分配
-                                        row.setLineNum(lineNum);
-                                        row.setData(data);
-                                        dataPersistence.putRow(row);
-
-
-                                        break;
-                                    case READ_GETEOF:
-                                        // 收到EOF，结束整个client
-                                        isRunning = false;
-                                        countDown.countDown();
-                                        log.info("{} receive EOF.", format(socketChannel.socket()));
-                                        break MAIN_LOOP;
-
-                                    default:
-                                        throw new IOException("decode failed, illegal state=" + state);
-                                }//switch
-
-                            }//while:hasMore
+                    if (readableByteChannel.read(buffer) < 0) {
+                        throw new EOFException();
+                    }
+                    buffer.flip();
 
-                            buffer.compact();
+                    final boolean isEOF = decoder.decode(buffer);
+                    receivedRows = decoder.getRowCount();
+                    requestWindow.received(receivedRows, System.nanoTime());
+                    if (null != requestTimeline) {
+                        requestTimeline.received(decoder.getRowCount(), System.nanoTime(), latencyRecorder);
+                    }
+                    if (null != metrics) {
+                        // 到达EOF后接收缓存不再被使用，不计入填充量
+                        final long fill = isEOF ? 0 : buffer.remaining();
+                        final long compressed = null == compressChannel ? 0 : compressChannel.getCompressedBytes();
+                        final long unCompressed = null == compressChannel ? 0 : compressChannel.getUnCompressedBytes();
+                        metrics.received(decoder.getRowCount() - reportedRows, fill - reportedFill,
+                                compressed - reportedCompressed, unCompressed - reportedUnCompressed);
+                        reportedRows = decoder.getRowCount();
+                        reportedFill = fill;
+                        reportedCompressed = compressed;
+                        reportedUnCompressed = unCompressed;
+                    }
 
-                        }//if:readable
+                    if (isEOF) {
+                        // 收到EOF，结束整个client
+                        isReceivedEOF = true;
+                        finish();
+                        log.info("{} receive EOF. window={}", format(socketChannel), requestWindow.getWindow());
+                        break MAIN_LOOP;
+                    }
 
-                    }//while:iter
+                    buffer.compact();
 
                 }//while:MAIN_LOOP
 
             } catch (IOException ioe) {
-                if (!socketChannel.socket().isClosed()) {
-                    log.warn("{} read failed.", format(socketChannel.socket()), ioe);
+                if (socketChannel.isOpen()) {
+                    log.warn("{} read failed.", format(socketChannel), ioe);
+                }
+            } finally {
+                if (null != ringChannel) {
+                    // 环形缓冲文件由客户端创建，关闭时一并删除
+                    ringChannel.close();
                 }
             }
 
@@ -298,16 +431,63 @@ public class NioLaserClient {
 
     };
 
+    /*
+     * 结束干活，从完成阶段器注销
+     */
+    private void finish() {
+        isRunning = false;
+        requestWindow.close();
+        phaser.arriveAndDeregister();
+    }
+
+    private void wakeUpReader() {
+        final Selector selector = readerSelector;
+        if (null != selector) {
+            selector.wakeup();
+        }
+    }
+
     /**
      * 开始干活
      *
      * @throws IOException
      */
     public void work() throws IOException {
+        phaser.register();
         executorService.execute(writer);
         executorService.execute(reader);
     }
 
+    /**
+     * 排空：不再发出新请求，收完在途请求的应答后断开链接并从完成阶段器注销
+     */
+    public void drain() {
+        isDraining = true;
+        requestWindow.close();
+        wakeUpReader();
+    }
+
+    /**
+     * @return 是否已收到EOF
+     */
+    public boolean isEOF() {
+        return isReceivedEOF;
+    }
+
+    /**
+     * @return 是否已经结束干活(收到EOF或排空)
+     */
+    public boolean isFinished() {
+        return !isRunning;
+    }
+
+    /**
+     * @return 累计收到的行数
+     */
+    public long getReceivedRows() {
+        return receivedRows;
+    }
+
     /**
      * 断开网络链接
      *
@@ -316,24 +496,20 @@ public class NioLaserClient {
     public void disconnect() throws IOException {
 
         isRunning = false;
+        requestWindow.close();
+        if (null != ringChannel) {
+            // 映射由读线程释放，这里只通知对端并删除文件
+            ringChannel.markClosed();
+            ringChannel.getFile().delete();
+        }
         if (null != socketChannel) {
+            final String name = format(socketChannel);
             socketChannel.close();
-            log.info("{} disconnect successed.", format(socketChannel.socket()));
+            log.info("{} disconnect successed.", name);
         } else {
             log.info("{} disconnect successed.");
         }
 
     }
 
-    /**
-     * 接收数据解码
-     */
-    enum DecodeState {
-        READ_TYPE,
-        READ_GETDATA_LINENUM,
-        READ_GETDATA_LEN,
-        READ_GETDATA_DATA,
-        READ_GETEOF
-    }
-
 }
\ No newline at end of file
@@ -0,0 +1,179 @@
+package com.github.ompc.laser.client;
+
+import com.github.ompc.laser.common.LaserOptions;
+import com.github.ompc.laser.common.channel.CompressReadableByteChannel;
+import com.github.ompc.laser.common.datasource.Row;
+import com.github.ompc.laser.common.unix.UnixDomainSockets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.github.ompc.laser.common.LaserConstant.PRO_REQ_GETRANGE;
+import static com.github.ompc.laser.common.LaserConstant.PRO_RESP_GETRANGE;
+import static com.github.ompc.laser.common.SocketUtils.format;
+
+/**
+ * 按行号随机读取的客户端<br/>
+ * 同步阻塞地发送GETRANGE请求，用于补取丢失的区间、抽样校验或多个客户端分段并行读取，
+ * 不影响其他链接GETDATA的发放进度<br/>
+ * 压缩通道解压后可能还留有数据，阻塞读会卡在底层，所以链接是非阻塞的，读不到数据时才等待<br/>
+ * 非线程安全，同一时刻只能有一个请求
+ */
+public class RangeClient {
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    /*
+     * 应答头：TYPE(4B)+START_LINENUM(8B)+COUNT(4B)+LENGTH(4B)
+     */
+    private final static int HEADER_SIZE = 20;
+
+    private final SocketAddress serverAddress;
+    private final LaserOptions options;
+
+    private SocketChannel socketChannel;
+    private ReadableByteChannel readableByteChannel;
+    private Selector selector;
+
+    private final ByteBuffer requestBuffer = ByteBuffer.allocate(16);
+    private final ByteBuffer headerBuffer = ByteBuffer.allocate(HEADER_SIZE);
+    private ByteBuffer dataBuffer = ByteBuffer.allocate(64 * 1024);
+
+    public RangeClient(SocketAddress serverAddress, LaserOptions options) {
+        this.serverAddress = serverAddress;
+        this.options = options;
+    }
+
+    /**
+     * 链接到服务端
+     *
+     * @throws IOException 链接失败
+     */
+    public void connect() throws IOException {
+        if (UnixDomainSockets.get().isUnix(serverAddress)) {
+            socketChannel = UnixDomainSockets.get().openSocketChannel();
+        } else {
+            socketChannel = SocketChannel.open();
+            socketChannel.socket().setTcpNoDelay(options.isClientTcpNoDelay());
+        }
+        socketChannel.connect(serverAddress);
+        socketChannel.configureBlocking(false);
+        selector = Selector.open();
+        socketChannel.register(selector, SelectionKey.OP_READ);
+        readableByteChannel = options.isEnableCompress()
+                ? new CompressReadableByteChannel(socketChannel, options.getCompressSize())
+                : socketChannel;
+        log.info("{} connect successed.", format(socketChannel));
+    }
+
+    /**
+     * 读取从startLineNum开始的count行<br/>
+     * 服务端单次应答放不下时会继续请求剩下的行
+     *
+     * @param startLineNum 开始行号
+     * @param count        行数
+     * @return 处理后的行(带输出偏移量)，超出数据源末尾的行不返回
+     * @throws IOException 网络异常或应答格式错误
+     */
+    public List<Row> getRange(long startLineNum, int count) throws IOException {
+
+        final List<Row> range = new ArrayList<>();
+        long lineNum = startLineNum;
+        int remaining = count;
+        while (remaining > 0) {
+
+            requestBuffer.clear();
+            requestBuffer.putInt(PRO_REQ_GETRANGE);
+            requestBuffer.putLong(lineNum);
+            requestBuffer.putInt(remaining);
+            requestBuffer.flip();
+            while (requestBuffer.hasRemaining()) {
+                // 请求只有16B，发送缓存不会满
+                socketChannel.write(requestBuffer);
+            }
+
+            headerBuffer.clear();
+            readFully(headerBuffer);
+            headerBuffer.flip();
+            final int type = headerBuffer.getInt();
+            final long respLineNum = headerBuffer.getLong();
+            final int rows = headerBuffer.getInt();
+            final int length = headerBuffer.getInt();
+            if (type != PRO_RESP_GETRANGE
+                    || respLineNum != lineNum
+                    || rows < 0
+                    || rows > remaining
+                    || length < 0) {
+                throw new IOException("decode failed, illegal response type=" + type + ",lineNum=" + respLineNum + ",rows=" + rows);
+            }
+
+            if (dataBuffer.capacity() < length) {
+                dataBuffer = ByteBuffer.allocate(length);
+            }
+            dataBuffer.clear();
+            dataBuffer.limit(length);
+            readFully(dataBuffer);
+            dataBuffer.flip();
+            for (int i = 0; i < rows; i++) {
+                final long offset = dataBuffer.getLong();
+                final byte[] data = new byte[dataBuffer.getInt()];
+                dataBuffer.get(data);
+                final Row row = new Row(lineNum + i, data);
+                row.setOffset(offset);
+                range.add(row);
+            }
+
+            if (rows == 0) {
+                // 到达数据源末尾，或数据源不支持随机读取
+                break;
+            }
+            lineNum += rows;
+            remaining -= rows;
+
+        }
+        return range;
+    }
+
+    private void readFully(ByteBuffer dst) throws IOException {
+        while (dst.hasRemaining()) {
+            final int readCount = readableByteChannel.read(dst);
+            if (readCount < 0) {
+                throw new EOFException("server was closed.");
+            }
+            if (readCount == 0) {
+                if (selector.select(options.getClientSocketTimeout()) == 0
+                        && options.getClientSocketTimeout() > 0) {
+                    throw new SocketTimeoutException("read range timeout.");
+                }
+                selector.selectedKeys().clear();
+            }
+        }
+    }
+
+    /**
+     * 断开链接
+     *
+     * @throws IOException 关闭失败
+     */
+    public void disconnect() throws IOException {
+        if (null != selector) {
+            selector.close();
+        }
+        if (null != socketChannel) {
+            socketChannel.close();
+            log.info("{} disconnect successed.", format(socketChannel));
+        }
+    }
+
+}
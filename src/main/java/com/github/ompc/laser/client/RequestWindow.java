@@ -0,0 +1,263 @@
+package com.github.ompc.laser.client;
+
+import java.util.concurrent.locks.LockSupport;
+
+import static java.lang.Thread.currentThread;
+
+/**
+ * 在途请求窗口<br/>
+ * 写线程发出请求前先取得许可，在途请求(已发出未应答)达到窗口大小时休眠，由读线程收到应答后唤醒<br/>
+ * 窗口按AIMD调整：读线程每次选一个探测请求，写线程发出它时记下时刻，读线程收到它的应答时得到一个RTT样本；
+ * 单个RTT太短，样本受线程调度影响很大，所以样本按不短于1ms的轮次汇总，取轮内最小的RTT和整轮的应答速率。
+ * 一轮的RTT超出历史最小RTT的容忍范围且应答速率没有提高，说明多出来的请求只是在排队，窗口减半；
+ * 否则慢启动阶段窗口翻倍，第一次减半之后每轮加上固定的增量<br/>
+ * 单写者单读者：只有写线程取许可，只有读线程计入应答
+ */
+public class RequestWindow {
+
+    /*
+     * 应答速率提高超过该比例才算有效
+     */
+    private final static double RATE_GAIN = 1.05;
+
+    /*
+     * 一轮的最短时长
+     */
+    private final static long MIN_ROUND_NANOS = 1000000;
+
+    private final int minWindow;
+    private final int maxWindow;
+    private final int increase;
+    private final int rttTolerancePercent;
+
+    /*
+     * 当前窗口大小，只有读线程更新
+     */
+    private volatile int window;
+
+    /*
+     * 累计发出的请求数，只有写线程更新
+     */
+    private volatile long sent = 0;
+
+    /*
+     * 累计收到的应答数，只有读线程更新
+     */
+    private volatile long received = 0;
+
+    /*
+     * 正在休眠等待许可的写线程
+     */
+    private volatile Thread waiter;
+
+    private volatile boolean isClosed = false;
+
+    /*
+     * 探测请求的序号(累计发出数达到该值时发出)，由读线程设置
+     */
+    private volatile long probeSeq = Long.MAX_VALUE;
+
+    /*
+     * 探测请求发出的时刻，由写线程设置，尚未发出时为0
+     */
+    private volatile long probeSentNanos = 0;
+
+    /*
+     * 当前一轮的状态，只有读线程访问：开始时刻、开始时已收到的应答数、轮内最小的RTT
+     */
+    private boolean isRoundStarted = false;
+    private long roundStartNanos;
+    private long roundStartReceived;
+    private long roundMinRttNanos = Long.MAX_VALUE;
+    private long minRttNanos = Long.MAX_VALUE;
+    private double lastRate = 0;
+    private boolean isSlowStart = true;
+
+    /**
+     * 构造在途请求窗口
+     *
+     * @param initWindow          初始窗口
+     * @param minWindow           最小窗口
+     * @param maxWindow           最大窗口
+     * @param increase            拥塞避免阶段每轮的增量
+     * @param rttTolerancePercent RTT超出最小RTT多少百分比才认为是排队
+     */
+    public RequestWindow(int initWindow, int minWindow, int maxWindow, int increase, int rttTolerancePercent) {
+        if (minWindow < 1
+                || maxWindow < minWindow) {
+            throw new IllegalArgumentException("illegal window range=" + minWindow + "," + maxWindow);
+        }
+        this.minWindow = minWindow;
+        this.maxWindow = maxWindow;
+        this.increase = increase;
+        this.rttTolerancePercent = rttTolerancePercent;
+        this.window = Math.max(minWindow, Math.min(maxWindow, initWindow));
+    }
+
+    /**
+     * 取得许可，窗口已满时休眠直到有新的应答或窗口被关闭
+     *
+     * @param max 最多需要的许可数
+     * @return 取得的许可数，窗口被关闭或max为0时返回0
+     */
+    public int acquire(int max) {
+        while (!isClosed
+                && max > 0) {
+            final int permits = tryAcquire(max);
+            if (permits > 0) {
+                return permits;
+            }
+            waiter = currentThread();
+            // 登记之后再检查一次，避免错过读线程的唤醒
+            if (available() <= 0
+                    && !isClosed) {
+                LockSupport.park(this);
+            }
+            waiter = null;
+        }
+        return 0;
+    }
+
+    /**
+     * 尝试取得许可，不休眠
+     *
+     * @param max 最多需要的许可数
+     * @return 取得的许可数
+     */
+    public int tryAcquire(int max) {
+        return tryAcquire(max, System.nanoTime());
+    }
+
+    /**
+     * 尝试取得许可，不休眠
+     *
+     * @param max      最多需要的许可数
+     * @param nowNanos 发出的时刻
+     * @return 取得的许可数
+     */
+    int tryAcquire(int max, long nowNanos) {
+        final long available = available();
+        if (available <= 0
+                || isClosed) {
+            return 0;
+        }
+        final int permits = (int) Math.min(available, max);
+        sent += permits;
+        if (probeSentNanos == 0
+                && sent >= probeSeq) {
+            probeSentNanos = nowNanos;
+        }
+        return permits;
+    }
+
+    private long available() {
+        return window - (sent - received);
+    }
+
+    /**
+     * 计入收到的应答，必要时调整窗口并唤醒写线程
+     *
+     * @param total     累计收到的应答数
+     * @param nowNanos  收到的时刻
+     */
+    public void received(long total, long nowNanos) {
+
+        if (total == received) {
+            return;
+        }
+        received = total;
+
+        if (!isRoundStarted) {
+            isRoundStarted = true;
+            startRound(total, nowNanos);
+            probe();
+        } else {
+            final long sentNanos = probeSentNanos;
+            if (sentNanos != 0
+                    && total >= probeSeq) {
+                roundMinRttNanos = Math.min(roundMinRttNanos, nowNanos - sentNanos);
+                if (nowNanos - roundStartNanos >= MIN_ROUND_NANOS) {
+                    adjust(total, nowNanos);
+                    startRound(total, nowNanos);
+                }
+                probe();
+            }
+        }
+
+        final Thread w = waiter;
+        if (null != w) {
+            LockSupport.unpark(w);
+        }
+
+    }
+
+    private void startRound(long total, long nowNanos) {
+        roundStartNanos = nowNanos;
+        roundStartReceived = total;
+        roundMinRttNanos = Long.MAX_VALUE;
+    }
+
+    /*
+     * 下一个发出的请求作为探测请求<br/>
+     * 先让写线程看不到旧的探测序号，再清掉发出时刻，避免写线程用旧序号记下时刻
+     */
+    private void probe() {
+        probeSeq = Long.MAX_VALUE;
+        probeSentNanos = 0;
+        probeSeq = sent + 1;
+    }
+
+    /*
+     * 一轮结束，按RTT和应答速率调整窗口
+     */
+    private void adjust(long total, long nowNanos) {
+        final long rttNanos = Math.max(1, roundMinRttNanos);
+        final double rate = (double) (total - roundStartReceived) / Math.max(1, nowNanos - roundStartNanos);
+        minRttNanos = Math.min(minRttNanos, rttNanos);
+
+        final boolean isQueueing = rttNanos > minRttNanos + minRttNanos * rttTolerancePercent / 100;
+        if (isQueueing
+                && rate <= lastRate * RATE_GAIN) {
+            window = Math.max(minWindow, window >>> 1);
+            isSlowStart = false;
+        } else if (isSlowStart) {
+            window = (int) Math.min(maxWindow, (long) window << 1);
+        } else {
+            window = Math.min(maxWindow, window + increase);
+        }
+        lastRate = rate;
+    }
+
+    /**
+     * 关闭窗口，唤醒正在等待的写线程
+     */
+    public void close() {
+        isClosed = true;
+        final Thread w = waiter;
+        if (null != w) {
+            LockSupport.unpark(w);
+        }
+    }
+
+    /**
+     * @return 窗口是否已关闭
+     */
+    public boolean isClosed() {
+        return isClosed;
+    }
+
+    /**
+     * @return 当前窗口大小
+     */
+    public int getWindow() {
+        return window;
+    }
+
+    /**
+     * @return 在途请求数
+     */
+    public long getInFlight() {
+        return sent - received;
+    }
+
+}
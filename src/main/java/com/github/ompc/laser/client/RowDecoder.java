@@ -0,0 +1,266 @@
+package com.github.ompc.laser.client;
+
+import com.github.ompc.laser.common.FrameChecksum;
+import com.github.ompc.laser.common.datasource.DataPersistence;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static com.github.ompc.laser.common.LaserConstant.PRO_RESP_CHECKSUM;
+import static com.github.ompc.laser.common.LaserConstant.PRO_RESP_GETDATA;
+import static com.github.ompc.laser.common.LaserConstant.PRO_RESP_GETDATA_OFFSET;
+import static com.github.ompc.laser.common.LaserConstant.PRO_RESP_GETDATA_OFFSET_WIDE;
+import static com.github.ompc.laser.common.LaserConstant.PRO_RESP_GETDATA_WIDE;
+import static com.github.ompc.laser.common.LaserConstant.PRO_RESP_GETEOF;
+import static com.github.ompc.laser.common.LaserConstant.PRO_RESP_GETEOF_SUMMARY;
+import static com.github.ompc.laser.common.LaserUtils.outputRowSize;
+
+/**
+ * 行数据解码器<br/>
+ * 从接收缓存中解出GETDATA应答，数据段直接从接收缓存拷入数据持久化，解码过程不分配对象<br/>
+ * 带有完整性检查者时，校验每批数据的校验帧、同一链接内行号递增，并在EOF时上报收到的行数和字节数
+ */
+public class RowDecoder {
+
+    private final DataPersistence dataPersistence;
+    private final IntegrityChecker integrityChecker;
+
+    /*
+     * 帧校验和，未开启完整性检查时为null
+     */
+    private final FrameChecksum checksum;
+
+    private int type;
+    private long lineNum = 0;
+    private long offset = -1;
+    private boolean hasOffset = false;
+    private boolean isWide = false;
+    private int len = 0;
+    private DecodeState state = DecodeState.READ_TYPE;
+
+    /*
+     * 完整性统计：上一行行号、当前批次行数、总行数、总输出字节数
+     */
+    private long lastLineNum = -1;
+    private int batchRows = 0;
+    private long rowCount = 0;
+    private long byteCount = 0;
+
+    public RowDecoder(DataPersistence dataPersistence) {
+        this(dataPersistence, null);
+    }
+
+    public RowDecoder(DataPersistence dataPersistence, IntegrityChecker integrityChecker) {
+        this.dataPersistence = dataPersistence;
+        this.integrityChecker = integrityChecker;
+        this.checksum = null == integrityChecker ? null : FrameChecksum.create();
+    }
+
+    /**
+     * 尽可能多的解码缓存中的数据，不完整的帧留在缓存中等待下次解码
+     *
+     * @param buffer 处于读模式的接收缓存
+     * @return 是否收到EOF
+     * @throws IOException 解码失败、校验失败或保存失败
+     */
+    public boolean decode(ByteBuffer buffer) throws IOException {
+
+        // 本次解码中尚未计入校验和的起始位置
+        int checksumFrom = buffer.position();
+
+        boolean hasMore = true;
+        while (hasMore) {
+            hasMore = false;
+            switch (state) {
+                case READ_TYPE:
+                    if (buffer.remaining() < Integer.BYTES) {
+                        break;
+                    }
+                    type = buffer.getInt();
+                    if (type == PRO_RESP_GETDATA
+                            || type == PRO_RESP_GETDATA_OFFSET) {
+                        hasOffset = type == PRO_RESP_GETDATA_OFFSET;
+                        isWide = false;
+                        state = DecodeState.READ_GETDATA_LINENUM;
+                    } else if (type == PRO_RESP_GETDATA_WIDE
+                            || type == PRO_RESP_GETDATA_OFFSET_WIDE) {
+                        // 行号超出int的宽帧
+                        hasOffset = type == PRO_RESP_GETDATA_OFFSET_WIDE;
+                        isWide = true;
+                        state = DecodeState.READ_GETDATA_LINENUM;
+                        hasMore = true;
+                        break;
+                    } else if (type == PRO_RESP_CHECKSUM) {
+                        // 校验帧本身不计入校验和
+                        if (null != checksum) {
+                            checksum.update(buffer, checksumFrom, buffer.position() - Integer.BYTES);
+                        }
+                        checksumFrom = buffer.position();
+                        state = DecodeState.READ_CHECKSUM;
+                        hasMore = true;
+                        break;
+                    } else if (type == PRO_RESP_GETEOF_SUMMARY) {
+                        state = DecodeState.READ_GETEOF_SUMMARY;
+                        hasMore = true;
+                        break;
+                    } else if (type == PRO_RESP_GETEOF) {
+                        state = DecodeState.READ_GETEOF;
+                        finish();
+                        return true;
+                    } else {
+                        throw new IOException("decode failed, illegal type=" + type);
+                    }
+                case READ_GETDATA_LINENUM:
+                    if (buffer.remaining() < (isWide ? Long.BYTES : Integer.BYTES)) {
+                        break;
+                    }
+                    lineNum = isWide ? buffer.getLong() : buffer.getInt();
+                    state = DecodeState.READ_GETDATA_OFFSET;
+                case READ_GETDATA_OFFSET:
+                    if (hasOffset) {
+                        if (buffer.remaining() < Long.BYTES) {
+                            break;
+                        }
+                        offset = buffer.getLong();
+                    } else {
+                        offset = -1;
+                    }
+                    state = DecodeState.READ_GETDATA_LEN;
+                case READ_GETDATA_LEN:
+                    if (buffer.remaining() < Integer.BYTES) {
+                        break;
+                    }
+                    len = buffer.getInt();
+                    state = DecodeState.READ_GETDATA_DATA;
+                case READ_GETDATA_DATA:
+                    if (buffer.remaining() < len) {
+                        break;
+                    }
+
+                    if (null != integrityChecker) {
+                        // 数据源按行号递增发放，同一链接收到的行号必须严格递增
+                        if (lineNum <= lastLineNum) {
+                            throw new IOException("integrity check failed, lineNum=" + lineNum + " after " + lastLineNum);
+                        }
+                        lastLineNum = lineNum;
+                        batchRows++;
+                    }
+                    rowCount++;
+                    byteCount += outputRowSize(lineNum, len);
+
+                    // handler GetDataResp
+                    // 数据段由数据持久化直接从接收缓存中逆序拷走
+                    dataPersistence.putRow(lineNum, offset, buffer, len);
+
+                    state = DecodeState.READ_TYPE;
+                    hasMore = true;
+                    break;
+                case READ_CHECKSUM:
+                    if (buffer.remaining() < Integer.BYTES * 3) {
+                        break;
+                    }
+                    final int algorithm = buffer.getInt();
+                    final int rows = buffer.getInt();
+                    final int crc = buffer.getInt();
+                    checksumFrom = buffer.position();
+                    if (null != checksum) {
+                        if (algorithm != checksum.getAlgorithm()) {
+                            throw new IOException("integrity check failed, checksum algorithm=" + algorithm
+                                    + ", expect=" + checksum.getAlgorithm());
+                        }
+                        if (rows != batchRows
+                                || crc != checksum.getValue()) {
+                            throw new IOException("integrity check failed, batch rows=" + batchRows + "/" + rows
+                                    + ", crc=" + checksum.getValue() + "/" + crc + ", lastLineNum=" + lastLineNum);
+                        }
+                        checksum.reset();
+                        batchRows = 0;
+                    }
+                    state = DecodeState.READ_TYPE;
+                    hasMore = true;
+                    break;
+                case READ_GETEOF_SUMMARY:
+                    if (buffer.remaining() < Long.BYTES * 2) {
+                        break;
+                    }
+                    final long totalRows = buffer.getLong();
+                    final long totalBytes = buffer.getLong();
+                    if (null != integrityChecker) {
+                        integrityChecker.summary(totalRows, totalBytes);
+                    }
+                    state = DecodeState.READ_GETEOF;
+                    finish();
+                    return true;
+                case READ_GETEOF:
+                    return true;
+
+                default:
+                    throw new IOException("decode failed, illegal state=" + state);
+            }//switch
+
+        }//while:hasMore
+
+        if (null != checksum) {
+            checksum.update(buffer, checksumFrom, buffer.position());
+        }
+        return false;
+    }
+
+    /*
+     * 收到EOF，最后一批数据必须已经被校验过，上报本链接的统计
+     */
+    private void finish() throws IOException {
+        if (null == integrityChecker) {
+            return;
+        }
+        if (batchRows > 0) {
+            throw new IOException("integrity check failed, " + batchRows + " rows without checksum before EOF.");
+        }
+        integrityChecker.add(rowCount, byteCount);
+    }
+
+    /**
+     * @return 已收到的行是否都已被校验帧校验过，未开启完整性检查时总为true
+     */
+    public boolean isChecked() {
+        return batchRows == 0;
+    }
+
+    /**
+     * 链接被排空，不会再收到EOF，上报本链接的统计
+     *
+     * @throws IOException 还有未被校验的行
+     */
+    public void drained() throws IOException {
+        finish();
+    }
+
+    /**
+     * @return 已解码的行数
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return 已解码行的输出字节数
+     */
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    /**
+     * 接收数据解码
+     */
+    enum DecodeState {
+        READ_TYPE,
+        READ_GETDATA_LINENUM,
+        READ_GETDATA_OFFSET,
+        READ_GETDATA_LEN,
+        READ_GETDATA_DATA,
+        READ_CHECKSUM,
+        READ_GETEOF_SUMMARY,
+        READ_GETEOF
+    }
+
+}
@@ -0,0 +1,146 @@
+package com.github.ompc.laser.common;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * 帧校验和<br/>
+ * 优先使用JDK9+带硬件加速的CRC32C，JDK8下退化为CRC32，算法编号随校验帧一起发送<br/>
+ * 计算时只使用绝对位置，不改变缓存的position和limit，也不分配对象
+ */
+public abstract class FrameChecksum {
+
+    /**
+     * CRC32算法
+     */
+    public static final int ALGORITHM_CRC32 = 1;
+
+    /**
+     * CRC32C算法
+     */
+    public static final int ALGORITHM_CRC32C = 2;
+
+    /*
+     * 最近一次计算的缓存及其视图，同一缓存反复计算时不重复创建视图
+     */
+    private ByteBuffer lastBuffer;
+    private ByteBuffer view;
+
+    /**
+     * 创建当前JDK支持的最佳校验和
+     *
+     * @return 帧校验和
+     */
+    public static FrameChecksum create() {
+        try {
+            return create(ALGORITHM_CRC32C);
+        } catch (IOException e) {
+            return create0(ALGORITHM_CRC32);
+        }
+    }
+
+    /**
+     * 创建指定算法的校验和
+     *
+     * @param algorithm 算法编号
+     * @return 帧校验和
+     * @throws IOException 当前JDK不支持该算法
+     */
+    public static FrameChecksum create(int algorithm) throws IOException {
+        final FrameChecksum frameChecksum = create0(algorithm);
+        if (null == frameChecksum) {
+            throw new IOException("unsupported checksum algorithm=" + algorithm);
+        }
+        return frameChecksum;
+    }
+
+    private static FrameChecksum create0(int algorithm) {
+        switch (algorithm) {
+            case ALGORITHM_CRC32:
+                return new Crc32FrameChecksum();
+            case ALGORITHM_CRC32C:
+                try {
+                    // CRC32C在JDK9才出现，实现类按JDK11单独编译，通过反射加载以兼容JDK8
+                    return (FrameChecksum) Class.forName("com.github.ompc.laser.common.Jdk9Crc32cFrameChecksum").getDeclaredConstructor().newInstance();
+                } catch (Throwable t) {
+                    return null;
+                }
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 累加缓存中[from,to)的内容
+     *
+     * @param buffer 缓存
+     * @param from   起始位置
+     * @param to     结束位置
+     */
+    public void update(ByteBuffer buffer, int from, int to) {
+        if (from >= to) {
+            return;
+        }
+        if (buffer != lastBuffer) {
+            lastBuffer = buffer;
+            view = buffer.duplicate();
+        }
+        view.clear();
+        view.position(from);
+        view.limit(to);
+        update(view);
+    }
+
+    /**
+     * 累加视图中剩余的内容
+     *
+     * @param view 视图
+     */
+    protected abstract void update(ByteBuffer view);
+
+    /**
+     * @return 算法编号
+     */
+    public abstract int getAlgorithm();
+
+    /**
+     * @return 校验和
+     */
+    public abstract int getValue();
+
+    /**
+     * 重置校验和
+     */
+    public abstract void reset();
+
+    /**
+     * CRC32实现
+     */
+    private static class Crc32FrameChecksum extends FrameChecksum {
+
+        private final CRC32 crc32 = new CRC32();
+
+        @Override
+        protected void update(ByteBuffer view) {
+            crc32.update(view);
+        }
+
+        @Override
+        public int getAlgorithm() {
+            return ALGORITHM_CRC32;
+        }
+
+        @Override
+        public int getValue() {
+            return (int) crc32.getValue();
+        }
+
+        @Override
+        public void reset() {
+            crc32.reset();
+        }
+
+    }
+
+}
@@ -0,0 +1,34 @@
+package com.github.ompc.laser.common;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32C;
+
+/**
+ * CRC32C帧校验和，CRC32C及Checksum.update(ByteBuffer)在JDK9才出现<br/>
+ * 按JDK11单独编译，只能通过FrameChecksum反射加载，其他类不要直接引用
+ */
+class Jdk9Crc32cFrameChecksum extends FrameChecksum {
+
+    private final CRC32C crc32c = new CRC32C();
+
+    @Override
+    protected void update(ByteBuffer view) {
+        crc32c.update(view);
+    }
+
+    @Override
+    public int getAlgorithm() {
+        return ALGORITHM_CRC32C;
+    }
+
+    @Override
+    public int getValue() {
+        return (int) crc32c.getValue();
+    }
+
+    @Override
+    public void reset() {
+        crc32c.reset();
+    }
+
+}
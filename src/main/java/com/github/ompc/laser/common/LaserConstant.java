@@ -31,6 +31,61 @@ public class LaserConstant {
      */
     public static final int PRO_RESP_GETEOF = PRO_MC << 16 | 0x03;
 
+    /**
+     * 返回带输出偏移量的数据请求
+     */
+    public static final int PRO_RESP_GETDATA_OFFSET = PRO_MC << 16 | 0x05;
+
+    /**
+     * 续传请求<br/>
+     * [TYPE][SESSION(8B)][LINENUM(8B)]，同一会话只会续传一次
+     */
+    public static final int PRO_REQ_RESUME = PRO_MC << 16 | 0x06;
+
+    /**
+     * 返回校验帧<br/>
+     * [TYPE][ALGORITHM(4B)][ROWS(4B)][CRC(4B)]，校验上一个校验帧之后的所有帧
+     */
+    public static final int PRO_RESP_CHECKSUM = PRO_MC << 16 | 0x07;
+
+    /**
+     * 返回带汇总的数据结束<br/>
+     * [TYPE][TOTAL_ROWS(8B)][TOTAL_BYTES(8B)]，服务端数据源的总行数和总输出字节数
+     */
+    public static final int PRO_RESP_GETEOF_SUMMARY = PRO_MC << 16 | 0x08;
+
+    /**
+     * 按行号随机读取请求<br/>
+     * [TYPE][START_LINENUM(8B)][COUNT(4B)]，不影响GETDATA的发放进度
+     */
+    public static final int PRO_REQ_GETRANGE = PRO_MC << 16 | 0x09;
+
+    /**
+     * 返回按行号随机读取的数据<br/>
+     * [TYPE][START_LINENUM(8B)][COUNT(4B)][LENGTH(4B)]后跟COUNT行[OFFSET(8B)][LEN(4B)][DATA]，LENGTH为行数据的总字节数<br/>
+     * COUNT可能小于请求的行数：超出数据源末尾或超出应答大小上限的行不返回，数据源不支持随机读取时为0
+     */
+    public static final int PRO_RESP_GETRANGE = PRO_MC << 16 | 0x0A;
+
+    /**
+     * 改用共享内存环形缓冲接收应答<br/>
+     * [TYPE][LENGTH(4B)][PATH(UTF-8)]，PATH为客户端创建好的环形缓冲文件，
+     * 之后该链接上的所有应答帧都写入环中，请求仍然走TCP链接
+     */
+    public static final int PRO_REQ_SHM = PRO_MC << 16 | 0x0B;
+
+    /**
+     * 返回行号超出int的数据<br/>
+     * [TYPE][LINENUM(8B)][LEN(4B)][DATA]，行号在int范围内时仍用PRO_RESP_GETDATA
+     */
+    public static final int PRO_RESP_GETDATA_WIDE = PRO_MC << 16 | 0x0C;
+
+    /**
+     * 返回行号超出int的带输出偏移量的数据<br/>
+     * [TYPE][LINENUM(8B)][OFFSET(8B)][LEN(4B)][DATA]，行号在int范围内时仍用PRO_RESP_GETDATA_OFFSET
+     */
+    public static final int PRO_RESP_GETDATA_OFFSET_WIDE = PRO_MC << 16 | 0x0D;
+
 //    /**
 //     * 返回压缩数据
 //     */
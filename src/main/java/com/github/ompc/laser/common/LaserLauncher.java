@@ -1,12 +1,24 @@
 package com.github.ompc.laser.common;
 
+import com.github.ompc.laser.benchmark.DataGenerator;
+import com.github.ompc.laser.benchmark.OutputDigest;
 import com.github.ompc.laser.client.ClientConfiger;
+import com.github.ompc.laser.client.ClientMetrics;
+import com.github.ompc.laser.client.ConnectionScaler;
+import com.github.ompc.laser.client.IntegrityChecker;
 import com.github.ompc.laser.client.NioLaserClient;
 import com.github.ompc.laser.common.datasource.DataPersistence;
 import com.github.ompc.laser.common.datasource.DataSource;
 import com.github.ompc.laser.common.datasource.impl.MockDataSource;
+import com.github.ompc.laser.common.datasource.impl.OffsetDataPersistence;
 import com.github.ompc.laser.common.datasource.impl.PageDataPersistence;
 import com.github.ompc.laser.common.datasource.impl.PageDataSource;
+import com.github.ompc.laser.common.datasource.impl.PageJournal;
+import com.github.ompc.laser.common.datasource.writer.DirectPageWriter;
+import com.github.ompc.laser.common.datasource.writer.GatheringPageWriter;
+import com.github.ompc.laser.common.datasource.writer.MappedPageWriter;
+import com.github.ompc.laser.common.datasource.writer.PageWriter;
+import com.github.ompc.laser.common.unix.UnixDomainSockets;
 import com.github.ompc.laser.server.NioLaserServer;
 import com.github.ompc.laser.server.ServerConfiger;
 import org.slf4j.Logger;
@@ -14,13 +26,11 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
-import java.net.InetSocketAddress;
-import java.util.HashSet;
-import java.util.Set;
+import java.security.SecureRandom;
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Phaser;
 
 import static java.lang.Runtime.getRuntime;
 import static java.lang.Thread.currentThread;
@@ -38,14 +48,13 @@ public class LaserLauncher {
         final long startTime = System.currentTimeMillis();
 
         final ClientConfiger configer = new ClientConfiger();
-        configer.setServerAddress(new InetSocketAddress(args[1], Integer.valueOf(args[2])));
+        configer.setServerAddress(SocketUtils.address(args[1], args[2]));
         configer.setDataFile(new File(args[3]));
 
         final LaserOptions options = new LaserOptions(new File(args[4]));
-        final int worksNum = options.getClientWorkNumbers();
 
-        // read+writer+persistence
-        final CyclicBarrier workCyclicBarrier = new CyclicBarrier(worksNum * 2 + 1);
+        // 数据持久化初始化完成后所有链接开始干活
+        final CountDownLatch readyLatch = new CountDownLatch(1);
 
         final ExecutorService executorService = Executors.newCachedThreadPool((r) -> {
             final Thread t = new Thread(r);
@@ -53,18 +62,46 @@ public class LaserLauncher {
             return t;
         });
 
-        final DataPersistence dataPersistence = new PageDataPersistence(configer.getDataFile());
+        // 续传只支持分页数据持久化
+        final PageJournal pageJournal;
+        if (options.isEnableResume()
+                && !options.isEnableOutputOffset()) {
+            pageJournal = new PageJournal(
+                    new File(configer.getDataFile().getPath() + ".journal"),
+                    options.getClientJournalIntervalMs());
+            pageJournal.recover(configer.getDataFile());
+            configer.setResumeSessionId(new SecureRandom().nextLong() | 1L);
+            configer.setResumeLineNum(pageJournal.getLineNum());
+        } else {
+            pageJournal = null;
+        }
+
+        if (options.isEnableIntegrity()) {
+            configer.setIntegrityChecker(new IntegrityChecker());
+        }
+
+        final DataPersistence dataPersistence = options.isEnableOutputOffset()
+                ? new OffsetDataPersistence(configer.getDataFile())
+                : new PageDataPersistence(configer.getDataFile(), options.getClientFlusherNumbers(),
+                createPageWriter(options.getClientPageWriter(), configer.getDataFile(), options), pageJournal);
+
+        final MetricsReporter metricsReporter;
+        if (options.isEnableMetrics()) {
+            final ClientMetrics metrics = new ClientMetrics(dataPersistence);
+            configer.setMetrics(metrics);
+            MBeanUtils.register(MBeanUtils.objectName("Client", configer.getDataFile().getName()), metrics);
+            metricsReporter = new MetricsReporter("client", options.getMetricsReportIntervalMs(), metrics::report);
+            metricsReporter.start();
+        } else {
+            metricsReporter = null;
+        }
 
         // 异步初始化数据源
         executorService.execute(() -> {
 
             try {
                 dataPersistence.init();
-                try {
-                    workCyclicBarrier.await();
-                } catch (Exception e) {
-                    // ingore...
-                }
+                readyLatch.countDown();
             } catch (IOException e) {
                 log.warn("DataPersistence.init failed.");
             }
@@ -72,27 +109,18 @@ public class LaserLauncher {
         });
 
 
-        final CountDownLatch countDown = new CountDownLatch(worksNum);
-        // 异步创建建立链接
-        final Set<NioLaserClient> clients = new HashSet<>();
-        for (int i = 0; i < worksNum; i++) {
-
-            executorService.execute(() -> {
-                final NioLaserClient client = new NioLaserClient(countDown, workCyclicBarrier, executorService, dataPersistence, configer, options);
-                try {
-                    client.connect();
-                    clients.add(client);
-                    client.work();
-                } catch (IOException e) {
-                    log.warn("client connect failed.", e);
-                }
-
-            });
-
-        }
+        // 链接随吞吐伸缩，主线程作为一方注册，等待所有链接收到EOF或排空
+        final Phaser phaser = new Phaser(1);
+        final ConnectionScaler scaler = new ConnectionScaler(() -> {
+            final NioLaserClient client = new NioLaserClient(phaser, readyLatch, executorService, dataPersistence, configer, options);
+            client.connect();
+            return client;
+        }, dataPersistence, options);
+        scaler.start();
 
         // 等待所有Client完成
-        countDown.await();
+        phaser.arriveAndAwaitAdvance();
+        scaler.stop();
 
         final long endTime = System.currentTimeMillis();
         System.out.println("cost=" + (endTime - startTime));
@@ -101,11 +129,26 @@ public class LaserLauncher {
         dataPersistence.flush();
         dataPersistence.destroy();
 
+        // 输出最终的度量
+        if (null != metricsReporter) {
+            metricsReporter.stop();
+        }
+
+        // 比对服务端汇总，不一致时保留续传日志
+        if (null != configer.getIntegrityChecker()) {
+            configer.getIntegrityChecker().check(Math.max(0, configer.getResumeLineNum()));
+        }
+
+        // 全部完成，不再需要续传
+        if (null != pageJournal) {
+            pageJournal.delete();
+        }
+
         // registe shutdown
         getRuntime().addShutdownHook(new Thread(() -> {
             try {
                 currentThread().setName("client-shutdown-hook");
-                for (NioLaserClient client : clients) {
+                for (NioLaserClient client : scaler.getClients()) {
                     client.disconnect();
                 }
                 executorService.shutdown();
@@ -116,16 +159,47 @@ public class LaserLauncher {
 
     }
 
+    /**
+     * 根据配置创建页面写入器
+     *
+     * @param type     页面写入器类型：mapped|gathering|direct
+     * @param dataFile 数据文件
+     * @param options  配置
+     * @return 页面写入器
+     */
+    public static PageWriter createPageWriter(String type, File dataFile, LaserOptions options) {
+        final long syncLagMs = options.getClientPageWriterSyncLagMs();
+        final long syncBytesPerSecond = options.getClientPageWriterSyncBytesPerSecond();
+        if ("mapped".equals(type)) {
+            return new MappedPageWriter(dataFile, options.getClientPageWriterMappedLimit(), syncLagMs, syncBytesPerSecond);
+        } else if ("gathering".equals(type)) {
+            return new GatheringPageWriter(dataFile, syncLagMs, syncBytesPerSecond);
+        } else if ("direct".equals(type)) {
+            return new DirectPageWriter(dataFile, options.getClientPageWriterDirectBufferSize(), syncLagMs, syncBytesPerSecond);
+        } else {
+            throw new IllegalArgumentException("illegal page writer type=" + type);
+        }
+    }
+
     private static void startNioServer(String... args) throws IOException, InterruptedException {
         final ServerConfiger configer = new ServerConfiger();
         configer.setDataFile(new File(args[1]));
-        configer.setPort(Integer.valueOf(args[2]));
+        if (args[2].startsWith(UnixDomainSockets.SCHEME)) {
+            configer.setUnixPath(args[2].substring(UnixDomainSockets.SCHEME.length()));
+        } else {
+            configer.setPort(Integer.valueOf(args[2]));
+        }
 
         final LaserOptions options = new LaserOptions(new File(args[3]));
 
         final DataSource dataSource = options.isServerDebug()
-                ? new MockDataSource()
-                : new PageDataSource(configer.getDataFile());
+                ? new MockDataSource(
+                options.getServerDebugRows(),
+                options.getServerDebugRowLength()[0],
+                options.getServerDebugRowLength()[1],
+                options.getServerDebugSeed())
+                : new PageDataSource(LaserUtils.listDataFiles(args[1]), options.getServerPrefetchFiles(),
+                options.getServerReadaheadWindowSize(), options.getServerReadaheadDepth());
         dataSource.init();
 
         final CountDownLatch countDown = new CountDownLatch(1);
@@ -134,9 +208,20 @@ public class LaserLauncher {
         final NioLaserServer server = new NioLaserServer(dataSource, executorService, configer, options);
         server.startup();
 
+        final MetricsReporter metricsReporter = options.isEnableMetrics()
+                ? new MetricsReporter("server", options.getMetricsReportIntervalMs(), server.getMetrics()::report)
+                : null;
+        if (null != metricsReporter) {
+            metricsReporter.start();
+        }
+
         // registe shutdown
         getRuntime().addShutdownHook(new Thread(() -> {
             currentThread().setName("server-shutdown-hook");
+            if (null != metricsReporter) {
+                // 关闭时输出最终的度量
+                metricsReporter.stop();
+            }
             try {
                 dataSource.destroy();
                 server.shutdown();
@@ -155,6 +240,10 @@ public class LaserLauncher {
             startNioClient(args);
         } else if (args[0].equals("nioserver")) {
             startNioServer(args);
+        } else if (args[0].equals("generate")) {
+            DataGenerator.main(args);
+        } else if (args[0].equals("digest")) {
+            OutputDigest.main(args);
         } else {
             throw new IllegalArgumentException("illegal args[0]=" + args[0]);
         }
@@ -13,6 +13,14 @@ public final class LaserOptions {
 
     private boolean enableCompress = false;
     private int compressSize;
+    private boolean enableOutputOffset = false;
+    private boolean enableResume = false;
+    private boolean enableIntegrity = false;
+    private boolean enableMetrics = false;
+    private long metricsReportIntervalMs;
+    private boolean enableShm = false;
+    private String shmDir;
+    private int shmRingSize;
 
     private int clientSocketTimeout;
     private int clientSocketReceiverBufferSize;
@@ -23,10 +31,33 @@ public final class LaserOptions {
     private int clientTrafficClass;
     private int[] clientPerformancePreferences = new int[3];
     private int clientWorkNumbers;
+    private int clientFlusherNumbers;
+    private String clientPageWriter;
+    private int clientPageWriterMappedLimit;
+    private int clientPageWriterDirectBufferSize;
+    private long clientPageWriterSyncLagMs;
+    private long clientPageWriterSyncBytesPerSecond;
+    private long clientJournalIntervalMs;
+    private int clientWindowInitial;
+    private int clientWindowMin;
+    private int clientWindowMax;
+    private int clientWindowIncrease;
+    private int clientWindowRttTolerancePercent;
+    private int clientWorkNumbersMax;
+    private long clientScaleIntervalMs;
+    private int clientScaleGainPercent;
+    private int clientScaleStallPercent;
 
     private int serverSocketTimeout;
     private int serverBacklog;
     private boolean serverDebug;
+    private long serverDebugRows;
+    private final int[] serverDebugRowLength = new int[2];
+    private long serverDebugSeed;
+    private int serverPrefetchFiles;
+    private long serverReadaheadWindowSize;
+    private int serverReadaheadDepth;
+    private int serverRangeBufferSize;
 
 
     private int serverChildSocketTimeout;
@@ -34,18 +65,33 @@ public final class LaserOptions {
     private int serverChildSocketSendBufferSize;
     private int serverChildReceiverBufferSize;
     private int serverChildSendBufferSize;
+    private boolean serverChildGatherWrite;
     private boolean serverChildTcpNoDelay;
     private int serverChildTrafficClass;
     private int[] serverChildPerformancePreferences = new int[3];
 
 
     public LaserOptions(final File propertiesFile) throws IOException {
+        this(load(propertiesFile));
+    }
 
-        final Properties properties = new Properties();
-        properties.load(new FileInputStream(propertiesFile));
+    /**
+     * 从内存中的配置构造，便于在同一个进程内调整参数
+     *
+     * @param properties 配置
+     */
+    public LaserOptions(final Properties properties) {
 
         enableCompress = Boolean.valueOf(properties.getProperty("enable_compress"));
         compressSize = Integer.valueOf(properties.getProperty("compress_size"));
+        enableOutputOffset = Boolean.valueOf(properties.getProperty("enable_output_offset"));
+        enableResume = Boolean.valueOf(properties.getProperty("enable_resume"));
+        enableIntegrity = Boolean.valueOf(properties.getProperty("enable_integrity"));
+        enableMetrics = Boolean.valueOf(properties.getProperty("enable_metrics"));
+        metricsReportIntervalMs = Long.valueOf(properties.getProperty("metrics_report_interval_ms"));
+        enableShm = Boolean.valueOf(properties.getProperty("enable_shm"));
+        shmDir = properties.getProperty("shm_dir");
+        shmRingSize = Integer.valueOf(properties.getProperty("shm_ring_size"));
 
         clientSocketTimeout = Integer.valueOf(properties.getProperty("client.socket_timeout"));
 
@@ -61,15 +107,41 @@ public final class LaserOptions {
         clientPerformancePreferences[1] = Integer.valueOf(clientPerformancePreferencesSplits[1]);
         clientPerformancePreferences[2] = Integer.valueOf(clientPerformancePreferencesSplits[2]);
         clientWorkNumbers = Integer.valueOf(properties.getProperty("client.work_numbers"));
+        clientFlusherNumbers = Integer.valueOf(properties.getProperty("client.flusher_numbers"));
+        clientPageWriter = properties.getProperty("client.page_writer");
+        clientPageWriterMappedLimit = Integer.valueOf(properties.getProperty("client.page_writer_mapped_limit"));
+        clientPageWriterDirectBufferSize = Integer.valueOf(properties.getProperty("client.page_writer_direct_buffer_size"));
+        clientPageWriterSyncLagMs = Long.valueOf(properties.getProperty("client.page_writer_sync_lag_ms"));
+        clientPageWriterSyncBytesPerSecond = Long.valueOf(properties.getProperty("client.page_writer_sync_bytes_per_second"));
+        clientJournalIntervalMs = Long.valueOf(properties.getProperty("client.journal_interval_ms"));
+        clientWindowInitial = Integer.valueOf(properties.getProperty("client.window_initial"));
+        clientWindowMin = Integer.valueOf(properties.getProperty("client.window_min"));
+        clientWindowMax = Integer.valueOf(properties.getProperty("client.window_max"));
+        clientWindowIncrease = Integer.valueOf(properties.getProperty("client.window_increase"));
+        clientWindowRttTolerancePercent = Integer.valueOf(properties.getProperty("client.window_rtt_tolerance_percent"));
+        clientWorkNumbersMax = Integer.valueOf(properties.getProperty("client.work_numbers_max"));
+        clientScaleIntervalMs = Long.valueOf(properties.getProperty("client.scale_interval_ms"));
+        clientScaleGainPercent = Integer.valueOf(properties.getProperty("client.scale_gain_percent"));
+        clientScaleStallPercent = Integer.valueOf(properties.getProperty("client.scale_stall_percent"));
 
         serverSocketTimeout = Integer.valueOf(properties.getProperty("server.socket_timeout"));
         serverBacklog = Integer.valueOf(properties.getProperty("server.backlog"));
         serverDebug = Boolean.valueOf(properties.getProperty("server.debug"));
+        serverDebugRows = Long.valueOf(properties.getProperty("server.debug_rows"));
+        String[] serverDebugRowLengthSplits = properties.getProperty("server.debug_row_length").split(",");
+        serverDebugRowLength[0] = Integer.valueOf(serverDebugRowLengthSplits[0]);
+        serverDebugRowLength[1] = Integer.valueOf(serverDebugRowLengthSplits[1]);
+        serverDebugSeed = Long.valueOf(properties.getProperty("server.debug_seed"));
+        serverPrefetchFiles = Integer.valueOf(properties.getProperty("server.prefetch_files"));
+        serverReadaheadWindowSize = Long.valueOf(properties.getProperty("server.readahead_window_size"));
+        serverReadaheadDepth = Integer.valueOf(properties.getProperty("server.readahead_depth"));
+        serverRangeBufferSize = Integer.valueOf(properties.getProperty("server.range_buffer_size"));
         serverChildSocketTimeout = Integer.valueOf(properties.getProperty("server.child_socket_timeout"));
         serverChildSocketReceiverBufferSize = Integer.valueOf(properties.getProperty("server.child_socket_receiver_buffer_size"));
         serverChildSocketSendBufferSize = Integer.valueOf(properties.getProperty("server.child_socket_send_buffer_size"));
         serverChildReceiverBufferSize = Integer.valueOf(properties.getProperty("server.child_receiver_buffer_size"));
         serverChildSendBufferSize = Integer.valueOf(properties.getProperty("server.child_send_buffer_size"));
+        serverChildGatherWrite = Boolean.valueOf(properties.getProperty("server.child_gather_write"));
         serverChildTcpNoDelay = Boolean.valueOf(properties.getProperty("server.child_tcp_no_delay"));
         serverChildTrafficClass = Integer.valueOf(properties.getProperty("server.child_traffic_class"));
         String[] serverChildPerformancePreferencesSplits = properties.getProperty("server.child_performance_preferences").split(",");
@@ -107,6 +179,70 @@ public final class LaserOptions {
         return clientWorkNumbers;
     }
 
+    public int getClientFlusherNumbers() {
+        return clientFlusherNumbers;
+    }
+
+    public String getClientPageWriter() {
+        return clientPageWriter;
+    }
+
+    public int getClientPageWriterMappedLimit() {
+        return clientPageWriterMappedLimit;
+    }
+
+    public int getClientPageWriterDirectBufferSize() {
+        return clientPageWriterDirectBufferSize;
+    }
+
+    public long getClientPageWriterSyncLagMs() {
+        return clientPageWriterSyncLagMs;
+    }
+
+    public long getClientPageWriterSyncBytesPerSecond() {
+        return clientPageWriterSyncBytesPerSecond;
+    }
+
+    public long getClientJournalIntervalMs() {
+        return clientJournalIntervalMs;
+    }
+
+    public int getClientWindowInitial() {
+        return clientWindowInitial;
+    }
+
+    public int getClientWindowMin() {
+        return clientWindowMin;
+    }
+
+    public int getClientWindowMax() {
+        return clientWindowMax;
+    }
+
+    public int getClientWindowIncrease() {
+        return clientWindowIncrease;
+    }
+
+    public int getClientWindowRttTolerancePercent() {
+        return clientWindowRttTolerancePercent;
+    }
+
+    public int getClientWorkNumbersMax() {
+        return clientWorkNumbersMax;
+    }
+
+    public long getClientScaleIntervalMs() {
+        return clientScaleIntervalMs;
+    }
+
+    public int getClientScaleGainPercent() {
+        return clientScaleGainPercent;
+    }
+
+    public int getClientScaleStallPercent() {
+        return clientScaleStallPercent;
+    }
+
     public int getServerSocketTimeout() {
         return serverSocketTimeout;
     }
@@ -123,6 +259,10 @@ public final class LaserOptions {
         return serverChildSendBufferSize;
     }
 
+    public boolean isServerChildGatherWrite() {
+        return serverChildGatherWrite;
+    }
+
     public boolean isServerChildTcpNoDelay() {
         return serverChildTcpNoDelay;
     }
@@ -139,6 +279,21 @@ public final class LaserOptions {
         return serverBacklog;
     }
 
+    /**
+     * 加载配置文件
+     *
+     * @param propertiesFile 配置文件
+     * @return 配置
+     * @throws IOException 读取失败
+     */
+    public static Properties load(final File propertiesFile) throws IOException {
+        final Properties properties = new Properties();
+        try (final FileInputStream in = new FileInputStream(propertiesFile)) {
+            properties.load(in);
+        }
+        return properties;
+    }
+
     public boolean isEnableCompress() {
         return enableCompress;
     }
@@ -163,7 +318,67 @@ public final class LaserOptions {
         return compressSize;
     }
 
+    public boolean isEnableOutputOffset() {
+        return enableOutputOffset;
+    }
+
+    public boolean isEnableResume() {
+        return enableResume;
+    }
+
+    public boolean isEnableIntegrity() {
+        return enableIntegrity;
+    }
+
+    public boolean isEnableMetrics() {
+        return enableMetrics;
+    }
+
+    public boolean isEnableShm() {
+        return enableShm;
+    }
+
+    public String getShmDir() {
+        return shmDir;
+    }
+
+    public int getShmRingSize() {
+        return shmRingSize;
+    }
+
+    public long getMetricsReportIntervalMs() {
+        return metricsReportIntervalMs;
+    }
+
     public boolean isServerDebug() {
         return serverDebug;
     }
+
+    public long getServerDebugRows() {
+        return serverDebugRows;
+    }
+
+    public int[] getServerDebugRowLength() {
+        return serverDebugRowLength;
+    }
+
+    public long getServerDebugSeed() {
+        return serverDebugSeed;
+    }
+
+    public int getServerPrefetchFiles() {
+        return serverPrefetchFiles;
+    }
+
+    public long getServerReadaheadWindowSize() {
+        return serverReadaheadWindowSize;
+    }
+
+    public int getServerReadaheadDepth() {
+        return serverReadaheadDepth;
+    }
+
+    public int getServerRangeBufferSize() {
+        return serverRangeBufferSize;
+    }
 }
@@ -1,9 +1,16 @@
 package com.github.ompc.laser.common;
 
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import static java.lang.System.arraycopy;
 
@@ -22,12 +29,33 @@ public final class LaserUtils {
     public static byte[] process(byte[] data) {
         final int size = data.length;
         final int sub = size / 3;
-        final byte[] newData = new byte[size - sub];
+        final byte[] newData = new byte[processedSize(size)];
         arraycopy(data, 0, newData, 0, sub);
         arraycopy(data, sub + sub, newData, sub, newData.length - sub);
         return newData;
     }
 
+    /**
+     * 处理后的数据长度，与process(byte[])一致
+     *
+     * @param size 原数据长度
+     * @return 处理后数据长度
+     */
+    public static int processedSize(int size) {
+        return size - size / 3;
+    }
+
+    /**
+     * 输出行的字节数，输出行构成：行号+处理后的数据+\r\n
+     *
+     * @param lineNum    行号
+     * @param dataLength 处理后数据长度
+     * @return 输出行的字节数
+     */
+    public static int outputRowSize(long lineNum, int dataLength) {
+        return stringSize(lineNum) + dataLength + 2;
+    }
+
     /**
      * 对字节数组进行逆序
      *
@@ -48,7 +76,148 @@ public final class LaserUtils {
     }
 
     /**
-     * 释放MappedByteBuffer
+     * 对字节数组中的一段进行逆序
+     *
+     * @param bricks 字节数组
+     * @param offset 起始位置
+     * @param length 逆序长度
+     */
+    public static void reverse(byte[] bricks, int offset, int length) {
+        byte temp;
+        for (int i = offset, j = offset + length - 1; i < j; i++, j--) {
+            temp = bricks[i];
+            bricks[i] = bricks[j];
+            bricks[j] = temp;
+        }
+    }
+
+    /**
+     * 将非负整数的十进制字符直接写入字节数组，不产生临时对象
+     *
+     * @param dst    目标字节数组
+     * @param offset 写入位置
+     * @param x      非负整数
+     * @return 写入后的位置
+     */
+    public static int putDecimal(byte[] dst, int offset, int x) {
+        final int end = offset + stringSize(x);
+        int pos = end;
+        do {
+            dst[--pos] = (byte) ('0' + x % 10);
+            x /= 10;
+        } while (x != 0);
+        return end;
+    }
+
+    /**
+     * 计算非负整数十进制表示的字符数
+     *
+     * @param x 非负整数
+     * @return 十进制字符数
+     */
+    public static int stringSize(int x) {
+        int size = 1;
+        while (x >= 10) {
+            x /= 10;
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * 将非负长整数的十进制字符直接写入字节数组，int范围内的走int版本
+     *
+     * @param dst    目标字节数组
+     * @param offset 写入位置
+     * @param x      非负长整数
+     * @return 写入后的位置
+     */
+    public static int putDecimal(byte[] dst, int offset, long x) {
+        if (x <= Integer.MAX_VALUE) {
+            return putDecimal(dst, offset, (int) x);
+        }
+        final int end = offset + stringSize(x);
+        int pos = end;
+        do {
+            dst[--pos] = (byte) ('0' + x % 10);
+            x /= 10;
+        } while (x != 0);
+        return end;
+    }
+
+    /**
+     * 计算非负长整数十进制表示的字符数，int范围内的走int版本
+     *
+     * @param x 非负长整数
+     * @return 十进制字符数
+     */
+    public static int stringSize(long x) {
+        if (x <= Integer.MAX_VALUE) {
+            return stringSize((int) x);
+        }
+        int size = 1;
+        while (x >= 10) {
+            x /= 10;
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * 列出数据文件<br/>
+     * 路径之间用逗号分隔并按给出的顺序排列，目录展开为其中的普通文件(忽略隐藏文件)，按文件名排序
+     *
+     * @param paths 文件或目录路径，逗号分隔
+     * @return 按顺序排列的数据文件
+     * @throws FileNotFoundException 路径不存在
+     */
+    public static File[] listDataFiles(String paths) throws FileNotFoundException {
+        final List<File> dataFiles = new ArrayList<>();
+        for (String path : paths.split(",")) {
+            final File file = new File(path.trim());
+            if (file.isDirectory()) {
+                final File[] children = file.listFiles((f) -> f.isFile() && !f.isHidden());
+                if (null == children) {
+                    throw new FileNotFoundException("list directory=" + file + " failed.");
+                }
+                Arrays.sort(children, (a, b) -> a.getName().compareTo(b.getName()));
+                dataFiles.addAll(Arrays.asList(children));
+            } else if (file.isFile()) {
+                dataFiles.add(file);
+            } else {
+                throw new FileNotFoundException("data file=" + file + " not found.");
+            }
+        }
+        return dataFiles.toArray(new File[dataFiles.size()]);
+    }
+
+    /*
+     * JDK9之后DirectByteBuffer.cleaner()被模块边界挡住，反射调用会失败，
+     * 改用jdk.unsupported模块导出的sun.misc.Unsafe.invokeCleaner；JDK8没有该方法，仍走cleaner()
+     */
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            final Method method = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafe = theUnsafe.get(null);
+            invokeCleaner = method;
+        } catch (Throwable t) {
+            // JDK8
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    /**
+     * 释放MappedByteBuffer<br/>
+     * 只能释放FileChannel.map直接返回的映射，不能是它的duplicate或slice
      *
      * @param buffer 需要被释放的映射缓存
      */
@@ -56,6 +225,14 @@ public final class LaserUtils {
         if (buffer == null) {
             return;
         }
+        if (null != INVOKE_CLEANER) {
+            try {
+                INVOKE_CLEANER.invoke(UNSAFE, buffer);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            return;
+        }
         AccessController.doPrivileged(new PrivilegedAction<Object>() {
             public Object run() {
                 try {
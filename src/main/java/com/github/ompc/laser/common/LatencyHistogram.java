@@ -0,0 +1,154 @@
+package com.github.ompc.laser.common;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 定长对数-线性延时直方图<br/>
+ * 小于32ns的值各占一个桶，之后每个2的幂区间等分成16个桶，相对误差不超过1/16，
+ * 覆盖到Long.MAX_VALUE只需要960个桶，内存固定<br/>
+ * 单写者：同一个直方图只能由一个线程记录，记录过程不分配对象，其他线程可以随时读取或合并
+ */
+public class LatencyHistogram implements LatencyRecorder {
+
+    /*
+     * 每个2的幂区间的桶数(2^SUB_BUCKET_BITS)
+     */
+    private final static int SUB_BUCKET_BITS = 4;
+    private final static int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /*
+     * 线性区间的桶数，小于该值的延时各占一个桶
+     */
+    private final static int LINEAR_BUCKETS = SUB_BUCKETS << 1;
+
+    /*
+     * 线性区间上界的指数
+     */
+    private final static int LINEAR_BITS = SUB_BUCKET_BITS + 1;
+
+    private final static int BUCKETS = LINEAR_BUCKETS + (Long.SIZE - 1 - LINEAR_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /*
+     * 最大值，只有写者更新
+     */
+    private volatile long max = 0;
+
+    @Override
+    public void record(long latencyNanos, long count) {
+        final long value = Math.max(0, latencyNanos);
+        final int idx = indexOf(value);
+        counts.lazySet(idx, counts.get(idx) + count);
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    /**
+     * 记录一次延时
+     *
+     * @param latencyNanos 延时(ns)
+     */
+    public void record(long latencyNanos) {
+        record(latencyNanos, 1);
+    }
+
+    /**
+     * 将另一个直方图的计数累加到当前直方图，用于汇总快照，当前直方图不能同时被记录
+     *
+     * @param other 另一个直方图
+     * @return 当前直方图
+     */
+    public LatencyHistogram add(LatencyHistogram other) {
+        for (int idx = 0; idx < BUCKETS; idx++) {
+            final long count = other.counts.get(idx);
+            if (count > 0) {
+                counts.lazySet(idx, counts.get(idx) + count);
+            }
+        }
+        max = Math.max(max, other.max);
+        return this;
+    }
+
+    /**
+     * @return 记录的总次数
+     */
+    public long getCount() {
+        long total = 0;
+        for (int idx = 0; idx < BUCKETS; idx++) {
+            total += counts.get(idx);
+        }
+        return total;
+    }
+
+    /**
+     * @return 最大延时(ns)
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * 计算分位数
+     *
+     * @param quantile 分位，[0,1]
+     * @return 分位延时(ns)，取所在桶的中点，没有记录时为0
+     */
+    public long percentile(double quantile) {
+        final long total = getCount();
+        if (total == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long cumulative = 0;
+        for (int idx = 0; idx < BUCKETS; idx++) {
+            cumulative += counts.get(idx);
+            if (cumulative >= rank) {
+                return Math.min(max, midValueOf(idx));
+            }
+        }
+        return max;
+    }
+
+    /*
+     * 延时所在的桶
+     */
+    private static int indexOf(long value) {
+        if (value < LINEAR_BUCKETS) {
+            return (int) value;
+        }
+        final int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        final int subIdx = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_BUCKETS + (exponent - LINEAR_BITS) * SUB_BUCKETS + subIdx;
+    }
+
+    /*
+     * 桶的中点
+     */
+    private static long midValueOf(int idx) {
+        if (idx < LINEAR_BUCKETS) {
+            return idx;
+        }
+        final int exponent = (idx - LINEAR_BUCKETS) / SUB_BUCKETS + LINEAR_BITS;
+        final int subIdx = (idx - LINEAR_BUCKETS) % SUB_BUCKETS;
+        final int shift = exponent - SUB_BUCKET_BITS;
+        final long lower = (long) (SUB_BUCKETS + subIdx) << shift;
+        return lower + ((1L << shift) >>> 1);
+    }
+
+    /**
+     * 汇总描述，单位us
+     */
+    @Override
+    public String toString() {
+        return String.format("count=%d,p50=%.1fus,p90=%.1fus,p99=%.1fus,p999=%.1fus,max=%.1fus",
+                getCount(),
+                percentile(0.50) / 1e3,
+                percentile(0.90) / 1e3,
+                percentile(0.99) / 1e3,
+                percentile(0.999) / 1e3,
+                getMax() / 1e3);
+    }
+
+}
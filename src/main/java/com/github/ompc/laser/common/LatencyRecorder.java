@@ -0,0 +1,17 @@
+package com.github.ompc.laser.common;
+
+/**
+ * 请求应答延时记录者<br/>
+ * 由各链接完成应答的线程调用，被多个链接共享的实现类需要线程安全
+ */
+public interface LatencyRecorder {
+
+    /**
+     * 记录一批请求的延时
+     *
+     * @param latencyNanos 请求到应答完成的耗时(ns)：客户端从发出到解码，服务端从收到到发出
+     * @param count        这一批的请求数
+     */
+    void record(long latencyNanos, long count);
+
+}
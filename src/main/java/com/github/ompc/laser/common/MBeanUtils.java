@@ -0,0 +1,81 @@
+package com.github.ompc.laser.common;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * MBean工具类<br/>
+ * 注册失败只记录日志，不影响传输
+ */
+public class MBeanUtils {
+
+    private static final Logger log = LoggerFactory.getLogger(MBeanUtils.class);
+
+    /*
+     * MBean的域
+     */
+    private static final String DOMAIN = "com.github.ompc.laser";
+
+    /**
+     * 生成ObjectName
+     *
+     * @param type 类型
+     * @param name 名称，为null时不带名称
+     * @return ObjectName，生成失败返回null
+     */
+    public static ObjectName objectName(String type, String name) {
+        try {
+            return new ObjectName(DOMAIN + ":type=" + type
+                    + (null == name ? "" : ",name=" + ObjectName.quote(name)));
+        } catch (JMException e) {
+            log.warn("illegal mbean name, type={},name={}", type, name, e);
+            return null;
+        }
+    }
+
+    /**
+     * 注册MBean，同名MBean已存在时先注销
+     *
+     * @param objectName ObjectName
+     * @param mbean      MBean
+     */
+    public static void register(ObjectName objectName, Object mbean) {
+        if (null == objectName) {
+            return;
+        }
+        final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (mBeanServer.isRegistered(objectName)) {
+                mBeanServer.unregisterMBean(objectName);
+            }
+            mBeanServer.registerMBean(mbean, objectName);
+        } catch (JMException e) {
+            log.warn("register mbean={} failed.", objectName, e);
+        }
+    }
+
+    /**
+     * 注销MBean
+     *
+     * @param objectName ObjectName
+     */
+    public static void unregister(ObjectName objectName) {
+        if (null == objectName) {
+            return;
+        }
+        final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (mBeanServer.isRegistered(objectName)) {
+                mBeanServer.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            log.warn("unregister mbean={} failed.", objectName, e);
+        }
+    }
+
+}
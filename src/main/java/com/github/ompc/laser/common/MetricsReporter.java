@@ -0,0 +1,84 @@
+package com.github.ompc.laser.common;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static java.lang.Thread.currentThread;
+
+/**
+ * 度量定期报告者<br/>
+ * 每隔intervalMs输出一次报告，停止时再输出最后一次，间隔为0时只在停止时输出
+ */
+public class MetricsReporter {
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final String name;
+    private final long intervalMs;
+
+    /*
+     * 报告动作
+     */
+    private final Runnable report;
+
+    private volatile boolean isRunning = true;
+    private Thread reporter;
+
+    public MetricsReporter(String name, long intervalMs, Runnable report) {
+        this.name = name;
+        this.intervalMs = intervalMs;
+        this.report = report;
+    }
+
+    /**
+     * 启动报告者
+     */
+    public void start() {
+        if (intervalMs <= 0) {
+            return;
+        }
+        reporter = new Thread(() -> {
+            final long intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMs);
+            long nextNanos = System.nanoTime() + intervalNanos;
+            while (isRunning) {
+                final long remainNanos = nextNanos - System.nanoTime();
+                if (remainNanos > 0) {
+                    LockSupport.parkNanos(this, remainNanos);
+                    continue;
+                }
+                report();
+                nextNanos += intervalNanos;
+            }
+        }, "MetricsReporter-" + name + "-daemon");
+        reporter.setDaemon(true);
+        reporter.start();
+    }
+
+    /**
+     * 停止报告者，并输出最后一次报告
+     */
+    public void stop() {
+        isRunning = false;
+        if (null != reporter) {
+            LockSupport.unpark(reporter);
+            try {
+                reporter.join();
+            } catch (InterruptedException e) {
+                currentThread().interrupt();
+            }
+        }
+        report();
+    }
+
+    private void report() {
+        try {
+            report.run();
+        } catch (RuntimeException e) {
+            log.warn("report metrics={} failed.", name, e);
+        }
+    }
+
+}
@@ -0,0 +1,88 @@
+package com.github.ompc.laser.common;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 请求时间线<br/>
+ * 生产者每记下一批请求(客户端发出、服务端收到)的累计请求数和时刻，消费者按完成的应答数量依次取出并计算延时<br/>
+ * 单生产者单消费者的定长环，满了就丢掉这一批的采样，不分配对象
+ */
+public class RequestTimeline {
+
+    private final int mask;
+
+    /*
+     * 每一批发出后的累计请求数和发出时刻
+     */
+    private final long[] counts;
+    private final long[] nanos;
+
+    /*
+     * 生产者写入位置和消费者读取位置
+     */
+    private final AtomicLong head = new AtomicLong(0);
+    private final AtomicLong tail = new AtomicLong(0);
+
+    /*
+     * 消费者已经计算过延时的请求数
+     */
+    private long polledCount = 0;
+
+    /**
+     * 构造请求时间线
+     *
+     * @param capacity 最多记录的批次数，必须是2的幂
+     */
+    public RequestTimeline(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be power of 2, capacity=" + capacity);
+        }
+        this.mask = capacity - 1;
+        this.counts = new long[capacity];
+        this.nanos = new long[capacity];
+    }
+
+    /**
+     * 生产者记录一批请求
+     *
+     * @param sentCount 累计请求数
+     * @param sentNanos 这一批请求的时刻
+     */
+    public void sent(long sentCount, long sentNanos) {
+        final long h = head.get();
+        if (h - tail.get() > mask) {
+            // 消费者跟不上，丢弃这一批的采样
+            return;
+        }
+        final int idx = (int) (h & mask);
+        counts[idx] = sentCount;
+        nanos[idx] = sentNanos;
+        head.lazySet(h + 1);
+    }
+
+    /**
+     * 消费者根据累计完成的应答数计算已完成批次的延时
+     *
+     * @param receivedCount 累计完成的应答数
+     * @param nowNanos      当前时刻
+     * @param recorder      延时记录者
+     */
+    public void received(long receivedCount, long nowNanos, LatencyRecorder recorder) {
+        long t = tail.get();
+        final long h = head.get();
+        while (t < h) {
+            final int idx = (int) (t & mask);
+            final long count = counts[idx];
+            if (count > receivedCount) {
+                break;
+            }
+            if (count > polledCount) {
+                recorder.record(nowNanos - nanos[idx], count - polledCount);
+                polledCount = count;
+            }
+            t++;
+        }
+        tail.lazySet(t);
+    }
+
+}
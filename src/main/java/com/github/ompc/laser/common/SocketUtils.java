@@ -1,6 +1,12 @@
 package com.github.ompc.laser.common;
 
+import com.github.ompc.laser.common.unix.UnixDomainSockets;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.channels.SocketChannel;
 
 /**
  * Socket工具类
@@ -22,4 +28,41 @@ public class SocketUtils {
                 + "]";
     }
 
+    /**
+     * 格式化链接输出，Unix域的SocketChannel没有对应的Socket
+     *
+     * @param socketChannel 链接
+     * @return 格式化后的信息
+     */
+    public static String format(SocketChannel socketChannel) {
+        try {
+            return "["
+                    + socketChannel.getLocalAddress()
+                    + "->"
+                    + socketChannel.getRemoteAddress()
+                    + "]";
+        } catch (IOException e) {
+            // 已关闭的TCP链接仍可从Socket取到地址
+            try {
+                return format(socketChannel.socket());
+            } catch (UnsupportedOperationException uoe) {
+                return "[closed]";
+            }
+        }
+    }
+
+    /**
+     * 解析服务端地址
+     *
+     * @param host 主机，以unix:开头时为Unix域套接字文件路径
+     * @param port 端口，Unix域套接字时不使用
+     * @return 地址
+     * @throws IOException 当前JDK不支持Unix域套接字
+     */
+    public static SocketAddress address(String host, String port) throws IOException {
+        return host.startsWith(UnixDomainSockets.SCHEME)
+                ? UnixDomainSockets.get().address(host.substring(UnixDomainSockets.SCHEME.length()))
+                : new InetSocketAddress(host, Integer.valueOf(port));
+    }
+
 }
@@ -24,6 +24,12 @@ public class CompressReadableByteChannel implements ReadableByteChannel {
     private DecodeState state = DecodeState.READ_LEN;
     private int compressLength;
 
+    /*
+     * 从底层读到的压缩字节数和解压后交出的字节数，只由读线程更新
+     */
+    private volatile long compressedBytes;
+    private volatile long unCompressedBytes;
+
 
     public CompressReadableByteChannel(ReadableByteChannel readableByteChannel, int size) {
         this.readableByteChannel = readableByteChannel;
@@ -36,7 +42,10 @@ public class CompressReadableByteChannel implements ReadableByteChannel {
     public int read(ByteBuffer dst) throws IOException {
         int count = 0;
 
-        readableByteChannel.read(compressBuffer);
+        final int readCount = readableByteChannel.read(compressBuffer);
+        if (readCount > 0) {
+            compressedBytes += readCount;
+        }
         compressBuffer.flip();
 
         boolean hasMore = true;
@@ -88,11 +97,30 @@ public class CompressReadableByteChannel implements ReadableByteChannel {
 
         compressBuffer.compact();
 
+        // 底层已关闭且没有剩余数据可交出时返回-1
+        if (readCount < 0
+                && count == 0) {
+            return -1;
+        }
 
-
+        unCompressedBytes += count;
         return count;
     }
 
+    /**
+     * @return 从底层读到的压缩字节数
+     */
+    public long getCompressedBytes() {
+        return compressedBytes;
+    }
+
+    /**
+     * @return 解压后交出的字节数
+     */
+    public long getUnCompressedBytes() {
+        return unCompressedBytes;
+    }
+
     @Override
     public boolean isOpen() {
         return readableByteChannel.isOpen();
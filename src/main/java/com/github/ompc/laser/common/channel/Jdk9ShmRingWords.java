@@ -0,0 +1,49 @@
+package com.github.ompc.laser.common.channel;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * JDK9之后的序号字访问器，通过字节缓存视图的VarHandle读写映射内存<br/>
+ * 序号字都按8字节对齐(映射起点按页对齐)，满足VarHandle原子访问的要求<br/>
+ * 按JDK11单独编译，只能通过ShmRingWords反射加载，其他类不要直接引用
+ */
+class Jdk9ShmRingWords extends ShmRingWords {
+
+    private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    private final ByteBuffer mapped;
+
+    Jdk9ShmRingWords(ByteBuffer mapped) {
+        this.mapped = mapped;
+    }
+
+    @Override
+    long getLong(int offset) {
+        return (long) LONG.get(mapped, offset);
+    }
+
+    @Override
+    long getLongVolatile(int offset) {
+        return (long) LONG.getVolatile(mapped, offset);
+    }
+
+    @Override
+    void putLongOrdered(int offset, long value) {
+        LONG.setRelease(mapped, offset, value);
+    }
+
+    @Override
+    int getIntVolatile(int offset) {
+        return (int) INT.getVolatile(mapped, offset);
+    }
+
+    @Override
+    void putIntVolatile(int offset, int value) {
+        INT.setVolatile(mapped, offset, value);
+    }
+
+}
@@ -0,0 +1,298 @@
+package com.github.ompc.laser.common.channel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.github.ompc.laser.common.LaserUtils.unmap;
+import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * 共享内存环形缓冲通道<br/>
+ * 同一台机器上的两端映射同一个文件(一般在/dev/shm下)，单生产者单消费者，
+ * 生产者推进写序号、消费者推进读序号，序号只增不减，两者之差就是环中的数据量<br/>
+ * 文件布局：[MAGIC(4B)][CAPACITY(4B)]...[WRITE_SEQ(8B)]...[READ_SEQ(8B)]...[CLOSED(4B)]...[DATA(CAPACITY)]，
+ * 几个序号各占一个缓存行，避免两端互相伪共享<br/>
+ * 两端可能在不同进程，无法互相唤醒，等待时先自旋再逐步加长休眠<br/>
+ * 环形缓冲文件由创建的一端在关闭时删除
+ */
+public class ShmRingChannel implements ReadableByteChannel, WritableByteChannel {
+
+    private final static int MAGIC = 0x0CFF5348;
+
+    /*
+     * 头部各字段的位置，序号各占一个缓存行
+     */
+    private final static int MAGIC_OFFSET = 0;
+    private final static int CAPACITY_OFFSET = 4;
+    private final static int WRITE_SEQ_OFFSET = 64;
+    private final static int READ_SEQ_OFFSET = 128;
+    private final static int CLOSED_OFFSET = 192;
+    private final static int HEADER_SIZE = 256;
+
+    /*
+     * 等待时先自旋的次数，之后从最短休眠开始翻倍直到最长休眠
+     */
+    private final static int SPIN_TIMES = 1000;
+    private final static long MIN_PARK_NANOS = 1000L;
+    private final static long MAX_PARK_NANOS = 100000L;
+
+    private final File file;
+    private final MappedByteBuffer mapped;
+
+    /*
+     * 是否由本端创建，创建者关闭时删除文件
+     */
+    private final boolean isCreator;
+
+    /*
+     * 头部的序号字
+     */
+    private final ShmRingWords words;
+
+    /*
+     * 数据区视图，只由本端的读或写线程使用
+     */
+    private final ByteBuffer data;
+    private final int capacity;
+    private final int mask;
+
+    private volatile boolean isOpen = true;
+
+    private ShmRingChannel(File file, MappedByteBuffer mapped, boolean isCreator) {
+        this.file = file;
+        this.mapped = mapped;
+        this.isCreator = isCreator;
+        this.words = ShmRingWords.create(mapped);
+        this.capacity = mapped.getInt(CAPACITY_OFFSET);
+        this.mask = capacity - 1;
+        mapped.position(HEADER_SIZE);
+        this.data = mapped.slice();
+    }
+
+    /**
+     * 创建环形缓冲文件并映射
+     *
+     * @param file     文件
+     * @param capacity 容量，必须是2的幂
+     * @return 环形缓冲通道
+     * @throws IOException 创建失败
+     */
+    public static ShmRingChannel create(File file, int capacity) throws IOException {
+        if (capacity <= 0
+                || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity=" + capacity + " must be power of 2.");
+        }
+        try (final RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(HEADER_SIZE + capacity);
+            final MappedByteBuffer mapped = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + capacity);
+            mapped.putInt(CAPACITY_OFFSET, capacity);
+            mapped.putInt(MAGIC_OFFSET, MAGIC);
+            return new ShmRingChannel(file, mapped, true);
+        }
+    }
+
+    /**
+     * 映射另一端已经创建好的环形缓冲文件<br/>
+     * 文件路径来自对端，只接受共享内存目录下已经存在的文件，头部校验通过后才映射整个环
+     *
+     * @param file 文件
+     * @param dir  共享内存目录
+     * @return 环形缓冲通道
+     * @throws IOException 文件不在共享内存目录下、不存在或不是环形缓冲文件
+     */
+    public static ShmRingChannel open(File file, File dir) throws IOException {
+        final Path path = file.getCanonicalFile().toPath();
+        if (!path.startsWith(dir.getCanonicalFile().toPath())
+                || path.getNameCount() <= dir.getCanonicalFile().toPath().getNameCount()) {
+            throw new IOException("shm ring file=" + file + " was not in dir=" + dir);
+        }
+        // 不创建文件，也不跟随规范化之后才出现的符号链接
+        try (final FileChannel fileChannel = FileChannel.open(path, READ, WRITE, NOFOLLOW_LINKS)) {
+            final long length = fileChannel.size();
+            final ByteBuffer header = ByteBuffer.allocate(CAPACITY_OFFSET + Integer.BYTES);
+            if (length < HEADER_SIZE
+                    || fileChannel.read(header, 0) != header.capacity()
+                    || header.getInt(MAGIC_OFFSET) != MAGIC) {
+                throw new IOException("illegal shm ring file=" + file);
+            }
+            final int capacity = header.getInt(CAPACITY_OFFSET);
+            if (capacity <= 0
+                    || Integer.bitCount(capacity) != 1
+                    || capacity + (long) HEADER_SIZE != length) {
+                throw new IOException("illegal shm ring file=" + file + ", capacity=" + capacity);
+            }
+            final MappedByteBuffer mapped = fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+            return new ShmRingChannel(path.toFile(), mapped, false);
+        }
+    }
+
+    /**
+     * 读取环中已有的数据，环为空时不等待
+     *
+     * @param dst 目标缓存
+     * @return 读到的字节数，环为空且已关闭时返回-1
+     * @throws IOException 通道已关闭
+     */
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        checkOpen();
+        final long readSeq = words.getLong(READ_SEQ_OFFSET);
+        final long writeSeq = words.getLongVolatile(WRITE_SEQ_OFFSET);
+        final int available = (int) (writeSeq - readSeq);
+        if (available == 0) {
+            return isPeerClosed() && words.getLongVolatile(WRITE_SEQ_OFFSET) == readSeq ? -1 : 0;
+        }
+
+        final int count = Math.min(available, dst.remaining());
+        final int index = (int) (readSeq & mask);
+        final int first = Math.min(count, capacity - index);
+        data.limit(index + first).position(index);
+        dst.put(data);
+        if (count > first) {
+            data.limit(count - first).position(0);
+            dst.put(data);
+        }
+        words.putLongOrdered(READ_SEQ_OFFSET, readSeq + count);
+        return count;
+    }
+
+    /**
+     * 写入数据，环满时等待对端腾出空间
+     *
+     * @param src 源缓存
+     * @return 写入的字节数
+     * @throws IOException 任何一端已关闭
+     */
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        checkOpen();
+        final long writeSeq = words.getLong(WRITE_SEQ_OFFSET);
+        int free = 0;
+        for (int times = 0; src.hasRemaining(); times++) {
+            free = capacity - (int) (writeSeq - words.getLongVolatile(READ_SEQ_OFFSET));
+            if (free > 0) {
+                break;
+            }
+            if (isPeerClosed()) {
+                throw new ClosedChannelException();
+            }
+            backoff(times);
+        }
+
+        final int count = Math.min(free, src.remaining());
+        if (count == 0) {
+            return 0;
+        }
+        final int index = (int) (writeSeq & mask);
+        final int first = Math.min(count, capacity - index);
+        final int srcLimit = src.limit();
+        data.clear().position(index);
+        src.limit(src.position() + first);
+        data.put(src);
+        if (count > first) {
+            data.clear();
+            src.limit(src.position() + count - first);
+            data.put(src);
+        }
+        src.limit(srcLimit);
+        words.putLongOrdered(WRITE_SEQ_OFFSET, writeSeq + count);
+        return count;
+    }
+
+    /**
+     * 等待环中有数据可读
+     *
+     * @param timeoutNanos 最长等待时间
+     * @return 有数据可读或对端已关闭时返回true，超时返回false
+     * @throws IOException 通道已关闭
+     */
+    public boolean awaitReadable(long timeoutNanos) throws IOException {
+        checkOpen();
+        final long readSeq = words.getLong(READ_SEQ_OFFSET);
+        final long deadline = System.nanoTime() + timeoutNanos;
+        for (int times = 0; ; times++) {
+            if (words.getLongVolatile(WRITE_SEQ_OFFSET) != readSeq
+                    || isPeerClosed()) {
+                return true;
+            }
+            if (times >= SPIN_TIMES
+                    && System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            backoff(times);
+        }
+    }
+
+    /*
+     * 先自旋，之后休眠时间逐次翻倍
+     */
+    private static void backoff(int times) {
+        if (times < SPIN_TIMES) {
+            return;
+        }
+        final int shift = Math.min(times - SPIN_TIMES, 7);
+        LockSupport.parkNanos(Math.min(MAX_PARK_NANOS, MIN_PARK_NANOS << shift));
+    }
+
+    private void checkOpen() throws ClosedChannelException {
+        if (!isOpen) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    /**
+     * @return 是否有一端已标记关闭
+     */
+    public boolean isPeerClosed() {
+        return words.getIntVolatile(CLOSED_OFFSET) != 0;
+    }
+
+    /**
+     * 标记关闭，通知对端不会再有读写，不释放映射，可以在其他线程调用
+     */
+    public synchronized void markClosed() {
+        if (isOpen) {
+            words.putIntVolatile(CLOSED_OFFSET, 1);
+        }
+    }
+
+    /**
+     * @return 环形缓冲文件
+     */
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return isOpen;
+    }
+
+    /**
+     * 标记关闭并释放映射，创建者同时删除文件，只能由使用本通道读写的线程调用
+     */
+    @Override
+    public synchronized void close() {
+        if (!isOpen) {
+            return;
+        }
+        markClosed();
+        isOpen = false;
+        unmap(mapped);
+        if (isCreator) {
+            file.delete();
+        }
+    }
+
+}
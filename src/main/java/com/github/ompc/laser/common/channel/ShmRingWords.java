@@ -0,0 +1,137 @@
+package com.github.ompc.laser.common.channel;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+/**
+ * 共享内存环形缓冲文件头部的序号字<br/>
+ * 两端可能在不同进程，序号必须按volatile/ordered语义直接读写映射内存<br/>
+ * JDK9之后通过VarHandle访问(Jdk9ShmRingWords按JDK11单独编译，反射加载以兼容JDK8运行)，
+ * JDK8上没有VarHandle，和LaserUtils一样通过反射拿到sun.misc.Unsafe按地址访问
+ */
+abstract class ShmRingWords {
+
+    /**
+     * 创建映射的序号字访问器
+     *
+     * @param mapped 整个环形缓冲文件的映射，序号字按本机字节序存放
+     * @return 序号字访问器
+     */
+    static ShmRingWords create(ByteBuffer mapped) {
+        try {
+            Class.forName("java.lang.invoke.VarHandle");
+            return (ShmRingWords) Class.forName("com.github.ompc.laser.common.channel.Jdk9ShmRingWords")
+                    .getDeclaredConstructor(ByteBuffer.class).newInstance(mapped);
+        } catch (Throwable t) {
+            return new UnsafeShmRingWords(mapped);
+        }
+    }
+
+    /**
+     * 普通读，只用于本端自己推进的序号
+     */
+    abstract long getLong(int offset);
+
+    abstract long getLongVolatile(int offset);
+
+    /**
+     * 有序写，之前对数据区的写入先于序号对另一端可见
+     */
+    abstract void putLongOrdered(int offset, long value);
+
+    abstract int getIntVolatile(int offset);
+
+    abstract void putIntVolatile(int offset, int value);
+
+    /**
+     * JDK8的实现，Unsafe及其方法都通过反射取得，不在编译期引用内部API
+     */
+    private static class UnsafeShmRingWords extends ShmRingWords {
+
+        private static final MethodHandle GET_LONG;
+        private static final MethodHandle GET_LONG_VOLATILE;
+        private static final MethodHandle PUT_ORDERED_LONG;
+        private static final MethodHandle GET_INT_VOLATILE;
+        private static final MethodHandle PUT_INT_VOLATILE;
+        private static final Field ADDRESS;
+
+        static {
+            try {
+                final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                final Object unsafe = theUnsafe.get(null);
+                final MethodHandles.Lookup lookup = MethodHandles.lookup();
+                GET_LONG = lookup.unreflect(unsafeClass.getMethod("getLong", long.class)).bindTo(unsafe);
+                GET_LONG_VOLATILE = lookup.unreflect(unsafeClass.getMethod("getLongVolatile", Object.class, long.class)).bindTo(unsafe);
+                PUT_ORDERED_LONG = lookup.unreflect(unsafeClass.getMethod("putOrderedLong", Object.class, long.class, long.class)).bindTo(unsafe);
+                GET_INT_VOLATILE = lookup.unreflect(unsafeClass.getMethod("getIntVolatile", Object.class, long.class)).bindTo(unsafe);
+                PUT_INT_VOLATILE = lookup.unreflect(unsafeClass.getMethod("putIntVolatile", Object.class, long.class, int.class)).bindTo(unsafe);
+                ADDRESS = Buffer.class.getDeclaredField("address");
+                ADDRESS.setAccessible(true);
+            } catch (Exception e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        private final long address;
+
+        UnsafeShmRingWords(ByteBuffer mapped) {
+            try {
+                this.address = ADDRESS.getLong(mapped);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        long getLong(int offset) {
+            try {
+                return (long) GET_LONG.invokeExact(address + offset);
+            } catch (Throwable t) {
+                throw new IllegalStateException(t);
+            }
+        }
+
+        @Override
+        long getLongVolatile(int offset) {
+            try {
+                return (long) GET_LONG_VOLATILE.invokeExact((Object) null, address + offset);
+            } catch (Throwable t) {
+                throw new IllegalStateException(t);
+            }
+        }
+
+        @Override
+        void putLongOrdered(int offset, long value) {
+            try {
+                PUT_ORDERED_LONG.invokeExact((Object) null, address + offset, value);
+            } catch (Throwable t) {
+                throw new IllegalStateException(t);
+            }
+        }
+
+        @Override
+        int getIntVolatile(int offset) {
+            try {
+                return (int) GET_INT_VOLATILE.invokeExact((Object) null, address + offset);
+            } catch (Throwable t) {
+                throw new IllegalStateException(t);
+            }
+        }
+
+        @Override
+        void putIntVolatile(int offset, int value) {
+            try {
+                PUT_INT_VOLATILE.invokeExact((Object) null, address + offset, value);
+            } catch (Throwable t) {
+                throw new IllegalStateException(t);
+            }
+        }
+
+    }
+
+}
@@ -1,6 +1,9 @@
 package com.github.ompc.laser.common.datasource;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static com.github.ompc.laser.common.LaserUtils.reverse;
 
 /**
  * 数据持久化
@@ -17,6 +20,26 @@ public interface DataPersistence {
      */
     void putRow(Row row) throws IOException;
 
+    /**
+     * 直接从接收缓存中保存一行数据<br/>
+     * 数据段从src当前位置开始，保存时逆序，完成后src的位置前进length<br/>
+     * 实现类应直接拷贝到自己的缓存中，避免为每行分配对象
+     *
+     * @param lineNum 行号
+     * @param offset  输出偏移量，未知时为-1
+     * @param src     接收缓存
+     * @param length  数据段长度
+     * @throws IOException
+     */
+    default void putRow(long lineNum, long offset, ByteBuffer src, int length) throws IOException {
+        final byte[] data = new byte[length];
+        src.get(data);
+        reverse(data);
+        final Row row = new Row(lineNum, data);
+        row.setOffset(offset);
+        putRow(row);
+    }
+
     /**
      * 初始化数据持久化
      *
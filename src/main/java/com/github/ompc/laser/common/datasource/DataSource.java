@@ -18,6 +18,24 @@ public interface DataSource {
      */
     Row getRow(Row row) throws IOException;
 
+    /**
+     * 获取数据源总行数，到达EOF之前或不支持时返回-1
+     *
+     * @return 总行数
+     */
+    default long getTotalRows() {
+        return -1;
+    }
+
+    /**
+     * 获取数据源对应的总输出字节数，到达EOF之前或不支持时返回-1
+     *
+     * @return 总输出字节数
+     */
+    default long getTotalBytes() {
+        return -1;
+    }
+
     /**
      * 初始化数据源
      *
@@ -0,0 +1,22 @@
+package com.github.ompc.laser.common.datasource;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * 可按行号随机读取的数据源
+ */
+public interface RangeDataSource extends DataSource {
+
+    /**
+     * 读取从startLineNum开始的连续多行<br/>
+     * 与getRow互不影响，不会改变数据源的发放进度，可以被多个线程同时调用
+     *
+     * @param startLineNum 开始行号
+     * @param count        行数
+     * @return 处理后的行(带输出偏移量)，超出数据源末尾的行不返回
+     * @throws IOException 读取失败
+     */
+    List<Row> getRange(long startLineNum, int count) throws IOException;
+
+}
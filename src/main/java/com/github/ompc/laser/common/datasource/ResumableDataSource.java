@@ -0,0 +1,20 @@
+package com.github.ompc.laser.common.datasource;
+
+import java.io.IOException;
+
+/**
+ * 可续传的数据源
+ */
+public interface ResumableDataSource extends DataSource {
+
+    /**
+     * 创建一个从指定行开始读取的新数据源<br/>
+     * 新数据源需要调用者初始化和销毁，当前数据源不受影响
+     *
+     * @param lineNum 开始行号
+     * @return 从lineNum开始的数据源
+     * @throws IOException 创建失败
+     */
+    ResumableDataSource resume(long lineNum) throws IOException;
+
+}
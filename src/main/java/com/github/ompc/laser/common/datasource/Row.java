@@ -1,5 +1,7 @@
 package com.github.ompc.laser.common.datasource;
 
+import java.nio.ByteBuffer;
+
 /**
  * 一行数据
  * Created by vlinux on 14-9-21.
@@ -9,30 +11,54 @@ public class Row {
     /*
      * 行号
      */
-    private int lineNum;
+    private long lineNum;
+
+    /*
+     * 输出偏移量<br/>
+     * 该行在输出文件中的起始位置，未知时为-1
+     */
+    private long offset = -1;
 
     /*
      * 数据内容
      */
     private byte[] data;
 
+    /*
+     * 零拷贝取行时指向数据源内存的切片，否则为null
+     */
+    private ByteBuffer slice;
+
+    /*
+     * 切片所属的数据源内存块，释放时使用
+     */
+    private Object sliceOwner;
+
     public Row() {
         //
     }
 
-    public Row(int lineNum, byte[] data) {
+    public Row(long lineNum, byte[] data) {
         this.lineNum = lineNum;
         this.data = data;
     }
 
-    public int getLineNum() {
+    public long getLineNum() {
         return lineNum;
     }
 
-    public void setLineNum(int lineNum) {
+    public void setLineNum(long lineNum) {
         this.lineNum = lineNum;
     }
 
+    public long getOffset() {
+        return offset;
+    }
+
+    public void setOffset(long offset) {
+        this.offset = offset;
+    }
+
     public byte[] getData() {
         return data;
     }
@@ -40,4 +66,17 @@ public class Row {
     public void setData(byte[] data) {
         this.data = data;
     }
+
+    public ByteBuffer getSlice() {
+        return slice;
+    }
+
+    public Object getSliceOwner() {
+        return sliceOwner;
+    }
+
+    public void setSlice(ByteBuffer slice, Object sliceOwner) {
+        this.slice = slice;
+        this.sliceOwner = sliceOwner;
+    }
 }
@@ -0,0 +1,30 @@
+package com.github.ompc.laser.common.datasource;
+
+import java.io.IOException;
+
+/**
+ * 可零拷贝取行的数据源<br/>
+ * 取到的行不拷贝数据，而是指向数据源堆外内存的切片，发送完成后必须释放，否则切片所在的内存块不会被复用
+ */
+public interface SliceDataSource extends DataSource {
+
+    /**
+     * 获取一行，不拷贝数据<br/>
+     * 切片的内容为[LINENUM(8B)][OFFSET(8B)][LEN(4B)][DATA]
+     *
+     * @param row    行，取到时设置行号、输出偏移量和切片，不设置数据；到达EOF时行号为-1
+     * @param isWait 下一行还没准备好时是否等待；手上还有没释放的行时必须传false，
+     *               否则可能等待这些行所在的内存块被复用而永远等不到
+     * @return 取到的行，不等待且下一行还没准备好时返回null
+     * @throws IOException 读取失败
+     */
+    Row getRowSlice(Row row, boolean isWait) throws IOException;
+
+    /**
+     * 释放行的切片，释放后不能再访问切片
+     *
+     * @param row 通过getRowSlice取到的行
+     */
+    void release(Row row);
+
+}
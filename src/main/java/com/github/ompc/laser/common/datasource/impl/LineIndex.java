@@ -0,0 +1,74 @@
+package com.github.ompc.laser.common.datasource.impl;
+
+import java.util.Arrays;
+
+/**
+ * 稀疏行索引<br/>
+ * 每隔STRIDE行记录一次该行在输入文件和输出文件中的起始位置，
+ * 由解析数据文件的页面切换者顺序追加，续传时用于定位最近的起点
+ */
+public class LineIndex {
+
+    /*
+     * 索引间隔行数
+     */
+    public final static int STRIDE = 4096;
+
+    /*
+     * 输入偏移量
+     */
+    private long[] inputOffsets = new long[1024];
+
+    /*
+     * 输出偏移量
+     */
+    private long[] outputOffsets = new long[1024];
+
+    /*
+     * 已索引的条目数，第i条对应第i*STRIDE行
+     */
+    private int size = 0;
+
+    /**
+     * 记录一行的起始位置，只有恰好是下一个索引点的行才会被记录
+     *
+     * @param lineNum      行号
+     * @param inputOffset  该行在输入文件中的起始位置
+     * @param outputOffset 该行在输出文件中的起始位置
+     */
+    public void record(long lineNum, long inputOffset, long outputOffset) {
+        // 页面切换者每解析一行都会调用，绝大多数行不是索引点，不必加锁
+        if (lineNum % STRIDE != 0) {
+            return;
+        }
+        append(lineNum, inputOffset, outputOffset);
+    }
+
+    private synchronized void append(long lineNum, long inputOffset, long outputOffset) {
+        if (lineNum != (long) size * STRIDE) {
+            return;
+        }
+        if (size == inputOffsets.length) {
+            inputOffsets = Arrays.copyOf(inputOffsets, size * 2);
+            outputOffsets = Arrays.copyOf(outputOffsets, size * 2);
+        }
+        inputOffsets[size] = inputOffset;
+        outputOffsets[size] = outputOffset;
+        size++;
+    }
+
+    /**
+     * 查找不超过lineNum的最近索引点
+     *
+     * @param lineNum 行号
+     * @return [行号, 输入偏移量, 输出偏移量]，尚无任何索引时返回第0行
+     */
+    public synchronized long[] floor(long lineNum) {
+        final int idx = (int) Math.min(lineNum / STRIDE, size - 1);
+        if (idx < 0) {
+            return new long[]{0, 0, 0};
+        }
+        return new long[]{(long) idx * STRIDE, inputOffsets[idx], outputOffsets[idx]};
+    }
+
+}
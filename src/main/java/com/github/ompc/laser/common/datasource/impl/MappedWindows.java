@@ -0,0 +1,256 @@
+package com.github.ompc.laser.common.datasource.impl;
+
+import com.github.ompc.laser.common.jfr.EventRecorder;
+import com.github.ompc.laser.common.mmap.Mapping;
+import com.github.ompc.laser.common.mmap.MemoryMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import static com.github.ompc.laser.common.jfr.EventRecorder.Type.MAP;
+import static com.github.ompc.laser.common.jfr.EventRecorder.Type.UNMAP;
+import static java.lang.Thread.currentThread;
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+
+/**
+ * 映射窗口预读者<br/>
+ * 把首尾相接的数据文件从指定的逻辑偏移量开始切成固定大小的窗口，窗口不跨文件，空文件被跳过<br/>
+ * 预读线程提前映射并逐页访问(load)之后的若干个窗口，解析者按顺序取用，用完即释放，顺序解析时不再等待磁盘<br/>
+ * 预读深度为0时不启动预读线程，取用时才同步映射<br/>
+ * 窗口大小不超过映射器的单个映射上限，超过2GB的窗口按分块交给解析者
+ */
+class MappedWindows {
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final static EventRecorder events = EventRecorder.get();
+
+    /*
+     * 预读线程放入队列的结束标记
+     */
+    private final static Object END = new Object();
+
+    /**
+     * 映射窗口
+     */
+    static class Window {
+
+        /*
+         * 所在的数据文件
+         */
+        final int fileIdx;
+
+        /*
+         * 窗口映射
+         */
+        final Mapping mapping;
+
+        /*
+         * 下一个交给解析者的分块
+         */
+        private int chunkIdx = 0;
+
+        Window(int fileIdx, Mapping mapping) {
+            this.fileIdx = fileIdx;
+            this.mapping = mapping;
+        }
+
+        /**
+         * 取窗口的下一个分块
+         *
+         * @return 下一个分块，窗口已解析完时返回null
+         */
+        ByteBuffer nextChunk() {
+            return chunkIdx < mapping.getChunkCount()
+                    ? mapping.getChunk(chunkIdx++)
+                    : null;
+        }
+
+    }
+
+    private final File[] dataFiles;
+    private final long[] fileStarts;
+    private final long windowSize;
+    private final int depth;
+    private final MemoryMapper mapper = MemoryMapper.get();
+
+    /*
+     * 下一个窗口的逻辑偏移量，由预读线程或同步取用者推进
+     */
+    private long nextOffset;
+
+    /*
+     * 正在映射的文件及其下标，只由预读线程或同步取用者访问
+     */
+    private int channelIdx = -1;
+    private FileChannel fileChannel;
+
+    /*
+     * 预读好的窗口，异常或结束标记
+     */
+    private final BlockingQueue<Object> queue;
+    private Thread reader;
+
+    /**
+     * 构造映射窗口预读者
+     *
+     * @param dataFiles  数据文件，按顺序首尾相接
+     * @param fileStarts 每个数据文件在逻辑文件中的起始位置，最后一项为逻辑文件整体大小
+     * @param fromOffset 开始的逻辑偏移量
+     * @param windowSize 窗口大小，超过映射器的单个映射上限时按上限映射
+     * @param depth      预读深度，除了正在解析的窗口之外最多预读几个窗口
+     */
+    MappedWindows(File[] dataFiles, long[] fileStarts, long fromOffset, long windowSize, int depth) {
+        this.dataFiles = dataFiles;
+        this.fileStarts = fileStarts;
+        this.nextOffset = fromOffset;
+        this.windowSize = Math.min(windowSize, mapper.getMaxMappingSize());
+        this.depth = depth;
+        this.queue = depth > 0 ? new ArrayBlockingQueue<>(depth) : null;
+    }
+
+    /**
+     * 启动预读线程
+     */
+    void start() {
+        if (null == queue) {
+            return;
+        }
+        reader = new Thread(() -> {
+            try {
+                Window window;
+                while (null != (window = map())) {
+                    try {
+                        queue.put(window);
+                    } catch (InterruptedException e) {
+                        release(window);
+                        return;
+                    }
+                }
+                queue.put(END);
+            } catch (IOException ioe) {
+                try {
+                    queue.put(ioe);
+                } catch (InterruptedException e) {
+                    // 已关闭，没人再取
+                }
+            } catch (InterruptedException e) {
+                // 关闭时不再需要结束标记
+            } finally {
+                closeChannel();
+            }
+        }, "PageDataSource-READAHEAD-daemon");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * 取下一个窗口，预读还没完成时等待
+     *
+     * @return 下一个窗口，没有更多窗口时返回null
+     * @throws IOException          映射失败
+     * @throws InterruptedException 等待被中断
+     */
+    Window next() throws IOException, InterruptedException {
+        if (null == queue) {
+            return map();
+        }
+        final Object head = queue.take();
+        if (head == END) {
+            // 放回去，之后再取仍然是结束
+            queue.put(END);
+            return null;
+        }
+        if (head instanceof IOException) {
+            queue.put(head);
+            throw (IOException) head;
+        }
+        return (Window) head;
+    }
+
+    /**
+     * 释放用完的窗口
+     *
+     * @param window 窗口
+     */
+    void release(Window window) {
+        final Object unmapEvent = events.begin(UNMAP);
+        window.mapping.close();
+        events.commitRegion(unmapEvent, dataFiles[window.fileIdx].getName(), -1, window.mapping.size());
+    }
+
+    /**
+     * 停止预读并释放预读好但还没取用的窗口
+     */
+    void close() {
+        if (null == reader) {
+            closeChannel();
+            return;
+        }
+        reader.interrupt();
+        try {
+            reader.join();
+        } catch (InterruptedException e) {
+            currentThread().interrupt();
+        }
+        Object head;
+        while (null != (head = queue.poll())) {
+            if (head instanceof Window) {
+                release((Window) head);
+            }
+        }
+    }
+
+    /*
+     * 映射并加载下一个窗口，没有更多窗口时返回null
+     */
+    private Window map() throws IOException {
+
+        final long fileSize = fileStarts[dataFiles.length];
+        if (nextOffset >= fileSize) {
+            return null;
+        }
+
+        int fileIdx = Math.max(0, channelIdx);
+        while (nextOffset >= fileStarts[fileIdx + 1]) {
+            fileIdx++;
+        }
+        if (fileIdx != channelIdx) {
+            closeChannel();
+            fileChannel = new RandomAccessFile(dataFiles[fileIdx], "r").getChannel();
+            channelIdx = fileIdx;
+        }
+
+        final long localOffset = nextOffset - fileStarts[fileIdx];
+        final long length = Math.min(windowSize, fileStarts[fileIdx + 1] - nextOffset);
+
+        final Object mapEvent = events.begin(MAP);
+        final Mapping mapping = mapper.map(fileChannel, READ_ONLY, localOffset, length);
+        mapping.load();
+        events.commitRegion(mapEvent, dataFiles[fileIdx].getName(), localOffset, length);
+
+        nextOffset += length;
+        return new Window(fileIdx, mapping);
+
+    }
+
+    private void closeChannel() {
+        if (null == fileChannel) {
+            return;
+        }
+        try {
+            fileChannel.close();
+        } catch (IOException e) {
+            log.debug("close file={} failed.", dataFiles[channelIdx], e);
+        }
+        fileChannel = null;
+    }
+
+}
@@ -1,32 +1,162 @@
 package com.github.ompc.laser.common.datasource.impl;
 
-import com.github.ompc.laser.common.datasource.DataSource;
+import com.github.ompc.laser.common.datasource.RangeDataSource;
 import com.github.ompc.laser.common.datasource.Row;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * 调试用数据源
+ * 调试用数据源<br/>
+ * 不访问磁盘，按行号递增发放指定行数的数据，到达行数后返回EOF<br/>
+ * 行数据在初始化时按种子预先生成到行池中，第n行取行池中的第(n % 行池大小)行，
+ * 行长在[最小行长,最大行长]内均匀分布，发放过程不分配对象<br/>
+ * 行池按行号循环使用，输出偏移量可由行号直接算出，多线程发放时只需要一次原子自增
  * Created by vlinux on 14/10/21.
  */
-public class MockDataSource implements DataSource {
+public class MockDataSource implements RangeDataSource {
 
     private final Logger log = LoggerFactory.getLogger(getClass());
-    private final byte[] MOCK_DATA = "abCdefGhijabCdefGhijabCdefGhijabCdefGhijabCdefGhijabCdefGhijabCdefGhijabCdefGhijabCdefGhijabCdefGhijabCdefGhijabCdefGhij".getBytes();
+
+    /*
+     * 行池大小，必须是2的幂
+     */
+    private final static int POOL_ROWS = 1 << 12;
+    private final static int POOL_MASK = POOL_ROWS - 1;
+
+    /*
+     * 行分隔符\r\n的长度
+     */
+    private final static int LINE_DELIMITER_LENGTH = 2;
+
+    private final static Row EMPTY_ROW = new Row(-1, new byte[0]);
+
+    private final long rows;
+    private final int minLength;
+    private final int maxLength;
+    private final long seed;
+
+    /*
+     * 预先生成的行池
+     */
+    private final byte[][] pool = new byte[POOL_ROWS][];
+
+    /*
+     * 行池内前i行数据的累计长度，最后一项为整个行池的数据长度
+     */
+    private final long[] poolOffsets = new long[POOL_ROWS + 1];
+
+    /*
+     * 下一个待发放的行号
+     */
+    private final AtomicLong lineCounter = new AtomicLong(0);
+
+    /**
+     * 构造调试用数据源
+     *
+     * @param rows      总行数
+     * @param minLength 最小行长
+     * @param maxLength 最大行长
+     * @param seed      生成行池的种子
+     */
+    public MockDataSource(long rows, int minLength, int maxLength, long seed) {
+        if (rows < 0) {
+            throw new IllegalArgumentException("rows must not be negative, rows=" + rows);
+        }
+        if (minLength < 1
+                || maxLength < minLength) {
+            throw new IllegalArgumentException("illegal row length=" + minLength + "," + maxLength);
+        }
+        this.rows = rows;
+        this.minLength = minLength;
+        this.maxLength = maxLength;
+        this.seed = seed;
+    }
 
     @Override
     public Row getRow(Row row) throws IOException {
-        row.setLineNum(1);
-        row.setData(MOCK_DATA);
+
+        // 先判断再自增，避免到达EOF后各链接的反复获取让计数溢出
+        final long lineNum = lineCounter.get() < rows
+                ? lineCounter.getAndIncrement()
+                : rows;
+        if (lineNum >= rows) {
+            row.setLineNum(EMPTY_ROW.getLineNum());
+            row.setOffset(EMPTY_ROW.getOffset());
+            row.setData(EMPTY_ROW.getData());
+            return row;
+        }
+
+        row.setLineNum(lineNum);
+        row.setOffset(offsetOf(lineNum));
+        row.setData(pool[(int) lineNum & POOL_MASK]);
         return row;
     }
 
+    @Override
+    public List<Row> getRange(long startLineNum, int count) throws IOException {
+        final long endLineNum = Math.min(rows, Math.max(0, startLineNum + count));
+        final List<Row> range = new ArrayList<>((int) Math.max(0, endLineNum - startLineNum));
+        for (long lineNum = Math.max(0, startLineNum); lineNum < endLineNum; lineNum++) {
+            final Row row = new Row(lineNum, pool[(int) lineNum & POOL_MASK]);
+            row.setOffset(offsetOf(lineNum));
+            range.add(row);
+        }
+        return range;
+    }
+
+    /*
+     * 第lineNum行的输出偏移量：之前所有行的行号字符数 + 数据长度 + 行分隔符
+     */
+    private long offsetOf(long lineNum) {
+        return decimalLengthBefore(lineNum)
+                + (lineNum / POOL_ROWS) * poolOffsets[POOL_ROWS]
+                + poolOffsets[(int) lineNum & POOL_MASK]
+                + lineNum * LINE_DELIMITER_LENGTH;
+    }
+
+    /*
+     * [0,n)中所有整数十进制表示的字符数之和
+     */
+    private static long decimalLengthBefore(long n) {
+        long total = 0;
+        long from = 0;
+        long to = 10;
+        for (int digits = 1; from < n; digits++) {
+            total += (Math.min(n, to) - from) * digits;
+            from = to;
+            to *= 10;
+        }
+        return total;
+    }
+
+    @Override
+    public long getTotalRows() {
+        return rows;
+    }
+
+    @Override
+    public long getTotalBytes() {
+        return offsetOf(rows);
+    }
+
     @Override
     public void init() throws IOException {
-        log.info("MockDataSource() was inited.");
+        final SplittableRandom random = new SplittableRandom(seed);
+        for (int i = 0; i < POOL_ROWS; i++) {
+            final byte[] data = new byte[minLength + random.nextInt(maxLength - minLength + 1)];
+            for (int j = 0; j < data.length; j++) {
+                data[j] = (byte) ('a' + random.nextInt(26));
+            }
+            pool[i] = data;
+            poolOffsets[i + 1] = poolOffsets[i] + data.length;
+        }
+        log.info("MockDataSource(rows={},length={},{},seed={}) was inited.", rows, minLength, maxLength, seed);
     }
 
     @Override
@@ -0,0 +1,238 @@
+package com.github.ompc.laser.common.datasource.impl;
+
+import com.github.ompc.laser.common.datasource.DataPersistence;
+import com.github.ompc.laser.common.datasource.Row;
+import com.github.ompc.laser.common.mmap.Mapping;
+import com.github.ompc.laser.common.mmap.MemoryMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+
+import static com.github.ompc.laser.common.LaserUtils.putDecimal;
+import static com.github.ompc.laser.common.LaserUtils.reverse;
+import static com.github.ompc.laser.common.LaserUtils.stringSize;
+import static java.lang.System.arraycopy;
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+
+/**
+ * 定位写入数据持久化实现<br/>
+ * 每行都带有服务端计算好的输出偏移量，直接写入所在映射区域的最终位置<br/>
+ * 没有页码表、没有顺序等待，任意多个线程可以同时写入
+ */
+public class OffsetDataPersistence implements DataPersistence {
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    private final File dataFile;
+
+    /**
+     * 行分隔符
+     */
+    private final static byte[] LINE_DELIMITER = new byte[]{'\r', '\n'};
+
+    /*
+     * 映射区域大小(64M)
+     */
+    private final static int REGION_SHIFT = 26;
+    private final static int REGION_SIZE = 1 << REGION_SHIFT;
+
+    /*
+     * 已映射的区域集合
+     */
+    private final Map<Integer, Mapping> regionMap = new ConcurrentHashMap<>();
+
+    /*
+     * 线程私有的区域视图，各线程之间不共享MappedByteBuffer的position
+     */
+    private final ThreadLocal<RegionView> regionViewRef = ThreadLocal.withInitial(RegionView::new);
+
+    /*
+     * 已写入数据的最远位置，刷新时文件被截断到该位置
+     */
+    private final LongAccumulator writtenSize = new LongAccumulator(Long::max, 0);
+
+    /*
+     * 刷新标记，刷新时区域映射被释放，线程私有的区域视图随之失效，此后不能再写入
+     */
+    private volatile boolean isFlushFlag = false;
+
+    private FileChannel fileChannel;
+
+    public OffsetDataPersistence(File dataFile) {
+        this.dataFile = dataFile;
+    }
+
+    @Override
+    public void putRow(Row row) throws IOException {
+
+        final long offset = row.getOffset();
+        if (offset < 0) {
+            throw new IOException("illegal offset=" + offset + ", lineNum=" + row.getLineNum());
+        }
+
+        final RegionView view = regionViewRef.get();
+        final byte[] data = row.getData();
+        final byte[] scratch = view.getScratch(stringSize(row.getLineNum()) + data.length + LINE_DELIMITER.length);
+
+        // 在线程私有的暂存区中拼好整行再写入
+        int pos = putDecimal(scratch, 0, row.getLineNum());
+        arraycopy(data, 0, scratch, pos, data.length);
+        pos += data.length;
+        scratch[pos++] = '\r';
+        scratch[pos++] = '\n';
+
+        writtenSize.accumulate(put(view, offset, scratch, pos));
+
+    }
+
+    @Override
+    public void putRow(long lineNum, long offset, ByteBuffer src, int length) throws IOException {
+
+        if (offset < 0) {
+            throw new IOException("illegal offset=" + offset + ", lineNum=" + lineNum);
+        }
+
+        final RegionView view = regionViewRef.get();
+        final byte[] scratch = view.getScratch(stringSize(lineNum) + length + LINE_DELIMITER.length);
+
+        // 数据段从接收缓存拷入暂存区后就地逆序
+        int pos = putDecimal(scratch, 0, lineNum);
+        src.get(scratch, pos, length);
+        reverse(scratch, pos, length);
+        pos += length;
+        scratch[pos++] = '\r';
+        scratch[pos++] = '\n';
+
+        writtenSize.accumulate(put(view, offset, scratch, pos));
+
+    }
+
+    /*
+     * 将数据写入文件指定位置，跨越区域边界时分段写入
+     */
+    private long put(RegionView view, long position, byte[] src, int srcLength) throws IOException {
+        if (isFlushFlag) {
+            throw new IOException("dataFile=" + dataFile + " was already flushed.");
+        }
+        int srcOffset = 0;
+        while (srcOffset < srcLength) {
+            final int regionIdx = (int) (position >>> REGION_SHIFT);
+            if (view.regionIdx != regionIdx) {
+                view.buffer = getRegion(regionIdx).getChunk(0);
+                view.regionIdx = regionIdx;
+            }
+            final int offsetOfRegion = (int) (position & (REGION_SIZE - 1));
+            final int length = Math.min(srcLength - srcOffset, REGION_SIZE - offsetOfRegion);
+            view.buffer.position(offsetOfRegion);
+            view.buffer.put(src, srcOffset, length);
+            srcOffset += length;
+            position += length;
+        }
+        return position;
+    }
+
+    /*
+     * 获取区域映射，第一次访问时才映射
+     */
+    private Mapping getRegion(int regionIdx) throws IOException {
+        Mapping region = regionMap.get(regionIdx);
+        if (null == region) {
+            synchronized (regionMap) {
+                region = regionMap.get(regionIdx);
+                if (null == region) {
+                    region = MemoryMapper.get().map(fileChannel, READ_WRITE, (long) regionIdx << REGION_SHIFT, REGION_SIZE);
+                    regionMap.put(regionIdx, region);
+                }
+            }
+        }
+        return region;
+    }
+
+    @Override
+    public void init() throws IOException {
+
+        // 检查文件是否存在，不存在则创建
+        if (!dataFile.exists()) {
+            try {
+                dataFile.createNewFile();
+            } catch (IOException e) {
+                log.warn("create dataFile={} failed.", dataFile, e);
+            }
+        }
+
+        // 打开文件句柄
+        fileChannel = new RandomAccessFile(dataFile, "rw").getChannel();
+        log.info("OffsetDataPersistence(file:{}) was inited", dataFile);
+
+    }
+
+    @Override
+    public void flush() throws IOException {
+
+        // 标记为已刷新，拒绝之后的写入
+        isFlushFlag = true;
+
+        // 将文件缓存到磁盘
+        regionMap.forEach((k, v) -> v.force());
+
+        // 映射区域会把文件撑大到区域边界，需要释放映射后截断到实际写入大小
+        regionMap.forEach((k, v) -> v.close());
+        regionMap.clear();
+        fileChannel.truncate(writtenSize.get());
+        fileChannel.force(true);
+        log.info("OffsetDataPersistence(file:{}) was flushed. size={}", dataFile, writtenSize.get());
+
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        isFlushFlag = true;
+        // umap off-heap
+        regionMap.forEach((k, v) -> v.close());
+        regionMap.clear();
+        if (null != fileChannel) {
+            fileChannel.close();
+        }
+        log.info("OffsetDataPersistence(file:{}) was destroyed.", dataFile);
+    }
+
+    /**
+     * 区域视图
+     */
+    class RegionView {
+
+        /*
+         * 区域编号
+         */
+        int regionIdx = -1;
+
+        /*
+         * 区域映射的副本
+         */
+        ByteBuffer buffer;
+
+        /*
+         * 拼装整行的暂存区
+         */
+        byte[] scratch = new byte[256];
+
+        /*
+         * 获取至少能容纳size字节的暂存区
+         */
+        byte[] getScratch(int size) {
+            if (scratch.length < size) {
+                scratch = new byte[size];
+            }
+            return scratch;
+        }
+
+    }
+
+}
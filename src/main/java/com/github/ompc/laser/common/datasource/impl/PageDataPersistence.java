@@ -2,6 +2,9 @@ package com.github.ompc.laser.common.datasource.impl;
 
 import com.github.ompc.laser.common.datasource.DataPersistence;
 import com.github.ompc.laser.common.datasource.Row;
+import com.github.ompc.laser.common.jfr.EventRecorder;
+import com.github.ompc.laser.common.datasource.writer.MappedPageWriter;
+import com.github.ompc.laser.common.datasource.writer.PageWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -9,19 +12,24 @@ import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
-import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
 
-import static com.github.ompc.laser.common.LaserUtils.unmap;
+import static com.github.ompc.laser.common.LaserUtils.putDecimal;
+import static com.github.ompc.laser.common.LaserUtils.reverse;
+import static com.github.ompc.laser.common.LaserUtils.stringSize;
+import static com.github.ompc.laser.common.jfr.EventRecorder.Type.*;
+import static java.lang.System.arraycopy;
 import static java.lang.Thread.currentThread;
-import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
 
 /**
  * 分页数据持久化实现
@@ -37,6 +45,13 @@ public class PageDataPersistence implements DataPersistence {
      */
     private final static byte[] LINE_DELIMITER = new byte[]{'\r', '\n'};
 
+    /*
+     * 事件来源
+     */
+    private final static String EVENT_SOURCE = "PageDataPersistence";
+
+    private final static EventRecorder events = EventRecorder.get();
+
     /*
      * 页行大小<br/>
      * 一行数据构成：有效字节数(4B)+数据段(210B)+填充段(42B) = 256B
@@ -62,11 +77,30 @@ public class PageDataPersistence implements DataPersistence {
     private Page[] pageTable = new Page[PAGE_TABLE_SIZE];
 
     /*
-     * 等待刷新缓存集合
+     * 页面写入器
+     */
+    private final PageWriter pageWriter;
+
+    /*
+     * 持久化日志，为null时不记录日志
+     */
+    private final PageJournal pageJournal;
+
+    /*
+     * 起始页码和起始文件偏移量，续传时从日志的可信前缀恢复
+     */
+    private long startPageNum = 0;
+    private long startFileOffset = 0;
+
+    /*
+     * 页面刷新者数量
      */
-    private Map<Integer, MappedByteBuffer> waitingFlushBufferMap = new HashMap<>();
+    private final int flusherNumbers;
 
-    private FileChannel fileChannel;
+    /*
+     * 页面刷新者线程池
+     */
+    private ExecutorService pageFlushers;
 
     /*
      * 页面切换者锁
@@ -84,53 +118,142 @@ public class PageDataPersistence implements DataPersistence {
      */
     private volatile boolean isFlushFlag = false;
 
+    /*
+     * 写入者等待页面切换的自旋耗时(ns)
+     */
+    private final LongAdder putRowSpinNanos = new LongAdder();
+
 
     public PageDataPersistence(File dataFile) {
+        this(dataFile, 1);
+    }
+
+    /**
+     * 构造分页数据持久化
+     *
+     * @param dataFile       数据文件
+     * @param flusherNumbers 页面刷新者数量
+     */
+    public PageDataPersistence(File dataFile, int flusherNumbers) {
+        this(dataFile, flusherNumbers, new MappedPageWriter(dataFile, Integer.MAX_VALUE));
+    }
+
+    /**
+     * 构造分页数据持久化
+     *
+     * @param dataFile       数据文件
+     * @param flusherNumbers 页面刷新者数量
+     * @param pageWriter     页面写入器
+     */
+    public PageDataPersistence(File dataFile, int flusherNumbers, PageWriter pageWriter) {
+        this(dataFile, flusherNumbers, pageWriter, null);
+    }
+
+    /**
+     * 构造可续传的分页数据持久化
+     *
+     * @param dataFile         数据文件
+     * @param flusherNumbers   页面刷新者数量
+     * @param pageWriter       页面写入器
+     * @param pageJournal    已恢复的持久化日志，从可信前缀之后开始写入
+     */
+    public PageDataPersistence(File dataFile, int flusherNumbers, PageWriter pageWriter, PageJournal pageJournal) {
         this.dataFile = dataFile;
+        this.flusherNumbers = flusherNumbers;
+        this.pageWriter = pageWriter;
+        this.pageJournal = pageJournal;
     }
 
     @Override
     public void putRow(Row row) throws IOException {
 
-        final int lineNum = row.getLineNum();
-
-        // 计算页码
-        final int pageNum = lineNum / PAGE_ROWS_NUM;
+        final long lineNum = row.getLineNum();
+        final byte[] data = row.getData();
+        final int validByteCount = getValidByteCount(lineNum, data.length);
+        final Page page = waitingForPage(lineNum);
 
-        // 计算页码表位置
-        final int tableIdx = pageNum % PAGE_TABLE_SIZE;
+        // 计算当前row所在page.data中的offset
+        final int offset = (int) (lineNum % PAGE_ROWS_NUM) * PAGE_ROW_SIZE;
 
-        while (pageTable[tableIdx].pageNum != pageNum) {
-            // 如果页码表中当前位置所存放的页面编码对应不上
-            // 则认为页切换不及时，这里采用自旋等待策略，其实相当危险
-//            log.info("debug for spin, page.pageNum={},pageNum={},lineNum={}",
-//                    new Object[]{pageTable[tableIdx].pageNum, pageNum, lineNum});
-        }
+        // 刷入页中
+        int pos = putDecimal(page.data, offset + Integer.BYTES, lineNum);
+        arraycopy(data, 0, page.data, pos, data.length);
+        pos += data.length;
+        page.data[pos++] = '\r';
+        page.data[pos] = '\n';
 
-        final Page page = pageTable[tableIdx];
+        putRowDone(page, offset, validByteCount);
 
-        // 计算页面内行号
-        final int rowNum = lineNum % PAGE_ROWS_NUM;
+    }
 
-        final byte[] bytesOfLineNum = String.valueOf(lineNum).getBytes();
+    @Override
+    public void putRow(long lineNum, long outputOffset, ByteBuffer src, int length) throws IOException {
 
-        // 计算row中有效大小(B)
-        final int validByteCount = 0
-                + bytesOfLineNum.length
-                + row.getData().length
-                + LINE_DELIMITER.length;
+        final int validByteCount = getValidByteCount(lineNum, length);
+        final Page page = waitingForPage(lineNum);
 
         // 计算当前row所在page.data中的offset
-        final int offset = rowNum * PAGE_ROW_SIZE;
+        final int offset = (int) (lineNum % PAGE_ROWS_NUM) * PAGE_ROW_SIZE;
 
-        // 刷入页中
-        ByteBuffer.wrap(page.data, offset, PAGE_ROW_SIZE)
-                .putInt(validByteCount)
-                .put(bytesOfLineNum)
-                .put(row.getData())
-                .put(LINE_DELIMITER);
+        // 行号直接格式化到页中，数据段从接收缓存拷入后就地逆序
+        int pos = putDecimal(page.data, offset + Integer.BYTES, lineNum);
+        src.get(page.data, pos, length);
+        reverse(page.data, pos, length);
+        pos += length;
+        page.data[pos++] = '\r';
+        page.data[pos] = '\n';
+
+        putRowDone(page, offset, validByteCount);
+
+    }
+
+    /*
+     * 计算row中有效大小(B)
+     */
+    private int getValidByteCount(long lineNum, int dataLength) throws IOException {
+        final int validByteCount = stringSize(lineNum) + dataLength + LINE_DELIMITER.length;
+        if (validByteCount > PAGE_ROW_SIZE - Integer.BYTES) {
+            throw new IOException("row too long, lineNum=" + lineNum + ", validByteCount=" + validByteCount);
+        }
+        return validByteCount;
+    }
+
+    /*
+     * 等待行所在的页面切换到页码表中
+     */
+    private Page waitingForPage(long lineNum) {
+
+        // 计算页码
+        final long pageNum = lineNum / PAGE_ROWS_NUM;
+
+        // 计算页码表位置
+        final int tableIdx = (int) (pageNum % PAGE_TABLE_SIZE);
+
+        if (pageTable[tableIdx].pageNum != pageNum) {
+            // 只在需要自旋时才计时
+            final long spinStartNanos = System.nanoTime();
+            final Object stallEvent = events.begin(STALL);
+            long spinCount = 0;
+            while (pageTable[tableIdx].pageNum != pageNum) {
+                spinCount++;
+                // 如果页码表中当前位置所存放的页面编码对应不上
+                // 则认为页切换不及时，这里采用自旋等待策略，其实相当危险
+//                log.info("debug for spin, page.pageNum={},pageNum={},lineNum={}",
+//                        new Object[]{pageTable[tableIdx].pageNum, pageNum, lineNum});
+            }
+            putRowSpinNanos.add(System.nanoTime() - spinStartNanos);
+            events.commitStall(stallEvent, EVENT_SOURCE, "spin", spinCount);
+        }
 
-        // 更新页面数据
+        return pageTable[tableIdx];
+    }
+
+    /*
+     * 行写入页面后更新页面数据
+     */
+    private void putRowDone(Page page, int offset, int validByteCount) {
+
+        page.dataBuffer.putInt(offset, validByteCount);
         page.byteCount.addAndGet(validByteCount);
 
         // 如果页面已被写满，则需要唤醒页面切换者
@@ -157,99 +280,106 @@ public class PageDataPersistence implements DataPersistence {
             }
         }
 
-        // 打开文件句柄
-        fileChannel = new RandomAccessFile(dataFile, "rw").getChannel();
+        // 从日志续传时，丢弃可信前缀之后可能不完整的数据
+        if (null != pageJournal) {
+            if (pageJournal.getLineNum() != pageJournal.getPageNum() * PAGE_ROWS_NUM) {
+                throw new IOException("illegal journal lineNum=" + pageJournal.getLineNum());
+            }
+            startPageNum = pageJournal.getPageNum();
+            startFileOffset = pageJournal.getFileOffset();
+            try (final RandomAccessFile raf = new RandomAccessFile(dataFile, "rw")) {
+                raf.setLength(startFileOffset);
+            }
+        }
 
-        // 初始化页码表
+        // 初始化页面写入器
+        pageWriter.init();
+
+        // 初始化页码表，每个位置存放起始页码之后第一个落在该位置的页面
         for (int i = 0; i < pageTable.length; i++) {
             final Page page = new Page();
-            page.pageNum = i;
+            page.pageNum = startPageNum + Math.floorMod(i - startPageNum, (long) PAGE_TABLE_SIZE);
             pageTable[i] = page;
         }
 
+        if (null != pageJournal) {
+            pageJournal.start(pageWriter);
+        }
+
+        // 页面刷新者线程池
+        pageFlushers = Executors.newFixedThreadPool(flusherNumbers, new ThreadFactory() {
+
+            private final AtomicInteger counter = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(Runnable r) {
+                final Thread t = new Thread(r, "PageDataPersistence-PAGEFLUSHER-" + counter.getAndIncrement() + "-daemon");
+                t.setDaemon(true);
+                return t;
+            }
+
+        });
+
         /*
          * 页面切换者<br/>
-         * 切换页码表中已完成的页面
+         * 按顺序为已完成的页面预留文件区域，再交给页面刷新者并发拷贝
          */
         final Thread pageSwitcher = new Thread(() -> {
 
-            // 下一次要替换掉的页码表编号(0~PAGE_TABLE_SIZE)
-            int nextSwitchPageTableIndex = 0;
+            // 下一次要切换的页码
+            long nextPageNum = startPageNum;
 
             // 文件写入偏移量
-            long fileOffset = 0;
+            long fileOffset = startFileOffset;
 
             while (true) {
 
-                // 遍历页码表，主要做两件事
-                // 1.顺序的更换页码
-                // 2.将页码刷入文件缓存
-                final Page page = pageTable[nextSwitchPageTableIndex];
-                final int rowCount = page.rowCount.get();
-
-                if (rowCount < PAGE_ROWS_NUM
-                        && !isFlushFlag) {
-                    // 当前页还没被锁定且不是刷新状态，休眠等待被唤醒
-                    pageSwitchLock.lock();
-                    try {
-                        pageSwitchWakeUpCondition.await();
-                        continue;
-                    } catch (InterruptedException e) {
-                        currentThread().interrupt();
-                    } finally {
-                        pageSwitchLock.unlock();
-                    }//try
-                }
+                final Page page = pageTable[(int) (nextPageNum % PAGE_TABLE_SIZE)];
+                final int rowCount;
 
-                if (page.rowCount.get() == PAGE_ROWS_NUM
-                        || (isFlushFlag && rowCount > 0)) {
-
-                    // 当前页面已被写需要立即刷入文件缓存中
-                    try {
-
-                        // 写完文件缓存后丢入待刷新队列中
-                        final MappedByteBuffer mappedBuffer = fileChannel.map(READ_WRITE, fileOffset, page.byteCount.get());
-                        final ByteBuffer dataBuffer = ByteBuffer.wrap(page.data);
-//                        final int rowCount = page.rowCount.get();
-                        for (int rowIdx = 0; rowIdx < rowCount; rowIdx++) {
-                            // 当前行偏移量
-                            final int offsetOfRow = rowIdx * PAGE_ROW_SIZE;
-                            dataBuffer.position(offsetOfRow);
-                            final int validByteCount = dataBuffer.getInt();
-
-                            // 当前行数据偏移量
-                            final int offsetOfRowData = offsetOfRow + Integer.BYTES;
-                            mappedBuffer.put(page.data, offsetOfRowData, validByteCount);
-                        }//for
-                        waitingFlushBufferMap.put(page.pageNum, mappedBuffer);
-
-                        // 重设当前页码数据
-                        page.byteCount.set(0);
-                        page.rowCount.set(0);
-                        page.pageNum += PAGE_TABLE_SIZE;
-                        fileOffset += mappedBuffer.capacity();
-
-                    } catch (IOException e) {
-                        // 如果写文件映射发生异常，则表明当前I/O出错需要下次尝试
-                        log.warn("mapping file failed.", e);
-                        continue;
-                    }//try
-
-                    // 最后一步，别忘记更新下一次要替换的页码表号
-                    nextSwitchPageTableIndex = (nextSwitchPageTableIndex + 1) % PAGE_TABLE_SIZE;
-
-                    continue;
+                // 等待页面被写满，或者在刷新状态下等待页面被上一轮刷新者释放
+                final Object filledEvent = events.begin(PAGE_FILLED);
+                pageSwitchLock.lock();
+                try {
+                    while (page.pageNum != nextPageNum
+                            || (page.rowCount.get() < PAGE_ROWS_NUM && !isFlushFlag)) {
+                        pageSwitchWakeUpCondition.await();
+                    }
+                    rowCount = page.rowCount.get();
+                } catch (InterruptedException e) {
+                    currentThread().interrupt();
+                    break;
+                } finally {
+                    pageSwitchLock.unlock();
+                }//try
 
+                if (rowCount == 0) {
+                    // 只有刷新状态下才会出现空页，说明所有数据都已经交给了刷新者
+                    break;
                 }
 
+                // 按顺序预留文件区域，区域大小只取决于页面字节数
+                final long byteCount = page.byteCount.get();
+                events.commitPage(filledEvent, EVENT_SOURCE, nextPageNum, rowCount, byteCount);
+                final long position = fileOffset;
+                fileOffset += byteCount;
+                pageFlushers.execute(() -> flushPage(page, rowCount, position, byteCount));
+
+                nextPageNum++;
 
-                if (isFlushFlag
-                        && rowCount == 0) {
+                if (rowCount < PAGE_ROWS_NUM) {
+                    // 刷新状态下的最后一页
                     break;
                 }
 
             }//while
 
+            pageFlushers.shutdown();
+            try {
+                pageFlushers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                currentThread().interrupt();
+            }
             pageSwitchDone.countDown();
 
         }, "PageDataPersistence-PAGESWITCHER-daemon");
@@ -260,9 +390,97 @@ public class PageDataPersistence implements DataPersistence {
 
     }
 
+    /*
+     * 将页面拷贝到预留好的文件区域，完成后立即释放页面
+     */
+    private void flushPage(Page page, int rowCount, long position, long byteCount) {
+
+        final Object publishedEvent = events.begin(PAGE_PUBLISHED);
+        final long pageNum = page.pageNum;
+
+        while (true) {
+            try {
+
+                // 交给页面写入器写入预留好的文件区域
+                pageWriter.write(position, page.data, PAGE_ROW_SIZE, rowCount, byteCount);
+                break;
+
+            } catch (IOException e) {
+                // 如果写文件发生异常，则表明当前I/O出错需要下次尝试
+                log.warn("write page failed.", e);
+            }//try
+        }
+
+        // 完整的页面交给日志记录，最后一个不完整的页面只在刷新时出现，不需要续传
+        if (null != pageJournal
+                && rowCount == PAGE_ROWS_NUM) {
+            final CRC32 crc32 = new CRC32();
+            for (int rowIdx = 0; rowIdx < rowCount; rowIdx++) {
+                final int offsetOfRow = rowIdx * PAGE_ROW_SIZE;
+                crc32.update(page.data, offsetOfRow + Integer.BYTES, page.dataBuffer.getInt(offsetOfRow));
+            }
+            pageJournal.pageDone(page.pageNum, rowCount, position, byteCount, (int) crc32.getValue());
+        }
+
+        // 重设当前页码数据，页码最后更新，写入者以此判断页面可用
+        page.byteCount.set(0);
+        page.rowCount.set(0);
+        page.pageNum += PAGE_TABLE_SIZE;
+
+        // 页面被释放后唤醒可能在等待的页面切换者
+        pageSwitchLock.lock();
+        try {
+            pageSwitchWakeUpCondition.signal();
+        } finally {
+            pageSwitchLock.unlock();
+        }
+
+        events.commitPage(publishedEvent, EVENT_SOURCE, pageNum, rowCount, byteCount);
+
+    }
+
+    /**
+     * 获取页码表的占用情况，即已写入数据但还没被释放的页面数
+     *
+     * @return 占用的页面数
+     */
+    public int getWindowOccupancy() {
+        int occupancy = 0;
+        for (Page page : pageTable) {
+            if (null != page
+                    && page.rowCount.get() > 0) {
+                occupancy++;
+            }
+        }
+        return occupancy;
+    }
+
+    /**
+     * @return 页码表大小
+     */
+    public int getWindowSize() {
+        return PAGE_TABLE_SIZE;
+    }
+
+    /**
+     * @return 写入者等待页面切换的累计自旋耗时(ns)
+     */
+    public long getPutRowSpinNanos() {
+        return putRowSpinNanos.sum();
+    }
+
+    /**
+     * @return 已写入文件但还没刷到磁盘的字节数
+     */
+    public long getPendingSyncBytes() {
+        return pageWriter.getPendingSyncBytes();
+    }
+
     @Override
     public void flush() throws IOException {
 
+        final Object flushEvent = events.begin(FLUSH);
+
         // 标记数据源为刷新状态
         isFlushFlag = true;
 
@@ -282,18 +500,21 @@ public class PageDataPersistence implements DataPersistence {
         }
 
         // 将文件缓存到磁盘
-        waitingFlushBufferMap.forEach((k, v) -> v.force());
+        pageWriter.flush();
+        if (null != pageJournal) {
+            pageJournal.stop();
+        }
+        events.commitRegion(flushEvent, dataFile.getName(), 0, dataFile.length());
         log.info("PageDataPersistence(file:{}) was flushed.", dataFile);
 
     }
 
     @Override
     public void destroy() throws IOException {
-        // umap off-heap
-        waitingFlushBufferMap.forEach((k, v) -> unmap(v));
-        if (null != fileChannel) {
-            fileChannel.close();
+        if (null != pageJournal) {
+            pageJournal.stop();
         }
+        pageWriter.destroy();
         log.info("PageDataPersistence(file:{}) was destroyed.", dataFile);
     }
 
@@ -308,7 +529,7 @@ public class PageDataPersistence implements DataPersistence {
         /*
          * 页码
          */
-        volatile int pageNum;
+        volatile long pageNum;
 
         /*
          * 页面总行数
@@ -325,6 +546,11 @@ public class PageDataPersistence implements DataPersistence {
          */
         byte[] data = new byte[PAGE_ROW_SIZE * PAGE_ROWS_NUM];
 
+        /*
+         * 数据段视图，只使用绝对位置读写，可被多个写入者共享
+         */
+        ByteBuffer dataBuffer = ByteBuffer.wrap(data);
+
 
     }
 
@@ -1,8 +1,13 @@
 package com.github.ompc.laser.common.datasource.impl;
 
 import com.github.ompc.laser.common.LaserUtils;
-import com.github.ompc.laser.common.datasource.DataSource;
+import com.github.ompc.laser.common.datasource.RangeDataSource;
+import com.github.ompc.laser.common.datasource.ResumableDataSource;
 import com.github.ompc.laser.common.datasource.Row;
+import com.github.ompc.laser.common.datasource.SliceDataSource;
+import com.github.ompc.laser.common.jfr.EventRecorder;
+import com.github.ompc.laser.common.mmap.Mapping;
+import com.github.ompc.laser.common.mmap.MemoryMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -10,25 +15,53 @@ import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
-import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
-import static com.github.ompc.laser.common.LaserUtils.unmap;
+import static com.github.ompc.laser.common.LaserUtils.outputRowSize;
+import static com.github.ompc.laser.common.LaserUtils.processedSize;
+import static com.github.ompc.laser.common.jfr.EventRecorder.Type.*;
 import static java.lang.Thread.currentThread;
 import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
 
 /**
  * 分页数据源<br/>
- * 目前有BUG，在分页切换的时候会丢行...
+ * 页面切换者顺序解析文件填充页面，读取者通过页面游标(页码+已读行数)争抢行<br/>
+ * 每行同时计算出该行在输出文件中的偏移量，并记录稀疏行索引用于续传<br/>
+ * 多个数据文件按顺序当作一个首尾相接的逻辑文件，行号和输出偏移量跨文件连续，
+ * 页面在文件边界处不会中断；当前文件解析时，后续文件由预读者并行加载到页缓存<br/>
+ * 文件按窗口映射，解析当前窗口时由窗口预读者提前映射并加载之后的窗口<br/>
+ * 按行号随机读取时从稀疏行索引中最近的索引点开始解析，不影响页面切换者<br/>
+ * 页面放在堆外，零拷贝取行时直接返回页内的切片，切片释放后才计入该页已读完的行数
  * Created by vlinux on 14-10-5.
  */
-public class PageDataSource implements DataSource {
+public class PageDataSource implements ResumableDataSource, RangeDataSource, SliceDataSource {
 
     private final Logger log = LoggerFactory.getLogger(getClass());
-    private final File dataFile;
+
+    /*
+     * 数据文件，按顺序首尾相接
+     */
+    private final File[] dataFiles;
+
+    /*
+     * 预读的后续文件数
+     */
+    private final int prefetchFiles;
+
+    /*
+     * 每个数据文件在逻辑文件中的起始位置，最后一项为逻辑文件整体大小，初始化时确定
+     */
+    private long[] fileStarts;
 
     /*
      * 空行,避免过多的对象分配
@@ -36,24 +69,55 @@ public class PageDataSource implements DataSource {
     private final static Row EMPTY_ROW = new Row(-1, new byte[0]);
 
     /*
-     * 缓存页大小,要求是4K倍数
+     * 预读文件时每次映射的大小,要求是4K倍数
      */
     private final static int BUFFER_SIZE = 512 * 1024 * 1024;
 
+    /*
+     * 默认的映射窗口大小和预读深度
+     */
+    private final static long DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+    private final static int DEFAULT_READAHEAD_DEPTH = 2;
+
+    /*
+     * 映射窗口大小
+     */
+    private final long windowSize;
+
+    /*
+     * 映射窗口的预读深度
+     */
+    private final int readaheadDepth;
+
+    /*
+     * 事件来源
+     */
+    private final static String EVENT_SOURCE = "PageDataSource";
+
+    private final static EventRecorder events = EventRecorder.get();
+
     /*
      * 页行大小<br/>
-     * 一行数据构成：有效字节数(4B)+数据段(210B)+填充段(42B) = 256B
+     * 一行数据构成：行号(8B)+输出偏移量(8B)+有效字节数(4B)+数据段(171B)+填充段(65B) = 256B
      */
     private final int PAGE_ROW_SIZE = 256;
 
+    /*
+     * 页行中数据段之前的行号(8B)+输出偏移量(8B)+有效字节数(4B)
+     */
+    private final static int PAGE_ROW_HEAD_SIZE = 20;
+
+    /*
+     * 页面分块行数<br/>
+     * 一块直接内存不能超过2GB，超过2GB的页面分成多块，常见的页面只有一块
+     */
+    private final int PAGE_CHUNK_ROWS = Integer.MAX_VALUE / PAGE_ROW_SIZE;
+
     /*
      * 页行数<br/>
      * 一页中总共有几行
      */
-    private final int PAGE_ROWS_NUM =
-            3000000
-            //100000
-            ;
+    private final int PAGE_ROWS_NUM;
 
     /*
      * 页码表大小<br/>
@@ -71,283 +135,676 @@ public class PageDataSource implements DataSource {
      */
     private volatile boolean isEOF = false;
 
+    /*
+     * 当前正在被读取的页码，只会向前推进
+     */
+    private final AtomicLong currentPageNum = new AtomicLong(0);
+
+    /*
+     * 最后一页的页码，在页面切换者到达文件末尾前为-1
+     */
+    private volatile long lastPageNum = -1;
+
+    /*
+     * 总行数和总输出字节数，在页面切换者到达文件末尾前为-1
+     */
+    private volatile long totalRows = -1;
+    private volatile long totalBytes = -1;
+
     /*
      * 页面切换者锁
      */
     private final ReentrantLock pageSwitchLock = new ReentrantLock();
     private final Condition pageSwitchWakeUpCondition = pageSwitchLock.newCondition();
 
+    /*
+     * 行索引，同一数据文件上续传出来的数据源共享
+     */
+    private final LineIndex lineIndex;
+
+    /*
+     * 开始行号
+     */
+    private final long startLineNum;
+
+    /*
+     * 读取者的竞争统计：游标CAS失败次数、等待页面填充的自旋次数、等待页面填充的次数<br/>
+     * 同一数据文件上续传出来的数据源共享，累计值不因续传而清零
+     */
+    private final LongAdder casFailures;
+    private final LongAdder spins;
+    private final LongAdder pageSwitchWaits;
+
+    private Thread pageSwitcher;
+
+    /*
+     * 预读者
+     */
+    private ExecutorService prefetcher;
+
 
     public PageDataSource(File dataFile) {
-        this.dataFile = dataFile;
+        this(dataFile, 3000000);
+    }
+
+    /**
+     * 构造分页数据源
+     *
+     * @param dataFile    数据文件
+     * @param pageRowsNum 页行数
+     */
+    public PageDataSource(File dataFile, int pageRowsNum) {
+        this(new File[]{dataFile}, pageRowsNum, 0);
+    }
+
+    public PageDataSource(File[] dataFiles, int prefetchFiles) {
+        this(dataFiles, 3000000, prefetchFiles);
+    }
+
+    public PageDataSource(File[] dataFiles, int prefetchFiles, long windowSize, int readaheadDepth) {
+        this(dataFiles, 3000000, prefetchFiles, windowSize, readaheadDepth);
+    }
+
+    /**
+     * 构造多文件分页数据源
+     *
+     * @param dataFiles     数据文件，按顺序首尾相接
+     * @param pageRowsNum   页行数
+     * @param prefetchFiles 预读的后续文件数，为0时不预读
+     */
+    public PageDataSource(File[] dataFiles, int pageRowsNum, int prefetchFiles) {
+        this(dataFiles, pageRowsNum, prefetchFiles, DEFAULT_WINDOW_SIZE, DEFAULT_READAHEAD_DEPTH);
+    }
+
+    /**
+     * 构造多文件分页数据源
+     *
+     * @param dataFiles      数据文件，按顺序首尾相接
+     * @param pageRowsNum    页行数
+     * @param prefetchFiles  预读的后续文件数，为0时不预读
+     * @param windowSize     映射窗口大小，MemorySegment映射时可以超过2GB
+     * @param readaheadDepth 映射窗口的预读深度，为0时不预读，用到时才映射
+     */
+    public PageDataSource(File[] dataFiles, int pageRowsNum, int prefetchFiles, long windowSize, int readaheadDepth) {
+        this(dataFiles, pageRowsNum, prefetchFiles, windowSize, readaheadDepth, new LineIndex(), 0, new LongAdder[]{new LongAdder(), new LongAdder(), new LongAdder()});
+    }
+
+    /**
+     * 构造从指定行开始的分页数据源
+     *
+     * @param dataFiles     数据文件
+     * @param pageRowsNum   页行数
+     * @param prefetchFiles 预读的后续文件数
+     * @param windowSize     映射窗口大小，MemorySegment映射时可以超过2GB
+     * @param readaheadDepth 映射窗口的预读深度
+     * @param lineIndex     行索引
+     * @param startLineNum  开始行号
+     * @param counters      竞争统计：CAS失败次数、自旋次数、等待页面填充次数
+     */
+    private PageDataSource(File[] dataFiles, int pageRowsNum, int prefetchFiles, long windowSize, int readaheadDepth,
+                           LineIndex lineIndex, long startLineNum, LongAdder[] counters) {
+        this.dataFiles = dataFiles;
+        this.prefetchFiles = prefetchFiles;
+        this.windowSize = windowSize;
+        this.readaheadDepth = readaheadDepth;
+        this.PAGE_ROWS_NUM = pageRowsNum;
+        this.lineIndex = lineIndex;
+        this.startLineNum = startLineNum;
+        this.casFailures = counters[0];
+        this.spins = counters[1];
+        this.pageSwitchWaits = counters[2];
     }
 
-    private volatile Page currentPage = null;
+    @Override
+    public ResumableDataSource resume(long lineNum) throws IOException {
+        return new PageDataSource(dataFiles, PAGE_ROWS_NUM, prefetchFiles, windowSize, readaheadDepth, lineIndex, lineNum,
+                new LongAdder[]{casFailures, spins, pageSwitchWaits});
+    }
 
     @Override
     public Row getRow(Row row) throws IOException {
+        return takeRow(row, true, false);
+    }
+
+    @Override
+    public Row getRowSlice(Row row, boolean isWait) throws IOException {
+        return takeRow(row, isWait, true);
+    }
+
+    @Override
+    public void release(Row row) {
+        final Page page = (Page) row.getSliceOwner();
+        row.setSlice(null, null);
+        done(page);
+    }
+
+    /*
+     * 争抢一行
+     * isWait  页面还没填充好时是否等待，不等待时返回null
+     * isSlice 是否只返回页内切片，不拷贝数据
+     */
+    private Row takeRow(Row row, boolean isWait, boolean isSlice) throws IOException {
         if (isEOF) {
-            row.setLineNum(EMPTY_ROW.getLineNum());
-            row.setData(EMPTY_ROW.getData());
+            setEmpty(row);
+            return row;
         }
 
+        // 竞争统计先在本地累计，返回前再一次性计入，避免在自旋中频繁更新
+        int casFailureCount = 0;
+        int spinCount = 0;
+        Object stallEvent = null;
+
         while (true) {
 
-            final Page page = currentPage == null ? pageTable[0] : currentPage;
-            final int readCount = page.readCount.get();
+            final long pageNum = currentPageNum.get();
+            final Page page = pageTable[(int) (pageNum % PAGE_TABLE_SIZE)];
+            final long cursor = page.cursor.get();
+
+            // 游标中只有页码的低32位，页码表很小，用差值比较不会混淆
+            final int pageNumDiff = pageTagOf(cursor) - (int) pageNum;
+            if (pageNumDiff < 0) {
+                // 页面切换者还没来得及填充这一页，自旋等待
+                if (!isWait) {
+                    countContention(casFailureCount, spinCount, stallEvent);
+                    return null;
+                }
+                if (spinCount++ == 0) {
+                    stallEvent = events.begin(STALL);
+                }
+                continue;
+            }
+
+            if (pageNumDiff > 0) {
+                // 这一页早已被读完并被切换掉了，推进到下一页
+                currentPageNum.compareAndSet(pageNum, pageNum + 1);
+                continue;
+            }
+
+            final int readCount = readCountOf(cursor);
             final int rowCount = page.rowCount;
 
-            if( readCount == rowCount ) {
+            if (readCount >= rowCount) {
 
-                if( page.isLast ) {
-                    row.setLineNum(EMPTY_ROW.getLineNum());
-                    row.setData(EMPTY_ROW.getData());
+                if (pageNum == lastPageNum) {
+                    isEOF = true;
+                    setEmpty(row);
+                    countContention(casFailureCount, spinCount, stallEvent);
                     return row;
-                } else {
-                    continue;
                 }
 
+                // 当前页已被读完，推进到下一页
+                currentPageNum.compareAndSet(pageNum, pageNum + 1);
+                continue;
+
             }
 
-            if (!page.readCount.compareAndSet(readCount, readCount + 1)) {
+            if (!page.cursor.compareAndSet(cursor, cursor + 1)) {
                 // 这里更新真心热...有啥好办法咧？
                 // log.info("debug for page.readCount CAS. readCount={}",readCount);
+                casFailureCount++;
                 continue;
             }
 
-            final int offsetOfRow = readCount * PAGE_ROW_SIZE;
-            final ByteBuffer byteBuffer = ByteBuffer.wrap(page.data, offsetOfRow, PAGE_ROW_SIZE);
-            final int lineNum = byteBuffer.getInt();
-            final int validByteCount = byteBuffer.getInt();
+            final ByteBuffer chunk = page.chunks[readCount / PAGE_CHUNK_ROWS];
+            final int offsetOfRow = (readCount % PAGE_CHUNK_ROWS) * PAGE_ROW_SIZE;
+            final int validByteCount = chunk.getInt(offsetOfRow + PAGE_ROW_HEAD_SIZE - Integer.BYTES);
+            final ByteBuffer byteBuffer = chunk.duplicate();
+            byteBuffer.limit(offsetOfRow + PAGE_ROW_HEAD_SIZE + validByteCount).position(offsetOfRow);
+            row.setLineNum(byteBuffer.getLong(offsetOfRow));
+            row.setOffset(byteBuffer.getLong(offsetOfRow + Long.BYTES));
+            countContention(casFailureCount, spinCount, stallEvent);
+
+            if (isSlice) {
+                // 切片释放时才算读完
+                row.setSlice(byteBuffer, page);
+                return row;
+            }
+
             final byte[] data = new byte[validByteCount];
+            byteBuffer.position(offsetOfRow + PAGE_ROW_HEAD_SIZE);
             byteBuffer.get(data);
-            row.setLineNum(lineNum);
             row.setData(data);
+            done(page);
+            return row;
 
-            // 到了页末
-            if (page.readCount.get() == rowCount) {
+        }
+    }
 
-                if (page.isLast) {
-                    isEOF = true;
-                } else {
+    /*
+     * 设置为EOF的空行
+     */
+    private static void setEmpty(Row row) {
+        row.setLineNum(EMPTY_ROW.getLineNum());
+        row.setOffset(EMPTY_ROW.getOffset());
+        row.setData(EMPTY_ROW.getData());
+        row.setSlice(null, null);
+    }
 
-                    pageSwitchLock.lock();
-                    try {
-                        pageSwitchWakeUpCondition.signal();
-                    } finally {
-                        pageSwitchLock.unlock();
-                    }
+    /*
+     * 一行被读完，当前页最后一个被读完的行负责唤醒页面切换者
+     */
+    private void done(Page page) {
+        if (page.doneCount.incrementAndGet() == page.rowCount) {
+            pageSwitchLock.lock();
+            try {
+                pageSwitchWakeUpCondition.signal();
+            } finally {
+                pageSwitchLock.unlock();
+            }
+        }
+    }
+
+    /*
+     * 计入一次获取行的竞争统计
+     */
+    private void countContention(int casFailureCount, int spinCount, Object stallEvent) {
+        if (casFailureCount > 0) {
+            casFailures.add(casFailureCount);
+        }
+        if (spinCount > 0) {
+            spins.add(spinCount);
+            pageSwitchWaits.increment();
+            events.commitStall(stallEvent, EVENT_SOURCE, "spin", spinCount);
+        }
+    }
+
+    /**
+     * @return 读取者争抢行时游标CAS失败的次数
+     */
+    public long getCasFailures() {
+        return casFailures.sum();
+    }
+
+    /**
+     * @return 读取者等待页面切换者填充页面的自旋次数
+     */
+    public long getSpins() {
+        return spins.sum();
+    }
+
+    /**
+     * @return 读取者需要等待页面切换者填充页面的次数
+     */
+    public long getPageSwitchWaits() {
+        return pageSwitchWaits.sum();
+    }
+
+    @Override
+    public long getTotalRows() {
+        return totalRows;
+    }
 
-                    final int pageNum = page.pageNum;
-                    final int nextPageIdx = (pageNum + 1) % PAGE_TABLE_SIZE;
-                    while (pageTable[nextPageIdx].pageNum != pageNum + 1) {
-                        // spin for switch
+    @Override
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    @Override
+    public List<Row> getRange(long startLineNum, int count) throws IOException {
+
+        final List<Row> range = new ArrayList<>();
+        final long fileSize = fileStarts[dataFiles.length];
+        final long endLineNum = startLineNum + count;
+        if (startLineNum < 0
+                || count <= 0) {
+            return range;
+        }
+
+        // 从不超过开始行的最近索引点开始解析
+        final long[] floor = lineIndex.floor(startLineNum);
+        long lineNum = floor[0];
+        long fileOffset = floor[1];
+        long outputOffset = floor[2];
+
+        final ByteBuffer readBuffer = ByteBuffer.allocate(64 * 1024);
+        final LineDecoder lineDecoder = new LineDecoder(PAGE_ROW_SIZE);
+        long lineOffset = fileOffset;
+        int fileIdx = -1;
+        FileChannel fileChannel = null;
+        try {
+
+            readBuffer.flip();
+            while (lineNum < endLineNum) {
+
+                if (!readBuffer.hasRemaining()) {
+                    if (fileOffset >= fileSize) {
+                        break;
+                    }
+                    // 逻辑偏移量所在的文件变化时切换文件，行解析状态跨文件保持
+                    final int idx = fileIndexOf(fileOffset);
+                    if (idx != fileIdx) {
+                        if (null != fileChannel) {
+                            fileChannel.close();
+                        }
+                        fileIdx = idx;
+                        fileChannel = new RandomAccessFile(dataFiles[fileIdx], "r").getChannel();
+                    }
+                    readBuffer.clear();
+                    readBuffer.limit((int) Math.min(readBuffer.capacity(), fileStarts[fileIdx + 1] - fileOffset));
+                    while (readBuffer.hasRemaining()) {
+                        if (fileChannel.read(readBuffer, fileOffset - fileStarts[fileIdx] + readBuffer.position()) < 0) {
+                            throw new IOException("file=" + dataFiles[fileIdx] + " was truncated.");
+                        }
                     }
-                    currentPage = pageTable[nextPageIdx];
+                    readBuffer.flip();
                 }
 
+                final ByteBuffer lineBuffer = lineDecoder.decode(readBuffer.get());
+                fileOffset++;
+                if (null == lineBuffer) {
+                    continue;
+                }
+
+                final int dataLength = lineBuffer.limit();
+                lineIndex.record(lineNum, lineOffset, outputOffset);
+                lineOffset = fileOffset;
+                if (lineNum >= startLineNum) {
+                    final byte[] _data = new byte[dataLength];
+                    lineBuffer.get(_data);
+                    final Row row = new Row(lineNum, LaserUtils.process(_data));
+                    row.setOffset(outputOffset);
+                    range.add(row);
+                }
+                outputOffset += outputRowSize(lineNum, processedSize(dataLength));
+                lineDecoder.clear();
+                lineNum++;
+
             }
 
-            return row;
+        } finally {
+            if (null != fileChannel) {
+                fileChannel.close();
+            }
+        }
+
+        return range;
+    }
 
+    /*
+     * 逻辑偏移量所在的数据文件，跳过空文件
+     */
+    private int fileIndexOf(long fileOffset) {
+        int fileIdx = 0;
+        while (fileIdx < dataFiles.length - 1
+                && fileOffset >= fileStarts[fileIdx + 1]) {
+            fileIdx++;
         }
+        return fileIdx;
     }
 
     @Override
     public void init() throws IOException {
 
+        fileStarts = new long[dataFiles.length + 1];
+        for (int i = 0; i < dataFiles.length; i++) {
+            fileStarts[i + 1] = fileStarts[i] + dataFiles[i].length();
+        }
+
+        // 初始化页码表，每页都被当作上一轮已经读完的页面
+        for (int i = 0; i < pageTable.length; i++) {
+            final Page page = new Page();
+            page.cursor.set(toCursor(i - PAGE_TABLE_SIZE, 0));
+            pageTable[i] = page;
+        }
+
+        if (prefetchFiles > 0
+                && dataFiles.length > 1) {
+            prefetcher = Executors.newFixedThreadPool(prefetchFiles, (r) -> {
+                final Thread t = new Thread(r, "PageDataSource-PREFETCHER-daemon");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+
         /*
          * 页面切换者<br/>
          * 切换页码表中已完成的页面
          */
-        final Thread pageSwitcher = new Thread(() -> {
+        pageSwitcher = new Thread(() -> {
 
-            // 初始化页码表
-            for (int i = 0; i < pageTable.length; i++) {
-                final Page page = new Page();
-                page.pageNum = i;
-                pageTable[i] = page;
-            }
+            // 下一次要填充的页码
+            long nextPageNum = 0;
+
+            // 从不超过开始行的最近索引点开始解析
+            final long[] floor = lineIndex.floor(startLineNum);
+
+            // 文件读取偏移量，为所有数据文件首尾相接后的逻辑偏移量
+            long fileOffset = floor[1];
+
+            // 输出文件偏移量
+            long outputOffset = floor[2];
 
-            // 下一次要替换掉的页码表编号(0~PAGE_TABLE_SIZE)
-            int nextSwitchPageTableIndex = 0;
+            // 当前行在文件中的起始位置
+            long lineOffset = fileOffset;
 
-            // 文件读取偏移量
-            long fileOffset = 0;
+            // 当前正在解析的数据文件
+            int fileIdx = fileIndexOf(fileOffset);
 
-            try (final FileChannel fileChannel = new RandomAccessFile(dataFile, "r").getChannel()) {
+            // 下一个尚未预读的文件
+            int prefetchIdx = prefetch(fileIdx + 1, fileIdx + 1 + prefetchFiles);
+
+            // 映射窗口，预读者提前映射并加载
+            final MappedWindows windows = new MappedWindows(dataFiles, fileStarts, fileOffset, windowSize, readaheadDepth);
+            windows.start();
+
+            try {
 
                 // 文件整体大小
-                final long fileSize = fileChannel.size();
+                final long fileSize = fileStarts[dataFiles.length];
 
                 // 行号计数器
-                int lineCounter = 0;
+                long lineCounter = floor[0];
 
-                // 文件缓存
-                MappedByteBuffer mappedBuffer = null;
+                // 当前正在解析的映射窗口
+                MappedWindows.Window window = null;
+                ByteBuffer mappedBuffer = null;
 
-                // 行解析状态机
-                DecodeLineState state = DecodeLineState.READ_D;
+                // 行解析器
+                final LineDecoder lineDecoder = new LineDecoder(PAGE_ROW_SIZE);
 
-                while (fileOffset < fileSize) {
+                while (lastPageNum < 0) {
 
                     // 遍历页码表，主要做两件事
                     // 1.顺序的更换页码
                     // 2.将文件缓存刷入页码
-                    final Page page = pageTable[nextSwitchPageTableIndex];
+                    final Page page = pageTable[(int) (nextPageNum % PAGE_TABLE_SIZE)];
 
-                    if (page.isInit
-                            && page.readCount.get() < page.rowCount) {
-                        // 如果已经被初始化后的当前页还没被读完,休眠等待被唤醒
-                        pageSwitchLock.lock();
-                        try {
+                    // 如果当前页还没被读完,休眠等待被唤醒
+                    final Object stallEvent = page.doneCount.get() < page.rowCount ? events.begin(STALL) : null;
+                    pageSwitchLock.lock();
+                    try {
+                        while (page.doneCount.get() < page.rowCount) {
                             pageSwitchWakeUpCondition.await();
-                            continue;
-                        } catch (InterruptedException e) {
-                            currentThread().interrupt();
-                        } finally {
-                            pageSwitchLock.unlock();
-                        }//try
-                    }
+                        }
+                    } catch (InterruptedException e) {
+                        currentThread().interrupt();
+                        break;
+                    } finally {
+                        pageSwitchLock.unlock();
+                    }//try
+                    events.commitStall(stallEvent, EVENT_SOURCE, "park", 0);
 
-                    if (!page.isInit
-                            || page.readCount.get() == page.rowCount) {
+                    final Object filledEvent = events.begin(PAGE_FILLED);
+                    final long pageFileOffset = fileOffset;
 
-                        final ByteBuffer dataBuffer = ByteBuffer.wrap(page.data);
+                    final ByteBuffer[] dataBuffers = new ByteBuffer[page.chunks.length];
+                    for (int i = 0; i < dataBuffers.length; i++) {
+                        dataBuffers[i] = page.chunks[i].duplicate();
+                    }
 
-                        // 页面中的行号
-                        int rowIdx = 0;
+                    // 页面中的行号
+                    int rowIdx = 0;
 
-                        final ByteBuffer tempBuffer = ByteBuffer.allocate(PAGE_ROW_SIZE);
+                    FILL_PAGE_LOOP:
+                    while (fileOffset < fileSize) {
+                        // 只有页面尚未被填满的时候才需要开始填充
 
-                        FILL_PAGE_LOOP:
-                        while (true) {
-                            // 只有页面尚未被填满的时候才需要开始填充
+                        if (null == mappedBuffer
+                                || !mappedBuffer.hasRemaining()) {
+                            // 当前分块已到达尽头,先换窗口内的下一个分块
+                            mappedBuffer = null == window ? null : window.nextChunk();
+                        }
 
-                            if (null == mappedBuffer
-                                    || !mappedBuffer.hasRemaining()) {
-                                // 如果文件缓存是第一次加载,或者已到达尽头,需要做一次切换映射
-                                // 修正映射长度
-                                final long fixLength = (fileOffset + BUFFER_SIZE >= fileSize) ? fileSize - fileOffset : BUFFER_SIZE;
+                        if (null == mappedBuffer) {
+                            // 如果映射窗口是第一次取用,或者已到达尽头,释放并换下一个窗口，行解析状态跨窗口和文件保持
+                            if (null != window) {
+                                windows.release(window);
+                                window = null;
+                            }
+                            window = windows.next();
+                            if (null == window) {
+                                throw new IOException("no more window at fileOffset=" + fileOffset);
+                            }
+                            mappedBuffer = window.nextChunk();
+
+                            if (window.fileIdx != fileIdx) {
+                                // 切换到了下一个非空文件
+                                fileIdx = window.fileIdx;
+                                prefetchIdx = prefetch(prefetchIdx, fileIdx + 1 + prefetchFiles);
+                            }
+                        }
 
-                                if (null != mappedBuffer) {
-                                    unmap(mappedBuffer);
-                                }
+                        while (mappedBuffer.hasRemaining()) {
 
-                                if (fixLength > 0) {
-                                    mappedBuffer = fileChannel.map(READ_ONLY, fileOffset, fixLength).load();
-                                }
+                            final ByteBuffer lineBuffer = lineDecoder.decode(mappedBuffer.get());
+                            fileOffset++;
+                            if (null == lineBuffer) {
+                                continue;
                             }
 
-                            if (!mappedBuffer.hasRemaining()) {
-                                // 如果刚切完的文件缓存就已经没数据了,说明到达了EOF
-                                // 需要关闭页面切换者
-                                // 将当前页标记为最后一页
-                                page.isLast = true;
-                                break;
+                            final int dataLength = lineBuffer.limit();
+                            final long lineNum = lineCounter++;
+                            lineIndex.record(lineNum, lineOffset, outputOffset);
+                            lineOffset = fileOffset;
+
+                            if (lineNum < startLineNum) {
+                                // 续传起点之前的行只需累计输出偏移量
+                                outputOffset += outputRowSize(lineNum, processedSize(dataLength));
+                                lineDecoder.clear();
+                                continue;
                             }
 
-                            while (mappedBuffer.hasRemaining()) {
-                                switch (state) {
-                                    case READ_D: {
-                                        final byte b = mappedBuffer.get();
-                                        fileOffset++;
-                                        if (b == '\r') {
-                                            state = DecodeLineState.READ_R;
-                                        } else {
-                                            tempBuffer.put(b);
-                                            break;
-                                        }
-                                    }
-
-                                    case READ_R: {
-                                        final byte b = mappedBuffer.get();
-                                        fileOffset++;
-                                        if (b != '\n') {
-                                            throw new IOException("illegal format, \\n did not behind \\r, b=" + b);
-                                        }
-                                        state = DecodeLineState.READ_N;
-                                    }
-
-                                    case READ_N: {
-                                        state = DecodeLineState.READ_D;
-
-                                        // 将临时缓存中的数据填入页中
-                                        tempBuffer.flip();
-                                        final int dataLength = tempBuffer.limit();
-                                        dataBuffer.putInt(lineCounter++);
-
-                                        final byte[] _data = new byte[dataLength];
-                                        tempBuffer.get(_data);
-                                        final byte[] __data = LaserUtils.process(_data);
-                                        dataBuffer.putInt(__data.length);
-                                        dataBuffer.put(__data);
-
-                                        tempBuffer.clear();
-
-
-                                        // 重新计算当前行偏移量
-                                        if (++rowIdx == PAGE_ROWS_NUM) {
-                                            // 一页已经被填满,跳出本次页面填充动作
-                                            break FILL_PAGE_LOOP;
-                                        }
-
-                                        int offsetOfRow = rowIdx * PAGE_ROW_SIZE;
-                                        dataBuffer.position(offsetOfRow);
-
-                                        break;
-                                    }
-
-                                    default:
-                                        throw new IOException("init failed, illegal state=" + state);
-                                }//switch:state
-
-                            }//while:MAPPED
-
-                        }//while:FILL_PAGE_LOOP
-
-                        // 重新计算页面参数
-                        page.rowCount = rowIdx;
-                        page.readCount.set(0);
-                        log.info("page.pageNum={} was switched. fileOffset={},fileSize={},page.rowCount={};",
-                                page.pageNum, fileOffset, fileSize, page.rowCount);
-
-                        if (fileOffset == fileSize) {
-                            page.isLast = true;
-                            log.info("page.pageNum={} is last, page.readCount={}", page.pageNum, page.readCount.get());
-                        }
+                            // 将临时缓存中的数据填入页中
+                            final byte[] _data = new byte[dataLength];
+                            lineBuffer.get(_data);
+                            final byte[] __data = LaserUtils.process(_data);
+                            lineDecoder.clear();
 
-                        if (page.isInit) {
-                            // 对初始化的页面不需要累加页面编号
-                            page.pageNum += PAGE_TABLE_SIZE;
-                        } else {
-                            page.isInit = true;
-                        }
+                            final ByteBuffer dataBuffer = dataBuffers[rowIdx / PAGE_CHUNK_ROWS];
+                            dataBuffer.position((rowIdx % PAGE_CHUNK_ROWS) * PAGE_ROW_SIZE);
+                            dataBuffer.putLong(lineNum);
+                            dataBuffer.putLong(outputOffset);
+                            dataBuffer.putInt(__data.length);
+                            dataBuffer.put(__data);
+
+                            outputOffset += outputRowSize(lineNum, __data.length);
 
-                        // 最后一步，别忘记更新下一次要替换的页码表号
-                        nextSwitchPageTableIndex = (nextSwitchPageTableIndex + 1) % PAGE_TABLE_SIZE;
+                            if (++rowIdx == PAGE_ROWS_NUM) {
+                                // 一页已经被填满,跳出本次页面填充动作
+                                break FILL_PAGE_LOOP;
+                            }
+
+                        }//while:MAPPED
 
+                    }//while:FILL_PAGE_LOOP
+
+                    if (fileOffset == fileSize) {
+                        // 到达文件末尾，当前页即为最后一页
+                        totalRows = lineCounter;
+                        totalBytes = outputOffset;
+                        lastPageNum = nextPageNum;
+                        log.info("page.pageNum={} is last, page.rowCount={}", nextPageNum, rowIdx);
                     }
 
+                    events.commitPage(filledEvent, EVENT_SOURCE, nextPageNum, rowIdx, fileOffset - pageFileOffset);
+
+                    // 发布页面，游标必须最后设置
+                    final Object publishedEvent = events.begin(PAGE_PUBLISHED);
+                    page.rowCount = rowIdx;
+                    page.doneCount.set(0);
+                    page.cursor.set(toCursor(nextPageNum, 0));
+                    events.commitPage(publishedEvent, EVENT_SOURCE, nextPageNum, rowIdx, fileOffset - pageFileOffset);
+                    log.info("page.pageNum={} was switched. fileOffset={},fileSize={},page.rowCount={};",
+                            nextPageNum, fileOffset, fileSize, rowIdx);
+
+                    // 最后一步，别忘记更新下一次要填充的页码
+                    nextPageNum++;
+
                 }//while
 
+                if (null != window) {
+                    windows.release(window);
+                }
+
             } catch (IOException ioe) {
-                log.warn("mapping file={} failed.", dataFile, ioe);
+                log.warn("mapping file={} failed.", dataFiles[fileIdx], ioe);
+            } catch (InterruptedException e) {
+                currentThread().interrupt();
+            } finally {
+                windows.close();
             }
 
-            log.info("PageDataSource(file:{}) was arrive EOF.", dataFile);
+            log.info("PageDataSource(file:{}) was arrive EOF.", Arrays.toString(dataFiles));
 
         }, "PageDataSource-PAGESWITCHER-daemon");
         pageSwitcher.setDaemon(true);
         pageSwitcher.start();
 
-        log.info("PageDataSource(file:{}) was inited.", dataFile);
+        log.info("PageDataSource(file:{}) was inited. startLineNum={}", Arrays.toString(dataFiles), startLineNum);
 
     }
 
+    /*
+     * 把[fromIdx,toIdx)的文件并行加载到页缓存，返回下一个尚未预读的文件
+     */
+    private int prefetch(int fromIdx, int toIdx) {
+        if (null == prefetcher) {
+            return fromIdx;
+        }
+        toIdx = Math.min(dataFiles.length, toIdx);
+        for (int idx = fromIdx; idx < toIdx; idx++) {
+            final File dataFile = dataFiles[idx];
+            prefetcher.execute(() -> {
+                try (final FileChannel fileChannel = new RandomAccessFile(dataFile, "r").getChannel()) {
+                    final long fileSize = fileChannel.size();
+                    for (long position = 0; position < fileSize && !currentThread().isInterrupted(); position += BUFFER_SIZE) {
+                        try (final Mapping mapping = MemoryMapper.get().map(fileChannel, READ_ONLY, position, Math.min(BUFFER_SIZE, fileSize - position))) {
+                            mapping.load();
+                        }
+                    }
+                } catch (IOException e) {
+                    log.warn("prefetch file={} failed.", dataFile, e);
+                }
+            });
+        }
+        return Math.max(fromIdx, toIdx);
+    }
+
     @Override
     public void destroy() throws IOException {
-        log.info("PageDataSource(file:{}) was destroyed.", dataFile);
+        // 唤醒并结束可能还在等待的页面切换者，释放文件映射
+        if (null != pageSwitcher) {
+            pageSwitcher.interrupt();
+        }
+        if (null != prefetcher) {
+            prefetcher.shutdownNow();
+        }
+        log.info("PageDataSource(file:{}) was destroyed.", Arrays.toString(dataFiles));
+    }
+
+    /*
+     * 页面游标=页码的低32位(高32位)+已读行数(低32位)
+     */
+    private static long toCursor(long pageNum, int readCount) {
+        return (pageNum << 32) | readCount;
+    }
+
+    private static int pageTagOf(long cursor) {
+        return (int) (cursor >>> 32);
+    }
+
+    private static int readCountOf(long cursor) {
+        return (int) cursor;
     }
 
 
@@ -357,9 +814,10 @@ public class PageDataSource implements DataSource {
     class Page {
 
         /*
-         * 页码
+         * 页面游标<br/>
+         * 页码和已读行数必须一起CAS，避免读到已被切换的页面
          */
-        volatile int pageNum;
+        final AtomicLong cursor = new AtomicLong(0);
 
         /*
          * 页面总行数
@@ -367,25 +825,21 @@ public class PageDataSource implements DataSource {
         volatile int rowCount = 0;
 
         /*
-         * 已被读取行数
+         * 已被读取完成的行数
          */
-        AtomicInteger readCount = new AtomicInteger(0);
+        final AtomicInteger doneCount = new AtomicInteger(0);
 
         /*
-         * 是否最后一页
+         * 数据段，放在堆外以便零拷贝发送，按PAGE_CHUNK_ROWS行分块
          */
-        volatile boolean isLast = false;
+        final ByteBuffer[] chunks = new ByteBuffer[(PAGE_ROWS_NUM - 1) / PAGE_CHUNK_ROWS + 1];
 
-        /*
-         * 当前页面是否已经被初始化<br/>
-         * 因为第一次读取数据的时候需要页面切换者进行读取,可以说是预加载
-         */
-        volatile boolean isInit = false;
-
-        /*
-         * 数据段
-         */
-        byte[] data = new byte[PAGE_ROW_SIZE * PAGE_ROWS_NUM];
+        Page() {
+            for (int i = 0; i < chunks.length; i++) {
+                final int rows = Math.min(PAGE_CHUNK_ROWS, PAGE_ROWS_NUM - i * PAGE_CHUNK_ROWS);
+                chunks[i] = ByteBuffer.allocateDirect(rows * PAGE_ROW_SIZE);
+            }
+        }
 
     }
 
@@ -395,7 +849,64 @@ public class PageDataSource implements DataSource {
     private enum DecodeLineState {
         READ_D, // 读取数据
         READ_R, // 读取\r
-        READ_N, // 读取\n
+    }
+
+    /**
+     * 行解析器，逐字节解析以\r\n结尾的行，解析状态跨窗口和文件保持<br/>
+     * 页面切换者和随机读取共用
+     */
+    private static class LineDecoder {
+
+        /*
+         * 正在解析的行数据
+         */
+        private final ByteBuffer tempBuffer;
+
+        private DecodeLineState state = DecodeLineState.READ_D;
+
+        private LineDecoder(int capacity) {
+            this.tempBuffer = ByteBuffer.allocate(capacity);
+        }
+
+        /**
+         * 解析一个字节
+         *
+         * @param b 字节
+         * @return 读完一行时返回处于读模式的行数据，用完后需要clear()；否则返回null
+         * @throws IOException \r之后不是\n
+         */
+        ByteBuffer decode(byte b) throws IOException {
+            switch (state) {
+                case READ_D: {
+                    if (b == '\r') {
+                        state = DecodeLineState.READ_R;
+                    } else {
+                        tempBuffer.put(b);
+                    }
+                    return null;
+                }
+
+                case READ_R: {
+                    if (b != '\n') {
+                        throw new IOException("illegal format, \\n did not behind \\r, b=" + b);
+                    }
+                    state = DecodeLineState.READ_D;
+                    tempBuffer.flip();
+                    return tempBuffer;
+                }
+
+                default:
+                    throw new IOException("illegal state=" + state);
+            }//switch:state
+        }
+
+        /**
+         * 清空行数据，准备解析下一行
+         */
+        void clear() {
+            tempBuffer.clear();
+        }
+
     }
 
 }
@@ -0,0 +1,343 @@
+package com.github.ompc.laser.common.datasource.impl;
+
+import com.github.ompc.laser.common.datasource.writer.PageWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import static java.lang.Thread.currentThread;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * 分页持久化日志<br/>
+ * 页面写入文件并刷盘后，向日志追加一条记录：
+ * 页码(8B)+行数(4B)+文件偏移量(8B)+字节数(8B)+页面CRC32(4B)+记录CRC32(4B)<br/>
+ * 重启后取从第0页开始连续、且校验和与输出文件一致的页面作为可信前缀，只需重新获取前缀之后的数据
+ */
+public class PageJournal {
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final static int RECORD_SIZE = 36;
+
+    /*
+     * 校验输出文件时的读缓存大小
+     */
+    private final static int VERIFY_BUFFER_SIZE = 4 * 1024 * 1024;
+
+    private final File journalFile;
+
+    /*
+     * 日志刷盘间隔(ms)
+     */
+    private final long intervalMs;
+
+    /*
+     * 可信前缀：页数、行数、文件偏移量
+     */
+    private long pageNum = 0;
+    private long lineNum = 0;
+    private long fileOffset = 0;
+
+    /*
+     * 已写入文件但尚未记录到日志的页面
+     */
+    private List<Record> pendingRecords = new ArrayList<>();
+
+    private FileChannel journalChannel;
+    private Thread journaler;
+
+    /*
+     * 停止标记，日志线程看到后追加完剩余记录再退出
+     */
+    private boolean isStopFlag = false;
+
+    public PageJournal(File journalFile, long intervalMs) {
+        this.journalFile = journalFile;
+        this.intervalMs = intervalMs;
+    }
+
+    /**
+     * 从日志中恢复可信前缀，并将日志重写为只包含可信前缀
+     *
+     * @param dataFile 输出文件
+     * @throws IOException 重写日志失败
+     */
+    public void recover(File dataFile) throws IOException {
+
+        final TreeMap<Long, Record> records = new TreeMap<>();
+        if (journalFile.exists()) {
+            final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(journalFile.toPath()));
+            while (buffer.remaining() >= RECORD_SIZE) {
+                final Record record = Record.decode(buffer);
+                if (null == record) {
+                    // 最后一条记录可能写了一半，其后的内容都不可信
+                    log.warn("journal={} has broken record at position={}, ignore the rest.",
+                            journalFile, buffer.position() - RECORD_SIZE);
+                    break;
+                }
+                records.put(record.pageNum, record);
+            }
+        }
+
+        // 取连续且校验通过的前缀
+        final List<Record> prefix = new ArrayList<>();
+        if (!records.isEmpty()
+                && dataFile.exists()) {
+            try (final FileChannel dataChannel = new RandomAccessFile(dataFile, "r").getChannel()) {
+                final ByteBuffer verifyBuffer = ByteBuffer.allocateDirect(VERIFY_BUFFER_SIZE);
+                Record record;
+                while (null != (record = records.get(pageNum))
+                        && record.fileOffset == fileOffset
+                        && verify(dataChannel, record, verifyBuffer)) {
+                    prefix.add(record);
+                    pageNum++;
+                    lineNum += record.rowCount;
+                    fileOffset += record.byteCount;
+                }
+            }
+        }
+
+        // 重写日志，去掉前缀之外的记录
+        final File tempFile = new File(journalFile.getPath() + ".tmp");
+        try (final RandomAccessFile raf = new RandomAccessFile(tempFile, "rw")) {
+            raf.setLength(0);
+            final ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
+            for (Record record : prefix) {
+                buffer.clear();
+                record.encode(buffer);
+                buffer.flip();
+                raf.getChannel().write(buffer);
+            }
+            raf.getChannel().force(true);
+        }
+        Files.move(tempFile.toPath(), journalFile.toPath(), ATOMIC_MOVE, REPLACE_EXISTING);
+
+        log.info("journal={} was recovered. pageNum={},lineNum={},fileOffset={}",
+                journalFile, pageNum, lineNum, fileOffset);
+
+    }
+
+    /*
+     * 校验页面在输出文件中的内容
+     */
+    private boolean verify(FileChannel dataChannel, Record record, ByteBuffer verifyBuffer) throws IOException {
+        if (record.fileOffset + record.byteCount > dataChannel.size()) {
+            return false;
+        }
+        final CRC32 crc32 = new CRC32();
+        long position = record.fileOffset;
+        final long end = record.fileOffset + record.byteCount;
+        while (position < end) {
+            verifyBuffer.clear();
+            verifyBuffer.limit((int) Math.min(verifyBuffer.capacity(), end - position));
+            final int count = dataChannel.read(verifyBuffer, position);
+            if (count <= 0) {
+                return false;
+            }
+            verifyBuffer.flip();
+            crc32.update(verifyBuffer);
+            position += count;
+        }
+        return (int) crc32.getValue() == record.pageCrc;
+    }
+
+    /**
+     * 启动日志线程
+     *
+     * @param pageWriter 页面写入器，追加日志前先刷盘
+     * @throws IOException 打开日志失败
+     */
+    public void start(PageWriter pageWriter) throws IOException {
+
+        journalChannel = new RandomAccessFile(journalFile, "rw").getChannel();
+        journalChannel.position(journalChannel.size());
+
+        journaler = new Thread(() -> {
+
+            final ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * 1024);
+            boolean isLast = false;
+            while (!isLast) {
+
+                final List<Record> records;
+                synchronized (this) {
+                    if (!isStopFlag) {
+                        try {
+                            wait(intervalMs);
+                        } catch (InterruptedException e) {
+                            // 不响应中断，只认停止标记，保证退出前把剩余记录追加完
+                        }
+                    }
+                    // 停止后取走的是最后一批记录
+                    isLast = isStopFlag;
+                    if (pendingRecords.isEmpty()) {
+                        continue;
+                    }
+                    records = pendingRecords;
+                    pendingRecords = new ArrayList<>();
+                }
+
+                append(pageWriter, records, buffer);
+
+            }//while
+
+        }, "PageJournal-daemon");
+        journaler.setDaemon(true);
+        journaler.start();
+
+    }
+
+    /*
+     * 页面都已经写入文件，先刷盘再追加日志
+     */
+    private void append(PageWriter pageWriter, List<Record> records, ByteBuffer buffer) {
+        try {
+            pageWriter.sync();
+            for (Record record : records) {
+                if (buffer.remaining() < RECORD_SIZE) {
+                    writeFully(buffer);
+                }
+                record.encode(buffer);
+            }
+            writeFully(buffer);
+            journalChannel.force(false);
+        } catch (IOException e) {
+            log.warn("append journal={} failed.", journalFile, e);
+            buffer.clear();
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            journalChannel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * 一个完整的页面已写入文件
+     *
+     * @param pageNum    页码
+     * @param rowCount   页面行数
+     * @param fileOffset 页面在文件中的起始位置
+     * @param byteCount  页面字节数
+     * @param pageCrc    页面内容的CRC32
+     */
+    public synchronized void pageDone(long pageNum, int rowCount, long fileOffset, long byteCount, int pageCrc) {
+        pendingRecords.add(new Record(pageNum, rowCount, fileOffset, byteCount, pageCrc));
+    }
+
+    /**
+     * 停止日志线程，等待已写入文件的页面都追加到日志后再关闭日志
+     *
+     * @throws IOException 关闭日志失败
+     */
+    public void stop() throws IOException {
+        if (null != journaler) {
+            synchronized (this) {
+                isStopFlag = true;
+                notifyAll();
+            }
+            try {
+                journaler.join();
+            } catch (InterruptedException e) {
+                currentThread().interrupt();
+            }
+        }
+        if (null != journalChannel) {
+            journalChannel.close();
+        }
+    }
+
+    /**
+     * 传输全部完成后删除日志
+     */
+    public void delete() {
+        if (journalFile.exists()
+                && !journalFile.delete()) {
+            log.warn("delete journal={} failed.", journalFile);
+        }
+    }
+
+    /**
+     * @return 可信前缀的页数
+     */
+    public long getPageNum() {
+        return pageNum;
+    }
+
+    /**
+     * @return 可信前缀的行数，即续传的起始行号
+     */
+    public long getLineNum() {
+        return lineNum;
+    }
+
+    /**
+     * @return 可信前缀的字节数，即续传的起始文件偏移量
+     */
+    public long getFileOffset() {
+        return fileOffset;
+    }
+
+    /**
+     * 日志记录
+     */
+    static class Record {
+
+        final long pageNum;
+        final int rowCount;
+        final long fileOffset;
+        final long byteCount;
+        final int pageCrc;
+
+        Record(long pageNum, int rowCount, long fileOffset, long byteCount, int pageCrc) {
+            this.pageNum = pageNum;
+            this.rowCount = rowCount;
+            this.fileOffset = fileOffset;
+            this.byteCount = byteCount;
+            this.pageCrc = pageCrc;
+        }
+
+        void encode(ByteBuffer buffer) {
+            final int start = buffer.position();
+            buffer.putLong(pageNum).putInt(rowCount).putLong(fileOffset).putLong(byteCount).putInt(pageCrc);
+            buffer.putInt(crc32(buffer, start));
+        }
+
+        /*
+         * 解码一条记录，记录CRC不一致时返回null
+         */
+        static Record decode(ByteBuffer buffer) {
+            final int start = buffer.position();
+            final Record record = new Record(buffer.getLong(), buffer.getInt(), buffer.getLong(), buffer.getLong(), buffer.getInt());
+            final int recordCrc = buffer.getInt();
+            return recordCrc == crc32(buffer, start)
+                    ? record
+                    : null;
+        }
+
+        private static int crc32(ByteBuffer buffer, int start) {
+            final CRC32 crc32 = new CRC32();
+            final ByteBuffer view = buffer.duplicate();
+            view.position(start);
+            view.limit(start + RECORD_SIZE - Integer.BYTES);
+            crc32.update(view);
+            return (int) crc32.getValue();
+        }
+
+    }
+
+}
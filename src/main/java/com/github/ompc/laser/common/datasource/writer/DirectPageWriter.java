@@ -0,0 +1,140 @@
+package com.github.ompc.laser.common.datasource.writer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 直接缓存页面写入器<br/>
+ * 先把页面中的行紧凑的拷贝到线程私有的直接缓存中，再用定位写入大块写出<br/>
+ * 除页面首尾外，每次写入的文件位置都按缓存大小对齐
+ */
+public class DirectPageWriter implements PageWriter {
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    private final File dataFile;
+
+    /*
+     * 直接缓存大小，要求是4K倍数
+     */
+    private final int bufferSize;
+
+    /*
+     * 线程私有的直接缓存
+     */
+    private final ThreadLocal<ByteBuffer> bufferRef;
+
+    /*
+     * 后台同步者
+     */
+    private final PageSyncer pageSyncer;
+
+    private FileChannel fileChannel;
+
+    public DirectPageWriter(File dataFile, int bufferSize) {
+        this(dataFile, bufferSize, 0, 0);
+    }
+
+    /**
+     * 构造直接缓存页面写入器
+     *
+     * @param dataFile           数据文件
+     * @param bufferSize         直接缓存大小
+     * @param syncLagMs          页面写完后延迟多久刷盘(ms)
+     * @param syncBytesPerSecond 每秒最多刷盘字节数，0表示不限
+     */
+    public DirectPageWriter(File dataFile, int bufferSize, long syncLagMs, long syncBytesPerSecond) {
+        if (bufferSize <= 0
+                || bufferSize % 4096 != 0) {
+            throw new IllegalArgumentException("illegal bufferSize=" + bufferSize + ", must be a multiple of 4K.");
+        }
+        this.dataFile = dataFile;
+        this.bufferSize = bufferSize;
+        this.bufferRef = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(bufferSize));
+        this.pageSyncer = new PageSyncer(dataFile.getName(), syncLagMs, syncBytesPerSecond);
+    }
+
+    @Override
+    public void write(long position, byte[] data, int rowSize, int rowCount, long byteCount) throws IOException {
+
+        final ByteBuffer dataBuffer = ByteBuffer.wrap(data);
+        final ByteBuffer buffer = bufferRef.get();
+        buffer.clear();
+
+        // 第一块只写到下一个对齐位置为止
+        long writePosition = position;
+        buffer.limit(bufferSize - (int) (position % bufferSize));
+
+        for (int rowIdx = 0; rowIdx < rowCount; rowIdx++) {
+            final int offsetOfRow = rowIdx * rowSize;
+            int offsetOfRowData = offsetOfRow + Integer.BYTES;
+            int validByteCount = dataBuffer.getInt(offsetOfRow);
+
+            while (validByteCount > 0) {
+                final int length = Math.min(validByteCount, buffer.remaining());
+                buffer.put(data, offsetOfRowData, length);
+                offsetOfRowData += length;
+                validByteCount -= length;
+
+                if (!buffer.hasRemaining()) {
+                    writePosition += writeFully(buffer, writePosition);
+                    buffer.clear();
+                }
+            }
+        }
+
+        writeFully(buffer, writePosition);
+        pageSyncer.submit(fileChannel, byteCount);
+
+    }
+
+    /*
+     * 将缓存中的数据全部写入文件指定位置
+     */
+    private int writeFully(ByteBuffer buffer, long position) throws IOException {
+        buffer.flip();
+        final int length = buffer.remaining();
+        long writePosition = position;
+        while (buffer.hasRemaining()) {
+            writePosition += fileChannel.write(buffer, writePosition);
+        }
+        return length;
+    }
+
+    @Override
+    public void init() throws IOException {
+        fileChannel = new RandomAccessFile(dataFile, "rw").getChannel();
+        pageSyncer.start();
+    }
+
+    @Override
+    public void sync() throws IOException {
+        fileChannel.force(false);
+    }
+
+    @Override
+    public long getPendingSyncBytes() {
+        return pageSyncer.getPendingBytes();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        pageSyncer.drain();
+        fileChannel.force(false);
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        pageSyncer.drain();
+        if (null != fileChannel) {
+            fileChannel.close();
+        }
+        log.info("DirectPageWriter(file:{}) was destroyed.", dataFile);
+    }
+
+}
@@ -0,0 +1,144 @@
+package com.github.ompc.laser.common.datasource.writer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 聚集写页面写入器<br/>
+ * 把页面中每一行切成一个ByteBuffer，通过FileChannel.write(ByteBuffer[])一次系统调用写出多行<br/>
+ * FileChannel只有共享的position，所以每个刷新者线程持有自己的FileChannel
+ */
+public class GatheringPageWriter implements PageWriter {
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    private final File dataFile;
+
+    /*
+     * 单次聚集写的最大缓存个数，与系统的IOV_MAX一致
+     */
+    private final static int IOV_MAX = 1024;
+
+    /*
+     * 所有线程打开的文件句柄
+     */
+    private final List<FileChannel> fileChannels = new CopyOnWriteArrayList<>();
+
+    /*
+     * 线程私有的文件句柄
+     */
+    private final ThreadLocal<FileChannel> fileChannelRef;
+
+    /*
+     * 后台同步者
+     */
+    private final PageSyncer pageSyncer;
+
+    /*
+     * 同步者使用的文件句柄
+     */
+    private FileChannel syncChannel;
+
+    public GatheringPageWriter(File dataFile) {
+        this(dataFile, 0, 0);
+    }
+
+    /**
+     * 构造聚集写页面写入器
+     *
+     * @param dataFile           数据文件
+     * @param syncLagMs          页面写完后延迟多久刷盘(ms)
+     * @param syncBytesPerSecond 每秒最多刷盘字节数，0表示不限
+     */
+    public GatheringPageWriter(File dataFile, long syncLagMs, long syncBytesPerSecond) {
+        this.dataFile = dataFile;
+        this.pageSyncer = new PageSyncer(dataFile.getName(), syncLagMs, syncBytesPerSecond);
+        this.fileChannelRef = ThreadLocal.withInitial(() -> {
+            try {
+                final FileChannel fileChannel = new RandomAccessFile(dataFile, "rw").getChannel();
+                fileChannels.add(fileChannel);
+                return fileChannel;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    @Override
+    public void write(long position, byte[] data, int rowSize, int rowCount, long byteCount) throws IOException {
+
+        final ByteBuffer dataBuffer = ByteBuffer.wrap(data);
+        final ByteBuffer[] slices = new ByteBuffer[rowCount];
+        for (int rowIdx = 0; rowIdx < rowCount; rowIdx++) {
+            final int offsetOfRow = rowIdx * rowSize;
+            final int validByteCount = dataBuffer.getInt(offsetOfRow);
+            slices[rowIdx] = ByteBuffer.wrap(data, offsetOfRow + Integer.BYTES, validByteCount);
+        }
+
+        final FileChannel fileChannel;
+        try {
+            fileChannel = fileChannelRef.get();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        fileChannel.position(position);
+        int index = 0;
+        while (index < rowCount) {
+            fileChannel.write(slices, index, Math.min(IOV_MAX, rowCount - index));
+            while (index < rowCount
+                    && !slices[index].hasRemaining()) {
+                index++;
+            }
+        }
+
+        pageSyncer.submit(syncChannel, byteCount);
+
+    }
+
+    @Override
+    public void init() throws IOException {
+        // 写入用的文件句柄由各个线程第一次写入时打开
+        // 同一文件上任意一个句柄的force都会刷新整个文件，同步者单独持有一个
+        syncChannel = new RandomAccessFile(dataFile, "rw").getChannel();
+        pageSyncer.start();
+    }
+
+    @Override
+    public void sync() throws IOException {
+        syncChannel.force(false);
+    }
+
+    @Override
+    public long getPendingSyncBytes() {
+        return pageSyncer.getPendingBytes();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        pageSyncer.drain();
+        syncChannel.force(false);
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        pageSyncer.drain();
+        if (null != syncChannel) {
+            syncChannel.close();
+        }
+        for (FileChannel fileChannel : fileChannels) {
+            fileChannel.close();
+        }
+        fileChannels.clear();
+        log.info("GatheringPageWriter(file:{}) was destroyed.", dataFile);
+    }
+
+}
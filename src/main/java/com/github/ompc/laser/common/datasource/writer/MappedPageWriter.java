@@ -0,0 +1,170 @@
+package com.github.ompc.laser.common.datasource.writer;
+
+import com.github.ompc.laser.common.jfr.EventRecorder;
+import com.github.ompc.laser.common.mmap.Mapping;
+import com.github.ompc.laser.common.mmap.MemoryMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+import static com.github.ompc.laser.common.jfr.EventRecorder.Type.*;
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+
+/**
+ * 文件映射页面写入器<br/>
+ * 每页映射一段区域并逐行拷贝，写完的映射交给后台同步者刷盘并释放<br/>
+ * 存活的映射最多maxMappings个，超出时刷新者等待同步者释放映射<br/>
+ * 映射由MemoryMapper建立，JDK22之后释放是确定的，不依赖GC
+ */
+public class MappedPageWriter implements PageWriter {
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    private final File dataFile;
+
+    private final static EventRecorder events = EventRecorder.get();
+
+    /*
+     * 存活映射许可
+     */
+    private final Semaphore mappingPermits;
+
+    /*
+     * 存活的映射，以区域在文件中的起始位置为KEY
+     */
+    private final Map<Long, Mapping> mappings = new ConcurrentHashMap<>();
+
+    /*
+     * 后台同步者
+     */
+    private final PageSyncer pageSyncer;
+
+    private FileChannel fileChannel;
+
+    public MappedPageWriter(File dataFile, int maxMappings) {
+        this(dataFile, maxMappings, 0, 0);
+    }
+
+    /**
+     * 构造文件映射页面写入器
+     *
+     * @param dataFile           数据文件
+     * @param maxMappings        最多存活的映射数量
+     * @param syncLagMs          映射写完后延迟多久刷盘(ms)
+     * @param syncBytesPerSecond 每秒最多刷盘字节数，0表示不限
+     */
+    public MappedPageWriter(File dataFile, int maxMappings, long syncLagMs, long syncBytesPerSecond) {
+        this.dataFile = dataFile;
+        this.mappingPermits = new Semaphore(maxMappings);
+        this.pageSyncer = new PageSyncer(dataFile.getName(), syncLagMs, syncBytesPerSecond);
+    }
+
+    @Override
+    public void write(long position, byte[] data, int rowSize, int rowCount, long byteCount) throws IOException {
+
+        if (!mappingPermits.tryAcquire()) {
+            // 存活映射太多，等待同步者释放
+            final Object stallEvent = events.begin(STALL);
+            mappingPermits.acquireUninterruptibly();
+            events.commitStall(stallEvent, "MappedPageWriter", "park", 0);
+        }
+        final Mapping mapping;
+        try {
+            final Object mapEvent = events.begin(MAP);
+            mapping = MemoryMapper.get().map(fileChannel, READ_WRITE, position, byteCount);
+            events.commitRegion(mapEvent, dataFile.getName(), position, byteCount);
+        } catch (IOException e) {
+            mappingPermits.release();
+            throw e;
+        }
+        mappings.put(position, mapping);
+
+        final ByteBuffer dataBuffer = ByteBuffer.wrap(data);
+        int chunkIdx = 0;
+        ByteBuffer mappedBuffer = mapping.getChunk(chunkIdx);
+        for (int rowIdx = 0; rowIdx < rowCount; rowIdx++) {
+            // 当前行偏移量
+            final int offsetOfRow = rowIdx * rowSize;
+            int validByteCount = dataBuffer.getInt(offsetOfRow);
+
+            // 当前行数据偏移量，跨越分块边界时分段写入
+            int offsetOfRowData = offsetOfRow + Integer.BYTES;
+            while (validByteCount > mappedBuffer.remaining()) {
+                final int length = mappedBuffer.remaining();
+                mappedBuffer.put(data, offsetOfRowData, length);
+                offsetOfRowData += length;
+                validByteCount -= length;
+                mappedBuffer = mapping.getChunk(++chunkIdx);
+            }
+            mappedBuffer.put(data, offsetOfRowData, validByteCount);
+        }//for
+
+        // 写完的映射交给同步者刷盘并释放
+        pageSyncer.submit(byteCount, () -> {
+            synchronized (mapping) {
+                final Object forceEvent = events.begin(FORCE);
+                mapping.force();
+                events.commitRegion(forceEvent, dataFile.getName(), position, byteCount);
+                if (null != mappings.remove(position)) {
+                    final Object unmapEvent = events.begin(UNMAP);
+                    mapping.close();
+                    events.commitRegion(unmapEvent, dataFile.getName(), position, byteCount);
+                    mappingPermits.release();
+                }
+            }
+        });
+
+    }
+
+    @Override
+    public void init() throws IOException {
+        fileChannel = new RandomAccessFile(dataFile, "rw").getChannel();
+        pageSyncer.start();
+    }
+
+    @Override
+    public void sync() throws IOException {
+        // 已释放的映射都被同步者刷过盘，只需要刷存活的映射
+        // 与同步者互斥，避免刷一个刚被释放的映射
+        mappings.forEach((position, mapping) -> {
+            synchronized (mapping) {
+                if (mappings.get(position) == mapping) {
+                    final Object forceEvent = events.begin(FORCE);
+                    mapping.force();
+                    events.commitRegion(forceEvent, dataFile.getName(), position, mapping.size());
+                }
+            }
+        });
+    }
+
+    @Override
+    public long getPendingSyncBytes() {
+        return pageSyncer.getPendingBytes();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        // 同步者刷完尾部后停止，同步失败而残留的映射在这里补刷
+        pageSyncer.drain();
+        sync();
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        pageSyncer.drain();
+        mappings.forEach((k, v) -> v.close());
+        mappings.clear();
+        if (null != fileChannel) {
+            fileChannel.close();
+        }
+        log.info("MappedPageWriter(file:{}) was destroyed.", dataFile);
+    }
+
+}
@@ -0,0 +1,239 @@
+package com.github.ompc.laser.common.datasource.writer;
+
+import com.github.ompc.laser.common.jfr.EventRecorder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import static java.lang.Thread.currentThread;
+
+/**
+ * 页面后台同步者<br/>
+ * 页面写入完成后延迟syncLagMs再刷到磁盘，刷盘速率不超过syncBytesPerSecond，
+ * 使磁盘回写与网络传输重叠，最终刷新时只需同步尾部少量数据
+ */
+public class PageSyncer {
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    /**
+     * 同步动作
+     */
+    public interface SyncAction {
+
+        /**
+         * 将区域刷到磁盘
+         *
+         * @throws IOException 刷盘失败
+         */
+        void sync() throws IOException;
+
+    }
+
+    /*
+     * 结束标记
+     */
+    private final static Task POISON = new Task(0, 0, null);
+
+    private final static EventRecorder events = EventRecorder.get();
+
+    private final String name;
+
+    /*
+     * 区域完成后延迟多久刷盘(ms)
+     */
+    private final long syncLagMs;
+
+    /*
+     * 每秒最多刷盘字节数，0表示不限
+     */
+    private final long syncBytesPerSecond;
+
+    /*
+     * 等待刷盘的区域
+     */
+    private final BlockingQueue<Task> queue = new LinkedBlockingQueue<>();
+
+    /*
+     * 同步者完成标记
+     */
+    private final CountDownLatch syncerDone = new CountDownLatch(1);
+
+    /*
+     * 是否在排空状态，排空状态下不再延迟和限速
+     */
+    private volatile boolean isDraining = false;
+
+    /*
+     * 已写完的区域序号
+     */
+    private final AtomicLong writtenSeq = new AtomicLong(0);
+
+    /*
+     * 已刷盘的区域序号，只有同步者修改
+     */
+    private volatile long syncedSeq = 0;
+
+    /*
+     * 已写完但还没刷盘的字节数
+     */
+    private final LongAdder pendingBytes = new LongAdder();
+
+    private Thread syncer;
+
+    public PageSyncer(String name, long syncLagMs, long syncBytesPerSecond) {
+        this.name = name;
+        this.syncLagMs = syncLagMs;
+        this.syncBytesPerSecond = syncBytesPerSecond;
+    }
+
+    /**
+     * 启动同步者
+     */
+    public void start() {
+        syncer = new Thread(() -> {
+
+            final long startNanos = System.nanoTime();
+
+            // 已刷盘的字节数
+            long syncedBytes = 0;
+
+            while (true) {
+
+                final Task task;
+                try {
+                    task = queue.take();
+                } catch (InterruptedException e) {
+                    currentThread().interrupt();
+                    break;
+                }
+                if (task == POISON) {
+                    break;
+                }
+
+                // 等待区域滞后足够时间
+                parkUntil(task.completedNanos + TimeUnit.MILLISECONDS.toNanos(syncLagMs));
+
+                // 按预算限速
+                if (syncBytesPerSecond > 0) {
+                    parkUntil(startNanos + (long) (syncedBytes * 1e9 / syncBytesPerSecond));
+                }
+
+                try {
+                    task.action.sync();
+                } catch (IOException e) {
+                    // 刷盘失败的区域留给最终刷新处理
+                    log.warn("sync region failed.", e);
+                }
+                syncedBytes += task.byteCount;
+                pendingBytes.add(-task.byteCount);
+
+            }//while
+
+            syncerDone.countDown();
+
+        }, "PageSyncer-" + name + "-daemon");
+        syncer.setDaemon(true);
+        syncer.start();
+    }
+
+    private void parkUntil(long deadlineNanos) {
+        long remainNanos;
+        while (!isDraining
+                && (remainNanos = deadlineNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(this, remainNanos);
+        }
+    }
+
+    /**
+     * 提交一个已写完的区域
+     *
+     * @param byteCount 区域大小
+     * @param action    同步动作
+     */
+    public void submit(long byteCount, SyncAction action) {
+        pendingBytes.add(byteCount);
+        queue.offer(new Task(System.nanoTime(), byteCount, action));
+    }
+
+    /**
+     * 提交一个通过文件句柄写完的区域<br/>
+     * 一次force会把之前所有写完的区域都刷盘，已被覆盖的区域不再重复force
+     *
+     * @param fileChannel 文件句柄
+     * @param byteCount   区域大小
+     */
+    public void submit(FileChannel fileChannel, long byteCount) {
+        final long seq = writtenSeq.incrementAndGet();
+        submit(byteCount, () -> {
+            if (seq <= syncedSeq) {
+                return;
+            }
+            final long upToSeq = writtenSeq.get();
+            final Object forceEvent = events.begin(EventRecorder.Type.FORCE);
+            fileChannel.force(false);
+            events.commitRegion(forceEvent, name, -1, byteCount);
+            syncedSeq = upToSeq;
+        });
+    }
+
+    /**
+     * @return 已写完但还没刷盘的字节数
+     */
+    public long getPendingBytes() {
+        return pendingBytes.sum();
+    }
+
+    /**
+     * 不再延迟和限速，刷完剩余区域后停止同步者
+     */
+    public void drain() {
+        if (null == syncer
+                || isDraining) {
+            return;
+        }
+        isDraining = true;
+        queue.offer(POISON);
+        LockSupport.unpark(syncer);
+        try {
+            syncerDone.await();
+        } catch (InterruptedException e) {
+            currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 同步任务
+     */
+    static class Task {
+
+        /*
+         * 区域完成时间
+         */
+        final long completedNanos;
+
+        /*
+         * 区域大小
+         */
+        final long byteCount;
+
+        final SyncAction action;
+
+        Task(long completedNanos, long byteCount, SyncAction action) {
+            this.completedNanos = completedNanos;
+            this.byteCount = byteCount;
+            this.action = action;
+        }
+
+    }
+
+}
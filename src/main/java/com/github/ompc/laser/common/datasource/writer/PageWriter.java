@@ -0,0 +1,58 @@
+package com.github.ompc.laser.common.datasource.writer;
+
+import java.io.IOException;
+
+/**
+ * 页面写入器<br/>
+ * 将页面中的行写入文件中预留好的区域，会被多个页面刷新者并发调用
+ */
+public interface PageWriter {
+
+    /**
+     * 写入一页数据
+     *
+     * @param position  预留区域在文件中的起始位置
+     * @param data      页面数据段，每行以有效字节数(4B)开头
+     * @param rowSize   页行大小
+     * @param rowCount  页面行数
+     * @param byteCount 页面有效字节数，即预留区域大小
+     * @throws IOException 写入失败
+     */
+    void write(long position, byte[] data, int rowSize, int rowCount, long byteCount) throws IOException;
+
+    /**
+     * 初始化页面写入器
+     *
+     * @throws IOException 打开文件失败
+     */
+    void init() throws IOException;
+
+    /**
+     * 将此前写完的所有页面刷到磁盘，可与写入并发调用
+     *
+     * @throws IOException 刷入磁盘失败
+     */
+    void sync() throws IOException;
+
+    /**
+     * 获取已写完但还没刷到磁盘的字节数
+     *
+     * @return 等待刷盘的字节数
+     */
+    long getPendingSyncBytes();
+
+    /**
+     * 将已写入的数据刷到磁盘
+     *
+     * @throws IOException 刷入磁盘失败
+     */
+    void flush() throws IOException;
+
+    /**
+     * 销毁页面写入器
+     *
+     * @throws IOException 关闭文件失败
+     */
+    void destroy() throws IOException;
+
+}
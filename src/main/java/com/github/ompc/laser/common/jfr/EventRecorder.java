@@ -0,0 +1,118 @@
+package com.github.ompc.laser.common.jfr;
+
+/**
+ * 事件记录者<br/>
+ * 把页面切换、文件映射、刷盘和读写等待记录为JFR事件，JFR录制时可以看到各阶段的耗时和大小<br/>
+ * JFR(jdk.jfr)在JDK11(及8u262)之后才有，实现类按JDK11单独编译，通过反射加载以兼容JDK8运行，不支持时所有动作都为空操作<br/>
+ * 用法：先begin得到事件，动作完成后commit，begin返回null表示该事件未被录制
+ */
+public abstract class EventRecorder {
+
+    /**
+     * 事件类型
+     */
+    public enum Type {
+
+        /**
+         * 页面被填满：数据源为解析文件填充一页，持久化为等待写入者写满一页
+         */
+        PAGE_FILLED,
+
+        /**
+         * 页面被发布：数据源为页面交给读取者，持久化为页面写入文件并释放
+         */
+        PAGE_PUBLISHED,
+
+        /**
+         * 文件映射
+         */
+        MAP,
+
+        /**
+         * 释放文件映射
+         */
+        UNMAP,
+
+        /**
+         * 刷盘
+         */
+        FORCE,
+
+        /**
+         * 数据持久化的最终刷新
+         */
+        FLUSH,
+
+        /**
+         * 读取者或写入者的自旋、休眠等待
+         */
+        STALL
+
+    }
+
+    private static final EventRecorder INSTANCE = create();
+
+    /**
+     * 获取事件记录者
+     *
+     * @return 当前JDK支持JFR时为JFR实现，否则为空实现
+     */
+    public static EventRecorder get() {
+        return INSTANCE;
+    }
+
+    private static EventRecorder create() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return (EventRecorder) Class.forName("com.github.ompc.laser.common.jfr.JfrEventRecorder").getDeclaredConstructor().newInstance();
+        } catch (Throwable t) {
+            return new EventRecorder() {
+            };
+        }
+    }
+
+    /**
+     * 开始一个事件
+     *
+     * @param type 事件类型
+     * @return 事件，未被录制时为null
+     */
+    public Object begin(Type type) {
+        return null;
+    }
+
+    /**
+     * 提交页面事件(PAGE_FILLED、PAGE_PUBLISHED)
+     *
+     * @param event   begin返回的事件，为null时忽略
+     * @param source  来源
+     * @param pageNum 页码
+     * @param rows    行数
+     * @param bytes   字节数
+     */
+    public void commitPage(Object event, String source, long pageNum, int rows, long bytes) {
+    }
+
+    /**
+     * 提交文件区域事件(MAP、UNMAP、FORCE、FLUSH)
+     *
+     * @param event    begin返回的事件，为null时忽略
+     * @param file     文件名
+     * @param position 区域在文件中的起始位置，未知时为-1
+     * @param size     区域大小
+     */
+    public void commitRegion(Object event, String file, long position, long size) {
+    }
+
+    /**
+     * 提交等待事件(STALL)
+     *
+     * @param event  begin返回的事件，为null时忽略
+     * @param source 来源
+     * @param kind   等待方式：spin|park
+     * @param spins  自旋次数，休眠等待时为0
+     */
+    public void commitStall(Object event, String source, String kind, long spins) {
+    }
+
+}
@@ -0,0 +1,183 @@
+package com.github.ompc.laser.common.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR实现的事件记录者<br/>
+ * 按JDK11单独编译，只能通过EventRecorder反射加载，其他类不要直接引用，否则在没有JFR的JDK上会加载失败
+ */
+class JfrEventRecorder extends EventRecorder {
+
+    @Override
+    public Object begin(Type type) {
+        final Event event;
+        switch (type) {
+            case PAGE_FILLED:
+                event = new PageFilledEvent();
+                break;
+            case PAGE_PUBLISHED:
+                event = new PagePublishedEvent();
+                break;
+            case MAP:
+                event = new MapEvent();
+                break;
+            case UNMAP:
+                event = new UnmapEvent();
+                break;
+            case FORCE:
+                event = new ForceEvent();
+                break;
+            case FLUSH:
+                event = new FlushEvent();
+                break;
+            case STALL:
+                event = new StallEvent();
+                break;
+            default:
+                return null;
+        }
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void commitPage(Object event, String source, long pageNum, int rows, long bytes) {
+        if (!(event instanceof PageEvent)) {
+            return;
+        }
+        final PageEvent pageEvent = (PageEvent) event;
+        pageEvent.end();
+        if (pageEvent.shouldCommit()) {
+            pageEvent.source = source;
+            pageEvent.pageNum = pageNum;
+            pageEvent.rows = rows;
+            pageEvent.bytes = bytes;
+            pageEvent.commit();
+        }
+    }
+
+    @Override
+    public void commitRegion(Object event, String file, long position, long size) {
+        if (!(event instanceof RegionEvent)) {
+            return;
+        }
+        final RegionEvent regionEvent = (RegionEvent) event;
+        regionEvent.end();
+        if (regionEvent.shouldCommit()) {
+            regionEvent.file = file;
+            regionEvent.position = position;
+            regionEvent.size = size;
+            regionEvent.commit();
+        }
+    }
+
+    @Override
+    public void commitStall(Object event, String source, String kind, long spins) {
+        if (!(event instanceof StallEvent)) {
+            return;
+        }
+        final StallEvent stallEvent = (StallEvent) event;
+        stallEvent.end();
+        if (stallEvent.shouldCommit()) {
+            stallEvent.source = source;
+            stallEvent.kind = kind;
+            stallEvent.spins = spins;
+            stallEvent.commit();
+        }
+    }
+
+    @Category({"Laser", "Page"})
+    static abstract class PageEvent extends Event {
+
+        @Label("Source")
+        String source;
+
+        @Label("Page Number")
+        long pageNum;
+
+        @Label("Rows")
+        int rows;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+
+    }
+
+    @Name("com.github.ompc.laser.PageFilled")
+    @Label("Page Filled")
+    @Description("数据源解析文件填满一页，或持久化等待写入者写满一页")
+    static class PageFilledEvent extends PageEvent {
+    }
+
+    @Name("com.github.ompc.laser.PagePublished")
+    @Label("Page Published")
+    @Description("数据源把页面交给读取者，或持久化把页面写入文件并释放")
+    static class PagePublishedEvent extends PageEvent {
+    }
+
+    @Category({"Laser", "File"})
+    static abstract class RegionEvent extends Event {
+
+        @Label("File")
+        String file;
+
+        @Label("Position")
+        long position;
+
+        @Label("Size")
+        @DataAmount
+        long size;
+
+    }
+
+    @Name("com.github.ompc.laser.Map")
+    @Label("Map")
+    @Description("映射文件区域")
+    static class MapEvent extends RegionEvent {
+    }
+
+    @Name("com.github.ompc.laser.Unmap")
+    @Label("Unmap")
+    @Description("释放文件映射")
+    static class UnmapEvent extends RegionEvent {
+    }
+
+    @Name("com.github.ompc.laser.Force")
+    @Label("Force")
+    @Description("把文件区域刷到磁盘")
+    static class ForceEvent extends RegionEvent {
+    }
+
+    @Name("com.github.ompc.laser.Flush")
+    @Label("Flush")
+    @Description("数据持久化的最终刷新")
+    static class FlushEvent extends RegionEvent {
+    }
+
+    @Name("com.github.ompc.laser.Stall")
+    @Label("Stall")
+    @Description("读取者或写入者自旋或休眠等待")
+    @Category({"Laser", "Stall"})
+    static class StallEvent extends Event {
+
+        @Label("Source")
+        String source;
+
+        @Label("Kind")
+        String kind;
+
+        @Label("Spins")
+        long spins;
+
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.github.ompc.laser.common.mmap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static com.github.ompc.laser.common.LaserUtils.unmap;
+
+/**
+ * MappedByteBuffer文件映射器，所有JDK都可用<br/>
+ * 单个映射不超过2GB，关闭时通过LaserUtils.unmap释放
+ */
+class BufferMemoryMapper extends MemoryMapper {
+
+    @Override
+    public Mapping map(FileChannel fileChannel, FileChannel.MapMode mode, long position, long size) throws IOException {
+        if (size > getMaxMappingSize()) {
+            throw new IOException("mapping size=" + size + " exceeds 2GB, requires JDK22+, current is " + System.getProperty("java.version"));
+        }
+        final MappedByteBuffer buffer = fileChannel.map(mode, position, size);
+        return new Mapping(size) {
+
+            @Override
+            protected ByteBuffer slice(long offset, int length) {
+                final ByteBuffer view = buffer.duplicate();
+                view.limit((int) offset + length).position((int) offset);
+                return view.slice();
+            }
+
+            @Override
+            public void load() {
+                buffer.load();
+            }
+
+            @Override
+            public void force() {
+                buffer.force();
+            }
+
+            @Override
+            public void close() {
+                unmap(buffer);
+            }
+
+        };
+    }
+
+    @Override
+    public long getMaxMappingSize() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public String getName() {
+        return "MappedByteBuffer";
+    }
+
+}
@@ -0,0 +1,77 @@
+package com.github.ompc.laser.common.mmap;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+
+/**
+ * 文件映射<br/>
+ * 映射可以超过2GB，ByteBuffer放不下，所以按CHUNK_SIZE切成分块访问，分块是映射的视图，不单独释放<br/>
+ * 关闭后映射立即释放，不再等GC，之后不能再访问任何分块
+ */
+public abstract class Mapping implements Closeable {
+
+    /**
+     * 分块大小
+     */
+    public static final int CHUNK_SIZE = 1 << 30;
+
+    /*
+     * 映射大小
+     */
+    private final long size;
+
+    protected Mapping(long size) {
+        this.size = size;
+    }
+
+    /**
+     * @return 映射大小
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return 分块数量
+     */
+    public int getChunkCount() {
+        return (int) ((size + CHUNK_SIZE - 1) / CHUNK_SIZE);
+    }
+
+    /**
+     * 获取分块，每次返回新的视图，位置从0开始
+     *
+     * @param chunkIdx 分块下标
+     * @return 映射中[chunkIdx*CHUNK_SIZE, min(size, (chunkIdx+1)*CHUNK_SIZE))的视图
+     */
+    public ByteBuffer getChunk(int chunkIdx) {
+        final long offset = (long) chunkIdx * CHUNK_SIZE;
+        return slice(offset, (int) Math.min(CHUNK_SIZE, size - offset));
+    }
+
+    /**
+     * 获取映射中一段区域的视图
+     *
+     * @param offset 区域在映射中的起始位置
+     * @param length 区域长度
+     * @return 视图
+     */
+    protected abstract ByteBuffer slice(long offset, int length);
+
+    /**
+     * 将映射的内容逐页加载到内存
+     */
+    public abstract void load();
+
+    /**
+     * 将映射的修改刷到磁盘
+     */
+    public abstract void force();
+
+    /**
+     * 释放映射
+     */
+    @Override
+    public abstract void close();
+
+}
@@ -0,0 +1,63 @@
+package com.github.ompc.laser.common.mmap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * 文件映射器<br/>
+ * JDK22之后通过FileChannel.map(...,Arena)映射成MemorySegment，关闭Arena即释放映射，且映射可以超过2GB；
+ * java.lang.foreign在JDK8上编译不了，SegmentMemoryMapper只通过MethodHandle调用它，按JDK8编译并反射加载，不可用时(JDK21未开启预览)退回MappedByteBuffer，
+ * 单个映射不超过2GB，释放依赖LaserUtils.unmap
+ */
+public abstract class MemoryMapper {
+
+    private static final Logger log = LoggerFactory.getLogger(MemoryMapper.class);
+
+    private static final MemoryMapper INSTANCE = create();
+
+    /**
+     * 获取文件映射器
+     *
+     * @return 当前JDK支持MemorySegment映射时为SegmentMemoryMapper，否则为BufferMemoryMapper
+     */
+    public static MemoryMapper get() {
+        return INSTANCE;
+    }
+
+    private static MemoryMapper create() {
+        MemoryMapper mapper;
+        try {
+            mapper = (MemoryMapper) Class.forName("com.github.ompc.laser.common.mmap.SegmentMemoryMapper").getDeclaredConstructor().newInstance();
+        } catch (Throwable t) {
+            mapper = new BufferMemoryMapper();
+        }
+        log.info("memory mapper={}, maxMappingSize={}", mapper.getName(), mapper.getMaxMappingSize());
+        return mapper;
+    }
+
+    /**
+     * 映射文件的一段区域
+     *
+     * @param fileChannel 文件通道，映射建立后关闭通道不影响映射
+     * @param mode        映射模式
+     * @param position    区域在文件中的起始位置
+     * @param size        区域大小，不超过getMaxMappingSize()
+     * @return 映射
+     * @throws IOException 映射失败
+     */
+    public abstract Mapping map(FileChannel fileChannel, FileChannel.MapMode mode, long position, long size) throws IOException;
+
+    /**
+     * @return 单个映射的最大大小
+     */
+    public abstract long getMaxMappingSize();
+
+    /**
+     * @return 映射器名称
+     */
+    public abstract String getName();
+
+}
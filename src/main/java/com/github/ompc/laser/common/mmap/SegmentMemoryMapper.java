@@ -0,0 +1,175 @@
+package com.github.ompc.laser.common.mmap;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.lang.invoke.MethodType.methodType;
+
+/**
+ * MemorySegment文件映射器<br/>
+ * 每个映射使用一个共享Arena，映射和释放可以在不同线程，关闭Arena即释放映射，之后再访问分块会抛IllegalStateException而不是崩溃<br/>
+ * java.lang.foreign在JDK22正式发布(JDK21需要--enable-preview)，本类按JDK8编译(--release 8)，全部通过MethodHandle调用，
+ * 构造时找不到API或试用失败则由MemoryMapper退回BufferMemoryMapper
+ */
+class SegmentMemoryMapper extends MemoryMapper {
+
+    /*
+     * Arena.ofShared() -> Arena
+     */
+    private final MethodHandle ofShared;
+
+    /*
+     * Arena.close()
+     */
+    private final MethodHandle closeArena;
+
+    /*
+     * FileChannel.map(MapMode, long, long, Arena) -> MemorySegment
+     */
+    private final MethodHandle map;
+
+    /*
+     * MemorySegment.asSlice(long, long) -> MemorySegment
+     */
+    private final MethodHandle asSlice;
+
+    /*
+     * MemorySegment.asByteBuffer() -> ByteBuffer
+     */
+    private final MethodHandle asByteBuffer;
+
+    /*
+     * MemorySegment.load() / force()
+     */
+    private final MethodHandle load;
+    private final MethodHandle force;
+
+    SegmentMemoryMapper() throws Throwable {
+        final Class<?> arenaClass = Class.forName("java.lang.foreign.Arena");
+        final Class<?> segmentClass = Class.forName("java.lang.foreign.MemorySegment");
+        final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+
+        ofShared = lookup.findStatic(arenaClass, "ofShared", methodType(arenaClass))
+                .asType(methodType(Object.class));
+        closeArena = lookup.findVirtual(arenaClass, "close", methodType(void.class))
+                .asType(methodType(void.class, Object.class));
+        map = lookup.findVirtual(FileChannel.class, "map", methodType(segmentClass, FileChannel.MapMode.class, long.class, long.class, arenaClass))
+                .asType(methodType(Object.class, FileChannel.class, FileChannel.MapMode.class, long.class, long.class, Object.class));
+        asSlice = lookup.findVirtual(segmentClass, "asSlice", methodType(segmentClass, long.class, long.class))
+                .asType(methodType(Object.class, Object.class, long.class, long.class));
+        asByteBuffer = lookup.findVirtual(segmentClass, "asByteBuffer", methodType(ByteBuffer.class))
+                .asType(methodType(ByteBuffer.class, Object.class));
+        load = lookup.findVirtual(segmentClass, "load", methodType(void.class))
+                .asType(methodType(void.class, Object.class));
+        force = lookup.findVirtual(segmentClass, "force", methodType(void.class))
+                .asType(methodType(void.class, Object.class));
+
+        // 试用一次，JDK21未开启预览时在这里失败
+        closeArena.invokeExact(ofShared.invokeExact());
+    }
+
+    @Override
+    public Mapping map(FileChannel fileChannel, FileChannel.MapMode mode, long position, long size) throws IOException {
+        final Object arena;
+        final Object segment;
+        try {
+            arena = ofShared.invokeExact();
+        } catch (Throwable t) {
+            throw new IOException("create arena failed.", t);
+        }
+        try {
+            segment = map.invokeExact(fileChannel, mode, position, size, arena);
+        } catch (Throwable t) {
+            closeArena(arena);
+            if (t instanceof IOException) {
+                throw (IOException) t;
+            }
+            throw new IOException("map segment failed.", t);
+        }
+        return new SegmentMapping(size, arena, segment);
+    }
+
+    @Override
+    public long getMaxMappingSize() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public String getName() {
+        return "MemorySegment";
+    }
+
+    private void closeArena(Object arena) {
+        try {
+            closeArena.invokeExact(arena);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable t) {
+        if (t instanceof RuntimeException) {
+            return (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        return new IllegalStateException(t);
+    }
+
+    /**
+     * MemorySegment映射
+     */
+    private class SegmentMapping extends Mapping {
+
+        private final Object arena;
+        private final Object segment;
+        private final AtomicBoolean isClosed = new AtomicBoolean(false);
+
+        SegmentMapping(long size, Object arena, Object segment) {
+            super(size);
+            this.arena = arena;
+            this.segment = segment;
+        }
+
+        @Override
+        protected ByteBuffer slice(long offset, int length) {
+            try {
+                return (ByteBuffer) asByteBuffer.invokeExact(asSlice.invokeExact(segment, offset, (long) length));
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+
+        @Override
+        public void load() {
+            try {
+                load.invokeExact(segment);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+
+        @Override
+        public void force() {
+            try {
+                force.invokeExact(segment);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (isClosed.compareAndSet(false, true)) {
+                closeArena(arena);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,41 @@
+package com.github.ompc.laser.common.unix;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * JDK16+实现的Unix域套接字<br/>
+ * 按JDK16单独编译，只能通过UnixDomainSockets反射加载，其他类不要直接引用，否则在JDK16之前会加载失败
+ */
+class Jdk16UnixDomainSockets extends UnixDomainSockets {
+
+    @Override
+    public boolean isSupported() {
+        return true;
+    }
+
+    @Override
+    public boolean isUnix(SocketAddress address) {
+        return address instanceof UnixDomainSocketAddress;
+    }
+
+    @Override
+    public SocketAddress address(String path) {
+        return UnixDomainSocketAddress.of(path);
+    }
+
+    @Override
+    public SocketChannel openSocketChannel() throws IOException {
+        return SocketChannel.open(StandardProtocolFamily.UNIX);
+    }
+
+    @Override
+    public ServerSocketChannel openServerSocketChannel() throws IOException {
+        return ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+    }
+
+}
@@ -0,0 +1,94 @@
+package com.github.ompc.laser.common.unix;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Unix域套接字<br/>
+ * 同一台机器上的两端通过Unix域套接字通信，不经过TCP/IP协议栈，事件循环和帧格式与TCP完全相同<br/>
+ * Unix域的SocketChannel(java.net.UnixDomainSocketAddress)在JDK16之后才有，实现类按JDK16单独编译，通过反射加载以兼容JDK8运行，
+ * 不支持时打开通道会失败
+ */
+public abstract class UnixDomainSockets {
+
+    /**
+     * 地址前缀，如 unix:/tmp/laser.sock
+     */
+    public static final String SCHEME = "unix:";
+
+    private static final UnixDomainSockets INSTANCE = create();
+
+    /**
+     * 获取Unix域套接字实现
+     *
+     * @return 当前JDK支持Unix域套接字时为真实实现，否则为不支持的实现
+     */
+    public static UnixDomainSockets get() {
+        return INSTANCE;
+    }
+
+    private static UnixDomainSockets create() {
+        try {
+            Class.forName("java.net.UnixDomainSocketAddress");
+            return (UnixDomainSockets) Class.forName("com.github.ompc.laser.common.unix.Jdk16UnixDomainSockets").getDeclaredConstructor().newInstance();
+        } catch (Throwable t) {
+            return new UnixDomainSockets() {
+            };
+        }
+    }
+
+    /**
+     * @return 当前JDK是否支持Unix域套接字
+     */
+    public boolean isSupported() {
+        return false;
+    }
+
+    /**
+     * 是否Unix域套接字地址
+     *
+     * @param address 地址
+     * @return 是Unix域套接字地址时返回true
+     */
+    public boolean isUnix(SocketAddress address) {
+        return false;
+    }
+
+    /**
+     * 创建Unix域套接字地址
+     *
+     * @param path 套接字文件路径
+     * @return 地址
+     * @throws IOException 当前JDK不支持
+     */
+    public SocketAddress address(String path) throws IOException {
+        throw unsupported();
+    }
+
+    /**
+     * 打开Unix域的SocketChannel
+     *
+     * @return SocketChannel
+     * @throws IOException 当前JDK不支持或打开失败
+     */
+    public SocketChannel openSocketChannel() throws IOException {
+        throw unsupported();
+    }
+
+    /**
+     * 打开Unix域的ServerSocketChannel
+     *
+     * @return ServerSocketChannel
+     * @throws IOException 当前JDK不支持或打开失败
+     */
+    public ServerSocketChannel openServerSocketChannel() throws IOException {
+        throw unsupported();
+    }
+
+    private static IOException unsupported() {
+        return new IOException("unix domain socket requires JDK16+, current is " + System.getProperty("java.version"));
+    }
+
+}
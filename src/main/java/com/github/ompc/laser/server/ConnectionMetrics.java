@@ -0,0 +1,91 @@
+package com.github.ompc.laser.server;
+
+import com.github.ompc.laser.common.LatencyHistogram;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 服务端单个链接的度量<br/>
+ * 只有该链接的写线程更新，每次发送时计入一次
+ */
+public class ConnectionMetrics implements ConnectionMetricsMBean {
+
+    private final ServerMetrics serverMetrics;
+    private final String address;
+
+    /*
+     * 已收到但还没应答的请求数
+     */
+    private final AtomicInteger reqCounter;
+
+    private volatile long rows;
+    private volatile long bytes;
+
+    /*
+     * 从收到请求到应答发出的延时，只有写线程记录
+     */
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    ConnectionMetrics(ServerMetrics serverMetrics, String address, AtomicInteger reqCounter) {
+        this.serverMetrics = serverMetrics;
+        this.address = address;
+        this.reqCounter = reqCounter;
+    }
+
+    /**
+     * 计入一次发送，只能由写线程调用
+     *
+     * @param sentRows  发出的行数
+     * @param sentBytes 发出的字节数
+     */
+    void sent(int sentRows, int sentBytes) {
+        rows += sentRows;
+        bytes += sentBytes;
+        serverMetrics.sent(sentRows, sentBytes);
+    }
+
+    LatencyHistogram getLatencies() {
+        return latencies;
+    }
+
+    @Override
+    public String getAddress() {
+        return address;
+    }
+
+    @Override
+    public long getRows() {
+        return rows;
+    }
+
+    @Override
+    public long getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public int getPendingRequests() {
+        return reqCounter.get();
+    }
+
+    @Override
+    public long getLatencyP50Nanos() {
+        return latencies.percentile(0.50);
+    }
+
+    @Override
+    public long getLatencyP99Nanos() {
+        return latencies.percentile(0.99);
+    }
+
+    @Override
+    public long getLatencyP999Nanos() {
+        return latencies.percentile(0.999);
+    }
+
+    @Override
+    public long getLatencyMaxNanos() {
+        return latencies.getMax();
+    }
+
+}
@@ -0,0 +1,48 @@
+package com.github.ompc.laser.server;
+
+/**
+ * 服务端单个链接的度量MBean
+ */
+public interface ConnectionMetricsMBean {
+
+    /**
+     * @return 链接地址
+     */
+    String getAddress();
+
+    /**
+     * @return 该链接累计发出的行数
+     */
+    long getRows();
+
+    /**
+     * @return 该链接累计发出的字节数
+     */
+    long getBytes();
+
+    /**
+     * @return 已收到但还没应答的请求数
+     */
+    int getPendingRequests();
+
+    /**
+     * @return 请求到应答的延时中位数(ns)
+     */
+    long getLatencyP50Nanos();
+
+    /**
+     * @return 请求到应答的延时99分位(ns)
+     */
+    long getLatencyP99Nanos();
+
+    /**
+     * @return 请求到应答的延时99.9分位(ns)
+     */
+    long getLatencyP999Nanos();
+
+    /**
+     * @return 请求到应答的最大延时(ns)
+     */
+    long getLatencyMaxNanos();
+
+}
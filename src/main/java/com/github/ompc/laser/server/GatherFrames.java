@@ -0,0 +1,193 @@
+package com.github.ompc.laser.server;
+
+import com.github.ompc.laser.common.FrameChecksum;
+import com.github.ompc.laser.common.datasource.DataSource;
+import com.github.ompc.laser.common.datasource.Row;
+import com.github.ompc.laser.common.datasource.SliceDataSource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * 聚集写的帧<br/>
+ * 帧头、校验帧和EOF帧照常写入发送缓存，行的LEN和DATA不再拷贝，而是在帧头之后插入数据源页内的切片；
+ * 发送时把发送缓存在插入点处切开，与切片交替组成数组，通过GatheringByteChannel一次写出<br/>
+ * 切片在发送完成之后才释放回数据源，只由写线程使用
+ */
+class GatherFrames {
+
+    /*
+     * 切片从LINENUM(8B)+OFFSET(8B)开始，行号和输出偏移量由帧头写入，切片只发出LEN和DATA
+     */
+    private final static int SLICE_LEN_POSITION = 16;
+
+    /*
+     * 发送缓存
+     */
+    private final ByteBuffer buffer;
+
+    /*
+     * 发送缓存的视图，每段一个，反复使用
+     */
+    private final ByteBuffer[] views;
+
+    /*
+     * 持有切片的行、切片来自的数据源、切片在发送缓存中的插入位置
+     */
+    private final Row[] rows;
+    private final SliceDataSource[] owners;
+    private final int[] cuts;
+    private int size = 0;
+    private int sliceBytes = 0;
+
+    /*
+     * 组装好待写出的数组
+     */
+    private final ByteBuffer[] segments;
+    private int segmentOffset = 0;
+    private int segmentNum = 0;
+
+    /**
+     * 构造聚集写的帧
+     *
+     * @param buffer 发送缓存，放入的帧头和切片总长不超过其容量
+     */
+    GatherFrames(ByteBuffer buffer) {
+        this.buffer = buffer;
+
+        // 每行至少占TYPE(4B)+LINENUM(4B)+LEN(4B)
+        final int capacity = buffer.capacity() / 12 + 1;
+        this.rows = new Row[capacity];
+        this.owners = new SliceDataSource[capacity];
+        this.cuts = new int[capacity];
+        for (int i = 0; i < capacity; i++) {
+            rows[i] = new Row();
+        }
+        this.views = new ByteBuffer[capacity + 1];
+        for (int i = 0; i < views.length; i++) {
+            views[i] = buffer.duplicate();
+        }
+        this.segments = new ByteBuffer[capacity * 2 + 1];
+    }
+
+    /**
+     * 从数据源取一行
+     *
+     * @param dataSource 数据源，不支持切片时退化为拷贝
+     * @param row        数据源不支持切片时使用的行
+     * @return 取到的行，带切片时必须接着调用put；手上还有切片而下一行还没准备好时返回null，应先发送
+     * @throws IOException 数据源读取失败
+     */
+    Row fetch(DataSource dataSource, Row row) throws IOException {
+        if (!(dataSource instanceof SliceDataSource)) {
+            return dataSource.getRow(row);
+        }
+        final SliceDataSource sliceDataSource = (SliceDataSource) dataSource;
+        owners[size] = sliceDataSource;
+        return sliceDataSource.getRowSlice(rows[size], size == 0);
+    }
+
+    /**
+     * 在已写入发送缓存的帧头之后插入fetch取到的切片
+     *
+     * @param row fetch取到的带切片的行
+     */
+    void put(Row row) {
+        final ByteBuffer slice = row.getSlice();
+        slice.position(slice.position() + SLICE_LEN_POSITION);
+        cuts[size++] = buffer.position();
+        sliceBytes += slice.remaining();
+    }
+
+    /**
+     * @return 已插入切片的总字节数
+     */
+    int getSliceBytes() {
+        return sliceBytes;
+    }
+
+    /**
+     * 按发送顺序累加发送缓存[from,to)及其中插入的切片
+     *
+     * @param checksum 帧校验和
+     * @param from     发送缓存的起始位置
+     * @param to       发送缓存的结束位置
+     */
+    void update(FrameChecksum checksum, int from, int to) {
+        int position = from;
+        for (int i = 0; i < size; i++) {
+            if (cuts[i] <= from
+                    || cuts[i] > to) {
+                continue;
+            }
+            checksum.update(buffer, position, cuts[i]);
+            final ByteBuffer slice = rows[i].getSlice();
+            checksum.update(slice, slice.position(), slice.limit());
+            position = cuts[i];
+        }
+        checksum.update(buffer, position, to);
+    }
+
+    /**
+     * 发送缓存flip之后，组装待写出的数组
+     */
+    void flip() {
+        int position = buffer.position();
+        segmentOffset = 0;
+        segmentNum = 0;
+        for (int i = 0; i < size; i++) {
+            views[i].limit(cuts[i]).position(position);
+            segments[segmentNum++] = views[i];
+            segments[segmentNum++] = rows[i].getSlice();
+            position = cuts[i];
+        }
+        views[size].limit(buffer.limit()).position(position);
+        segments[segmentNum++] = views[size];
+    }
+
+    /**
+     * @return 是否还有没写出的数据
+     */
+    boolean hasRemaining() {
+        while (segmentOffset < segmentNum
+                && !segments[segmentOffset].hasRemaining()) {
+            segmentOffset++;
+        }
+        return segmentOffset < segmentNum;
+    }
+
+    /**
+     * 写出一次，通道不支持聚集写时(如共享内存环)逐段写出
+     *
+     * @param channel 通道
+     * @throws IOException 写出失败
+     */
+    void write(WritableByteChannel channel) throws IOException {
+        if (channel instanceof GatheringByteChannel) {
+            ((GatheringByteChannel) channel).write(segments, segmentOffset, segmentNum - segmentOffset);
+        } else {
+            channel.write(segments[segmentOffset]);
+        }
+    }
+
+    /**
+     * 全部写出(或链接断开)后释放所有切片，发送缓存标记为已读完
+     */
+    void release() {
+        for (int i = 0; i < size; i++) {
+            owners[i].release(rows[i]);
+            owners[i] = null;
+        }
+        for (int i = 0; i < segmentNum; i++) {
+            segments[i] = null;
+        }
+        size = 0;
+        sliceBytes = 0;
+        segmentOffset = 0;
+        segmentNum = 0;
+        buffer.position(buffer.limit());
+    }
+
+}
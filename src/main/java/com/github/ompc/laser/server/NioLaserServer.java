@@ -1,24 +1,43 @@
 package com.github.ompc.laser.server;
 
+import com.github.ompc.laser.common.FrameChecksum;
 import com.github.ompc.laser.common.LaserOptions;
+import com.github.ompc.laser.common.MBeanUtils;
+import com.github.ompc.laser.common.RequestTimeline;
 import com.github.ompc.laser.common.channel.CompressWritableByteChannel;
+import com.github.ompc.laser.common.channel.ShmRingChannel;
 import com.github.ompc.laser.common.datasource.DataSource;
+import com.github.ompc.laser.common.datasource.RangeDataSource;
+import com.github.ompc.laser.common.datasource.ResumableDataSource;
 import com.github.ompc.laser.common.datasource.Row;
+import com.github.ompc.laser.common.unix.UnixDomainSockets;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.management.ObjectName;
+import java.io.EOFException;
+import java.io.File;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.StandardSocketOptions;
 import java.nio.ByteBuffer;
 import java.nio.channels.*;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 import static com.github.ompc.laser.common.LaserConstant.*;
 import static com.github.ompc.laser.common.SocketUtils.format;
 import static java.lang.Thread.currentThread;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 /**
  * Nio实现的服务端
@@ -28,18 +47,36 @@ public class NioLaserServer {
 
     private final Logger log = LoggerFactory.getLogger(getClass());
 
-    private final DataSource dataSource;
+    /*
+     * 写线程没有请求时的最长休眠时间，到时检查服务端是否已关闭
+     */
+    private final static long WRITER_PARK_NANOS = 10000000;
+
     private final ExecutorService executorService;
     private final ServerConfiger configer;
     private final LaserOptions options;
 
+    /*
+     * 当前数据源，不带续传的新链接绑定它，续传时被替换，guarded by this
+     */
+    private volatile Session current;
+
+    /*
+     * 续传会话编号到数据源的映射，同一会话的多个链接绑定同一个数据源，guarded by this
+     */
+    private final Map<Long, Session> sessions = new HashMap<>();
+
+    /*
+     * 服务端度量
+     */
+    private final ServerMetrics metrics = new ServerMetrics(() -> this.current.dataSource);
+    private ObjectName metricsName;
+
     private ServerSocketChannel serverSocketChannel;
     private volatile boolean isRunning = true;
-    private boolean isReaderRunning = true;
-    private boolean isWriterRunning = true;
 
     public NioLaserServer(DataSource dataSource, ExecutorService executorService, ServerConfiger configer, LaserOptions options) {
-        this.dataSource = dataSource;
+        this.current = new Session(dataSource);
         this.executorService = executorService;
         this.configer = configer;
         this.options = options;
@@ -67,7 +104,7 @@ public class NioLaserServer {
                             final SocketChannel socketChannel = serverSocketChannel.accept();
                             configSocketChannel(socketChannel);
                             new ChildHandler(socketChannel);
-                            log.info("{} was connected.", format(socketChannel.socket()));
+                            log.info("{} was connected.", format(socketChannel));
                         }
 
                     }//while
@@ -75,7 +112,7 @@ public class NioLaserServer {
                 }
 
             } catch (IOException ioe) {
-                log.warn("server[port={}] accept failed.", configer.getPort(), ioe);
+                log.warn("server[{}] accept failed.", describe(), ioe);
             }
 
         }
@@ -90,9 +127,106 @@ public class NioLaserServer {
 
         private final SocketChannel socketChannel;
         private final AtomicInteger reqCounter = new AtomicInteger(0);
+        private final ConnectionMetrics connectionMetrics;
+        private final ObjectName connectionMetricsName;
+
+        /*
+         * 请求时间线，读线程记下收到请求的时刻，写线程发出应答后计算延时，未开启度量时为null
+         */
+        private final RequestTimeline requestTimeline;
+
+        /*
+         * 读写线程是否在运行，每个链接各自一份，客户端断开一个链接不影响其他链接
+         */
+        private volatile boolean isReaderRunning = true;
+        private volatile boolean isWriterRunning = true;
+
+        /*
+         * 客户端要求改用的共享内存环形缓冲，由读线程打开，写线程写入并释放
+         */
+        private volatile ShmRingChannel ringChannel;
+
+        /*
+         * 随机读取请求[开始行号,行数]，读线程放入，写线程取出应答
+         */
+        private final Queue<long[]> rangeRequests = new ConcurrentLinkedQueue<>();
+
+        /*
+         * 没有请求时休眠的写线程，由读线程收到请求后唤醒
+         */
+        private volatile Thread waitingWriter;
+
+        /*
+         * 链接使用的数据源，续传请求时由读线程指定，否则写线程第一次取数时绑定当前数据源，
+         * 绑定之后不再改变，直到写线程退出时释放，guarded by NioLaserServer.this
+         */
+        private Session session;
+        private boolean isBound = false;
+
+        /*
+         * 续传，链接改用会话对应的数据源，只能在链接取数之前发送
+         */
+        private void resume(long sessionId, long lineNum) throws IOException {
+            synchronized (NioLaserServer.this) {
+                if (isBound) {
+                    throw new IOException("resume must be sent before any data request.");
+                }
+                final Session resumed = acquire(sessionId, lineNum);
+                if (null != session) {
+                    release(session);
+                }
+                session = resumed;
+            }
+        }
+
+        /*
+         * 写线程绑定数据源，没有续传时绑定当前数据源
+         */
+        private Session bind() {
+            synchronized (NioLaserServer.this) {
+                if (null == session) {
+                    session = current;
+                    session.refs++;
+                }
+                isBound = true;
+                return session;
+            }
+        }
+
+        /*
+         * 写线程退出时解除绑定，之后的续传请求不再生效
+         */
+        private void unbind() {
+            synchronized (NioLaserServer.this) {
+                isBound = true;
+                if (null != session) {
+                    release(session);
+                    session = null;
+                }
+            }
+        }
+
+        /*
+         * 唤醒休眠的写线程
+         */
+        private void wakeUpWriter() {
+            final Thread writer = waitingWriter;
+            if (null != writer) {
+                LockSupport.unpark(writer);
+            }
+        }
 
         private ChildHandler(SocketChannel socketChannel) {
             this.socketChannel = socketChannel;
+            this.connectionMetrics = metrics.connected(format(socketChannel), reqCounter);
+            if (options.isEnableMetrics()) {
+                connectionMetricsName = MBeanUtils.objectName("ServerConnection", connectionMetrics.getAddress());
+                MBeanUtils.register(connectionMetricsName, connectionMetrics);
+                requestTimeline = new RequestTimeline(4096);
+            } else {
+                connectionMetricsName = null;
+                requestTimeline = null;
+            }
             executorService.execute(childReader);
             executorService.execute(childWriter);
         }
@@ -102,9 +236,12 @@ public class NioLaserServer {
             @Override
             public void run() {
 
-                currentThread().setName("child-" + format(socketChannel.socket()) + "-reader");
+                currentThread().setName("child-" + format(socketChannel) + "-reader");
 
                 final ByteBuffer buffer = ByteBuffer.allocateDirect(options.getServerChildReceiverBufferSize());
+
+                // 累计收到的GETDATA请求数
+                long receivedRequests = 0;
                 try (final Selector selector = Selector.open()) {
 
                     socketChannel.register(selector, SelectionKey.OP_READ);
@@ -119,24 +256,70 @@ public class NioLaserServer {
 
                             if (key.isReadable()) {
 
-                                socketChannel.read(buffer);
+                                if (socketChannel.read(buffer) < 0) {
+                                    // 客户端已关闭链接(如排空后主动断开)
+                                    throw new EOFException();
+                                }
+                                final long readNanos = null == requestTimeline ? 0 : System.nanoTime();
                                 buffer.flip();
 
+                                // 本次读到的请求先在本地累计，记下时刻后再交给写线程
+                                int requests = 0;
                                 while (true) {
                                     if (buffer.remaining() < Integer.BYTES) {
                                         break;
                                     }
 
+                                    buffer.mark();
                                     final int type = buffer.getInt();
-                                    if (type != PRO_REQ_GETDATA) {
+                                    if (type == PRO_REQ_GETDATA) {
+                                        requests++;
+                                    } else if (type == PRO_REQ_RESUME) {
+                                        if (buffer.remaining() < Long.BYTES + Long.BYTES) {
+                                            // 续传请求不完整，等待下次读取
+                                            buffer.reset();
+                                            break;
+                                        }
+                                        resume(buffer.getLong(), buffer.getLong());
+                                    } else if (type == PRO_REQ_GETRANGE) {
+                                        if (buffer.remaining() < Long.BYTES + Integer.BYTES) {
+                                            // 随机读取请求不完整，等待下次读取
+                                            buffer.reset();
+                                            break;
+                                        }
+                                        rangeRequests.offer(new long[]{buffer.getLong(), buffer.getInt()});
+                                        wakeUpWriter();
+                                    } else if (type == PRO_REQ_SHM) {
+                                        if (buffer.remaining() < Integer.BYTES
+                                                || buffer.remaining() < Integer.BYTES + buffer.getInt(buffer.position())) {
+                                            // 共享内存请求不完整，等待下次读取
+                                            buffer.reset();
+                                            break;
+                                        }
+                                        final byte[] path = new byte[buffer.getInt()];
+                                        buffer.get(path);
+                                        if (!options.isEnableShm()
+                                                || null != ringChannel) {
+                                            throw new IOException("shm was not enabled or already switched.");
+                                        }
+                                        ringChannel = ShmRingChannel.open(new File(new String(path, UTF_8)), new File(options.getShmDir()));
+                                        log.info("{} switch to shm ring={}", format(socketChannel), ringChannel.getFile());
+                                    } else {
                                         throw new IOException("decode failed, illegal type=" + type);
                                     }
 
-                                    reqCounter.incrementAndGet();
-
                                 }//while
                                 buffer.compact();
 
+                                if (requests > 0) {
+                                    receivedRequests += requests;
+                                    if (null != requestTimeline) {
+                                        requestTimeline.sent(receivedRequests, readNanos);
+                                    }
+                                    reqCounter.addAndGet(requests);
+                                    wakeUpWriter();
+                                }
+
 
                             }//if:readable
 
@@ -145,9 +328,14 @@ public class NioLaserServer {
                     }//while:MAIN_LOOP
 
                 } catch (IOException ioe) {
-                    log.info("{} was disconnect for read.", format(socketChannel.socket()));
+                    log.info("{} was disconnect for read.", format(socketChannel));
                 } finally {
                     isReaderRunning = false;
+                    if (null != ringChannel) {
+                        // 写线程可能正等着环中腾出空间
+                        ringChannel.markClosed();
+                    }
+                    wakeUpWriter();
                 }
 
             }
@@ -159,57 +347,175 @@ public class NioLaserServer {
             @Override
             public void run() {
 
-                currentThread().setName("child-" + format(socketChannel.socket()) + "-writer");
+                currentThread().setName("child-" + format(socketChannel) + "-writer");
                 currentThread().setPriority(Thread.MAX_PRIORITY);
 
                 final ByteBuffer buffer = ByteBuffer.allocateDirect(options.getServerChildSendBufferSize());
-                final WritableByteChannel writableByteChannel = options.isEnableCompress()
+                WritableByteChannel writableByteChannel = options.isEnableCompress()
                         ? new CompressWritableByteChannel(socketChannel, options.getCompressSize())
                         : socketChannel;
 
+                // 随机读取的应答单独成帧，使用独立的缓存，第一次用到时才分配
+                ByteBuffer rangeBuffer = null;
+
+                // 正在发送的缓存
+                ByteBuffer sendBuffer = buffer;
+
+                // 聚集写时行数据不拷贝进发送缓存，压缩通道需要连续的数据，不能聚集写
+                final GatherFrames gather = options.isServerChildGatherWrite() && !options.isEnableCompress()
+                        ? new GatherFrames(buffer)
+                        : null;
+
                 boolean isEOF = false;
                 final Row row = new Row();
+
+                // 链接绑定的数据源，第一次取数时确定
+                Session bound = null;
                 try (final Selector selector = Selector.open()) {
 
-                    final int LIMIT_REMAINING = 212;//TYPE(4B)+LINENUM(4B)+LEN(4B)+DATA(200B)
+                    final boolean isEnableOutputOffset = options.isEnableOutputOffset();
+                    final boolean isEnableIntegrity = options.isEnableIntegrity();
+                    final int LIMIT_REMAINING = (isEnableOutputOffset
+                            ? 224//TYPE(4B)+LINENUM(8B)+OFFSET(8B)+LEN(4B)+DATA(200B)
+                            : 216)//TYPE(4B)+LINENUM(8B)+LEN(4B)+DATA(200B)，行号超出int时用宽帧
+                            + (isEnableIntegrity ? 16 : 0);//TYPE(4B)+ALGORITHM(4B)+ROWS(4B)+CRC(4B)
+
+                    // 每批数据发送前追加一个校验帧
+                    final FrameChecksum checksum = isEnableIntegrity ? FrameChecksum.create() : null;
+                    int batchStart = buffer.position();
+                    int batchRows = 0;
+
+                    // 待发送和正在发送的行数、应答数、字节数，发送完成后计入度量
+                    int fillRows = 0;
+                    int fillResponses = 0;
+                    int sendRows = 0;
+                    int sendResponses = 0;
+                    int sendBytes = 0;
+                    long sentResponses = 0;
                     socketChannel.register(selector, SelectionKey.OP_WRITE);
 
                     DecodeState state = DecodeState.FILL_BUFF;
                     boolean isNeedSend = false;
                     while (isRunning
-                            && isWriterRunning) {
+                            && isWriterRunning
+                            && isReaderRunning) {
 
                         switch (state) {
 
                             case FILL_BUFF: {
 
+                                if (!rangeRequests.isEmpty()) {
+
+                                    if (buffer.position() == 0) {
+                                        if (null == rangeBuffer) {
+                                            rangeBuffer = ByteBuffer.allocateDirect(options.getServerRangeBufferSize());
+                                        }
+                                        if (null == bound) {
+                                            bound = bind();
+                                        }
+                                        final long[] range = rangeRequests.poll();
+                                        putRange(rangeBuffer, bound.dataSource, range[0], (int) range[1]);
+                                        rangeBuffer.flip();
+                                        sendBuffer = rangeBuffer;
+                                        state = DecodeState.SEND_BUFF;
+                                        break;
+                                    }
+
+                                    // 先发出已经填充的数据
+                                    if (isEnableIntegrity
+                                            && batchRows > 0) {
+                                        putChecksum(buffer, checksum, batchStart, batchRows, gather);
+                                        batchRows = 0;
+                                    }
+                                    isNeedSend = true;
+
+                                }
+
                                 // 一进来就先判断是否到达了EOF，如果已经到达了则不需要访问数据源
-                                if (isEOF) {
+                                else if (isEOF) {
                                     reqCounter.decrementAndGet();
-                                    buffer.putInt(PRO_RESP_GETEOF);
+                                    fillResponses++;
+                                    putEOF(buffer, bound.dataSource, isEnableIntegrity);
                                     isNeedSend = true;
                                 } else {
 
                                     if (reqCounter.get() > 0) {
-                                        reqCounter.decrementAndGet();
-                                        dataSource.getRow(row);
+                                        if (null == bound) {
+                                            bound = bind();
+                                        }
+                                        final Row fetched = null == gather
+                                                ? bound.dataSource.getRow(row)
+                                                : gather.fetch(bound.dataSource, row);
+                                        if (null != fetched) {
+                                            reqCounter.decrementAndGet();
+                                            fillResponses++;
+                                            bound.isServed = true;
+                                        }
 
-                                        if (row.getLineNum() < 0) {
-                                            buffer.putInt(PRO_RESP_GETEOF);
+                                        if (null == fetched) {
+                                            // 手上的切片所在的页要等切片释放后才能切换，下一行所在的页还没填充好时先发出去
+                                            if (isEnableIntegrity
+                                                    && batchRows > 0) {
+                                                putChecksum(buffer, checksum, batchStart, batchRows, gather);
+                                                batchRows = 0;
+                                            }
+                                            isNeedSend = true;
+                                        } else if (fetched.getLineNum() < 0) {
+                                            if (isEnableIntegrity
+                                                    && batchRows > 0) {
+                                                putChecksum(buffer, checksum, batchStart, batchRows, gather);
+                                                batchRows = 0;
+                                            }
+                                            putEOF(buffer, bound.dataSource, isEnableIntegrity);
                                             isEOF = true;
                                             isNeedSend = true;
+                                        } else if (null != fetched.getSlice()) {
+                                            putDataHead(buffer, fetched, isEnableOutputOffset);
+                                            gather.put(fetched);
+                                            batchRows++;
+                                            fillRows++;
+
+                                            // 切片虽不占发送缓存，但仍按发送缓存的容量分批，每批的大小与拷贝时一致
+                                            if (buffer.remaining() - gather.getSliceBytes() < LIMIT_REMAINING) {
+                                                if (isEnableIntegrity) {
+                                                    putChecksum(buffer, checksum, batchStart, batchRows, gather);
+                                                    batchRows = 0;
+                                                }
+                                                isNeedSend = true;
+                                            }
                                         } else {
-                                            buffer.putInt(PRO_RESP_GETDATA);
-                                            buffer.putInt(row.getLineNum());
+                                            putDataHead(buffer, fetched, isEnableOutputOffset);
+                                            buffer.putInt(fetched.getData().length);
+                                            buffer.put(fetched.getData());
+                                            batchRows++;
+                                            fillRows++;
 
-                                            buffer.putInt(row.getData().length);
-                                            buffer.put(row.getData());
-
-                                            if (buffer.remaining() < LIMIT_REMAINING) {
+                                            if (buffer.remaining() - (null == gather ? 0 : gather.getSliceBytes()) < LIMIT_REMAINING) {
                                                 // TODO : 目前这里利用了DATA长度不超过200的限制，没有足够的通用性，后续改掉
+                                                if (isEnableIntegrity) {
+                                                    putChecksum(buffer, checksum, batchStart, batchRows, gather);
+                                                    batchRows = 0;
+                                                }
                                                 isNeedSend = true;
                                             }
                                         }
+                                    } else if (buffer.position() > 0) {
+                                        // 已收到的请求都处理完了，不再等缓存填满，
+                                        // 否则在途请求受窗口限制的客户端会一直等不到这批应答
+                                        if (isEnableIntegrity
+                                                && batchRows > 0) {
+                                            putChecksum(buffer, checksum, batchStart, batchRows, gather);
+                                            batchRows = 0;
+                                        }
+                                        isNeedSend = true;
+                                    } else {
+                                        // 没有请求也没有待发数据，休眠等待读线程唤醒，登记之后再检查一次避免错过唤醒
+                                        waitingWriter = currentThread();
+                                        if (reqCounter.get() == 0
+                                                && rangeRequests.isEmpty()) {
+                                            LockSupport.parkNanos(this, WRITER_PARK_NANOS);
+                                        }
+                                        waitingWriter = null;
                                     }
 
                                 }
@@ -217,6 +523,15 @@ public class NioLaserServer {
                                 // 前边层层处理之后是否需要发送
                                 if (isNeedSend) {
                                     buffer.flip();
+                                    sendRows = fillRows;
+                                    sendResponses = fillResponses;
+                                    sendBytes = buffer.remaining();
+                                    if (null != gather) {
+                                        gather.flip();
+                                        sendBytes += gather.getSliceBytes();
+                                    }
+                                    fillRows = 0;
+                                    fillResponses = 0;
                                     state = DecodeState.SEND_BUFF;
                                     isNeedSend = false;
                                 }
@@ -226,23 +541,51 @@ public class NioLaserServer {
 
                             case SEND_BUFF: {
 
-                                selector.select();
-                                final Iterator<SelectionKey> iter = selector.selectedKeys().iterator();
-                                while (iter.hasNext()) {
-                                    final SelectionKey key = iter.next();
-                                    iter.remove();
-
-                                    if (key.isWritable()) {
-                                        while (buffer.hasRemaining()) {
-//                                            if( writableByteChannel instanceof CompressWritableByteChannel ) {
-//                                                ((CompressWritableByteChannel)writableByteChannel).write(buffer,isEOF);
-//                                            } else {
-//                                                writableByteChannel.write(buffer);
-//                                            }
-                                            writableByteChannel.write(buffer);
+                                // 改用共享内存后不再经过TCP链接，也不再压缩
+                                final boolean isWritable;
+                                if (null != ringChannel) {
+                                    writableByteChannel = ringChannel;
+                                    isWritable = true;
+                                } else {
+                                    selector.select();
+                                    isWritable = !selector.selectedKeys().isEmpty();
+                                    selector.selectedKeys().clear();
+                                }
+
+                                if (isWritable) {
+                                    if (null != gather
+                                            && sendBuffer == buffer) {
+                                        while (gather.hasRemaining()) {
+                                            gather.write(writableByteChannel);
+                                        }
+                                        gather.release();
+                                    }
+                                    while (sendBuffer.hasRemaining()) {
+                                        if (writableByteChannel instanceof CompressWritableByteChannel) {
+                                            // 到达EOF后或随机读取的应答，压缩缓存中剩下的数据必须立即发出，否则客户端收不到
+                                            ((CompressWritableByteChannel) writableByteChannel).write(sendBuffer, isEOF || sendBuffer == rangeBuffer);
+                                        } else {
+                                            writableByteChannel.write(sendBuffer);
+                                        }
+                                    }
+                                    if (sendBuffer == rangeBuffer) {
+                                        if (writableByteChannel instanceof CompressWritableByteChannel) {
+                                            // 压缩通道要到下一次写入时才发出最后一块，补一次空写入
+                                            ((CompressWritableByteChannel) writableByteChannel).write(rangeBuffer, true);
                                         }
-                                        buffer.compact();
+                                        rangeBuffer.clear();
+                                        sendBuffer = buffer;
                                         state = DecodeState.FILL_BUFF;
+                                        continue;
+                                    }
+                                    buffer.compact();
+                                    batchStart = buffer.position();
+                                    connectionMetrics.sent(sendRows, sendBytes);
+                                    sentResponses += sendResponses;
+                                    if (null != requestTimeline) {
+                                        requestTimeline.received(sentResponses, System.nanoTime(), connectionMetrics.getLatencies());
+                                    }
+                                    state = DecodeState.FILL_BUFF;
 
 //                                        if (!buffer.hasRemaining()) {
 //                                            // 缓存中的内容发送完之后才跳转到填充
@@ -250,9 +593,7 @@ public class NioLaserServer {
 //                                            buffer.compact();
 //                                        }
 
-                                    }
-
-                                }//while:iter
+                                }
 
                                 break;
                             }
@@ -262,9 +603,20 @@ public class NioLaserServer {
                     }//while:MAIN_LOOP
 
                 } catch (IOException ioe) {
-                    log.info("{} was disconnect for write.", format(socketChannel.socket()));
+                    log.info("{} was disconnect for write.", format(socketChannel));
                 } finally {
                     isWriterRunning = false;
+                    if (null != gather) {
+                        // 没发出去的切片也要释放，否则它们所在的页无法被切换，其他链接会一直等下去
+                        gather.release();
+                    }
+                    // 切片释放之后才能释放数据源，最后一个链接释放被替换的数据源时将其销毁
+                    unbind();
+                    if (null != ringChannel) {
+                        ringChannel.close();
+                    }
+                    metrics.disconnected(connectionMetrics);
+                    MBeanUtils.unregister(connectionMetricsName);
                 }
 
             }
@@ -274,6 +626,178 @@ public class NioLaserServer {
     }
 
 
+    /**
+     * 写入校验帧，校验[batchStart,position)之间的所有帧
+     *
+     * @param buffer     处于写模式的发送缓存
+     * @param checksum   帧校验和
+     * @param batchStart 本批数据的起始位置
+     * @param batchRows  本批数据的行数
+     * @param gather     聚集写的帧，其中插入的切片一并校验，不聚集写时为null
+     */
+    private static void putChecksum(ByteBuffer buffer, FrameChecksum checksum, int batchStart, int batchRows, GatherFrames gather) {
+        checksum.reset();
+        if (null == gather) {
+            checksum.update(buffer, batchStart, buffer.position());
+        } else {
+            gather.update(checksum, batchStart, buffer.position());
+        }
+        buffer.putInt(PRO_RESP_CHECKSUM);
+        buffer.putInt(checksum.getAlgorithm());
+        buffer.putInt(batchRows);
+        buffer.putInt(checksum.getValue());
+    }
+
+    /**
+     * 写入数据帧的帧头(不含LEN)，行号超出int时改用宽帧，常见情况下帧格式不变
+     *
+     * @param buffer               处于写模式的发送缓存
+     * @param row                  行
+     * @param isEnableOutputOffset 是否带输出偏移量
+     */
+    private static void putDataHead(ByteBuffer buffer, Row row, boolean isEnableOutputOffset) {
+        final long lineNum = row.getLineNum();
+        if (lineNum <= Integer.MAX_VALUE) {
+            buffer.putInt(isEnableOutputOffset ? PRO_RESP_GETDATA_OFFSET : PRO_RESP_GETDATA);
+            buffer.putInt((int) lineNum);
+        } else {
+            buffer.putInt(isEnableOutputOffset ? PRO_RESP_GETDATA_OFFSET_WIDE : PRO_RESP_GETDATA_WIDE);
+            buffer.putLong(lineNum);
+        }
+        if (isEnableOutputOffset) {
+            buffer.putLong(row.getOffset());
+        }
+    }
+
+    /**
+     * 写入随机读取的应答，放不下的行不返回
+     *
+     * @param buffer       处于写模式的随机读取缓存
+     * @param dataSource   链接绑定的数据源
+     * @param startLineNum 开始行号
+     * @param count        请求的行数
+     * @throws IOException 数据源读取失败
+     */
+    private void putRange(ByteBuffer buffer, DataSource dataSource, long startLineNum, int count) throws IOException {
+
+        // 每行至少占OFFSET(8B)+LEN(4B)+DATA(1B)，不去读一定放不下的行
+        final int limit = Math.min(count, (buffer.remaining() - 16) / 13);
+        final List<Row> range = dataSource instanceof RangeDataSource
+                ? ((RangeDataSource) dataSource).getRange(startLineNum, limit)
+                : Collections.<Row>emptyList();
+
+        buffer.putInt(PRO_RESP_GETRANGE);
+        buffer.putLong(startLineNum);
+        final int headerPosition = buffer.position();
+        buffer.putInt(0);
+        buffer.putInt(0);
+        final int dataPosition = buffer.position();
+
+        int rows = 0;
+        for (Row row : range) {
+            if (buffer.remaining() < Long.BYTES + Integer.BYTES + row.getData().length) {
+                break;
+            }
+            buffer.putLong(row.getOffset());
+            buffer.putInt(row.getData().length);
+            buffer.put(row.getData());
+            rows++;
+        }
+        buffer.putInt(headerPosition, rows);
+        buffer.putInt(headerPosition + Integer.BYTES, buffer.position() - dataPosition);
+
+    }
+
+    /**
+     * 写入EOF，开启完整性校验且数据源知道总数时带上汇总
+     *
+     * @param buffer            处于写模式的发送缓存
+     * @param dataSource        链接绑定的数据源
+     * @param isEnableIntegrity 是否开启完整性校验
+     */
+    private void putEOF(ByteBuffer buffer, DataSource dataSource, boolean isEnableIntegrity) {
+        final long totalRows = dataSource.getTotalRows();
+        final long totalBytes = dataSource.getTotalBytes();
+        if (isEnableIntegrity
+                && totalRows >= 0
+                && totalBytes >= 0) {
+            buffer.putInt(PRO_RESP_GETEOF_SUMMARY);
+            buffer.putLong(totalRows);
+            buffer.putLong(totalBytes);
+        } else {
+            buffer.putInt(PRO_RESP_GETEOF);
+        }
+    }
+
+    /**
+     * 获取会话对应的数据源并增加引用<br/>
+     * 同一会话的多个链接都会发送续传请求，只有第一个创建新数据源，之后的链接绑定同一个数据源；
+     * 新数据源成为当前数据源，被替换的数据源不再绑定新链接，等绑定它的链接都释放后销毁
+     *
+     * @param sessionId 会话编号
+     * @param lineNum   开始行号
+     * @return 会话对应的数据源
+     * @throws IOException 数据源不支持续传或创建失败
+     */
+    private synchronized Session acquire(long sessionId, long lineNum) throws IOException {
+
+        Session session = sessions.get(sessionId);
+        if (null == session) {
+
+            if (lineNum == 0
+                    && !current.isServed) {
+                // 当前数据源还没发出过数据，无需替换
+                session = current;
+                log.info("server resume session={} from beginning.", sessionId);
+            } else {
+
+                if (!(current.dataSource instanceof ResumableDataSource)) {
+                    throw new IOException("dataSource was not resumable.");
+                }
+
+                final DataSource resumed = ((ResumableDataSource) current.dataSource).resume(lineNum);
+                resumed.init();
+                final Session old = current;
+                session = current = new Session(resumed);
+                if (old.refs == 0) {
+                    destroy(old);
+                }
+                log.info("server resume session={} from lineNum={}.", sessionId, lineNum);
+            }
+            sessions.put(sessionId, session);
+
+        }
+        session.refs++;
+        return session;
+
+    }
+
+    /**
+     * 释放数据源的引用，被替换的数据源没有链接再使用时销毁
+     *
+     * @param session 会话数据源
+     */
+    private synchronized void release(Session session) {
+        if (--session.refs == 0
+                && session != current) {
+            destroy(session);
+        }
+    }
+
+    /**
+     * 销毁被替换的数据源，它所属的会话随之结束
+     *
+     * @param session 会话数据源
+     */
+    private void destroy(Session session) {
+        sessions.values().removeIf(s -> s == session);
+        try {
+            session.dataSource.destroy();
+        } catch (IOException ioe) {
+            log.warn("server destroy replaced dataSource failed.", ioe);
+        }
+    }
+
     /**
      * 获取并配置ServerSocketChannel
      *
@@ -281,6 +805,11 @@ public class NioLaserServer {
      * @throws IOException
      */
     private ServerSocketChannel getServerSocketChannel() throws IOException {
+        if (null != configer.getUnixPath()) {
+            final ServerSocketChannel serverSocketChannel = UnixDomainSockets.get().openServerSocketChannel();
+            serverSocketChannel.configureBlocking(false);
+            return serverSocketChannel;
+        }
         final ServerSocketChannel serverSocketChannel = ServerSocketChannel.open();
         serverSocketChannel.configureBlocking(false);
         serverSocketChannel.socket().setSoTimeout(options.getServerSocketTimeout());
@@ -294,6 +823,12 @@ public class NioLaserServer {
      */
     private void configSocketChannel(SocketChannel socketChannel) throws IOException {
         socketChannel.configureBlocking(false);
+        if (null != configer.getUnixPath()) {
+            // Unix域套接字没有TCP的那些调优项，只设置收发缓冲
+            socketChannel.setOption(StandardSocketOptions.SO_RCVBUF, options.getServerChildSocketReceiverBufferSize());
+            socketChannel.setOption(StandardSocketOptions.SO_SNDBUF, options.getServerChildSocketSendBufferSize());
+            return;
+        }
         // config the socket
         final Socket socket = socketChannel.socket();
         socket.setTcpNoDelay(options.isServerChildTcpNoDelay());
@@ -315,10 +850,50 @@ public class NioLaserServer {
     public void startup() throws IOException {
 
         serverSocketChannel = getServerSocketChannel();
-        serverSocketChannel.bind(new InetSocketAddress(configer.getPort()), options.getServerBacklog());
+        if (null != configer.getUnixPath()) {
+            // 上次没有正常关闭时留下的套接字文件会导致绑定失败
+            new File(configer.getUnixPath()).delete();
+            serverSocketChannel.bind(UnixDomainSockets.get().address(configer.getUnixPath()), options.getServerBacklog());
+        } else {
+            serverSocketChannel.bind(new InetSocketAddress(configer.getPort()), options.getServerBacklog());
+        }
+
+        if (options.isEnableMetrics()) {
+            metricsName = MBeanUtils.objectName("Server", null != configer.getUnixPath()
+                    ? new File(configer.getUnixPath()).getName()
+                    : String.valueOf(getPort()));
+            MBeanUtils.register(metricsName, metrics);
+        }
 
         executorService.execute(accepter);
-        log.info("server[port={}] startup successed.", configer.getPort());
+        log.info("server[{}] startup successed.", describe());
+    }
+
+    /**
+     * @return 服务端度量
+     */
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * 获取实际监听的端口，配置端口为0时由系统分配
+     *
+     * @return 监听端口，监听Unix域套接字时为-1
+     */
+    public int getPort() {
+        return null != configer.getUnixPath()
+                ? -1
+                : serverSocketChannel.socket().getLocalPort();
+    }
+
+    /*
+     * 监听地址的描述
+     */
+    private String describe() {
+        return null != configer.getUnixPath()
+                ? "unix=" + configer.getUnixPath()
+                : "port=" + getPort();
     }
 
     /**
@@ -332,12 +907,39 @@ public class NioLaserServer {
         if (null != serverSocketChannel) {
             serverSocketChannel.close();
         }
+        if (null != configer.getUnixPath()) {
+            new File(configer.getUnixPath()).delete();
+        }
+        MBeanUtils.unregister(metricsName);
 
-        log.info("server[port={}] shutdown successed.", configer.getPort());
+        log.info("server[{}] shutdown successed.", describe());
 
     }
 
 
+    /**
+     * 会话数据源
+     */
+    private static class Session {
+
+        private final DataSource dataSource;
+
+        /*
+         * 数据源是否已经发出过数据
+         */
+        private volatile boolean isServed = false;
+
+        /*
+         * 绑定数据源的链接数，guarded by NioLaserServer.this
+         */
+        private int refs = 0;
+
+        private Session(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+    }
+
     /**
      * 发送数据解码
      */
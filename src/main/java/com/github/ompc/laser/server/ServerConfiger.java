@@ -13,6 +13,11 @@ public class ServerConfiger {
      */
     private int port;
 
+    /*
+     * Unix域套接字文件路径，不为空时监听该文件而不监听端口
+     */
+    private String unixPath;
+
     /*
      * 数据文件
      */
@@ -26,6 +31,14 @@ public class ServerConfiger {
         this.port = port;
     }
 
+    public String getUnixPath() {
+        return unixPath;
+    }
+
+    public void setUnixPath(String unixPath) {
+        this.unixPath = unixPath;
+    }
+
     public File getDataFile() {
         return dataFile;
     }
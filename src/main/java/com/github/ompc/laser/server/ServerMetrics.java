@@ -0,0 +1,157 @@
+package com.github.ompc.laser.server;
+
+import com.github.ompc.laser.common.LatencyHistogram;
+import com.github.ompc.laser.common.datasource.DataSource;
+import com.github.ompc.laser.common.datasource.impl.PageDataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 服务端度量<br/>
+ * 行数和字节数由各链接在每次发送时计入，数据源的竞争统计在读取时从当前数据源获取<br/>
+ * 延时由各链接分别记录，读取时汇总存活链接和已断开链接的直方图
+ */
+public class ServerMetrics implements ServerMetricsMBean {
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    /*
+     * 当前数据源，续传时会被替换
+     */
+    private final Supplier<DataSource> dataSourceSupplier;
+
+    /*
+     * 存活的链接，以及已断开链接汇总后的延时
+     */
+    private final Set<ConnectionMetrics> connections = ConcurrentHashMap.newKeySet();
+    private final LatencyHistogram closedLatencies = new LatencyHistogram();
+
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+
+    public ServerMetrics(Supplier<DataSource> dataSourceSupplier) {
+        this.dataSourceSupplier = dataSourceSupplier;
+    }
+
+    /**
+     * 链接建立
+     *
+     * @param address    链接地址
+     * @param reqCounter 该链接已收到但还没应答的请求数
+     * @return 该链接的度量
+     */
+    ConnectionMetrics connected(String address, AtomicInteger reqCounter) {
+        final ConnectionMetrics connectionMetrics = new ConnectionMetrics(this, address, reqCounter);
+        connections.add(connectionMetrics);
+        return connectionMetrics;
+    }
+
+    /**
+     * 链接断开，该链接的延时并入汇总
+     *
+     * @param connectionMetrics 该链接的度量
+     */
+    synchronized void disconnected(ConnectionMetrics connectionMetrics) {
+        if (connections.remove(connectionMetrics)) {
+            closedLatencies.add(connectionMetrics.getLatencies());
+        }
+    }
+
+    /**
+     * 汇总所有链接的延时
+     *
+     * @return 延时快照
+     */
+    public synchronized LatencyHistogram getLatencies() {
+        final LatencyHistogram snapshot = new LatencyHistogram().add(closedLatencies);
+        for (ConnectionMetrics connectionMetrics : connections) {
+            snapshot.add(connectionMetrics.getLatencies());
+        }
+        return snapshot;
+    }
+
+    /**
+     * 输出一次报告
+     */
+    public void report() {
+        log.info("server metrics: connections={},rows={},bytes={},casFailures={},spins={},pageSwitchWaits={},latency[{}]",
+                getConnections(), getRows(), getBytes(),
+                getDataSourceCasFailures(), getDataSourceSpins(), getDataSourcePageSwitchWaits(),
+                getLatencies());
+    }
+
+    /**
+     * 计入一次发送
+     */
+    void sent(int sentRows, int sentBytes) {
+        rows.add(sentRows);
+        bytes.add(sentBytes);
+    }
+
+    @Override
+    public int getConnections() {
+        return connections.size();
+    }
+
+    @Override
+    public long getRows() {
+        return rows.sum();
+    }
+
+    @Override
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    @Override
+    public long getLatencyP50Nanos() {
+        return getLatencies().percentile(0.50);
+    }
+
+    @Override
+    public long getLatencyP99Nanos() {
+        return getLatencies().percentile(0.99);
+    }
+
+    @Override
+    public long getLatencyP999Nanos() {
+        return getLatencies().percentile(0.999);
+    }
+
+    @Override
+    public long getLatencyMaxNanos() {
+        return getLatencies().getMax();
+    }
+
+    @Override
+    public long getDataSourceCasFailures() {
+        final DataSource dataSource = dataSourceSupplier.get();
+        return dataSource instanceof PageDataSource
+                ? ((PageDataSource) dataSource).getCasFailures()
+                : -1;
+    }
+
+    @Override
+    public long getDataSourceSpins() {
+        final DataSource dataSource = dataSourceSupplier.get();
+        return dataSource instanceof PageDataSource
+                ? ((PageDataSource) dataSource).getSpins()
+                : -1;
+    }
+
+    @Override
+    public long getDataSourcePageSwitchWaits() {
+        final DataSource dataSource = dataSourceSupplier.get();
+        return dataSource instanceof PageDataSource
+                ? ((PageDataSource) dataSource).getPageSwitchWaits()
+                : -1;
+    }
+
+}
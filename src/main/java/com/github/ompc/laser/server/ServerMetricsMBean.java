@@ -0,0 +1,58 @@
+package com.github.ompc.laser.server;
+
+/**
+ * 服务端度量MBean
+ */
+public interface ServerMetricsMBean {
+
+    /**
+     * @return 当前链接数
+     */
+    int getConnections();
+
+    /**
+     * @return 所有链接累计发出的行数
+     */
+    long getRows();
+
+    /**
+     * @return 所有链接累计发出的字节数
+     */
+    long getBytes();
+
+    /**
+     * @return 数据源读取者游标CAS失败次数，数据源不支持时为-1
+     */
+    long getDataSourceCasFailures();
+
+    /**
+     * @return 数据源读取者等待页面填充的自旋次数，数据源不支持时为-1
+     */
+    long getDataSourceSpins();
+
+    /**
+     * @return 数据源读取者等待页面填充的次数，数据源不支持时为-1
+     */
+    long getDataSourcePageSwitchWaits();
+
+    /**
+     * @return 请求到应答的延时中位数(ns)
+     */
+    long getLatencyP50Nanos();
+
+    /**
+     * @return 请求到应答的延时99分位(ns)
+     */
+    long getLatencyP99Nanos();
+
+    /**
+     * @return 请求到应答的延时99.9分位(ns)
+     */
+    long getLatencyP999Nanos();
+
+    /**
+     * @return 请求到应答的最大延时(ns)
+     */
+    long getLatencyMaxNanos();
+
+}
@@ -0,0 +1,85 @@
+package com.github.ompc.laser.benchmark;
+
+import com.github.ompc.laser.common.LaserUtils;
+import junit.framework.Assert;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * 测试数据生成器测试用例
+ */
+public class DataGeneratorTestCase {
+
+    /*
+     * 跨越多个数据块，最后一块不满
+     */
+    private final static int ROWS = 150000;
+
+    private File file;
+    private File otherFile;
+
+    @Before
+    public void createFiles() throws IOException {
+        file = File.createTempFile("laser-generator-", ".dat");
+        otherFile = File.createTempFile("laser-generator-", ".dat");
+    }
+
+    @After
+    public void deleteFiles() {
+        file.delete();
+        otherFile.delete();
+    }
+
+    /**
+     * 相同种子生成的文件与线程数无关
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testGenerateByDifferentThreads() throws Exception {
+        final DataGenerator.Expect expect = new DataGenerator(ROWS, "normal:100,30", "alnum", 7, 1).generate(file);
+        final DataGenerator.Expect otherExpect = new DataGenerator(ROWS, "normal:100,30", "alnum", 7, 4).generate(otherFile);
+        Assert.assertEquals(expect.getInputSize(), file.length());
+        Assert.assertEquals(expect.getOutputDigest(), otherExpect.getOutputDigest());
+        Assert.assertTrue(Arrays.equals(Files.readAllBytes(file.toPath()), Files.readAllBytes(otherFile.toPath())));
+    }
+
+    /**
+     * 期望输出与逐行process、reverse后的结果一致
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testExpectOutput() throws Exception {
+
+        final DataGenerator.Expect expect = new DataGenerator(ROWS, "uniform:1,200", "printable", 0, 3).generate(file);
+
+        final byte[] input = Files.readAllBytes(file.toPath());
+        final OutputDigest digest = new OutputDigest();
+        int lineNum = 0;
+        int lineStart = 0;
+        for (int i = 0; i < input.length; i++) {
+            if (input[i] == '\r') {
+                final byte[] data = LaserUtils.reverse(LaserUtils.process(Arrays.copyOfRange(input, lineStart, i)));
+                final byte[] lineNumBytes = String.valueOf(lineNum++).getBytes();
+                digest.update(lineNumBytes, 0, lineNumBytes.length);
+                digest.update(data, 0, data.length);
+                digest.update((byte) '\r');
+                digest.update((byte) '\n');
+                lineStart = ++i + 1;
+            }
+        }
+
+        Assert.assertEquals(ROWS, lineNum);
+        Assert.assertEquals(expect.getOutputSize(), digest.getLength());
+        Assert.assertEquals(expect.getOutputDigest(), digest);
+
+    }
+
+}
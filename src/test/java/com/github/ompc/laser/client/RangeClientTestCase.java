@@ -0,0 +1,97 @@
+package com.github.ompc.laser.client;
+
+import com.github.ompc.laser.common.LaserOptions;
+import com.github.ompc.laser.common.datasource.DataSource;
+import com.github.ompc.laser.common.datasource.Row;
+import com.github.ompc.laser.common.datasource.impl.PageDataSource;
+import com.github.ompc.laser.server.NioLaserServer;
+import com.github.ompc.laser.server.ServerConfiger;
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 随机读取客户端测试用例
+ */
+public class RangeClientTestCase {
+
+    private final static File DATA_FILE = new File("./src/test/resources/data/data_1000");
+
+    /**
+     * 随机读取的行与顺序读取一致，应答放不下时分多次读取，越过末尾的行不返回
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testGetRange() throws Exception {
+        assertGetRange(false);
+    }
+
+    /**
+     * 压缩传输时随机读取的应答立即发出
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testGetRangeWithCompress() throws Exception {
+        assertGetRange(true);
+    }
+
+    private void assertGetRange(boolean isEnableCompress) throws Exception {
+
+        final Row[] rows = new Row[1000];
+        final DataSource expectDataSource = new PageDataSource(DATA_FILE, 100);
+        expectDataSource.init();
+        try {
+            for (int index = 0; index < rows.length; index++) {
+                rows[index] = expectDataSource.getRow(new Row());
+            }
+        } finally {
+            expectDataSource.destroy();
+        }
+
+        final Properties properties = LaserOptions.load(new File("./laser.properties"));
+        properties.setProperty("enable_compress", String.valueOf(isEnableCompress));
+        properties.setProperty("server.range_buffer_size", "4096");
+        final LaserOptions options = new LaserOptions(properties);
+
+        final ServerConfiger configer = new ServerConfiger();
+        configer.setPort(0);
+        final DataSource dataSource = new PageDataSource(DATA_FILE, 100);
+        dataSource.init();
+        final ExecutorService executorService = Executors.newCachedThreadPool();
+        final NioLaserServer server = new NioLaserServer(dataSource, executorService, configer, options);
+        server.startup();
+
+        final RangeClient client = new RangeClient(new InetSocketAddress("127.0.0.1", server.getPort()), options);
+        try {
+            client.connect();
+
+            for (int[] range : new int[][]{{500, 300}, {0, 1}, {990, 20}, {0, 1000}, {1000, 5}}) {
+                final List<Row> actual = client.getRange(range[0], range[1]);
+                Assert.assertEquals(Math.max(0, Math.min(range[1], rows.length - range[0])), actual.size());
+                for (int i = 0; i < actual.size(); i++) {
+                    final Row expect = rows[range[0] + i];
+                    Assert.assertEquals(expect.getLineNum(), actual.get(i).getLineNum());
+                    Assert.assertEquals(expect.getOffset(), actual.get(i).getOffset());
+                    Assert.assertTrue(Arrays.equals(expect.getData(), actual.get(i).getData()));
+                }
+            }
+
+        } finally {
+            client.disconnect();
+            server.shutdown();
+            dataSource.destroy();
+            executorService.shutdownNow();
+        }
+
+    }
+
+}
@@ -0,0 +1,143 @@
+package com.github.ompc.laser.client;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 在途请求窗口测试用例
+ */
+public class RequestWindowTestCase {
+
+    /**
+     * 在途请求不超过窗口，收到应答后释放许可，窗口满时写线程休眠到被关闭
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testAcquire() throws Exception {
+
+        final RequestWindow window = new RequestWindow(8, 4, 16, 2, 100);
+        Assert.assertEquals(8, window.acquire(100));
+        Assert.assertEquals(0, window.tryAcquire(100));
+        Assert.assertEquals(8, window.getInFlight());
+
+        window.received(3, System.nanoTime());
+        Assert.assertEquals(2, window.acquire(2));
+        Assert.assertEquals(1, window.acquire(100));
+        Assert.assertEquals(window.getWindow(), window.getInFlight());
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<Integer> blocked = executor.submit(() -> window.acquire(100));
+            Thread.sleep(100);
+            Assert.assertFalse(blocked.isDone());
+            window.close();
+            Assert.assertEquals(0, blocked.get(5, TimeUnit.SECONDS).intValue());
+        } finally {
+            executor.shutdown();
+        }
+
+    }
+
+    /*
+     * 每轮的基准RTT
+     */
+    private final static long RTT = 2000000;
+
+    /*
+     * 累计应答数，每轮在途的请求全部应答
+     */
+    private long received = 0;
+
+    /*
+     * 一轮：发出窗口内全部请求，rttNanos之后全部应答，返回应答的时刻
+     */
+    private long round(RequestWindow window, long nowNanos, long rttNanos) {
+        received += window.tryAcquire(Integer.MAX_VALUE, nowNanos);
+        final long receivedNanos = nowNanos + rttNanos;
+        window.received(received, receivedNanos);
+        return receivedNanos;
+    }
+
+    /**
+     * RTT不变时慢启动阶段每轮翻倍，不超过最大窗口
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSlowStartGrowth() throws Exception {
+
+        final RequestWindow window = new RequestWindow(8, 4, 64, 2, 50);
+        long now = round(window, 0, RTT);
+        Assert.assertEquals(8, window.getWindow());
+
+        final int[] expects = {16, 32, 64, 64};
+        for (int expect : expects) {
+            now = round(window, now, RTT);
+            Assert.assertEquals(expect, window.getWindow());
+        }
+
+    }
+
+    /**
+     * RTT超出容忍范围且应答速率没有提高时窗口减半，之后RTT恢复按固定增量加大，
+     * 持续排队时一直减半直到最小窗口
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testMultiplicativeDecreaseAndAdditiveIncrease() throws Exception {
+
+        final RequestWindow window = new RequestWindow(8, 4, 64, 2, 50);
+        long now = round(window, 0, RTT);
+        now = round(window, now, RTT);
+        now = round(window, now, RTT);
+        Assert.assertEquals(32, window.getWindow());
+
+        // 窗口翻倍RTT也翻倍，应答速率不变，多出来的请求只是在排队
+        now = round(window, now, RTT * 2);
+        Assert.assertEquals(16, window.getWindow());
+
+        // 退出慢启动，每轮加上固定增量
+        now = round(window, now, RTT);
+        Assert.assertEquals(18, window.getWindow());
+        now = round(window, now, RTT);
+        Assert.assertEquals(20, window.getWindow());
+
+        // RTT在容忍范围内不算排队
+        now = round(window, now, RTT + RTT / 2);
+        Assert.assertEquals(22, window.getWindow());
+
+        final int[] expects = {11, 5, 4, 4};
+        for (int expect : expects) {
+            now = round(window, now, RTT * 4);
+            Assert.assertEquals(expect, window.getWindow());
+        }
+
+    }
+
+    /**
+     * RTT变长但应答速率明显提高时不减小窗口
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testLateRttWithRateGain() throws Exception {
+
+        final RequestWindow window = new RequestWindow(8, 4, 64, 2, 50);
+        long now = round(window, 0, RTT);
+        now = round(window, now, RTT);
+        Assert.assertEquals(16, window.getWindow());
+
+        // 窗口翻倍RTT只多了60%，应答速率提高了25%
+        now = round(window, now, RTT * 8 / 5);
+        Assert.assertEquals(32, window.getWindow());
+
+    }
+
+}
@@ -0,0 +1,290 @@
+package com.github.ompc.laser.client;
+
+import com.github.ompc.laser.common.FrameChecksum;
+import com.github.ompc.laser.common.datasource.DataPersistence;
+import com.github.ompc.laser.common.datasource.impl.OffsetDataPersistence;
+import com.github.ompc.laser.common.datasource.impl.PageDataPersistence;
+import junit.framework.Assert;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import static com.github.ompc.laser.common.LaserConstant.PRO_RESP_CHECKSUM;
+import static com.github.ompc.laser.common.LaserConstant.PRO_RESP_GETDATA_OFFSET;
+import static com.github.ompc.laser.common.LaserConstant.PRO_RESP_GETDATA_OFFSET_WIDE;
+import static com.github.ompc.laser.common.LaserConstant.PRO_RESP_GETEOF;
+import static com.github.ompc.laser.common.LaserConstant.PRO_RESP_GETEOF_SUMMARY;
+import static com.github.ompc.laser.common.LaserUtils.stringSize;
+import static java.lang.Thread.currentThread;
+
+/**
+ * 行数据解码器测试用例
+ */
+public class RowDecoderTestCase {
+
+    /*
+     * 预热和计量各解码的行数
+     */
+    private final static int ROWS = 100000;
+
+    /*
+     * 每次交给解码器的字节数，模拟一次网络读取
+     */
+    private final static int READ_SIZE = 1752;
+
+    /*
+     * 开启完整性检查时每批数据的行数，模拟服务端一次发送
+     */
+    private final static int BATCH_ROWS = 40;
+
+    private File dataFile;
+    private DataPersistence dataPersistence;
+
+    private ByteBuffer frames;
+    private byte[] expect;
+
+    @Before
+    public void initFrames() throws IOException {
+        dataFile = File.createTempFile("laser-decoder-", ".dat");
+        initFrames(false);
+    }
+
+    /*
+     * 生成帧序列和期望输出，开启完整性检查时每批数据后追加校验帧，EOF带汇总
+     */
+    private void initFrames(boolean isEnableIntegrity) throws IOException {
+        final FrameChecksum checksum = FrameChecksum.create();
+        final Random random = new Random(0);
+        final ByteArrayOutputStream framesOut = new ByteArrayOutputStream();
+        final ByteArrayOutputStream expectOut = new ByteArrayOutputStream();
+        final ByteBuffer header = ByteBuffer.allocate(20);
+        long offset = 0;
+        for (int lineNum = 0; lineNum < ROWS * 2; lineNum++) {
+            final byte[] data = new byte[1 + random.nextInt(100)];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = (byte) ('a' + random.nextInt(26));
+            }
+            header.clear();
+            header.putInt(PRO_RESP_GETDATA_OFFSET).putInt(lineNum).putLong(offset).putInt(data.length);
+            framesOut.write(header.array(), 0, header.position());
+            framesOut.write(data);
+            checksum.update(ByteBuffer.wrap(header.array()), 0, header.position());
+            checksum.update(ByteBuffer.wrap(data), 0, data.length);
+            if (isEnableIntegrity
+                    && (lineNum % BATCH_ROWS == BATCH_ROWS - 1 || lineNum == ROWS * 2 - 1)) {
+                header.clear();
+                header.putInt(PRO_RESP_CHECKSUM).putInt(checksum.getAlgorithm())
+                        .putInt(lineNum % BATCH_ROWS + 1).putInt(checksum.getValue());
+                framesOut.write(header.array(), 0, header.position());
+                checksum.reset();
+            }
+
+            expectOut.write(String.valueOf(lineNum).getBytes());
+            for (int i = data.length - 1; i >= 0; i--) {
+                expectOut.write(data[i]);
+            }
+            expectOut.write('\r');
+            expectOut.write('\n');
+            offset += stringSize(lineNum) + data.length + 2;
+        }
+        header.clear();
+        if (isEnableIntegrity) {
+            header.putInt(PRO_RESP_GETEOF_SUMMARY).putLong(ROWS * 2).putLong(offset);
+        } else {
+            header.putInt(PRO_RESP_GETEOF);
+        }
+        framesOut.write(header.array(), 0, header.position());
+
+        frames = ByteBuffer.allocateDirect(framesOut.size());
+        frames.put(framesOut.toByteArray());
+        frames.flip();
+        frames.limit(0);
+        expect = expectOut.toByteArray();
+    }
+
+    @After
+    public void destroyDataPersistence() throws IOException {
+        if (null != dataPersistence) {
+            dataPersistence.destroy();
+        }
+        dataFile.delete();
+    }
+
+    @Test
+    public void testDecodeWithoutAllocationByPageDataPersistence() throws Exception {
+        assertDecodeWithoutAllocation(new PageDataPersistence(dataFile, 2));
+    }
+
+    @Test
+    public void testDecodeWithoutAllocationByOffsetDataPersistence() throws Exception {
+        assertDecodeWithoutAllocation(new OffsetDataPersistence(dataFile));
+    }
+
+    /**
+     * 开启完整性检查后解码依然不分配对象，收到的行数和字节数与服务端汇总一致
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testDecodeWithIntegrity() throws Exception {
+        initFrames(true);
+        final IntegrityChecker integrityChecker = new IntegrityChecker();
+        assertDecodeWithoutAllocation(new OffsetDataPersistence(dataFile), integrityChecker);
+        integrityChecker.check(0);
+        Assert.assertEquals(ROWS * 2, integrityChecker.getRows());
+        Assert.assertEquals(expect.length, integrityChecker.getBytes());
+    }
+
+    /**
+     * 数据段中一个字节被改写，所在批次的校验帧不通过
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testDecodeWithCorruptedFrame() throws Exception {
+        initFrames(true);
+        final int corrupted = dataOffsetOfLine(ROWS);
+        frames.limit(frames.capacity());
+        frames.put(corrupted, (byte) (frames.get(corrupted) ^ 0x01));
+        frames.limit(0);
+
+        dataPersistence = new OffsetDataPersistence(dataFile);
+        dataPersistence.init();
+        final RowDecoder decoder = new RowDecoder(dataPersistence, new IntegrityChecker());
+        try {
+            decodeUntil(decoder, frames.capacity());
+            Assert.fail("corrupted frame was not detected.");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("integrity check failed"));
+        }
+    }
+
+    /**
+     * 行号超出int时服务端改用宽帧，与普通帧混在一起解码，行号按long格式化
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testDecodeWideLineNum() throws Exception {
+
+        final ByteBuffer wideFrames = ByteBuffer.allocate(1024);
+        final ByteArrayOutputStream expectOut = new ByteArrayOutputStream();
+        long offset = 0;
+        for (long lineNum = Integer.MAX_VALUE - 2L; lineNum < Integer.MAX_VALUE + 3L; lineNum++) {
+            final byte[] data = ("row" + lineNum).getBytes();
+            if (lineNum <= Integer.MAX_VALUE) {
+                wideFrames.putInt(PRO_RESP_GETDATA_OFFSET).putInt((int) lineNum);
+            } else {
+                wideFrames.putInt(PRO_RESP_GETDATA_OFFSET_WIDE).putLong(lineNum);
+            }
+            wideFrames.putLong(offset).putInt(data.length).put(data);
+
+            expectOut.write(String.valueOf(lineNum).getBytes());
+            for (int i = data.length - 1; i >= 0; i--) {
+                expectOut.write(data[i]);
+            }
+            expectOut.write('\r');
+            expectOut.write('\n');
+            offset += stringSize(lineNum) + data.length + 2;
+        }
+        final FrameChecksum checksum = FrameChecksum.create();
+        checksum.update(wideFrames, 0, wideFrames.position());
+        wideFrames.putInt(PRO_RESP_CHECKSUM).putInt(checksum.getAlgorithm()).putInt(5).putInt(checksum.getValue());
+        wideFrames.putInt(PRO_RESP_GETEOF);
+        wideFrames.flip();
+
+        dataPersistence = new OffsetDataPersistence(dataFile);
+        dataPersistence.init();
+        final IntegrityChecker integrityChecker = new IntegrityChecker();
+        final RowDecoder decoder = new RowDecoder(dataPersistence, integrityChecker);
+
+        // 逐字节放开可读范围，宽帧的行号被拆开时也能继续解码
+        final int end = wideFrames.limit();
+        boolean isEOF = false;
+        for (int limit = 1; limit <= end && !isEOF; limit++) {
+            wideFrames.limit(limit);
+            isEOF = decoder.decode(wideFrames);
+        }
+        Assert.assertTrue(isEOF);
+        Assert.assertEquals(5, integrityChecker.getRows());
+
+        dataPersistence.flush();
+        Assert.assertTrue(Arrays.equals(expectOut.toByteArray(), Files.readAllBytes(dataFile.toPath())));
+
+    }
+
+    private void assertDecodeWithoutAllocation(DataPersistence dataPersistence) throws Exception {
+        assertDecodeWithoutAllocation(dataPersistence, null);
+    }
+
+    /**
+     * 前一半数据用于预热，后一半数据解码期间当前线程不应分配对象
+     */
+    private void assertDecodeWithoutAllocation(DataPersistence dataPersistence, IntegrityChecker integrityChecker) throws Exception {
+
+        this.dataPersistence = dataPersistence;
+        dataPersistence.init();
+
+        final com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = currentThread().getId();
+        final RowDecoder decoder = new RowDecoder(dataPersistence, integrityChecker);
+
+        decodeUntil(decoder, frames.capacity() / 2);
+
+        final long allocatedBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+        final boolean isEOF = decodeUntil(decoder, frames.capacity());
+        final long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        Assert.assertTrue(isEOF);
+        Assert.assertTrue("allocated=" + allocated, allocated < 1024);
+
+        dataPersistence.flush();
+        Assert.assertTrue(Arrays.equals(expect, Files.readAllBytes(dataFile.toPath())));
+
+    }
+
+    /*
+     * 定位指定行数据段的起始位置
+     */
+    private int dataOffsetOfLine(int lineNum) {
+        final ByteBuffer view = frames.duplicate();
+        view.clear();
+        while (true) {
+            final int type = view.getInt();
+            if (type == PRO_RESP_CHECKSUM) {
+                view.position(view.position() + 12);
+                continue;
+            }
+            final int frameLineNum = view.getInt();
+            view.position(view.position() + 8);
+            final int len = view.getInt();
+            if (frameLineNum == lineNum) {
+                return view.position();
+            }
+            view.position(view.position() + len);
+        }
+    }
+
+    /*
+     * 按网络读取的粒度逐步放开可读范围，解码到指定位置
+     */
+    private boolean decodeUntil(RowDecoder decoder, int end) throws IOException {
+        boolean isEOF = false;
+        while (!isEOF && frames.limit() < end) {
+            frames.limit(Math.min(frames.limit() + READ_SIZE, end));
+            isEOF = decoder.decode(frames);
+        }
+        return isEOF;
+    }
+
+}
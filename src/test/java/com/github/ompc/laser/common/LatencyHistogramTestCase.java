@@ -0,0 +1,78 @@
+package com.github.ompc.laser.common;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+
+import static java.lang.Thread.currentThread;
+
+/**
+ * 延时直方图测试用例
+ */
+public class LatencyHistogramTestCase {
+
+    /**
+     * 分位数与精确值的相对误差不超过1/16，合并后与一次记录全部样本一致
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testPercentile() throws Exception {
+
+        final Random random = new Random(0);
+        final long[] values = new long[100000];
+        final LatencyHistogram first = new LatencyHistogram();
+        final LatencyHistogram second = new LatencyHistogram();
+        for (int i = 0; i < values.length; i++) {
+            // 从1ns到约1s对数均匀分布
+            values[i] = (long) Math.pow(10, random.nextDouble() * 9);
+            (i % 2 == 0 ? first : second).record(values[i]);
+        }
+        Arrays.sort(values);
+
+        final LatencyHistogram merged = new LatencyHistogram().add(first).add(second);
+        Assert.assertEquals(values.length, merged.getCount());
+        Assert.assertEquals(values[values.length - 1], merged.getMax());
+
+        for (double quantile : new double[]{0.1, 0.5, 0.9, 0.99, 0.999}) {
+            final long exact = values[(int) Math.ceil(quantile * values.length) - 1];
+            final long actual = merged.percentile(quantile);
+            Assert.assertTrue("quantile=" + quantile + ",exact=" + exact + ",actual=" + actual,
+                    Math.abs(actual - exact) <= Math.max(1, exact / 16));
+        }
+
+    }
+
+    /**
+     * 记录过程不分配对象
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRecordWithoutAllocation() throws Exception {
+
+        final com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = currentThread().getId();
+        final LatencyHistogram histogram = new LatencyHistogram();
+
+        // 预热
+        for (long value = 0; value < 1000000; value++) {
+            histogram.record(value * 997, 1);
+        }
+
+        final long allocatedBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (long value = 0; value < 1000000; value++) {
+            histogram.record(value * 997, 1);
+        }
+        final long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        Assert.assertTrue("allocated=" + allocated, allocated < 1024);
+        Assert.assertEquals(2000000, histogram.getCount());
+
+    }
+
+}
@@ -0,0 +1,176 @@
+package com.github.ompc.laser.common.channel;
+
+import junit.framework.Assert;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 共享内存环形缓冲通道测试用例
+ */
+public class ShmRingChannelTestCase {
+
+    private File ringFile;
+
+    @Before
+    public void createRingFile() throws Exception {
+        ringFile = File.createTempFile("laser-ring-", ".ring");
+    }
+
+    @After
+    public void deleteRingFile() {
+        ringFile.delete();
+    }
+
+    /**
+     * 写入远多于容量的数据，两个线程之间跨越环尾后数据不乱序不丢失，写端关闭后读完剩余数据返回-1
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testTransferAcrossWrap() throws Exception {
+
+        final int total = 1 << 20;
+        final byte[] expect = new byte[total];
+        new Random(0).nextBytes(expect);
+
+        final ShmRingChannel producer = ShmRingChannel.create(ringFile, 4096);
+        final ShmRingChannel consumer = ShmRingChannel.open(ringFile, ringFile.getParentFile());
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final Thread writer = new Thread(() -> {
+            try {
+                final ByteBuffer src = ByteBuffer.wrap(expect);
+                while (src.hasRemaining()) {
+                    // 每次写入的长度不同，让写入位置落在环的各处
+                    final int limit = src.limit();
+                    src.limit(Math.min(limit, src.position() + 1 + src.position() % 3001));
+                    while (src.hasRemaining()) {
+                        producer.write(src);
+                    }
+                    src.limit(limit);
+                }
+                producer.close();
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        });
+        writer.start();
+
+        final ByteBuffer actual = ByteBuffer.allocate(total + 1);
+        final ByteBuffer dst = ByteBuffer.allocateDirect(1000);
+        while (true) {
+            if (!consumer.awaitReadable(1000000000L)) {
+                continue;
+            }
+            final int count = consumer.read(dst);
+            if (count < 0) {
+                break;
+            }
+            dst.flip();
+            actual.put(dst);
+            dst.clear();
+        }
+        writer.join();
+        consumer.close();
+
+        Assert.assertNull(failure.get());
+        Assert.assertEquals(total, actual.position());
+        actual.flip();
+        Assert.assertEquals(ByteBuffer.wrap(expect), actual);
+
+    }
+
+    /**
+     * 读端关闭后，等待空间的写端不再等待
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testWriteAfterPeerClosed() throws Exception {
+
+        final ShmRingChannel producer = ShmRingChannel.create(ringFile, 64);
+        final ShmRingChannel consumer = ShmRingChannel.open(ringFile, ringFile.getParentFile());
+
+        Assert.assertEquals(64, producer.write(ByteBuffer.allocate(100)));
+        consumer.markClosed();
+        try {
+            producer.write(ByteBuffer.allocate(1));
+            Assert.fail();
+        } catch (ClosedChannelException e) {
+            // 对端已关闭
+        }
+
+        producer.close();
+        consumer.close();
+
+    }
+
+    /**
+     * 环形缓冲文件由创建的一端在关闭时删除，打开的一端关闭时不删除
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testCreatorDeletesFileOnClose() throws Exception {
+
+        final ShmRingChannel producer = ShmRingChannel.create(ringFile, 64);
+        final ShmRingChannel consumer = ShmRingChannel.open(ringFile, ringFile.getParentFile());
+
+        consumer.close();
+        Assert.assertTrue(ringFile.exists());
+        producer.close();
+        Assert.assertFalse(ringFile.exists());
+
+    }
+
+    /**
+     * 对端给出的路径不在共享内存目录下、文件不存在或头部不对时拒绝打开，且不会创建文件
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testOpenRejectsIllegalFile() throws Exception {
+
+        final File dir = Files.createTempDirectory("laser-shm-").toFile();
+        final File missing = new File(dir, "missing.ring");
+        final File illegal = new File(dir, "illegal.ring");
+        try {
+
+            // 共享内存目录之外，包括用..跳出目录
+            assertOpenFailed(ringFile, dir);
+            assertOpenFailed(new File(dir, "../" + ringFile.getName()), dir);
+            assertOpenFailed(dir, dir);
+
+            assertOpenFailed(missing, dir);
+            Assert.assertFalse(missing.exists());
+
+            // 长度足够但头部不是环形缓冲
+            Files.write(illegal.toPath(), new byte[4096]);
+            assertOpenFailed(illegal, dir);
+            Assert.assertEquals(4096, illegal.length());
+
+        } finally {
+            illegal.delete();
+            dir.delete();
+        }
+
+    }
+
+    private static void assertOpenFailed(File file, File dir) {
+        try {
+            ShmRingChannel.open(file, dir).close();
+            Assert.fail("file=" + file);
+        } catch (IOException e) {
+            // 拒绝打开
+        }
+    }
+
+}
@@ -69,7 +69,7 @@ public abstract class AbstractDataSourceTestCase {
     public void testGetRowByMultiThread() throws Exception {
 
         final DataSource dataSource = getDataSource(false);
-        final Set<Integer> unique = new ConcurrentSkipListSet<>();
+        final Set<Long> unique = new ConcurrentSkipListSet<>();
         final ExecutorService executors = Executors.newCachedThreadPool();
 
         try {
@@ -0,0 +1,50 @@
+package com.github.ompc.laser.common.datasource;
+
+import com.github.ompc.laser.common.datasource.impl.MockDataSource;
+import junit.framework.Assert;
+import org.junit.Test;
+
+import static com.github.ompc.laser.common.LaserUtils.stringSize;
+
+/**
+ * 调试用数据源测试用例
+ */
+public class MockDataSourceTestCase extends AbstractDataSourceTestCase {
+
+    private DataSource currentDataSource;
+
+    @Override
+    DataSource getDataSource(boolean reset) {
+        if (reset) {
+            return currentDataSource = new MockDataSource(1000, 1, 200, 0);
+        } else {
+            return currentDataSource;
+        }
+    }
+
+    /**
+     * 输出偏移量为之前所有输出行长度之和，行长在指定范围内，EOF后汇总与累计一致
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testGetRowOffset() throws Exception {
+
+        final DataSource dataSource = getDataSource(false);
+        final Row row = new Row();
+        long offset = 0;
+        for (int index = 0; index < 1000; index++) {
+            dataSource.getRow(row);
+            Assert.assertEquals(row.getLineNum(), index);
+            Assert.assertEquals(row.getOffset(), offset);
+            Assert.assertTrue(row.getData().length >= 1 && row.getData().length <= 200);
+            offset += stringSize(row.getLineNum()) + row.getData().length + 2;
+        }
+
+        Assert.assertTrue(dataSource.getRow(row).getLineNum() < 0);
+        Assert.assertEquals(1000, dataSource.getTotalRows());
+        Assert.assertEquals(offset, dataSource.getTotalBytes());
+
+    }
+
+}
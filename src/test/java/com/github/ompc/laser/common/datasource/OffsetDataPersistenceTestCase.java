@@ -0,0 +1,124 @@
+package com.github.ompc.laser.common.datasource;
+
+import com.github.ompc.laser.common.LaserUtils;
+import com.github.ompc.laser.common.datasource.impl.OffsetDataPersistence;
+import junit.framework.Assert;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.github.ompc.laser.common.LaserUtils.stringSize;
+
+/**
+ * 定位写入数据持久化测试用例
+ */
+public class OffsetDataPersistenceTestCase {
+
+    private File dataFile;
+    private DataPersistence dataPersistence;
+
+    @Before
+    public void initDataPersistence() throws IOException {
+        dataFile = File.createTempFile("laser-offset-", ".dat");
+        dataPersistence = new OffsetDataPersistence(dataFile);
+        dataPersistence.init();
+    }
+
+    @After
+    public void destroyDataPersistence() throws IOException {
+        dataPersistence.destroy();
+        dataFile.delete();
+    }
+
+    /**
+     * 多线程乱序写入，结果与顺序写入一致
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testPutRowOutOfOrderByMultiThread() throws Exception {
+
+        final List<Row> rows = new ArrayList<>();
+        final ByteArrayOutputStream expect = new ByteArrayOutputStream();
+        final Random random = new Random(0);
+        long offset = 0;
+        for (int lineNum = 0; lineNum < 10000; lineNum++) {
+            final byte[] data = new byte[1 + random.nextInt(200)];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = (byte) ('a' + random.nextInt(26));
+            }
+            final Row row = new Row(lineNum, LaserUtils.reverse(data));
+            row.setOffset(offset);
+            rows.add(row);
+            offset += stringSize(lineNum) + data.length + 2;
+
+            expect.write(String.valueOf(lineNum).getBytes());
+            expect.write(data);
+            expect.write('\r');
+            expect.write('\n');
+        }
+        Collections.shuffle(rows, random);
+
+        final int threads = 4;
+        final ExecutorService executors = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                final int from = t;
+                futures.add(executors.submit(() -> {
+                    for (int i = from; i < rows.size(); i += threads) {
+                        dataPersistence.putRow(rows.get(i));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executors.shutdown();
+        }
+
+        dataPersistence.flush();
+        Assert.assertTrue(java.util.Arrays.equals(expect.toByteArray(), Files.readAllBytes(dataFile.toPath())));
+
+    }
+
+    /**
+     * 刷新后区域映射已释放，再写入时抛出异常而不是写到失效的映射里
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testPutRowAfterFlush() throws Exception {
+
+        final Row row = new Row(0, "abc".getBytes());
+        row.setOffset(0);
+        dataPersistence.putRow(row);
+        dataPersistence.flush();
+
+        row.setLineNum(1);
+        row.setOffset(6);
+        try {
+            dataPersistence.putRow(row);
+            Assert.fail();
+        } catch (IOException e) {
+            // expect
+        }
+        Assert.assertEquals(6, dataFile.length());
+
+    }
+
+}
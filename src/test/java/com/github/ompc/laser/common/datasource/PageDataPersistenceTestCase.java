@@ -0,0 +1,236 @@
+package com.github.ompc.laser.common.datasource;
+
+import com.github.ompc.laser.common.datasource.impl.PageDataPersistence;
+import com.github.ompc.laser.common.datasource.impl.PageJournal;
+import com.github.ompc.laser.common.datasource.writer.DirectPageWriter;
+import com.github.ompc.laser.common.datasource.writer.GatheringPageWriter;
+import com.github.ompc.laser.common.datasource.writer.MappedPageWriter;
+import junit.framework.Assert;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 分页数据持久化测试用例
+ */
+public class PageDataPersistenceTestCase {
+
+    private final static int TOTAL = 600001;
+
+    private File dataFile;
+    private DataPersistence dataPersistence;
+
+    private byte[][] datas;
+    private byte[] expect;
+
+    @Before
+    public void initDataFile() throws IOException {
+        dataFile = File.createTempFile("laser-page-", ".dat");
+
+        datas = new byte[TOTAL][];
+        final ByteArrayOutputStream expectOut = new ByteArrayOutputStream();
+        final Random random = new Random(0);
+        for (int lineNum = 0; lineNum < TOTAL; lineNum++) {
+            final byte[] data = new byte[1 + random.nextInt(60)];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = (byte) ('a' + random.nextInt(26));
+            }
+            datas[lineNum] = data;
+            expectOut.write(String.valueOf(lineNum).getBytes());
+            expectOut.write(data);
+            expectOut.write('\r');
+            expectOut.write('\n');
+        }
+        expect = expectOut.toByteArray();
+    }
+
+    @After
+    public void destroyDataPersistence() throws IOException {
+        if (null != dataPersistence) {
+            dataPersistence.destroy();
+        }
+        dataFile.delete();
+    }
+
+    /**
+     * 多线程交错写入多页数据，结果与顺序写入一致
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testPutRowByMultiThread() throws Exception {
+        assertPutRowByMultiThread(new PageDataPersistence(dataFile, 4));
+    }
+
+    /**
+     * 映射数量受限的映射写入器，较早的映射被后台同步者延迟释放后结果依然正确
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testPutRowByMappedPageWriter() throws Exception {
+        assertPutRowByMultiThread(new PageDataPersistence(dataFile, 4, new MappedPageWriter(dataFile, 2, 10, 0)));
+    }
+
+    @Test
+    public void testPutRowByGatheringPageWriter() throws Exception {
+        assertPutRowByMultiThread(new PageDataPersistence(dataFile, 4, new GatheringPageWriter(dataFile)));
+    }
+
+    /**
+     * 直接缓存远小于页面，页面被拆成多次对齐写入，后台同步者限速刷盘
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testPutRowByDirectPageWriter() throws Exception {
+        assertPutRowByMultiThread(new PageDataPersistence(dataFile, 4, new DirectPageWriter(dataFile, 8192, 10, 64 * 1024 * 1024)));
+    }
+
+    /**
+     * 写入一部分后中断，输出文件中第20页被破坏且日志尾部有半条记录，
+     * 恢复出的可信前缀止于第20页，续传后结果与一次写完一致
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testResumeFromJournal() throws Exception {
+
+        final File journalFile = new File(dataFile.getPath() + ".journal");
+        try {
+
+            final PageJournal firstJournal = new PageJournal(journalFile, 10);
+            firstJournal.recover(dataFile);
+            final DataPersistence crashed = new PageDataPersistence(dataFile, 4, new MappedPageWriter(dataFile, 2), firstJournal);
+            crashed.init();
+            putRows(crashed, 0, 250000);
+
+            // 等待日志记下已写完的25页后直接销毁，模拟客户端中断
+            for (int i = 0; i < 500 && journalFile.length() < 25 * 36; i++) {
+                Thread.sleep(10);
+            }
+            crashed.destroy();
+            Assert.assertEquals(25 * 36, journalFile.length());
+
+            // 破坏第20页的第一个字节，并在日志尾部留下半条记录
+            final int offsetOfPage20 = indexOfLine(200000);
+            try (final RandomAccessFile raf = new RandomAccessFile(dataFile, "rw")) {
+                raf.seek(offsetOfPage20);
+                raf.write('x');
+            }
+            try (final RandomAccessFile raf = new RandomAccessFile(journalFile, "rw")) {
+                raf.seek(raf.length());
+                raf.write(new byte[10]);
+            }
+
+            final PageJournal resumedJournal = new PageJournal(journalFile, 10);
+            resumedJournal.recover(dataFile);
+            Assert.assertEquals(20, resumedJournal.getPageNum());
+            Assert.assertEquals(200000, resumedJournal.getLineNum());
+            Assert.assertEquals(offsetOfPage20, resumedJournal.getFileOffset());
+
+            dataPersistence = new PageDataPersistence(dataFile, 4, new MappedPageWriter(dataFile, 2), resumedJournal);
+            dataPersistence.init();
+            putRows(dataPersistence, (int) resumedJournal.getLineNum(), TOTAL);
+            dataPersistence.flush();
+            Assert.assertTrue(Arrays.equals(expect, Files.readAllBytes(dataFile.toPath())));
+
+        } finally {
+            journalFile.delete();
+        }
+
+    }
+
+    /**
+     * 日志刷盘间隔远大于写入耗时，刷新时停止日志依然会把全部完整页面追加到日志中
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testStopAppendsPendingRecords() throws Exception {
+
+        final File journalFile = new File(dataFile.getPath() + ".journal");
+        try {
+
+            final PageJournal pageJournal = new PageJournal(journalFile, 60 * 1000);
+            pageJournal.recover(dataFile);
+            dataPersistence = new PageDataPersistence(dataFile, 4, new MappedPageWriter(dataFile, 2), pageJournal);
+            dataPersistence.init();
+            putRows(dataPersistence, 0, TOTAL);
+            dataPersistence.flush();
+            Assert.assertEquals(60 * 36, journalFile.length());
+
+            final PageJournal recoveredJournal = new PageJournal(journalFile, 10);
+            recoveredJournal.recover(dataFile);
+            Assert.assertEquals(60, recoveredJournal.getPageNum());
+            Assert.assertEquals(600000, recoveredJournal.getLineNum());
+
+        } finally {
+            journalFile.delete();
+        }
+
+    }
+
+    /*
+     * 计算指定行在输出中的起始位置
+     */
+    private int indexOfLine(int lineNum) {
+        int offset = 0;
+        for (int i = 0; i < lineNum; i++) {
+            offset += String.valueOf(i).length() + datas[i].length + 2;
+        }
+        return offset;
+    }
+
+    private void assertPutRowByMultiThread(DataPersistence dataPersistence) throws Exception {
+
+        this.dataPersistence = dataPersistence;
+        dataPersistence.init();
+        putRows(dataPersistence, 0, TOTAL);
+        dataPersistence.flush();
+        Assert.assertTrue(Arrays.equals(expect, Files.readAllBytes(dataFile.toPath())));
+
+    }
+
+    /*
+     * 多线程交错写入[from,to)行
+     */
+    private void putRows(DataPersistence dataPersistence, int from, int to) throws Exception {
+        final int threads = 3;
+        final ExecutorService executors = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                final int start = from + t;
+                futures.add(executors.submit(() -> {
+                    final Row row = new Row();
+                    for (int lineNum = start; lineNum < to; lineNum += threads) {
+                        row.setLineNum(lineNum);
+                        row.setData(datas[lineNum]);
+                        dataPersistence.putRow(row);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executors.shutdown();
+        }
+    }
+
+}
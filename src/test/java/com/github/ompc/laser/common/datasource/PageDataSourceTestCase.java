@@ -1,8 +1,17 @@
 package com.github.ompc.laser.common.datasource;
 
 import com.github.ompc.laser.common.datasource.impl.PageDataSource;
+import junit.framework.Assert;
+import org.junit.Test;
 
 import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.github.ompc.laser.common.LaserUtils.stringSize;
 
 /**
  * 阻塞型数据源测试用例
@@ -16,7 +25,7 @@ public class PageDataSourceTestCase extends AbstractDataSourceTestCase {
     DataSource getDataSource(boolean reset) {
         if (reset) {
             return currentDataSource = new PageDataSource(
-                    new File("./src/test/resources/data/data_1000")
+                    new File("./src/test/resources/data/data_1000"), 100
 //                    new File("/Users/vlinux/data/data")
             );
         } else {
@@ -24,4 +33,192 @@ public class PageDataSourceTestCase extends AbstractDataSourceTestCase {
         }
     }
 
+    /**
+     * 输出偏移量为之前所有输出行长度之和
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testGetRowOffset() throws Exception {
+
+        final DataSource dataSource = getDataSource(false);
+        long offset = 0;
+        for (int index = 0; index < 1000; index++) {
+            final Row row = dataSource.getRow(new Row());
+            Assert.assertEquals(row.getLineNum(), index);
+            Assert.assertEquals(row.getOffset(), offset);
+            offset += stringSize(row.getLineNum()) + row.getData().length + 2;
+        }
+
+    }
+
+    /**
+     * 续传出来的数据源从指定行开始，行号、数据和输出偏移量与原数据源一致
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testResume() throws Exception {
+
+        final DataSource dataSource = getDataSource(false);
+        final Row[] rows = new Row[1000];
+        for (int index = 0; index < rows.length; index++) {
+            rows[index] = dataSource.getRow(new Row());
+        }
+
+        final DataSource resumed = ((ResumableDataSource) dataSource).resume(777);
+        resumed.init();
+        try {
+            for (int index = 777; index < rows.length; index++) {
+                final Row row = resumed.getRow(new Row());
+                Assert.assertEquals(row.getLineNum(), index);
+                Assert.assertEquals(row.getOffset(), rows[index].getOffset());
+                Assert.assertTrue(Arrays.equals(row.getData(), rows[index].getData()));
+            }
+            Assert.assertTrue(resumed.getRow(new Row()).getLineNum() < 0);
+        } finally {
+            resumed.destroy();
+        }
+
+    }
+
+    /**
+     * 多个数据文件当作一个逻辑文件，文件边界可以落在行中间，空文件被跳过，
+     * 行号、数据和输出偏移量与单个文件一致，续传可以跨越文件边界
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testMultiFile() throws Exception {
+
+        final DataSource dataSource = getDataSource(false);
+        final Row[] rows = new Row[1000];
+        for (int index = 0; index < rows.length; index++) {
+            rows[index] = dataSource.getRow(new Row());
+        }
+
+        final byte[] data = Files.readAllBytes(new File("./src/test/resources/data/data_1000").toPath());
+        final File dir = Files.createTempDirectory("laser-multi").toFile();
+        final int[] splits = {0, 7, data.length / 3, data.length / 3, data.length / 2 + 1, data.length};
+        final File[] dataFiles = new File[splits.length - 1];
+        for (int i = 0; i < dataFiles.length; i++) {
+            dataFiles[i] = new File(dir, "segment_" + i);
+            Files.write(dataFiles[i].toPath(), Arrays.copyOfRange(data, splits[i], splits[i + 1]));
+            dataFiles[i].deleteOnExit();
+        }
+        dir.deleteOnExit();
+
+        final DataSource multiDataSource = new PageDataSource(dataFiles, 100, 2);
+        multiDataSource.init();
+        try {
+            for (int index = 0; index < rows.length; index++) {
+                final Row row = multiDataSource.getRow(new Row());
+                Assert.assertEquals(row.getLineNum(), index);
+                Assert.assertEquals(row.getOffset(), rows[index].getOffset());
+                Assert.assertTrue(Arrays.equals(row.getData(), rows[index].getData()));
+            }
+            Assert.assertTrue(multiDataSource.getRow(new Row()).getLineNum() < 0);
+            Assert.assertEquals(rows.length, multiDataSource.getTotalRows());
+
+            final DataSource resumed = ((ResumableDataSource) multiDataSource).resume(555);
+            resumed.init();
+            try {
+                for (int index = 555; index < rows.length; index++) {
+                    final Row row = resumed.getRow(new Row());
+                    Assert.assertEquals(row.getLineNum(), index);
+                    Assert.assertEquals(row.getOffset(), rows[index].getOffset());
+                }
+                Assert.assertTrue(resumed.getRow(new Row()).getLineNum() < 0);
+            } finally {
+                resumed.destroy();
+            }
+        } finally {
+            multiDataSource.destroy();
+        }
+
+    }
+
+    /**
+     * 映射窗口远小于文件、窗口边界落在行中间时，同步映射和不同预读深度下的行都与默认配置一致
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testReadaheadWindows() throws Exception {
+
+        final DataSource dataSource = getDataSource(false);
+        final Row[] rows = new Row[1000];
+        for (int index = 0; index < rows.length; index++) {
+            rows[index] = dataSource.getRow(new Row());
+        }
+
+        for (int depth : new int[]{0, 1, 3}) {
+            final DataSource windowDataSource = new PageDataSource(
+                    new File[]{new File("./src/test/resources/data/data_1000")}, 100, 0, 777, depth);
+            windowDataSource.init();
+            try {
+                for (int index = 0; index < rows.length; index++) {
+                    final Row row = windowDataSource.getRow(new Row());
+                    Assert.assertEquals(row.getLineNum(), index);
+                    Assert.assertEquals(row.getOffset(), rows[index].getOffset());
+                    Assert.assertTrue(Arrays.equals(row.getData(), rows[index].getData()));
+                }
+                Assert.assertTrue(windowDataSource.getRow(new Row()).getLineNum() < 0);
+            } finally {
+                windowDataSource.destroy();
+            }
+        }
+
+    }
+
+    /**
+     * 零拷贝取到的切片与拷贝取到的行一致，切片不释放时所在的页不会被切换，不等待时返回null
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testGetRowSlice() throws Exception {
+
+        final DataSource dataSource = getDataSource(false);
+        final Row[] rows = new Row[1000];
+        for (int index = 0; index < rows.length; index++) {
+            rows[index] = dataSource.getRow(new Row());
+        }
+
+        final SliceDataSource sliceDataSource = new PageDataSource(new File("./src/test/resources/data/data_1000"), 100);
+        sliceDataSource.init();
+        try {
+            final List<Row> holds = new ArrayList<>();
+            int index = 0;
+            while (true) {
+                final Row row = sliceDataSource.getRowSlice(new Row(), holds.isEmpty());
+                if (null == row) {
+                    holds.forEach(sliceDataSource::release);
+                    holds.clear();
+                    continue;
+                }
+                if (row.getLineNum() < 0) {
+                    break;
+                }
+
+                final ByteBuffer slice = row.getSlice();
+                Assert.assertEquals(index, row.getLineNum());
+                Assert.assertEquals(rows[index].getOffset(), row.getOffset());
+                Assert.assertEquals(index, slice.getLong());
+                Assert.assertEquals(rows[index].getOffset(), slice.getLong());
+                Assert.assertEquals(rows[index].getData().length, slice.getInt());
+                Assert.assertEquals(ByteBuffer.wrap(rows[index].getData()), slice);
+                // 一共只有4页，持有的行所在的页不会被切换，最多持有4页的行
+                Assert.assertTrue(holds.size() < 400);
+                holds.add(row);
+                index++;
+            }
+            Assert.assertEquals(rows.length, index);
+            holds.forEach(sliceDataSource::release);
+        } finally {
+            sliceDataSource.destroy();
+        }
+
+    }
+
 }
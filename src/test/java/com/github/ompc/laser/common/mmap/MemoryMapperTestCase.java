@@ -0,0 +1,122 @@
+package com.github.ompc.laser.common.mmap;
+
+import junit.framework.Assert;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+
+/**
+ * 文件映射器测试用例，测试当前JDK选中的实现
+ */
+public class MemoryMapperTestCase {
+
+    private File dataFile;
+
+    @Before
+    public void createDataFile() throws Exception {
+        dataFile = File.createTempFile("laser-mmap-", ".dat");
+    }
+
+    @After
+    public void deleteDataFile() {
+        dataFile.delete();
+    }
+
+    /**
+     * 从文件中间映射一段区域写入，刷盘释放后文件内容一致，释放后可以立即截断文件
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testMapWriteAndClose() throws Exception {
+
+        final byte[] expect = new byte[8192];
+        new Random(0).nextBytes(expect);
+
+        try (final FileChannel fileChannel = new RandomAccessFile(dataFile, "rw").getChannel()) {
+            final Mapping mapping = MemoryMapper.get().map(fileChannel, READ_WRITE, 4096, expect.length);
+            Assert.assertEquals(expect.length, mapping.size());
+            Assert.assertEquals(1, mapping.getChunkCount());
+            final ByteBuffer chunk = mapping.getChunk(0);
+            Assert.assertEquals(0, chunk.position());
+            Assert.assertEquals(expect.length, chunk.remaining());
+            chunk.put(expect);
+            mapping.force();
+            mapping.close();
+            // 重复释放无害
+            mapping.close();
+            fileChannel.truncate(4096 + expect.length);
+        }
+
+        final byte[] actual = Files.readAllBytes(dataFile.toPath());
+        Assert.assertEquals(4096 + expect.length, actual.length);
+        Assert.assertTrue(Arrays.equals(expect, Arrays.copyOfRange(actual, 4096, actual.length)));
+
+    }
+
+    /**
+     * 超过一个分块的映射按分块访问，最后一块只包含剩余部分
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testChunks() throws Exception {
+
+        final long size = Mapping.CHUNK_SIZE + 3L;
+        try (final RandomAccessFile raf = new RandomAccessFile(dataFile, "rw")) {
+            // 稀疏文件，不占磁盘
+            raf.setLength(size);
+            raf.seek(Mapping.CHUNK_SIZE - 1);
+            raf.write(new byte[]{1, 2, 3, 4});
+        }
+
+        try (final FileChannel fileChannel = new RandomAccessFile(dataFile, "r").getChannel();
+             final Mapping mapping = MemoryMapper.get().map(fileChannel, READ_ONLY, 0, size)) {
+            Assert.assertEquals(2, mapping.getChunkCount());
+            final ByteBuffer first = mapping.getChunk(0);
+            Assert.assertEquals(Mapping.CHUNK_SIZE, first.remaining());
+            Assert.assertEquals(1, first.get(Mapping.CHUNK_SIZE - 1));
+            final ByteBuffer last = mapping.getChunk(1);
+            Assert.assertEquals(3, last.remaining());
+            Assert.assertEquals(2, last.get());
+            Assert.assertEquals(3, last.get());
+            Assert.assertEquals(4, last.get());
+        }
+
+    }
+
+    /**
+     * 超过单个映射上限时映射失败而不是截断
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testMaxMappingSize() throws Exception {
+
+        final MemoryMapper mapper = MemoryMapper.get();
+        if (mapper.getMaxMappingSize() == Long.MAX_VALUE) {
+            // MemorySegment映射没有上限
+            return;
+        }
+        try (final FileChannel fileChannel = new RandomAccessFile(dataFile, "r").getChannel()) {
+            mapper.map(fileChannel, READ_ONLY, 0, mapper.getMaxMappingSize() + 1);
+            Assert.fail();
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("exceeds 2GB"));
+        }
+
+    }
+
+}
@@ -0,0 +1,139 @@
+package com.github.ompc.laser.server;
+
+import com.github.ompc.laser.common.LaserOptions;
+import com.github.ompc.laser.common.datasource.DataSource;
+import com.github.ompc.laser.common.datasource.impl.PageDataSource;
+import junit.framework.Assert;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.github.ompc.laser.common.LaserConstant.*;
+
+/**
+ * 服务端续传测试用例
+ */
+public class NioLaserServerTestCase {
+
+    private final static File DATA_FILE = new File("./src/test/resources/data/data_1000");
+
+    private DataSource dataSource;
+    private ExecutorService executorService;
+    private NioLaserServer server;
+
+    @Before
+    public void startup() throws Exception {
+        final Properties properties = LaserOptions.load(new File("./laser.properties"));
+        properties.setProperty("enable_compress", "false");
+        properties.setProperty("enable_output_offset", "false");
+        properties.setProperty("enable_integrity", "false");
+        final ServerConfiger configer = new ServerConfiger();
+        configer.setPort(0);
+        dataSource = new PageDataSource(DATA_FILE, 100);
+        dataSource.init();
+        executorService = Executors.newCachedThreadPool();
+        server = new NioLaserServer(dataSource, executorService, configer, new LaserOptions(properties));
+        server.startup();
+    }
+
+    @After
+    public void shutdown() throws Exception {
+        server.shutdown();
+        dataSource.destroy();
+        executorService.shutdownNow();
+    }
+
+    /**
+     * 不同会话各自续传，后来的续传不影响已经绑定数据源的链接，同一会话的新链接共用会话的数据源
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testResumePerSession() throws Exception {
+
+        try (final SocketChannel first = connect(1, 100);
+             final SocketChannel second = connect(2, 500)) {
+
+            Assert.assertEquals(100, getLineNum(first));
+            Assert.assertEquals(500, getLineNum(second));
+
+            // 会话1的数据源已经被会话2替换，但绑定它的链接仍从中取数
+            Assert.assertEquals(101, getLineNum(first));
+            Assert.assertEquals(501, getLineNum(second));
+
+            try (final SocketChannel third = connect(1, 100)) {
+                Assert.assertEquals(102, getLineNum(third));
+            }
+            Assert.assertEquals(103, getLineNum(first));
+
+        }
+
+        // 被替换的数据源随最后一个链接释放而销毁，会话1重新续传时创建新的数据源
+        // 服务端发现链接断开有延时，销毁之前的续传仍会绑定原来的数据源
+        int lineNum = -1;
+        for (int i = 0; i < 100 && lineNum != 100; i++) {
+            Thread.sleep(50);
+            try (final SocketChannel again = connect(1, 100)) {
+                lineNum = getLineNum(again);
+            }
+        }
+        Assert.assertEquals(100, lineNum);
+
+    }
+
+    /*
+     * 建立链接并发送续传请求
+     */
+    private SocketChannel connect(long sessionId, long lineNum) throws IOException {
+        final SocketChannel socketChannel = SocketChannel.open(new InetSocketAddress("127.0.0.1", server.getPort()));
+        final ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + Long.BYTES + Long.BYTES);
+        buffer.putInt(PRO_REQ_RESUME);
+        buffer.putLong(sessionId);
+        buffer.putLong(lineNum);
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            socketChannel.write(buffer);
+        }
+        return socketChannel;
+    }
+
+    /*
+     * 请求一行，返回应答的行号
+     */
+    private int getLineNum(SocketChannel socketChannel) throws IOException {
+        final ByteBuffer request = ByteBuffer.allocate(Integer.BYTES);
+        request.putInt(PRO_REQ_GETDATA);
+        request.flip();
+        while (request.hasRemaining()) {
+            socketChannel.write(request);
+        }
+
+        final ByteBuffer head = read(socketChannel, Integer.BYTES + Integer.BYTES + Integer.BYTES);
+        Assert.assertEquals(PRO_RESP_GETDATA, head.getInt());
+        final int lineNum = head.getInt();
+        read(socketChannel, head.getInt());
+        return lineNum;
+    }
+
+    private ByteBuffer read(SocketChannel socketChannel, int length) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (socketChannel.read(buffer) < 0) {
+                throw new EOFException();
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+}